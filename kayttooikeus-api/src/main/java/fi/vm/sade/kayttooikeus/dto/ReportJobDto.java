@@ -0,0 +1,23 @@
+package fi.vm.sade.kayttooikeus.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReportJobDto {
+    private Long id;
+    private ReportJobStatus status;
+    private String organisaatioOid;
+    private String lang;
+    private LocalDateTime created;
+    private LocalDateTime started;
+    private LocalDateTime finished;
+    private LocalDateTime expires;
+    private Long rowCount;
+    private String error;
+}
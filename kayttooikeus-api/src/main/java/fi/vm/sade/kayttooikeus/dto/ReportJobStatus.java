@@ -0,0 +1,13 @@
+package fi.vm.sade.kayttooikeus.dto;
+
+public enum ReportJobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    ;
+
+    public boolean isActive() {
+        return this == QUEUED || this == RUNNING;
+    }
+}
@@ -0,0 +1,59 @@
+package fi.vm.sade.kayttooikeus.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Lähtevä sähköposti. Viesti tallennetaan samassa transaktiossa kuin sen aiheuttanut muutos ja ajastettu tehtävä
+ * lähettää odottavat viestit ryhmäsähköpostipalveluun. Epäonnistunut lähetys yritetään uudelleen
+ * {@link #nextAttempt}-ajanhetkellä, kunnes yrityksiä on enimmäismäärä.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "email_outbox")
+public class EmailOutbox {
+
+    @Id
+    @Column(name = "id", unique = true, nullable = false)
+    @GeneratedValue
+    private Long id;
+
+    @Column(name = "template_name", nullable = false)
+    private String templateName;
+
+    @Column(name = "language_code", nullable = false)
+    private String languageCode;
+
+    // ryhmäsähköpostipalvelun EmailData JSON-muodossa
+    @Column(name = "payload", nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private EmailOutboxStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "created", nullable = false)
+    private LocalDateTime created;
+
+    @Column(name = "next_attempt", nullable = false)
+    private LocalDateTime nextAttempt;
+
+    @Column(name = "sent")
+    private LocalDateTime sent;
+
+    @Column(name = "response")
+    private String response;
+
+    @Column(name = "error")
+    private String error;
+
+}
@@ -0,0 +1,5 @@
+package fi.vm.sade.kayttooikeus.model;
+
+public enum EmailOutboxStatus {
+    PENDING, SENT, FAILED
+}
@@ -20,9 +20,7 @@ import java.util.Set;
 @NamedNativeQuery(
         name = "AccessRightReport",
         resultSetMapping = "AccessRightReportMapping",
-        query = "WITH organisaatiohenkilot AS " +
-                "(SELECT DISTINCT id, henkilo_id, organisaatio_oid FROM organisaatiohenkilo oh WHERE oh.organisaatio_oid IN :oids) " +
-                "SELECT " +
+        query = "SELECT " +
                 "       mkt.id," +
                 "       h.sukunimi_cached || ' ' || h.etunimet_cached as henkilo," +
                 "       h.oidhenkilo," +
@@ -35,19 +33,15 @@ import java.util.Set;
                 "       mkt.aikaleima," +
                 "       h2.oidhenkilo as muokkaaja " +
                 "FROM " +
-                "       henkilo h," +
-                "       henkilo h2," +
-                "       organisaatiohenkilot oh," +
-                "       kayttooikeusryhma kor," +
-                "       myonnetty_kayttooikeusryhma_tapahtuma mkt, " +
-                "       text txt " +
+                "       organisaatio_closure oc " +
+                "       JOIN organisaatiohenkilo oh ON oh.organisaatio_oid = oc.descendant_oid " +
+                "       JOIN myonnetty_kayttooikeusryhma_tapahtuma mkt ON mkt.organisaatiohenkilo_id = oh.id " +
+                "       JOIN henkilo h ON h.id = oh.henkilo_id " +
+                "       JOIN henkilo h2 ON h2.id = mkt.kasittelija_henkilo_id " +
+                "       JOIN kayttooikeusryhma kor ON kor.id = mkt.kayttooikeusryhma_id " +
+                "       JOIN text txt ON txt.textgroup_id = kor.textgroup_id AND txt.lang = :lang " +
                 "WHERE " +
-                "       h.id = oh.henkilo_id " +
-                "       AND txt.lang = :lang" +
-                "       AND txt.textgroup_id = kor.textgroup_id " +
-                "       AND h2.id = mkt.kasittelija_henkilo_id " +
-                "       AND kor.id = mkt.kayttooikeusryhma_id " +
-                "       AND mkt.organisaatiohenkilo_id = oh.id"
+                "       oc.ancestor_oid = :oid"
 )
 @SqlResultSetMapping(
         name = "AccessRightReportMapping",
@@ -0,0 +1,39 @@
+package fi.vm.sade.kayttooikeus.model;
+
+import lombok.*;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Viimeisin onnistuneesti haettu organisaatiohierarkia pakattuna, jotta palvelu voi käynnistyä ilman
+ * organisaatiopalvelua. Taulussa on aina korkeintaan yksi rivi.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "organisaatio_cache_snapshot")
+public class OrganisaatioCacheSnapshot {
+
+    public static final long SNAPSHOT_ID = 1L;
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Column(name = "created", nullable = false)
+    private LocalDateTime created;
+
+    @Column(name = "organisaatio_count", nullable = false)
+    private long organisaatioCount;
+
+    @Column(name = "data", nullable = false, columnDefinition = "bytea")
+    private byte[] data;
+
+}
@@ -0,0 +1,51 @@
+package fi.vm.sade.kayttooikeus.model;
+
+import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
+import lombok.*;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Organisaatiohierarkian sulkeuma: rivi jokaista (yläorganisaatio, organisaatio) -paria kohden, organisaatio itse
+ * mukaan lukien (syvyys 0). Hakuehdot voivat rajata organisaation alipuuhun yhdellä yläorganisaatioehdolla sen
+ * sijaan, että aliorganisaatiot laajennettaisiin muistissa IN-listaksi. Päivitetään organisaatiovälimuistin
+ * päivityksen yhteydessä.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(OrganisaatioClosure.OrganisaatioClosureId.class)
+@Table(name = "organisaatio_closure")
+public class OrganisaatioClosure {
+
+    @Id
+    @Column(name = "ancestor_oid", nullable = false)
+    private String ancestorOid;
+
+    @Id
+    @Column(name = "descendant_oid", nullable = false)
+    private String descendantOid;
+
+    @Column(name = "depth", nullable = false)
+    private int depth;
+
+    // aliorganisaation (descendant) tila
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private OrganisaatioStatus status;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class OrganisaatioClosureId implements Serializable {
+        private String ancestorOid;
+        private String descendantOid;
+    }
+
+}
@@ -0,0 +1,59 @@
+package fi.vm.sade.kayttooikeus.model;
+
+import fi.vm.sade.kayttooikeus.dto.ReportJobStatus;
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Taustalla suoritettava raportti. Sama organisaatio ja kieli voi olla jonossa tai suorituksessa vain kerran,
+ * jolloin samanaikaiset pyynnöt ohjataan samaan ajoon. Valmis tulos on {@link ReportJobResult}-taulussa ja
+ * poistetaan ajon kanssa vanhenemisajan jälkeen.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "report_job")
+public class ReportJob {
+
+    @Id
+    @Column(name = "id", unique = true, nullable = false)
+    @GeneratedValue
+    private Long id;
+
+    @Column(name = "organisaatio_oid", nullable = false)
+    private String organisaatioOid;
+
+    @Column(name = "lang", nullable = false)
+    private String lang;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private ReportJobStatus status;
+
+    @Column(name = "requested_by")
+    private String requestedBy;
+
+    @Column(name = "created", nullable = false)
+    private LocalDateTime created;
+
+    @Column(name = "started")
+    private LocalDateTime started;
+
+    @Column(name = "finished")
+    private LocalDateTime finished;
+
+    @Column(name = "expires", nullable = false)
+    private LocalDateTime expires;
+
+    @Column(name = "row_count")
+    private Long rowCount;
+
+    @Column(name = "error")
+    private String error;
+
+}
@@ -0,0 +1,31 @@
+package fi.vm.sade.kayttooikeus.model;
+
+import lombok.*;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Valmiin raportin tulos. Erillään {@link ReportJob}:sta, jotta tilan kyselyt eivät lataa tulosta. Pakattu (gzip)
+ * sisältö on paloina {@link ReportJobResultChunk}-taulussa, jotta sitä ei tarvitse pitää kokonaan muistissa
+ * kirjoitettaessa eikä luettaessa.
+ */
+@Entity
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "report_job_result")
+public class ReportJobResult {
+
+    @Id
+    @Column(name = "report_job_id", nullable = false)
+    private Long reportJobId;
+
+    @Column(name = "content_type", nullable = false)
+    private String contentType;
+
+}
@@ -0,0 +1,43 @@
+package fi.vm.sade.kayttooikeus.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Pala valmiin raportin pakatusta (gzip) sisällöstä. Palat luetaan järjestysnumeron mukaan.
+ *
+ * @see ReportJobResult
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(ReportJobResultChunk.ReportJobResultChunkId.class)
+@Table(name = "report_job_result_chunk")
+public class ReportJobResultChunk {
+
+    @Id
+    @Column(name = "report_job_id", nullable = false)
+    private Long reportJobId;
+
+    @Id
+    @Column(name = "seq", nullable = false)
+    private Integer seq;
+
+    @Column(name = "data", nullable = false, columnDefinition = "bytea")
+    private byte[] data;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class ReportJobResultChunkId implements Serializable {
+        private Long reportJobId;
+        private Integer seq;
+    }
+
+}
@@ -19,4 +19,7 @@ public class ScheduleTimestamps extends IdentifiableAndVersionedEntity {
 
     private String identifier;
 
+    // kesken olevan sivutetun latauksen seuraavan sivun alku, null jos lataus ei ole kesken
+    private Long checkpoint;
+
 }
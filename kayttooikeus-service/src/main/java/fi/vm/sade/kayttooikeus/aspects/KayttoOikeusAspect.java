@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Map;
 
 @Aspect
 @Component
@@ -20,11 +21,11 @@ public class KayttoOikeusAspect {
         kayttoOikeusHelper = helper;
     }
 
-    @Around(value = "execution(public * fi.vm.sade.kayttooikeus.service.EmailService.sendExpirationReminder(..))" +
-            "&& args(henkiloOid, tapahtumas)", argNames = "proceedingJoinPoint, henkiloOid, tapahtumas")
-    private Object logSendKayttooikeusReminder(ProceedingJoinPoint proceedingJoinPoint, String henkiloOid, List<ExpiringKayttoOikeusDto> tapahtumas) throws Throwable {
+    @Around(value = "execution(public * fi.vm.sade.kayttooikeus.service.EmailService.sendExpirationReminders(*))" +
+            "&& args(tapahtumasByHenkilo)", argNames = "proceedingJoinPoint, tapahtumasByHenkilo")
+    private Object logSendKayttooikeusReminders(ProceedingJoinPoint proceedingJoinPoint, Map<String, List<ExpiringKayttoOikeusDto>> tapahtumasByHenkilo) throws Throwable {
         Object result = proceedingJoinPoint.proceed();
-        kayttoOikeusHelper.logSendKayttooikeusReminder(henkiloOid, tapahtumas, result);
+        kayttoOikeusHelper.logSendKayttooikeusReminders(tapahtumasByHenkilo, result);
         return result;
     }
 
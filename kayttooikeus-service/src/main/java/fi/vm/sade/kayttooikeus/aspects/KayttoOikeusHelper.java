@@ -7,6 +7,8 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Component
 @RequiredArgsConstructor
@@ -15,13 +17,16 @@ public class KayttoOikeusHelper {
     private final AuditLogger auditLogger;
 
     /* Käyttöoikeus */
-    void logSendKayttooikeusReminder(String henkiloOid, List<ExpiringKayttoOikeusDto> tapahtumas, Object result) {
-        Target target = new Target.Builder()
-                .setField("oid", henkiloOid)
-                .build();
-        Changes changes = new Changes.Builder()
-                .build();
-        auditLogger.log(KayttooikeusOperation.SEND_KAYTTOOIKEUS_EXPIRATION_REMINDER, target, changes);
+    void logSendKayttooikeusReminders(Map<String, List<ExpiringKayttoOikeusDto>> tapahtumasByHenkilo, Object result) {
+        // kirjataan vain henkilöt, joille muistutus lähetettiin
+        ((Set<?>) result).forEach(henkiloOid -> {
+            Target target = new Target.Builder()
+                    .setField("oid", (String) henkiloOid)
+                    .build();
+            Changes changes = new Changes.Builder()
+                    .build();
+            auditLogger.log(KayttooikeusOperation.SEND_KAYTTOOIKEUS_EXPIRATION_REMINDER, target, changes);
+        });
     }
 
     /* Myönnetty Kayttooikeus */
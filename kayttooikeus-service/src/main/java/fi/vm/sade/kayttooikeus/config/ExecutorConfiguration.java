@@ -0,0 +1,28 @@
+package fi.vm.sade.kayttooikeus.config;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Taustatöiden pitkäikäiset säiealtaat, jotta niitä ei luoda jokaisella ajolla uudelleen.
+ */
+@Configuration
+public class ExecutorConfiguration {
+
+    public static final String EMAIL_OUTBOX_EXECUTOR = "emailOutboxExecutor";
+
+    /**
+     * Sähköpostijonon lähetykset ryhmäsähköpostipalveluun: enintään kayttooikeus.email-outbox.concurrency
+     * samanaikaista kutsua. Jonossa on korkeintaan yhden sivun erät.
+     */
+    @Bean(name = EMAIL_OUTBOX_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService emailOutboxExecutor(KayttooikeusProperties kayttooikeusProperties) {
+        return Executors.newFixedThreadPool(kayttooikeusProperties.getEmailOutbox().getConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("email-outbox-%d").setDaemon(true).build());
+    }
+}
@@ -0,0 +1,42 @@
+package fi.vm.sade.kayttooikeus.config.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Raporttien oma tietokantayhteyspooli. Raporttiajo ja suoratoistettu lataus varaavat yhteyden koko lukemisen
+ * ajaksi (kursorilla luku ja tuloksen kirjoitus), joten ne eivät saa käyttää pyyntöjen pientä yhteispoolia. Yhteydet avataan samoilla
+ * spring.datasource-asetuksilla vasta tarvittaessa, eikä poolissa pidetä joutilaita yhteyksiä.
+ *
+ * Ei ole {@link DataSource}-bean, jotta Spring Bootin oletus-DataSource ja sen transaktioiden hallinta säilyvät.
+ *
+ * @see fi.vm.sade.kayttooikeus.config.scheduling.SchedulingClusterConfiguration#reportScheduler
+ */
+@Component
+public class ReportConnectionPool implements DisposableBean {
+
+    // yksi raporttiajolle, yksi raporttiajastimen kyselyille ja sykkeille ja kaksi suoratoistetuille latauksille
+    static final int MAXIMUM_POOL_SIZE = 4;
+
+    private final HikariDataSource dataSource;
+
+    public ReportConnectionPool(DataSourceProperties dataSourceProperties) {
+        this.dataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.dataSource.setPoolName("report");
+        this.dataSource.setMaximumPoolSize(MAXIMUM_POOL_SIZE);
+        this.dataSource.setMinimumIdle(0);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public void destroy() {
+        dataSource.close();
+    }
+}
@@ -11,6 +11,69 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "kayttooikeus")
 public class KayttooikeusProperties {
     private Scheduling scheduling = new Scheduling();
+    private ExternalPermissionCache externalPermissionCache = new ExternalPermissionCache();
+    private SamePersonCache samePersonCache = new SamePersonCache();
+    private PermissionCheck permissionCheck = new PermissionCheck();
+    private RooliCache rooliCache = new RooliCache();
+    private ReportJob reportJob = new ReportJob();
+    private TextGroupCache textGroupCache = new TextGroupCache();
+    private KayttoOikeusRyhmaCatalogue kayttoOikeusRyhmaCatalogue = new KayttoOikeusRyhmaCatalogue();
+    private EmailOutbox emailOutbox = new EmailOutbox();
+
+    @Getter @Setter
+    public static class ExternalPermissionCache {
+        private Long maximumSize = 10000L;
+        private Long allowedTtl = 60000L;
+        private Long deniedTtl = 10000L;
+    }
+
+    @Getter @Setter
+    public static class SamePersonCache {
+        private Long maximumSize = 10000L;
+        private Long ttl = 300000L;
+        private Long batchWindow = 5L;
+        private Integer maxBatchSize = 100;
+        private Integer batchThreads = 4;
+        private Long batchTimeout = 10000L;
+    }
+
+    @Getter @Setter
+    public static class PermissionCheck {
+        private Long samePersonTimeout = 10000L;
+    }
+
+    @Getter @Setter
+    public static class RooliCache {
+        private Long maximumSize = 10000L;
+        private Long ttl = 60000L;
+    }
+
+    @Getter @Setter
+    public static class TextGroupCache {
+        private Long maximumSize = 10000L;
+        private Long ttl = 600000L;
+    }
+
+    @Getter @Setter
+    public static class KayttoOikeusRyhmaCatalogue {
+        private Long ttl = 600000L;
+    }
+
+    @Getter @Setter
+    public static class ReportJob {
+        private Long ttl = 86400000L;
+    }
+
+    @Getter @Setter
+    public static class EmailOutbox {
+        private Integer pageSize = 500;
+        private Integer batchSize = 100;
+        private Integer concurrency = 2;
+        private Integer maxAttempts = 10;
+        private Long initialBackoff = 60000L;
+        private Long maxBackoff = 3600000L;
+        private Long retention = 604800000L;
+    }
 
     @Getter @Setter
     public static class Scheduling {
@@ -24,6 +87,7 @@ public class KayttooikeusProperties {
         @Getter @Setter
         public static class Configuration {
             private Long organisaatiocache; // Default in ScheduledTasks.java
+            private Long organisaatiocacheFullRefresh = 21600000L;
             private Integer vanhentuneetkayttooikeudetHour = 3;
             private Integer lakkautetutOrganisaatiotHour = 5;
             private Integer kayttooikeusmuistutusHour = 4;
@@ -35,11 +99,14 @@ public class KayttooikeusProperties {
             private Integer discardExpiredApplicationsMinute = 45;
             private Integer expirationThreshold = 2;
             private Long henkiloNimiCache = 100000L;
+            private Integer henkiloNimiCacheParallelism = 4;
             private Integer identificationCleanupHour = 1;
             private Integer identificationCleanupMinute = 15;
             private Integer disableInactiveServiceUsersHour = 7;
             private Integer disableInactiveServiceUsersMinute = 15;
             private String disableInactiveServiceUsersThreshold = "P1Y";
+            private Long reportJobCleanup = 3600000L;
+            private Long emailOutbox = 10000L;
         }
 
     }
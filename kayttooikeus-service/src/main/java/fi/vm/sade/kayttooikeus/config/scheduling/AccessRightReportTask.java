@@ -0,0 +1,29 @@
+package fi.vm.sade.kayttooikeus.config.scheduling;
+
+import com.github.kagkarlsson.scheduler.task.ExecutionContext;
+import com.github.kagkarlsson.scheduler.task.OneTimeTask;
+import com.github.kagkarlsson.scheduler.task.TaskInstance;
+import fi.vm.sade.kayttooikeus.service.report.accessrights.AccessRightReportJobService;
+import org.springframework.stereotype.Component;
+
+/**
+ * Suorittaa yhden jonoon lisätyn käyttöoikeusraportin. Instanssin tunniste on ajon tunniste.
+ *
+ * @see SchedulingClusterConfiguration ajastuksen aktivointi
+ * @see AccessRightReportJobService#submit(String)
+ */
+@Component
+public class AccessRightReportTask extends OneTimeTask<Void> {
+
+    private final AccessRightReportJobService accessRightReportJobService;
+
+    public AccessRightReportTask(AccessRightReportJobService accessRightReportJobService) {
+        super("access right report task");
+        this.accessRightReportJobService = accessRightReportJobService;
+    }
+
+    @Override
+    public void execute(TaskInstance<Void> taskInstance, ExecutionContext executionContext) {
+        this.accessRightReportJobService.execute(Long.parseLong(taskInstance.getId()));
+    }
+}
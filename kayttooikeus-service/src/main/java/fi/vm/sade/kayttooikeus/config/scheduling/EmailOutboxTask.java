@@ -0,0 +1,46 @@
+package fi.vm.sade.kayttooikeus.config.scheduling;
+
+import com.github.kagkarlsson.scheduler.task.ExecutionContext;
+import com.github.kagkarlsson.scheduler.task.FixedDelay;
+import com.github.kagkarlsson.scheduler.task.RecurringTask;
+import com.github.kagkarlsson.scheduler.task.TaskInstance;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
+import fi.vm.sade.kayttooikeus.service.EmailOutboxService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Lähettää sähköpostijonon viestit ryhmäsähköpostipalveluun ja poistaa säilytysajan ylittäneet lähetetyt viestit.
+ *
+ * @see SchedulingClusterConfiguration ajastuksen aktivointi
+ */
+@Slf4j
+@Component
+public class EmailOutboxTask extends RecurringTask {
+
+    private final EmailOutboxService emailOutboxService;
+
+    public EmailOutboxTask(KayttooikeusProperties kayttooikeusProperties,
+                           EmailOutboxService emailOutboxService) {
+        super(EmailOutboxTask.class.getSimpleName(),
+                FixedDelay.of(Duration.ofMillis(kayttooikeusProperties.getScheduling().getConfiguration().getEmailOutbox())));
+        this.emailOutboxService = emailOutboxService;
+    }
+
+    @Override
+    public void execute(TaskInstance<Void> taskInstance, ExecutionContext executionContext) {
+        int processed = 0;
+        int count;
+        // keskeytetty ajo lopetetaan, perutut lähetykset jäävät seuraavaan ajoon
+        do {
+            count = emailOutboxService.dispatch();
+            processed += count;
+        } while (count > 0 && !Thread.currentThread().isInterrupted());
+        int deleted = emailOutboxService.deleteSent();
+        if (processed > 0 || deleted > 0) {
+            log.info("Processed {} outbox emails, removed {} sent", processed, deleted);
+        }
+    }
+}
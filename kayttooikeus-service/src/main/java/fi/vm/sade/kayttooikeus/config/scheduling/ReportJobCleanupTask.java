@@ -0,0 +1,37 @@
+package fi.vm.sade.kayttooikeus.config.scheduling;
+
+import com.github.kagkarlsson.scheduler.task.ExecutionContext;
+import com.github.kagkarlsson.scheduler.task.FixedDelay;
+import com.github.kagkarlsson.scheduler.task.RecurringTask;
+import com.github.kagkarlsson.scheduler.task.TaskInstance;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
+import fi.vm.sade.kayttooikeus.service.report.accessrights.AccessRightReportJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Poistaa vanhentuneet raporttiajot tuloksineen.
+ *
+ * @see SchedulingClusterConfiguration ajastuksen aktivointi
+ */
+@Slf4j
+@Component
+public class ReportJobCleanupTask extends RecurringTask {
+
+    private final AccessRightReportJobService accessRightReportJobService;
+
+    public ReportJobCleanupTask(KayttooikeusProperties kayttooikeusProperties,
+                                AccessRightReportJobService accessRightReportJobService) {
+        super(ReportJobCleanupTask.class.getSimpleName(),
+                FixedDelay.of(Duration.ofMillis(kayttooikeusProperties.getScheduling().getConfiguration().getReportJobCleanup())));
+        this.accessRightReportJobService = accessRightReportJobService;
+    }
+
+    @Override
+    public void execute(TaskInstance<Void> taskInstance, ExecutionContext executionContext) {
+        int deleted = this.accessRightReportJobService.deleteExpired();
+        log.info("Removed {} expired report jobs", deleted);
+    }
+}
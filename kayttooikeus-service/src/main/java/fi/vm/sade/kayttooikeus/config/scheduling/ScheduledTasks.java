@@ -19,8 +19,9 @@ import org.springframework.stereotype.Component;
 public class ScheduledTasks {
     private final OrganisaatioService organisaatioService;
 
-    @Scheduled(fixedDelayString = "${kayttooikeus.scheduling.configuration.organisaatiocache:600000}",
-            initialDelayString = "${kayttooikeus.scheduling.configuration.organisaatiocache:600000}")
+    // päivittää muuttuneet organisaatiot, koko hierarkia haetaan organisaatiocache-full-refresh välein
+    @Scheduled(fixedDelayString = "${kayttooikeus.scheduling.configuration.organisaatiocache:120000}",
+            initialDelayString = "${kayttooikeus.scheduling.configuration.organisaatiocache:120000}")
     public void updateOrganisaatioCache() {
         this.organisaatioService.updateOrganisaatioCache();
     }
@@ -0,0 +1,53 @@
+package fi.vm.sade.kayttooikeus.config.scheduling;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ohjaa db-schedulerin kyselyt scheduled_tasks-taulun sijaan annettuun tauluun. Käytössä olevassa
+ * db-schedulerin versiossa taulun nimeä ei voi asettaa, joten nimi vaihdetaan yhteyden valmistelemista
+ * kyselyistä.
+ */
+class SchedulerTableDataSource extends DelegatingDataSource {
+
+    private static final Pattern SCHEDULED_TASKS = Pattern.compile("\\bscheduled_tasks\\b");
+
+    private final String tableName;
+
+    SchedulerTableDataSource(DataSource targetDataSource, String tableName) {
+        super(targetDataSource);
+        this.tableName = tableName;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return withTable(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return withTable(super.getConnection(username, password));
+    }
+
+    private Connection withTable(Connection connection) {
+        String replacement = Matcher.quoteReplacement(tableName);
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("prepare") && args != null && args[0] instanceof String) {
+                        args[0] = SCHEDULED_TASKS.matcher((String) args[0]).replaceAll(replacement);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
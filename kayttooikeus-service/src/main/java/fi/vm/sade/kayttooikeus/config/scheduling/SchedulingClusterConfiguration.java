@@ -2,6 +2,8 @@ package fi.vm.sade.kayttooikeus.config.scheduling;
 
 
 import com.github.kagkarlsson.scheduler.Scheduler;
+import com.github.kagkarlsson.scheduler.task.Task;
+import fi.vm.sade.kayttooikeus.config.db.ReportConnectionPool;
 import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -15,11 +17,20 @@ import javax.sql.DataSource;
  * Ajastuksen aktivointi.
  *
  * *Task-luokat sisältävät ajastusten konfiguroinnit
+ *
+ * Raporttiajot suoritetaan omalla ajastimellaan ja yhteyspoolillaan, jotta pitkä raportti ei varaa yleisen
+ * ajastimen säikeitä eikä pyyntöjen yhteyksiä. Raporttiajastimella on oma taulunsa, joten ajastimet eivät lue
+ * toistensa tehtäviä.
  */
 @Configuration
 @ConditionalOnProperty(name = "kayttooikeus.scheduling.enabled", matchIfMissing = true)
 @RequiredArgsConstructor
 public class SchedulingClusterConfiguration {
+    public static final String REPORT_SCHEDULER = "reportScheduler";
+    // raportteja suoritetaan solmulla yksi kerrallaan
+    static final int REPORT_THREADS = 1;
+    static final String REPORT_TABLE = "scheduled_report_tasks";
+
     private final KayttooikeusProperties kayttooikeusProperties;
 
     @Bean(destroyMethod = "stop")
@@ -33,7 +44,9 @@ public class SchedulingClusterConfiguration {
                         DiscardExpiredInvitationsTask discardExpiredInvitationsTask,
                         DiscardExpiredApplicationsTask discardExpiredApplicationsTask,
                         IdentificationCleanupTask identificationCleanupTask,
-                        DisableInactiveServiceUsersTask disableInactiveServiceUsersTask) { // NOSONAR
+                        DisableInactiveServiceUsersTask disableInactiveServiceUsersTask,
+                        ReportJobCleanupTask reportJobCleanupTask,
+                        EmailOutboxTask emailOutboxTask) { // NOSONAR
         Scheduler scheduler = Scheduler.create(dataSource)
                 .startTasks(lahetaUusienAnomuksienIlmoituksetTask,
                         poistaVanhentuneetKayttooikeudetTask,
@@ -44,10 +57,28 @@ public class SchedulingClusterConfiguration {
                         discardExpiredInvitationsTask,
                         discardExpiredApplicationsTask,
                         identificationCleanupTask,
-                        disableInactiveServiceUsersTask)
+                        disableInactiveServiceUsersTask,
+                        reportJobCleanupTask,
+                        emailOutboxTask)
                 .threads(this.kayttooikeusProperties.getScheduling().getPool_size())
                 .build();
         scheduler.start();
         return scheduler;
     }
+
+    /**
+     * Raporttiajojen ajastin: yksi suoritussäie, oma yhteyspooli ja oma scheduled_report_tasks-taulu.
+     */
+    @Bean(name = REPORT_SCHEDULER, destroyMethod = "stop")
+    Scheduler reportScheduler(ReportConnectionPool reportConnectionPool,
+                              AccessRightReportTask accessRightReportTask) {
+        Scheduler scheduler = reportScheduler(reportConnectionPool.getDataSource(), accessRightReportTask).build();
+        scheduler.start();
+        return scheduler;
+    }
+
+    static Scheduler.Builder reportScheduler(DataSource dataSource, Task<?>... reportTasks) {
+        return Scheduler.create(new SchedulerTableDataSource(dataSource, REPORT_TABLE), reportTasks)
+                .threads(REPORT_THREADS);
+    }
 }
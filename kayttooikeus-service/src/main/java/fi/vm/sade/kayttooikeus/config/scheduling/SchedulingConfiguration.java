@@ -41,6 +41,8 @@ public class SchedulingConfiguration implements SchedulingConfigurer {
     }
 
     private void onStartup(TaskScheduler taskScheduler) {
+        // palvellaan edellisellä tallennetulla hierarkialla kunnes organisaatiopalvelusta on saatu uusi
+        this.organisaatioClient.loadSnapshot();
         this.organisaatioRetryTask = taskScheduler.scheduleWithFixedDelay(() -> {
             log.info("Aloitetaan organisaatiocachen päivitystä");
             this.organisaatioClient.refreshCache();
@@ -4,6 +4,7 @@ import com.github.kagkarlsson.scheduler.task.ExecutionContext;
 import com.github.kagkarlsson.scheduler.task.FixedDelay;
 import com.github.kagkarlsson.scheduler.task.RecurringTask;
 import com.github.kagkarlsson.scheduler.task.TaskInstance;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.model.ScheduleTimestamps;
 import fi.vm.sade.kayttooikeus.repositories.HenkiloDataRepository;
@@ -11,18 +12,35 @@ import fi.vm.sade.kayttooikeus.repositories.ScheduleTimestampsDataRepository;
 import fi.vm.sade.kayttooikeus.service.HenkiloCacheService;
 import fi.vm.sade.kayttooikeus.service.exception.DataInconsistencyException;
 import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
+import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloHakuPerustietoDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static fi.vm.sade.kayttooikeus.service.HenkiloCacheService.SCHEDULE_IDENTIFIER;
 
 /**
+ * Päivittää henkilöiden nimet ym. oppijanumerorekisteristä henkilo-taulun välimuistisarakkeisiin. Tyhjä välimuisti
+ * ladataan kokonaan sivu kerrallaan: sivuja haetaan rinnakkain, tallennetaan järjestyksessä ja jokaisen sivun
+ * jälkeen tallennetaan tarkistuspiste, josta keskeytynyt lataus jatkuu seuraavalla ajokerralla. Ladattuun
+ * välimuistiin päivitetään edellisen ajon jälkeen muuttuneet henkilöt.
  *
  * @see SchedulingClusterConfiguration ajastuksen aktivointi
  */
@@ -30,69 +48,153 @@ import java.util.List;
 @Component
 @EnableAspectJAutoProxy(proxyTargetClass = true)
 public class UpdateHenkiloNimiCacheTask extends RecurringTask {
+    private static final long PAGE_SIZE = 2000L;
+    // Escape condition in case of infinite loop (100M+ henkilos)
+    private static final long MAX_PAGES = 100000L;
+    private static final String POPULATE = "populate";
+    private static final String UPDATE = "update";
+
     private final HenkiloDataRepository henkiloDataRepository;
     private final HenkiloCacheService henkiloCacheService;
     private final ScheduleTimestampsDataRepository scheduleTimestampsDataRepository;
     private final OppijanumerorekisteriClient oppijanumerorekisteriClient;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int parallelism;
+    // ajanhetki, jota ennen muuttuneet henkilöt ovat välimuistissa (vain ajon suorittaneella solmulla)
+    private final AtomicReference<LocalDateTime> synchronizedUntil = new AtomicReference<>();
 
     @Autowired
     public UpdateHenkiloNimiCacheTask(KayttooikeusProperties kayttooikeusProperties,
                                       HenkiloDataRepository henkiloDataRepository,
                                       HenkiloCacheService henkiloCacheService,
                                       ScheduleTimestampsDataRepository scheduleTimestampsDataRepository,
-                                      OppijanumerorekisteriClient oppijanumerorekisteriClient) {
+                                      OppijanumerorekisteriClient oppijanumerorekisteriClient,
+                                      TransactionTemplate transactionTemplate,
+                                      MeterRegistry meterRegistry) {
         super("update henkilo nimi cache task",
                 FixedDelay.of(Duration.ofMillis(kayttooikeusProperties.getScheduling().getConfiguration().getHenkiloNimiCache())));
         this.henkiloDataRepository = henkiloDataRepository;
         this.henkiloCacheService = henkiloCacheService;
         this.scheduleTimestampsDataRepository = scheduleTimestampsDataRepository;
         this.oppijanumerorekisteriClient = oppijanumerorekisteriClient;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.parallelism = kayttooikeusProperties.getScheduling().getConfiguration().getHenkiloNimiCacheParallelism();
+        Gauge.builder("kayttooikeus.henkilo.cache.lag", this.synchronizedUntil, UpdateHenkiloNimiCacheTask::lagSeconds)
+                .description("Seconds since the last oppijanumerorekisteri change included in the henkilo cache")
+                .baseUnit("seconds")
+                .register(meterRegistry);
     }
 
     @Override
-    @Transactional
     public void execute(TaskInstance<Void> taskInstance, ExecutionContext executionContext) {
-        // Update existing cache
-        if (this.henkiloDataRepository.countByEtunimetCachedNotNull() > 0L) {
-            updateExistingHenkiloCache();
+        // ajo ei pidä transaktiota auki, vaan jokainen sivu tallennetaan omassa transaktiossaan
+        ScheduleTimestamps scheduleTimestamps = this.transactionTemplate.execute(status -> startOrResumePopulate());
+        if (scheduleTimestamps.getCheckpoint() != null) {
+            run(POPULATE, () -> populateNewHenkiloCache(scheduleTimestamps.getCheckpoint()));
+            this.synchronizedUntil.set(scheduleTimestamps.getModified());
         }
-        // Fetch whole henkilo nimi cache
+        // Update existing cache
         else {
-            populateNewHenkiloCache();
+            run(UPDATE, () -> updateExistingHenkiloCache(scheduleTimestamps.getModified()));
         }
         log.info("Henkilötietojen cachen päivitys päättyy");
     }
 
-    private void populateNewHenkiloCache() {
-        log.info("Henkilötietojen uuden cachen luominen alkaa");
-        Long count = 2000L;
-        for (long page = 0; !this.henkiloCacheService.saveAll(page*count, count, null); page++) {
-            // Escape condition in case of inifine loop (100M+ henkilos)
-            if (page > 100000) {
-                log.error("Infinite loop detected with page "+ page + " and count " + count + ". Henkilo cache might not be fully updated!");
-                break;
+    private void run(String stage, Stage task) {
+        Timer.Sample sample = Timer.start(this.meterRegistry);
+        long saved = task.run();
+        long nanos = sample.stop(this.meterRegistry.timer("kayttooikeus.henkilo.cache.sync", "stage", stage));
+        this.meterRegistry.counter("kayttooikeus.henkilo.cache.saved", "stage", stage).increment(saved);
+        double seconds = Math.max(nanos / 1e9, 0.001);
+        log.info("Henkilötietojen cachen vaihe {}: {} henkilöä {} sekunnissa ({} henkilöä/s)",
+                stage, saved, Math.round(seconds), Math.round(saved / seconds));
+    }
+
+    // palauttaa ajastuksen tiedot, tarkistuspiste on asetettu, jos täysi lataus on aloitettava tai kesken
+    private ScheduleTimestamps startOrResumePopulate() {
+        ScheduleTimestamps scheduleTimestamps = this.scheduleTimestampsDataRepository.findFirstByIdentifier(SCHEDULE_IDENTIFIER)
+                .orElseThrow(DataInconsistencyException::new);
+        if (scheduleTimestamps.getCheckpoint() != null) {
+            log.info("Henkilötietojen uuden cachen luominen jatkuu kohdasta {}", scheduleTimestamps.getCheckpoint());
+        } else if (this.henkiloDataRepository.countByEtunimetCachedNotNull() == 0L) {
+            log.info("Henkilötietojen uuden cachen luominen alkaa");
+            // latauksen aikana muuttuneet henkilöt päivitetään latauksen jälkeen
+            scheduleTimestamps.setModified(LocalDateTime.now());
+            scheduleTimestamps.setCheckpoint(0L);
+        }
+        return scheduleTimestamps;
+    }
+
+    private long populateNewHenkiloCache(long offset) {
+        long saved = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(this.parallelism,
+                new ThreadFactoryBuilder().setNameFormat("henkilo-cache-%d").setDaemon(true).build());
+        try {
+            // haetaan rinnakkain enintään parallelism sivua tallennettavan sivun edellä
+            Deque<Future<List<HenkiloHakuPerustietoDto>>> pages = new ArrayDeque<>();
+            long nextOffset = offset;
+            boolean last = false;
+            while (!last) {
+                while (pages.size() < this.parallelism) {
+                    long pageOffset = nextOffset;
+                    pages.add(executor.submit(() -> this.oppijanumerorekisteriClient.getAllByOids(pageOffset, PAGE_SIZE, null)));
+                    nextOffset += PAGE_SIZE;
+                }
+                List<HenkiloHakuPerustietoDto> page = getPage(pages.poll());
+                offset += PAGE_SIZE;
+                last = page.size() < PAGE_SIZE;
+                if (!last && offset / PAGE_SIZE > MAX_PAGES) {
+                    log.error("Infinite loop detected with offset " + offset + " and count " + PAGE_SIZE + ". Henkilo cache might not be fully updated!");
+                    last = true;
+                }
+                saved += this.henkiloCacheService.savePage(page, last ? null : offset);
             }
+        } finally {
+            executor.shutdownNow();
         }
-        this.scheduleTimestampsDataRepository.findFirstByIdentifier("henkilocache")
-                .orElseThrow(DataInconsistencyException::new)
-                .setModified(LocalDateTime.now());
+        return saved;
     }
 
-    private void updateExistingHenkiloCache() {
+    private static List<HenkiloHakuPerustietoDto> getPage(Future<List<HenkiloHakuPerustietoDto>> page) {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching henkilo cache page", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to fetch henkilo cache page", e.getCause());
+        }
+    }
+
+    private long updateExistingHenkiloCache(LocalDateTime modifiedSince) {
         log.info("Henkilötietojen olemassa olevan cachen päivitys alkaa");
-        ScheduleTimestamps scheduleTimestamps = this.scheduleTimestampsDataRepository.findFirstByIdentifier("henkilocache")
-                .orElseThrow(DataInconsistencyException::new);
         LocalDateTime now = LocalDateTime.now();
-        List<String> modifiedOidHenkiloList = new ArrayList<>();
-        long amount = 2000L;
-        for (long offset = 0; offset == 0 || !modifiedOidHenkiloList.isEmpty() || !(modifiedOidHenkiloList.size() < amount); offset++) {
-            modifiedOidHenkiloList = this.oppijanumerorekisteriClient
-                    .getModifiedSince(scheduleTimestamps.getModified(),offset*amount, amount);
+        long saved = 0;
+        List<String> modifiedOidHenkiloList;
+        long offset = 0;
+        do {
+            modifiedOidHenkiloList = this.oppijanumerorekisteriClient.getModifiedSince(modifiedSince, offset, PAGE_SIZE);
             if (!modifiedOidHenkiloList.isEmpty()) {
-                // Offset 0 because modifiedOidHenkiloList.size <= amount
-                this.henkiloCacheService.saveAll(0, amount, modifiedOidHenkiloList);
+                // Offset 0 because modifiedOidHenkiloList.size <= PAGE_SIZE
+                saved += this.henkiloCacheService.save(
+                        this.oppijanumerorekisteriClient.getAllByOids(0, PAGE_SIZE, modifiedOidHenkiloList));
             }
-        }
-        scheduleTimestamps.setModified(now);
+            offset += PAGE_SIZE;
+        } while (modifiedOidHenkiloList.size() >= PAGE_SIZE);
+        this.henkiloCacheService.setModified(now);
+        this.synchronizedUntil.set(now);
+        return saved;
+    }
+
+    private static double lagSeconds(AtomicReference<LocalDateTime> synchronizedUntil) {
+        LocalDateTime until = synchronizedUntil.get();
+        return until != null ? Duration.between(until, LocalDateTime.now()).toMillis() / 1000.0 : Double.NaN;
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        long run();
     }
 }
@@ -1,12 +1,20 @@
 package fi.vm.sade.kayttooikeus.config.security;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.dto.OrganisaatioPalveluRooliDto;
 import fi.vm.sade.kayttooikeus.repositories.KayttajatiedotRepository;
 import fi.vm.sade.kayttooikeus.repositories.MyonnettyKayttoOikeusRyhmaTapahtumaRepository;
 import fi.vm.sade.kayttooikeus.service.KayttajarooliProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -14,10 +22,13 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toSet;
@@ -27,23 +38,66 @@ import static java.util.stream.Collectors.toSet;
  *
  */
 @Component
-@RequiredArgsConstructor
 public class UserDetailsServiceImpl implements UserDetailsService, KayttajarooliProvider {
 
+    // samat roolit toistuvat käyttäjillä, joten merkkijonoista pidetään vain yksi kopio
+    private static final Interner<String> ROOLIT = Interners.newWeakInterner();
+
     private final KayttajatiedotRepository kayttajatiedotRepository;
     private final MyonnettyKayttoOikeusRyhmaTapahtumaRepository myonnettyKayttoOikeusRyhmaTapahtumaRepository;
+    private final LoadingCache<String, Set<String>> rooliCache;
+
+    public UserDetailsServiceImpl(KayttajatiedotRepository kayttajatiedotRepository,
+                                  MyonnettyKayttoOikeusRyhmaTapahtumaRepository myonnettyKayttoOikeusRyhmaTapahtumaRepository,
+                                  KayttooikeusProperties kayttooikeusProperties,
+                                  MeterRegistry meterRegistry) {
+        this.kayttajatiedotRepository = kayttajatiedotRepository;
+        this.myonnettyKayttoOikeusRyhmaTapahtumaRepository = myonnettyKayttoOikeusRyhmaTapahtumaRepository;
+        KayttooikeusProperties.RooliCache cacheProperties = kayttooikeusProperties.getRooliCache();
+        this.rooliCache = CacheBuilder.newBuilder()
+                .maximumSize(cacheProperties.getMaximumSize())
+                .expireAfterWrite(cacheProperties.getTtl(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build(CacheLoader.from(kayttajaOid -> ImmutableSet.copyOf(streamRooliByKayttajaOid(kayttajaOid)
+                        .map(ROOLIT::intern).iterator())));
+        GuavaCacheMetrics.monitor(meterRegistry, this.rooliCache, "rooliCache");
+    }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         String oid = kayttajatiedotRepository.findOidByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException(String.format("Käyttäjää ei löytynyt käyttäjätunnuksella %s", username)));
-        Set<GrantedAuthority> roolit = streamRooliByKayttajaOid(oid).map(SimpleGrantedAuthority::new).collect(toSet());
+        Set<GrantedAuthority> roolit = getByKayttajaOid(oid).stream().map(SimpleGrantedAuthority::new).collect(toSet());
         return new UserDetailsImpl(oid, roolit);
     }
 
     @Override
     public Set<String> getByKayttajaOid(String kayttajaOid) {
-        return streamRooliByKayttajaOid(kayttajaOid).collect(toSet());
+        return rooliCache.getUnchecked(kayttajaOid);
+    }
+
+    @Override
+    public void invalidateByKayttajaOid(String kayttajaOid) {
+        rooliCache.invalidate(kayttajaOid);
+        // transaktion aikana ladattu välimuisti voi sisältää vielä vanhat roolit
+        afterCommit(() -> rooliCache.invalidate(kayttajaOid));
+    }
+
+    @Override
+    public void invalidateAll() {
+        rooliCache.invalidateAll();
+        afterCommit(rooliCache::invalidateAll);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
     }
 
     Stream<String> streamRooliByKayttajaOid(String kayttajaOid) {
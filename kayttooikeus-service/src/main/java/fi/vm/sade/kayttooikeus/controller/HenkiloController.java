@@ -4,6 +4,7 @@ import fi.vm.sade.kayttooikeus.dto.*;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.ExternalPermissionService;
 import fi.vm.sade.kayttooikeus.enumeration.OrderByHenkilohaku;
 import fi.vm.sade.kayttooikeus.repositories.criteria.OrganisaatioHenkiloCriteria;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuPageDto;
 import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuResultDto;
 import fi.vm.sade.kayttooikeus.service.HenkiloService;
 import fi.vm.sade.kayttooikeus.service.IdentificationService;
@@ -186,12 +187,26 @@ public class HenkiloController {
         return this.henkiloService.henkilohaku(henkilohakuCriteriaDto, offset, orderBy);
     }
 
+    @PostMapping(value = "/henkilohakupage", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    @ApiOperation(value = "UI:ta varten tehty sivutettu hakurajapinta. EI tarkoitettu palveluiden käyttöön. Muutosaltis.",
+            notes = "Kuten henkilohaku, mutta sivut haetaan offsetin sijaan edellisen sivun palauttamalla kohdalla " +
+                    "(nextCursor), joten syvienkin sivujen haku on yhtä nopea. Järjestys nimen mukaan, orderBy " +
+                    "huomioidaan vain ensimmäisellä sivulla.")
+    public HenkilohakuPageDto henkilohakuPage(@Validated @RequestBody HenkilohakuCriteriaDto henkilohakuCriteriaDto,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) OrderByHenkilohaku orderBy) {
+        return this.henkiloService.henkilohakuPage(henkilohakuCriteriaDto, cursor, orderBy);
+    }
+
     @PostMapping(value = "/henkilohakucount", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @PreAuthorize("isAuthenticated()")
     @ApiOperation(value = "UI:ta varten tehty mahdollisesti HIDAS hakurajapinta palauttaa henkilohaun tulosten lukumäärän ilman sivutusrajoitusta",
-            notes = "Palauttaa annetuilla rajoitteilla löytyvän henkilöjoukon koon")
-    public Long henkilohakuCount(@Validated @RequestBody HenkilohakuCriteriaDto henkilohakuCriteriaDto ) {
-        return this.henkiloService.henkilohakuCount(henkilohakuCriteriaDto);
+            notes = "Palauttaa annetuilla rajoitteilla löytyvän henkilöjoukon koon. Jos max on annettu, henkilöitä " +
+                    "lasketaan enintään max kappaletta, jolloin haku on nopea suurillakin tulosjoukoilla.")
+    public Long henkilohakuCount(@Validated @RequestBody HenkilohakuCriteriaDto henkilohakuCriteriaDto,
+                                 @RequestParam(required = false) Long max) {
+        return this.henkiloService.henkilohakuCount(henkilohakuCriteriaDto, max);
     }
 
     @PreAuthorize("isAuthenticated()")
@@ -1,17 +1,28 @@
 package fi.vm.sade.kayttooikeus.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.vm.sade.kayttooikeus.dto.ReportJobDto;
 import fi.vm.sade.kayttooikeus.report.AccessRightReportRow;
 import fi.vm.sade.kayttooikeus.service.report.accessrights.AccessRightReport;
+import fi.vm.sade.kayttooikeus.service.report.accessrights.AccessRightReportJobService;
+import fi.vm.sade.kayttooikeus.service.report.accessrights.AccessRightReportWriter;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 @Api(tags = "Report generation endpoints")
 @RestController
@@ -23,6 +34,8 @@ public class ReportController {
     protected static final String ACCESS_RIGHTS = "/accessrights";
 
     private final AccessRightReport accessRightReport;
+    private final AccessRightReportJobService accessRightReportJobService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping(ACCESS_RIGHTS + "/{oid}")
     @PreAuthorize("@permissionCheckerServiceImpl.checkRoleForOrganisation({#oid}, {'KAYTTOOIKEUS': {'ACCESS_RIGHTS_REPORT'}})")
@@ -30,4 +43,67 @@ public class ReportController {
     public List<AccessRightReportRow> getAccessRightsReport(@PathVariable(value = "oid") final String oid) {
         return accessRightReport.getForOrganisation(oid);
     }
+
+    // kirjoitetaan pyyntösäikeessä eikä StreamingResponseBodyllä, jotta kirjautuneen käyttäjän tiedot (raportin
+    // kieli) ovat käytettävissä; rivit luetaan raporttipoolin yhteydellä, joten lataus ei varaa pyyntöjen yhteyttä
+    @GetMapping(ACCESS_RIGHTS + "/{oid}/csv")
+    @PreAuthorize("@permissionCheckerServiceImpl.checkRoleForOrganisation({#oid}, {'KAYTTOOIKEUS': {'ACCESS_RIGHTS_REPORT'}})")
+    @ApiOperation("Report of access rights for all users under given organisation as CSV, streamed row by row")
+    public void getAccessRightsReportCsv(@PathVariable(value = "oid") final String oid,
+                                         final HttpServletResponse response) throws IOException {
+        response.setContentType(AccessRightReportWriter.CSV_CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"accessrights.csv\"");
+        writeAccessRightsReport(oid, AccessRightReportWriter.csv(response.getWriter()));
+    }
+
+    @GetMapping(ACCESS_RIGHTS + "/{oid}/ndjson")
+    @PreAuthorize("@permissionCheckerServiceImpl.checkRoleForOrganisation({#oid}, {'KAYTTOOIKEUS': {'ACCESS_RIGHTS_REPORT'}})")
+    @ApiOperation("Report of access rights for all users under given organisation as newline delimited JSON, streamed row by row")
+    public void getAccessRightsReportNdjson(@PathVariable(value = "oid") final String oid,
+                                            final HttpServletResponse response) throws IOException {
+        response.setContentType(AccessRightReportWriter.NDJSON_CONTENT_TYPE);
+        writeAccessRightsReport(oid, AccessRightReportWriter.ndjson(response.getWriter(), objectMapper));
+    }
+
+    @PostMapping(ACCESS_RIGHTS + "/{oid}/jobs")
+    @PreAuthorize("@permissionCheckerServiceImpl.checkRoleForOrganisation({#oid}, {'KAYTTOOIKEUS': {'ACCESS_RIGHTS_REPORT'}})")
+    @ApiOperation(value = "Queue report of access rights for all users under given organisation",
+            notes = "Returns the queued job. Identical requests while the job is queued or running return the same job.")
+    public ReportJobDto submitAccessRightsReportJob(@PathVariable(value = "oid") final String oid) {
+        return accessRightReportJobService.submit(oid);
+    }
+
+    @GetMapping(ACCESS_RIGHTS + "/{oid}/jobs/{id}")
+    @PreAuthorize("@permissionCheckerServiceImpl.checkRoleForOrganisation({#oid}, {'KAYTTOOIKEUS': {'ACCESS_RIGHTS_REPORT'}})")
+    @ApiOperation("Status of a queued access rights report")
+    public ReportJobDto getAccessRightsReportJob(@PathVariable(value = "oid") final String oid,
+                                                 @PathVariable(value = "id") final long id) {
+        return accessRightReportJobService.get(oid, id);
+    }
+
+    @GetMapping(ACCESS_RIGHTS + "/{oid}/jobs/{id}/result")
+    @PreAuthorize("@permissionCheckerServiceImpl.checkRoleForOrganisation({#oid}, {'KAYTTOOIKEUS': {'ACCESS_RIGHTS_REPORT'}})")
+    @ApiOperation("Result of a finished access rights report as newline delimited JSON")
+    public void getAccessRightsReportJobResult(@PathVariable(value = "oid") final String oid,
+                                               @PathVariable(value = "id") final long id,
+                                               @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding,
+                                               final HttpServletResponse response) throws IOException {
+        try (InputStream result = accessRightReportJobService.getResult(oid, id)) {
+            response.setContentType(AccessRightReportWriter.NDJSON_CONTENT_TYPE);
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                // tulos on tallennettu pakattuna
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                result.transferTo(response.getOutputStream());
+            } else {
+                try (InputStream in = new GZIPInputStream(result)) {
+                    in.transferTo(response.getOutputStream());
+                }
+            }
+        }
+    }
+
+    private void writeAccessRightsReport(final String oid, final AccessRightReportWriter writer) throws IOException {
+        accessRightReport.forEachForOrganisation(oid, writer);
+        writer.finish();
+    }
 }
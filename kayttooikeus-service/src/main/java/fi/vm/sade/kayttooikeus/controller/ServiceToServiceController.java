@@ -13,13 +13,18 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.constraints.Size;
 import java.util.List;
 
 @RestController
 @RequestMapping(value = "/s2s", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
 @Api(tags = "Service to Service")
+@Validated
 public class ServiceToServiceController {
 
+    // tarkistettavien ja kutsujien henkilöt haetaan yhdellä IN-kyselyllä
+    static final int MAX_PERMISSION_CHECKS = 1000;
+
     private PermissionCheckerService permissionCheckerService;
     private OrganisaatioHenkiloService organisaatioHenkiloService;
 
@@ -37,6 +42,15 @@ public class ServiceToServiceController {
         return permissionCheckerService.isAllowedToAccessPerson(permissionCheckDto);
     }
 
+    @ApiOperation(value = "Palauttaa tiedon, onko käyttäjällä oikeus toiseen käyttäjään usealle tarkistukselle",
+            notes = "Tulokset palautetaan samassa järjestyksessä kuin tarkistukset. Enintään "
+                    + MAX_PERMISSION_CHECKS + " tarkistusta kutsua kohden.")
+    @PreAuthorize("hasAnyRole('APP_KAYTTOOIKEUS_REKISTERINPITAJA')")
+    @PostMapping(value = "/canUserAccessUsers", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public List<Boolean> checkUserPermissionToUsers(@RequestBody @Size(max = MAX_PERMISSION_CHECKS) List<PermissionCheckDto> permissionCheckDtos) {
+        return permissionCheckerService.isAllowedToAccessPersons(permissionCheckDtos);
+    }
+
     @PreAuthorize("hasAnyRole('ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA')")
     @ApiOperation(value = "Lisää henkilölle organisaatiot.",
             notes = "Lisää uudet organisaatiot henkilölle. Ei päivitä tai poista vanhoja organisaatiotietoja. Palauttaa henkilön kaikki nykyiset organisaatiot.")
@@ -0,0 +1,24 @@
+package fi.vm.sade.kayttooikeus.repositories;
+
+import fi.vm.sade.kayttooikeus.model.EmailOutbox;
+import fi.vm.sade.kayttooikeus.model.EmailOutboxStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface EmailOutboxRepository extends CrudRepository<EmailOutbox, Long> {
+
+    List<EmailOutbox> findByStatusAndNextAttemptLessThanEqualOrderById(EmailOutboxStatus status, LocalDateTime now,
+                                                                       Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM EmailOutbox e WHERE e.status = :status AND e.sent < :before")
+    int deleteByStatusAndSentBefore(@Param("status") EmailOutboxStatus status, @Param("before") LocalDateTime before);
+}
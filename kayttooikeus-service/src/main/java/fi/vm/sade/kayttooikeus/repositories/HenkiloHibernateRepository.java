@@ -2,6 +2,7 @@ package fi.vm.sade.kayttooikeus.repositories;
 
 import com.querydsl.core.types.OrderSpecifier;
 import fi.vm.sade.kayttooikeus.repositories.criteria.HenkiloCriteria;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuCursor;
 import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuResultDto;
 import fi.vm.sade.kayttooikeus.model.Henkilo;
 import fi.vm.sade.kayttooikeus.repositories.criteria.OrganisaatioHenkiloCriteria;
@@ -37,11 +38,36 @@ public interface HenkiloHibernateRepository extends BaseRepository<Henkilo> {
 
     List<HenkilohakuResultDto> findByCriteria(HenkiloCriteria criteria, Long offset, Long limit, List<OrderSpecifier> orderBy);
 
+    /**
+     * Palauttaa hakukriteerien mukaiset henkilöt nimijärjestyksessä annetun kohdan jälkeen.
+     *
+     * @param criteria hakukriteerit
+     * @param kayttajatunnusCriteria käyttäjätunnuksen hakukriteerit, joiden mukaiset henkilöt palautetaan samassa
+     *                               järjestyksessä; organisaatiorajaukset otetaan hakukriteereistä. Null, jos
+     *                               käyttäjätunnuksella ei haeta.
+     * @param cursor sivun kohta ja järjestys
+     * @param limit sivun koko
+     * @return henkilöt
+     */
+    List<HenkilohakuResultDto> findPageByCriteria(HenkiloCriteria criteria, HenkiloCriteria kayttajatunnusCriteria,
+                                                  HenkilohakuCursor cursor, Long limit);
+
     /**
      * Palauttaa criterian perusteella löytyvien henkilöiden lukumäärän. Ei haeta annetuilla henkilo oideilla
      */
     Long findByCriteriaCount(HenkiloCriteria criteria, List<String> henkiloOids);
 
+    /**
+     * Palauttaa criterian perusteella löytyvien henkilöiden lukumäärän, kuitenkin enintään ylärajan verran.
+     * Henkilöitä lasketaan vain ylärajaan asti, joten haun kesto ei kasva tulosjoukon mukana.
+     *
+     * @param criteria hakukriteerit
+     * @param henkiloOids henkilöt, joita ei lasketa
+     * @param max yläraja
+     * @return lukumäärä
+     */
+    Long findByCriteriaCount(HenkiloCriteria criteria, List<String> henkiloOids, long max);
+
     /**
      * Palauttaa henkilöt jotka kuuluvat johonkin annettuun käyttöoikeusryhmään
      * ja organisaatioon.
@@ -3,10 +3,8 @@ package fi.vm.sade.kayttooikeus.repositories;
 import fi.vm.sade.kayttooikeus.dto.MyonnettyKayttoOikeusDto;
 import fi.vm.sade.kayttooikeus.dto.OrganisaatioPalveluRooliDto;
 import fi.vm.sade.kayttooikeus.model.Henkilo;
-import fi.vm.sade.kayttooikeus.model.MyonnettyKayttoOikeusRyhmaTapahtuma;
 import fi.vm.sade.kayttooikeus.repositories.criteria.KayttooikeusCriteria;
 
-import java.time.LocalDate;
 import java.util.List;
 
 public interface MyonnettyKayttoOikeusRyhmaTapahtumaRepositoryCustom {
@@ -14,8 +12,6 @@ public interface MyonnettyKayttoOikeusRyhmaTapahtumaRepositoryCustom {
 
     List<MyonnettyKayttoOikeusDto> findByHenkiloInOrganisaatio(String henkiloOid, String organisaatioOid);
 
-    List<MyonnettyKayttoOikeusRyhmaTapahtuma> findByVoimassaLoppuPvmBefore(LocalDate voimassaLoppuPvm);
-
     /**
      * Hakee henkilön käyttöoikeudet annetun kriteerin perusteella. Henkilöllä on oltava aktiivinen organisaatio ja
      * käyttöoikeusryhmä. Jos henkilöllä on passivoituja ja ei-passivoituja organisaatioita tai käyttöoikeusryhmiä
@@ -0,0 +1,9 @@
+package fi.vm.sade.kayttooikeus.repositories;
+
+import fi.vm.sade.kayttooikeus.model.OrganisaatioCacheSnapshot;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OrganisaatioCacheSnapshotRepository extends CrudRepository<OrganisaatioCacheSnapshot, Long> {
+}
@@ -7,6 +7,7 @@ import fi.vm.sade.kayttooikeus.repositories.criteria.OrganisaatioHenkiloCriteria
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -26,6 +27,14 @@ public interface OrganisaatioHenkiloCustomRepository {
 
     Collection<String> findOrganisaatioOidBy(OrganisaatioHenkiloCriteria criteria);
 
+    /**
+     * Palauttaa henkilöiden passivoimattomat organisaatiot yhdellä kyselyllä.
+     *
+     * @param henkiloOids henkilöiden oid:t
+     * @return organisaatioiden oid:t henkilöittäin, henkilöt joilla ei ole organisaatioita puuttuvat
+     */
+    Map<String, List<String>> findOrganisaatioOidsByHenkiloOids(Collection<String> henkiloOids);
+
     /**
      * Palauttaa tiedon kuuluuko henkilö annettuun organisaatioon.
      *
@@ -0,0 +1,24 @@
+package fi.vm.sade.kayttooikeus.repositories;
+
+import fi.vm.sade.kayttooikeus.dto.ReportJobStatus;
+import fi.vm.sade.kayttooikeus.model.ReportJob;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+public interface ReportJobRepository extends CrudRepository<ReportJob, Long> {
+
+    Optional<ReportJob> findFirstByOrganisaatioOidAndLangAndStatusIn(String organisaatioOid, String lang,
+                                                                     Collection<ReportJobStatus> statuses);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ReportJob j WHERE j.expires < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
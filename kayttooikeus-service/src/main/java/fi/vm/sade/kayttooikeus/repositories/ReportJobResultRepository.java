@@ -0,0 +1,23 @@
+package fi.vm.sade.kayttooikeus.repositories;
+
+import fi.vm.sade.kayttooikeus.model.ReportJobResult;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface ReportJobResultRepository extends CrudRepository<ReportJobResult, Long> {
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ReportJobResultChunk c WHERE c.reportJobId IN (SELECT j.id FROM ReportJob j WHERE j.expires < :now)")
+    int deleteExpiredChunks(@Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ReportJobResult r WHERE r.reportJobId IN (SELECT j.id FROM ReportJob j WHERE j.expires < :now)")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -11,7 +11,6 @@ import fi.vm.sade.kayttooikeus.dto.KayttoOikeudenTila;
 import fi.vm.sade.kayttooikeus.enumeration.KayttooikeusRooli;
 import fi.vm.sade.kayttooikeus.model.*;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
-import fi.vm.sade.kayttooikeus.util.OrganisaatioMyontoPredicate;
 import lombok.*;
 import org.apache.commons.lang.BooleanUtils;
 import org.jetbrains.annotations.Nullable;
@@ -24,7 +23,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static com.querydsl.core.types.dsl.Expressions.anyOf;
 import static java.util.Objects.requireNonNull;
@@ -56,10 +54,10 @@ public class AnomusCriteria {
         Predicate apply(QAnomus qAnomus, QHaettuKayttoOikeusRyhma qHaettuKayttoOikeusRyhma, QKayttoOikeusRyhma qKayttoOikeusRyhma);
     }
 
-    public Function<QAnomus, Predicate> createEmailSendCondition(OrganisaatioClient organisaatioClient) {
+    public Function<QAnomus, Predicate> createEmailSendCondition() {
         return (QAnomus qAnomus) -> {
             BooleanBuilder builder = new BooleanBuilder();
-            return this.condition(qAnomus, builder, this.getInChildOrganisationPredicate(organisaatioClient, qAnomus));
+            return this.condition(qAnomus, builder, this.getInChildOrganisationPredicate(qAnomus));
         };
     }
 
@@ -110,13 +108,11 @@ public class AnomusCriteria {
     }
 
     @Nullable
-    private List<Predicate> getInChildOrganisationPredicate(OrganisaatioClient organisaatioClient, QAnomus qAnomus) {
+    private List<Predicate> getInChildOrganisationPredicate(QAnomus qAnomus) {
         List<Predicate> predicates = null;
         if(!CollectionUtils.isEmpty(this.organisaatioOids)) {
-            predicates = this.organisaatioOids.stream()
-                    .map(oid -> qAnomus.organisaatioOid.in(organisaatioClient.listWithChildOids(oid,
-                            new OrganisaatioMyontoPredicate(false))))
-                    .collect(Collectors.toList());
+            predicates = Arrays.asList(OrganisaatioClosureExpressions.inHierarchy(qAnomus.organisaatioOid,
+                    this.organisaatioOids, OrganisaatioClosureExpressions.MYONNETTAVAT_TILAT));
         }
         return predicates;
     }
@@ -131,9 +127,10 @@ public class AnomusCriteria {
     }
 
     private BooleanBuilder condition(QAnomus qAnomus, BooleanBuilder builder, List<Predicate> organisaatioConditions) {
-        if (q != null) {
+        if (StringUtils.hasText(q)) {
+            // tyhjä hakusana ('%%') ohittaisi trigrammi-indeksin
             BooleanBuilder predicate = new BooleanBuilder();
-            Arrays.stream(this.q.split(" ")).forEach(queryPart ->
+            Arrays.stream(this.q.trim().split("\\s+")).forEach(queryPart ->
                     predicate.or(Expressions.anyOf(
                             qAnomus.henkilo.etunimetCached.containsIgnoreCase(queryPart),
                             qAnomus.henkilo.sukunimiCached.containsIgnoreCase(queryPart)
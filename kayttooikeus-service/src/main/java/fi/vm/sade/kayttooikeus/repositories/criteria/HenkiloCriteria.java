@@ -38,6 +38,10 @@ public class HenkiloCriteria {
     // Organisaatiohenkilo
     private Boolean noOrganisation;
     private Set<String> organisaatioOids;
+    // organisaatio on jokin näistä tai niiden aliorganisaatio
+    private Set<String> ylaorganisaatioOids;
+    // lisäksi rajaus hakijan organisaatioihin ja niiden aliorganisaatioihin
+    private Set<String> kayttajaOrganisaatioOids;
     private Long kayttooikeusryhmaId;
 
     public Predicate condition(QHenkilo henkilo,
@@ -24,6 +24,8 @@ public class KutsuCriteria extends BaseCriteria {
     private String kutsujaOid;
     private String sahkoposti;
     private Set<String> organisaatioOids;
+    // kutsun organisaatio on jokin näistä tai niiden aktiivinen aliorganisaatio
+    private Set<String> ylaorganisaatioOids;
     private Set<Long> kayttooikeusryhmaIds;
     private String kutsujaOrganisaatioOid;
     private Set<Long> kutsujaKayttooikeusryhmaIds;
@@ -49,14 +51,19 @@ public class KutsuCriteria extends BaseCriteria {
         if (!CollectionUtils.isEmpty(this.organisaatioOids)) {
             builder.and(kutsuOrganisaatio.organisaatioOid.in(this.organisaatioOids));
         }
+        if (!CollectionUtils.isEmpty(this.ylaorganisaatioOids)) {
+            builder.and(OrganisaatioClosureExpressions.inHierarchy(kutsuOrganisaatio.organisaatioOid,
+                    this.ylaorganisaatioOids, OrganisaatioClosureExpressions.MYONNETTAVAT_TILAT));
+        }
         if (StringUtils.hasLength(this.kutsujaOrganisaatioOid)) {
             builder.and(organisaatioHenkilo.organisaatioOid.eq(this.kutsujaOrganisaatioOid));
         }
         if (!CollectionUtils.isEmpty(this.kutsujaKayttooikeusryhmaIds)) {
             builder.and(kutsuttuKayttooikeusryhma.id.in(this.kutsujaKayttooikeusryhmaIds));
         }
-        if (StringUtils.hasLength(this.searchTerm)) {
-            Arrays.stream(this.searchTerm.split(" "))
+        if (StringUtils.hasText(this.searchTerm)) {
+            // tyhjä hakusana ('%%') ohittaisi trigrammi-indeksin
+            Arrays.stream(this.searchTerm.trim().split("\\s+"))
                     .forEach(searchTerm -> builder.and(kutsu.etunimi.containsIgnoreCase(searchTerm)
                             .or(kutsu.sukunimi.containsIgnoreCase(searchTerm))));
         }
@@ -0,0 +1,59 @@
+package fi.vm.sade.kayttooikeus.repositories.criteria;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.JPQLQuery;
+import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
+import fi.vm.sade.kayttooikeus.model.QOrganisaatioClosure;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Organisaatiohierarkiaan perustuvat hakuehdot organisaatio_closure-taulua vasten. Aliorganisaatioita ei
+ * laajenneta sovelluksessa, vaan ehto on yksi yläorganisaatiorajaus, jonka kanta toteuttaa liitoksena.
+ */
+public final class OrganisaatioClosureExpressions {
+
+    // vastaa OrganisaatioMyontoPredicate(false):a
+    public static final Set<OrganisaatioStatus> MYONNETTAVAT_TILAT = EnumSet.of(
+            OrganisaatioStatus.AKTIIVINEN,
+            OrganisaatioStatus.SUUNNITELTU);
+
+    private OrganisaatioClosureExpressions() {
+    }
+
+    /**
+     * @param organisaatioOid rajattava organisaatio
+     * @param ylaorganisaatioOids yläorganisaatiot
+     * @return onko organisaatio jokin yläorganisaatioista tai jonkin niistä aliorganisaatio
+     */
+    public static BooleanExpression inHierarchy(StringPath organisaatioOid, Collection<String> ylaorganisaatioOids) {
+        return organisaatioOid.in(descendants(ylaorganisaatioOids, null));
+    }
+
+    /**
+     * @param organisaatioOid rajattava organisaatio
+     * @param ylaorganisaatioOids yläorganisaatiot
+     * @param tilat sallitut organisaation tilat
+     * @return onko organisaatio sallitussa tilassa ja jokin yläorganisaatioista tai jonkin niistä aliorganisaatio
+     */
+    public static BooleanExpression inHierarchy(StringPath organisaatioOid, Collection<String> ylaorganisaatioOids,
+                                                Collection<OrganisaatioStatus> tilat) {
+        return organisaatioOid.in(descendants(ylaorganisaatioOids, tilat));
+    }
+
+    private static JPQLQuery<String> descendants(Collection<String> ylaorganisaatioOids, Collection<OrganisaatioStatus> tilat) {
+        QOrganisaatioClosure closure = new QOrganisaatioClosure("organisaatioClosure");
+        JPQLQuery<String> query = JPAExpressions.select(closure.descendantOid)
+                .from(closure)
+                .where(closure.ancestorOid.in(ylaorganisaatioOids));
+        if (tilat != null) {
+            query.where(closure.status.in(tilat));
+        }
+        return query;
+    }
+
+}
@@ -0,0 +1,92 @@
+package fi.vm.sade.kayttooikeus.repositories.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.vm.sade.kayttooikeus.enumeration.OrderByHenkilohaku;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Henkilöhaun sivutuksen kohta. Sivut haetaan järjestyksessä (sukunimi, etunimet, oid) edellisen sivun viimeisen
+ * henkilön jälkeen, joten syvätkään sivut eivät käy läpi aiempia rivejä kuten offset. Käyttöliittymälle kohta
+ * välitetään läpinäkymättömänä merkkijonona.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class HenkilohakuCursor {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Set<OrderByHenkilohaku> JARJESTYKSET = EnumSet.of(
+            OrderByHenkilohaku.HENKILO_NIMI_ASC,
+            OrderByHenkilohaku.HENKILO_NIMI_DESC);
+
+    private final OrderByHenkilohaku orderBy;
+    // edellisen sivun viimeinen henkilö, ensimmäisellä sivulla null
+    private final String sukunimi;
+    private final String etunimet;
+    private final String oidHenkilo;
+
+    /**
+     * @param orderBy järjestys, oletuksena nimen mukaan nousevasti
+     * @return ensimmäisen sivun kohta
+     * @throws IllegalArgumentException jos järjestys ei ole nimen mukainen
+     */
+    public static HenkilohakuCursor first(OrderByHenkilohaku orderBy) {
+        OrderByHenkilohaku jarjestys = orderBy != null ? orderBy : OrderByHenkilohaku.HENKILO_NIMI_ASC;
+        if (!JARJESTYKSET.contains(jarjestys)) {
+            throw new IllegalArgumentException("Unsupported order for cursor pagination: " + jarjestys);
+        }
+        return new HenkilohakuCursor(jarjestys, null, null, null);
+    }
+
+    /**
+     * @param last sivun viimeinen henkilö
+     * @return seuraavan sivun kohta
+     */
+    public HenkilohakuCursor next(HenkilohakuResultDto last) {
+        return new HenkilohakuCursor(orderBy, last.getSukunimi(), last.getEtunimet(), last.getOidHenkilo());
+    }
+
+    public boolean isFirst() {
+        return oidHenkilo == null;
+    }
+
+    public boolean isDescending() {
+        return orderBy == OrderByHenkilohaku.HENKILO_NIMI_DESC;
+    }
+
+    public String encode() {
+        try {
+            byte[] json = OBJECT_MAPPER.writeValueAsBytes(new String[]{orderBy.name(), sukunimi, etunimet, oidHenkilo});
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param cursor {@link #encode()}:n palauttama merkkijono
+     * @return kohta
+     * @throws IllegalArgumentException jos merkkijono ei ole kelvollinen kohta
+     */
+    public static HenkilohakuCursor decode(String cursor) {
+        String[] values;
+        try {
+            values = OBJECT_MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), String[].class);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (values.length != 4 || values[0] == null || values[3] == null) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        HenkilohakuCursor first = first(OrderByHenkilohaku.valueOf(values[0]));
+        return new HenkilohakuCursor(first.getOrderBy(), values[1], values[2], values[3]);
+    }
+
+}
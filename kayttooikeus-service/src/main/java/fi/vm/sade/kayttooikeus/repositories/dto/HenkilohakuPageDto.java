@@ -0,0 +1,22 @@
+package fi.vm.sade.kayttooikeus.repositories.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class HenkilohakuPageDto {
+
+    private Collection<HenkilohakuResultDto> results = new ArrayList<>();
+
+    // seuraavan sivun kohta, null jos sivu on viimeinen
+    private String nextCursor;
+
+}
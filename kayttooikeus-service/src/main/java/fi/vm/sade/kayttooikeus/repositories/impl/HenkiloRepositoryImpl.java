@@ -1,12 +1,17 @@
 package fi.vm.sade.kayttooikeus.repositories.impl;
 
 import com.querydsl.core.Tuple;
+import com.querydsl.core.types.ExpressionUtils;
 import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.StringPath;
 import com.querydsl.jpa.impl.JPAQuery;
 import fi.vm.sade.kayttooikeus.model.*;
 import fi.vm.sade.kayttooikeus.repositories.HenkiloHibernateRepository;
 import fi.vm.sade.kayttooikeus.repositories.criteria.HenkiloCriteria;
 import fi.vm.sade.kayttooikeus.repositories.criteria.OrganisaatioHenkiloCriteria;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuCursor;
 import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuResultDto;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
@@ -17,6 +22,7 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.querydsl.core.types.ExpressionUtils.eq;
+import static fi.vm.sade.kayttooikeus.repositories.criteria.OrganisaatioClosureExpressions.inHierarchy;
 import static java.util.stream.Collectors.toSet;
 
 @Repository
@@ -152,6 +158,65 @@ public class HenkiloRepositoryImpl extends BaseRepositoryImpl<Henkilo> implement
         )).collect(Collectors.toList());
     }
 
+    @Override
+    public List<HenkilohakuResultDto> findPageByCriteria(HenkiloCriteria criteria, HenkiloCriteria kayttajatunnusCriteria,
+                                                         HenkilohakuCursor cursor, Long limit) {
+        QHenkilo qHenkilo = QHenkilo.henkilo;
+        QOrganisaatioHenkilo qOrganisaatioHenkilo = QOrganisaatioHenkilo.organisaatioHenkilo;
+        QMyonnettyKayttoOikeusRyhmaTapahtuma qMyonnettyKayttoOikeusRyhmaTapahtuma
+                = QMyonnettyKayttoOikeusRyhmaTapahtuma.myonnettyKayttoOikeusRyhmaTapahtuma;
+        QKayttajatiedot qKayttajatiedot = QKayttajatiedot.kayttajatiedot;
+
+        // oid järjestyksen viimeisenä tekee järjestyksestä yksikäsitteisen
+        List<OrderSpecifier> orderBy = cursor.isDescending()
+                ? List.of(qHenkilo.sukunimiCached.desc().nullsFirst(), qHenkilo.etunimetCached.desc().nullsFirst(), qHenkilo.oidHenkilo.desc())
+                : List.of(qHenkilo.sukunimiCached.asc().nullsLast(), qHenkilo.etunimetCached.asc().nullsLast(), qHenkilo.oidHenkilo.asc());
+        // käyttäjätunnuksella löytyvät ovat samalla sivulla samassa järjestyksessä, joten organisaatiorajaukset
+        // ovat molemmille yhteiset ja vain henkilön ehdoista riittää toinen
+        Predicate condition = criteria.condition(qHenkilo, qOrganisaatioHenkilo, qMyonnettyKayttoOikeusRyhmaTapahtuma);
+        if (kayttajatunnusCriteria != null) {
+            condition = ExpressionUtils.or(condition,
+                    kayttajatunnusCriteria.condition(qHenkilo, qOrganisaatioHenkilo, qMyonnettyKayttoOikeusRyhmaTapahtuma));
+        }
+        JPAQuery<Tuple> query = getFindByCriteriaQuery(criteria, condition, null, limit, orderBy, qHenkilo, qOrganisaatioHenkilo, qMyonnettyKayttoOikeusRyhmaTapahtuma, qKayttajatiedot, new ArrayList<>());
+        if (!cursor.isFirst()) {
+            BooleanExpression oidAfter = cursor.isDescending()
+                    ? qHenkilo.oidHenkilo.lt(cursor.getOidHenkilo())
+                    : qHenkilo.oidHenkilo.gt(cursor.getOidHenkilo());
+            BooleanExpression etunimetAfter = after(qHenkilo.etunimetCached, cursor.getEtunimet(), cursor.isDescending(), oidAfter);
+            query.where(after(qHenkilo.sukunimiCached, cursor.getSukunimi(), cursor.isDescending(), etunimetAfter));
+        }
+
+        return query.fetch().stream().map(tuple -> new HenkilohakuResultDto(
+                tuple.get(qHenkilo.oidHenkilo),
+                tuple.get(qHenkilo.etunimetCached),
+                tuple.get(qHenkilo.sukunimiCached),
+                tuple.get(qHenkilo.kayttajatiedot.username)
+        )).collect(Collectors.toList());
+    }
+
+    // nousevassa järjestyksessä tyhjät arvot ovat viimeisinä ja laskevassa ensimmäisinä
+    private static BooleanExpression after(StringPath path, String value, boolean descending, BooleanExpression tail) {
+        if (value == null) {
+            BooleanExpression equal = path.isNull().and(tail);
+            return descending ? path.isNotNull().or(equal) : equal;
+        }
+        BooleanExpression equal = path.eq(value).and(tail);
+        return descending ? path.lt(value).or(equal) : path.gt(value).or(path.isNull()).or(equal);
+    }
+
+    @Override
+    public Long findByCriteriaCount(HenkiloCriteria criteria, List<String> henkiloOids, long max) {
+        QHenkilo qHenkilo = QHenkilo.henkilo;
+        QOrganisaatioHenkilo qOrganisaatioHenkilo = QOrganisaatioHenkilo.organisaatioHenkilo;
+        QMyonnettyKayttoOikeusRyhmaTapahtuma qMyonnettyKayttoOikeusRyhmaTapahtuma
+                = QMyonnettyKayttoOikeusRyhmaTapahtuma.myonnettyKayttoOikeusRyhmaTapahtuma;
+        QKayttajatiedot qKayttajatiedot = QKayttajatiedot.kayttajatiedot;
+        return (long) getFindByCriteriaQuery(criteria, null, max, null, qHenkilo, qOrganisaatioHenkilo, qMyonnettyKayttoOikeusRyhmaTapahtuma, qKayttajatiedot, henkiloOids)
+                .select(qHenkilo.oidHenkilo)
+                .fetch().size();
+    }
+
     @Override
     public Long findByCriteriaCount(HenkiloCriteria criteria, List<String> henkiloOids) {
         QHenkilo qHenkilo = QHenkilo.henkilo;
@@ -164,6 +229,12 @@ public class HenkiloRepositoryImpl extends BaseRepositoryImpl<Henkilo> implement
 
     private JPAQuery<Tuple> getFindByCriteriaQuery(HenkiloCriteria criteria, Long offset, Long limit, List<OrderSpecifier> orderBy, QHenkilo qHenkilo, QOrganisaatioHenkilo qOrganisaatioHenkilo, QMyonnettyKayttoOikeusRyhmaTapahtuma qMyonnettyKayttoOikeusRyhmaTapahtuma,
                                                    QKayttajatiedot qKayttajatiedot, List<String> henkiloOids) {
+        return getFindByCriteriaQuery(criteria, criteria.condition(qHenkilo, qOrganisaatioHenkilo, qMyonnettyKayttoOikeusRyhmaTapahtuma),
+                offset, limit, orderBy, qHenkilo, qOrganisaatioHenkilo, qMyonnettyKayttoOikeusRyhmaTapahtuma, qKayttajatiedot, henkiloOids);
+    }
+
+    private JPAQuery<Tuple> getFindByCriteriaQuery(HenkiloCriteria criteria, Predicate condition, Long offset, Long limit, List<OrderSpecifier> orderBy, QHenkilo qHenkilo, QOrganisaatioHenkilo qOrganisaatioHenkilo, QMyonnettyKayttoOikeusRyhmaTapahtuma qMyonnettyKayttoOikeusRyhmaTapahtuma,
+                                                   QKayttajatiedot qKayttajatiedot, List<String> henkiloOids) {
         JPAQuery<Tuple> query = jpa().from(qHenkilo)
                 .leftJoin(qHenkilo.kayttajatiedot, qKayttajatiedot)
                 // Organisaatiohenkilos need to be added later (enrichment)
@@ -180,6 +251,12 @@ public class HenkiloRepositoryImpl extends BaseRepositoryImpl<Henkilo> implement
             if (!CollectionUtils.isEmpty(criteria.getOrganisaatioOids())) {
                 query.on(qOrganisaatioHenkilo.organisaatioOid.in(criteria.getOrganisaatioOids()));
             }
+            if (!CollectionUtils.isEmpty(criteria.getYlaorganisaatioOids())) {
+                query.on(inHierarchy(qOrganisaatioHenkilo.organisaatioOid, criteria.getYlaorganisaatioOids()));
+            }
+            if (criteria.getKayttajaOrganisaatioOids() != null) {
+                query.on(inHierarchy(qOrganisaatioHenkilo.organisaatioOid, criteria.getKayttajaOrganisaatioOids()));
+            }
             query.leftJoin(qOrganisaatioHenkilo.myonnettyKayttoOikeusRyhmas, qMyonnettyKayttoOikeusRyhmaTapahtuma);
         }
         else {
@@ -200,7 +277,7 @@ public class HenkiloRepositoryImpl extends BaseRepositoryImpl<Henkilo> implement
             orderBy.forEach(query::orderBy);
         }
 
-        query.where(criteria.condition(qHenkilo, qOrganisaatioHenkilo, qMyonnettyKayttoOikeusRyhmaTapahtuma));
+        query.where(condition);
 
         // Exclude henkilos with given oids.
         if(henkiloOids != null && henkiloOids.size() > 0) {
@@ -24,6 +24,7 @@ import java.util.stream.Stream;
 
 import static fi.vm.sade.kayttooikeus.model.QHenkilo.henkilo;
 import static fi.vm.sade.kayttooikeus.model.QOrganisaatioHenkilo.organisaatioHenkilo;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toSet;
 
@@ -81,6 +82,25 @@ public class OrganisaatioHenkiloRepositoryImpl implements OrganisaatioHenkiloCus
                 .select(organisaatioHenkilo.organisaatioOid).distinct().fetch();
     }
 
+    @Override
+    public Map<String, List<String>> findOrganisaatioOidsByHenkiloOids(Collection<String> henkiloOids) {
+        if (henkiloOids.isEmpty()) {
+            return emptyMap();
+        }
+        Map<String, List<String>> organisaatioOidsByHenkiloOid = new HashMap<>(henkiloOids.size() * 4 / 3 + 1);
+        jpa().from(organisaatioHenkilo)
+                .innerJoin(organisaatioHenkilo.henkilo, henkilo)
+                .where(henkilo.oidHenkilo.in(henkiloOids)
+                        .and(organisaatioHenkilo.passivoitu.isFalse()))
+                .select(henkilo.oidHenkilo, organisaatioHenkilo.organisaatioOid)
+                .orderBy(organisaatioHenkilo.id.asc())
+                .fetch()
+                .forEach(tuple -> organisaatioOidsByHenkiloOid
+                        .computeIfAbsent(tuple.get(henkilo.oidHenkilo), key -> new ArrayList<>())
+                        .add(tuple.get(organisaatioHenkilo.organisaatioOid)));
+        return organisaatioOidsByHenkiloOid;
+    }
+
     @Override
     public List<String> findUsersOrganisaatioHenkilosByPalveluRoolis(String henkiloOid, PalveluRooliGroup requiredRoles) {
         QHenkilo henkilo = QHenkilo.henkilo;
@@ -0,0 +1,33 @@
+package fi.vm.sade.kayttooikeus.service;
+
+import fi.vm.sade.ryhmasahkoposti.api.dto.EmailData;
+
+/**
+ * Lähtevien sähköpostien jono. Viestit tallennetaan kutsujan transaktiossa ja lähetetään ryhmäsähköpostipalveluun
+ * ajastetusti, jolloin pyynnön transaktio ei odota sähköpostipalvelua.
+ *
+ * @see fi.vm.sade.kayttooikeus.model.EmailOutbox
+ */
+public interface EmailOutboxService {
+
+    /**
+     * Lisää viestin jonoon. Viesti lähetetään vasta, kun kutsujan transaktio on vahvistettu.
+     *
+     * @param emailData lähetettävä viesti
+     */
+    void enqueue(EmailData emailData);
+
+    /**
+     * Lähettää joukon lähetysvuorossa olevia viestejä. Saman viestipohjan ja kielen viestit kootaan yhteen
+     * ryhmäsähköpostiin ja epäonnistuneet lähetykset siirretään myöhemmäksi.
+     *
+     * @return käsiteltyjen viestien lukumäärä, 0 kun lähetettäviä ei ole
+     */
+    int dispatch();
+
+    /**
+     * @return poistettujen, säilytysajan ylittäneiden lähetettyjen viestien lukumäärä
+     */
+    int deleteSent();
+
+}
@@ -6,6 +6,7 @@ import fi.vm.sade.kayttooikeus.model.Kutsu;
 import fi.vm.sade.kayttooikeus.repositories.dto.ExpiringKayttoOikeusDto;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -13,10 +14,24 @@ public interface EmailService {
 
     void sendEmailAnomusKasitelty(Anomus anomus, UpdateHaettuKayttooikeusryhmaDto updateHaettuKayttooikeusryhmaDto, Long kayttooikeusryhmaId);
 
-    void sendExpirationReminder(String henkiloOid, List<ExpiringKayttoOikeusDto> tapahtumas);
+    /**
+     * Lähettää muistutukset vanhenevista käyttöoikeuksista. Vastaanottajien yhteystiedot haetaan ja viestit
+     * lähetetään erissä.
+     *
+     * @param tapahtumasByHenkilo vanhenevat käyttöoikeudet henkilöittäin
+     * @return henkilöt, joille muistutus lähetettiin
+     */
+    Set<String> sendExpirationReminders(Map<String, List<ExpiringKayttoOikeusDto>> tapahtumasByHenkilo);
 
     void sendNewRequisitionNotificationEmails(Set<String> henkiloOids);
 
+    /**
+     * Lisää kutsusähköpostin lähtevien viestien jonoon, josta se lähetetään kutsujan transaktion vahvistuttua.
+     *
+     * @param kutsu kutsu
+     * @param inviterOverride kutsujan nimi viestissä, oletuksena kutsujan nimi oppijanumerorekisteristä
+     * @see EmailOutboxService
+     */
     void sendInvitationEmail(Kutsu kutsu, Optional<String> inviterOverride);
 
     void sendInvitationEmail(Kutsu kutsu);
@@ -1,7 +1,39 @@
 package fi.vm.sade.kayttooikeus.service;
 
+import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloHakuPerustietoDto;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface HenkiloCacheService {
-    boolean saveAll(long offset, long count, List<String> oidHenkiloList);
+
+    /**
+     * Henkilövälimuistin ajastuksen tunniste schedule_timestamps-taulussa.
+     */
+    String SCHEDULE_IDENTIFIER = "henkilocache";
+
+    /**
+     * Tallentaa muuttuneet henkilöt välimuistiin omassa transaktiossaan.
+     *
+     * @param henkilot henkilöt
+     * @return tallennettujen henkilöiden määrä
+     */
+    int save(List<HenkiloHakuPerustietoDto> henkilot);
+
+    /**
+     * Tallentaa täyden latauksen sivun ja siirtää latauksen tarkistuspisteen samassa transaktiossa, jotta
+     * keskeytynyt lataus jatkuu seuraavasta tallentamattomasta sivusta.
+     *
+     * @param henkilot sivun henkilöt
+     * @param checkpoint seuraavan sivun alku tai null, jos sivu oli viimeinen
+     * @return tallennettujen henkilöiden määrä
+     */
+    int savePage(List<HenkiloHakuPerustietoDto> henkilot, Long checkpoint);
+
+    /**
+     * Merkitsee välimuistin päivitetyksi, jolloin seuraava päivitys hakee tämän jälkeen muuttuneet henkilöt.
+     *
+     * @param modified ajanhetki, jota ennen muuttuneet henkilöt ovat välimuistissa
+     */
+    void setModified(LocalDateTime modified);
 }
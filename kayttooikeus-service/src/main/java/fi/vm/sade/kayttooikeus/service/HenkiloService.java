@@ -6,6 +6,7 @@ import fi.vm.sade.kayttooikeus.dto.enumeration.LogInRedirectType;
 import fi.vm.sade.kayttooikeus.enumeration.OrderByHenkilohaku;
 import fi.vm.sade.kayttooikeus.model.Henkilo;
 import fi.vm.sade.kayttooikeus.repositories.criteria.OrganisaatioHenkiloCriteria;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuPageDto;
 import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuResultDto;
 
 import java.time.LocalDateTime;
@@ -50,7 +51,22 @@ public interface HenkiloService {
 
     Collection<HenkilohakuResultDto> henkilohaku(HenkilohakuCriteriaDto henkilohakuCriteriaDto, Long offset, OrderByHenkilohaku orderBy);
 
-    Long henkilohakuCount(HenkilohakuCriteriaDto henkilohakuCriteriaDto);
+    /**
+     * Henkilöhaku sivuttain. Seuraava sivu haetaan edellisen sivun palauttamalla kohdalla.
+     *
+     * @param henkilohakuCriteriaDto hakukriteerit
+     * @param cursor edellisen sivun palauttama kohta, ensimmäiselle sivulle null
+     * @param orderBy järjestys ensimmäiselle sivulle (nimen mukaan), seuraavilla sivuilla järjestys tulee kohdasta
+     * @return sivu
+     */
+    HenkilohakuPageDto henkilohakuPage(HenkilohakuCriteriaDto henkilohakuCriteriaDto, String cursor, OrderByHenkilohaku orderBy);
+
+    /**
+     * @param henkilohakuCriteriaDto hakukriteerit
+     * @param max yläraja, jota suurempia tulosjoukkoja ei lasketa loppuun (null = ei ylärajaa)
+     * @return tulosten lukumäärä
+     */
+    Long henkilohakuCount(HenkilohakuCriteriaDto henkilohakuCriteriaDto, Long max);
 
     boolean isVahvastiTunnistettu(String oidHenkilo);
 
@@ -6,4 +6,17 @@ public interface KayttajarooliProvider {
 
     Set<String> getByKayttajaOid(String kayttajaOid);
 
+    /**
+     * Poistaa käyttäjän roolit välimuistista heti ja uudelleen käynnissä olevan transaktion päätyttyä. Kutsutaan aina,
+     * kun käyttäjän käyttöoikeuksia myönnetään, poistetaan tai passivoidaan.
+     *
+     * @param kayttajaOid käyttäjän oid
+     */
+    void invalidateByKayttajaOid(String kayttajaOid);
+
+    /**
+     * Tyhjentää roolivälimuistin, kun muutos koskee useita käyttäjiä (esim. käyttöoikeusryhmän oikeudet).
+     */
+    void invalidateAll();
+
 }
@@ -0,0 +1,31 @@
+package fi.vm.sade.kayttooikeus.service;
+
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Muistissa pidettävä luettelo aktiivisista käyttöoikeusryhmistä ja niiden organisaatiorajoitteista. Rajoitteet on
+ * indeksoitu viitteen (organisaation oid, organisaatiotyyppi tai oppilaitostyyppi) mukaan, joten organisaatioon
+ * myönnettävät ryhmät saadaan kokoamatta ja käymättä läpi kaikkia ryhmiä.
+ */
+public interface KayttoOikeusRyhmaCatalogue {
+
+    /**
+     * Palauttaa aktiiviset käyttöoikeusryhmät, joiden organisaatiorajoitteet sallivat myöntämisen organisaatioon.
+     * Juuriorganisaatioon voi myöntää kaikki ryhmät.
+     *
+     * @param organisaatioOid organisaatio, johon ryhmiä myönnetään
+     * @param organisaatiot organisaatio ylä- ja aliorganisaatioineen
+     * @return käyttöoikeusryhmien id:t
+     */
+    Set<Long> getMyonnettavat(String organisaatioOid, List<OrganisaatioPerustieto> organisaatiot);
+
+    /**
+     * Tyhjentää luettelon heti ja uudelleen käynnissä olevan transaktion päätyttyä. Kutsutaan aina, kun
+     * käyttöoikeusryhmä luodaan, sen organisaatiorajoitteita muutetaan tai se passivoidaan tai aktivoidaan.
+     */
+    void invalidate();
+
+}
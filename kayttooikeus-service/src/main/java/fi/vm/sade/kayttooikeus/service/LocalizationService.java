@@ -11,4 +11,10 @@ public interface LocalizationService {
     <T extends LocalizableDto> T localize(T dto);
 
     <T extends LocalizableOrganisaatio, C extends Collection<T>> C localizeOrgs(C list);
+
+    /**
+     * Tyhjentää tekstivälimuistin heti ja uudelleen käynnissä olevan transaktion päätyttyä. Kutsutaan, kun
+     * käyttöoikeusryhmän nimiä tai kuvauksia muutetaan. Muiden solmujen välimuistit vanhenevat TTL:n mukaan.
+     */
+    void invalidateTexts();
 }
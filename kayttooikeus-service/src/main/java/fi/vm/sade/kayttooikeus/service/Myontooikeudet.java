@@ -0,0 +1,75 @@
+package fi.vm.sade.kayttooikeus.service;
+
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Myöntäjän myöntöoikeudet tiiviissä muodossa. Käyttöoikeusryhmät numeroidaan ja jokaiselle myöntäjän
+ * organisaatiolle tallennetaan bittijoukko myönnettävistä ryhmistä. Aliorganisaatioita ei laajenneta
+ * etukäteen, vaan kuuluminen organisaation alipuuhun tarkistetaan organisaatiovälimuistin hierarkiasta.
+ */
+public final class Myontooikeudet {
+
+    private final Map<Long, Integer> indexByKayttooikeusryhmaId;
+    private final Map<String, BitSet> kayttooikeusryhmatByOrganisaatio;
+    private final OrganisaatioClient organisaatioClient;
+    private final Predicate<OrganisaatioPerustieto> organisaatioFilter;
+
+    private Myontooikeudet(Map<Long, Integer> indexByKayttooikeusryhmaId, Map<String, BitSet> kayttooikeusryhmatByOrganisaatio,
+                           OrganisaatioClient organisaatioClient, Predicate<OrganisaatioPerustieto> organisaatioFilter) {
+        this.indexByKayttooikeusryhmaId = indexByKayttooikeusryhmaId;
+        this.kayttooikeusryhmatByOrganisaatio = kayttooikeusryhmatByOrganisaatio;
+        this.organisaatioClient = organisaatioClient;
+        this.organisaatioFilter = organisaatioFilter;
+    }
+
+    /**
+     * @param kayttooikeusryhmatByOrganisaatio myönnettävät käyttöoikeusryhmät myöntäjän organisaatioittain
+     * @param organisaatioClient organisaatiohierarkia
+     * @param organisaatioFilter aliorganisaatioiden rajaus, ei koske myöntäjän omaa organisaatiota
+     * @return myöntöoikeudet
+     */
+    public static Myontooikeudet of(Map<String, Set<Long>> kayttooikeusryhmatByOrganisaatio,
+                                    OrganisaatioClient organisaatioClient,
+                                    Predicate<OrganisaatioPerustieto> organisaatioFilter) {
+        Map<Long, Integer> indexByKayttooikeusryhmaId = new HashMap<>();
+        Map<String, BitSet> bitsByOrganisaatio = new HashMap<>(kayttooikeusryhmatByOrganisaatio.size() * 4 / 3 + 1);
+        kayttooikeusryhmatByOrganisaatio.forEach((organisaatioOid, kayttooikeusryhmaIds) -> {
+            BitSet bits = bitsByOrganisaatio.computeIfAbsent(organisaatioOid, key -> new BitSet());
+            kayttooikeusryhmaIds.forEach(kayttooikeusryhmaId -> bits.set(indexByKayttooikeusryhmaId
+                    .computeIfAbsent(kayttooikeusryhmaId, key -> indexByKayttooikeusryhmaId.size())));
+        });
+        return new Myontooikeudet(indexByKayttooikeusryhmaId, bitsByOrganisaatio, organisaatioClient, organisaatioFilter);
+    }
+
+    /**
+     * @param organisaatioOid organisaatio, johon käyttöoikeusryhmää ollaan myöntämässä
+     * @param kayttooikeusryhmaId myönnettävä käyttöoikeusryhmä
+     * @return saako myöntäjä myöntää käyttöoikeusryhmän organisaatioon
+     */
+    public boolean contains(String organisaatioOid, Long kayttooikeusryhmaId) {
+        Integer index = indexByKayttooikeusryhmaId.get(kayttooikeusryhmaId);
+        if (index == null) {
+            return false;
+        }
+        BitSet own = kayttooikeusryhmatByOrganisaatio.get(organisaatioOid);
+        if (own != null && own.get(index)) {
+            return true;
+        }
+        for (Map.Entry<String, BitSet> entry : kayttooikeusryhmatByOrganisaatio.entrySet()) {
+            if (entry.getValue().get(index) && organisaatioClient.isInHierarchy(entry.getKey(), organisaatioOid)) {
+                // rajaus koskee vain kohdeorganisaatiota, joten tulos on sama kaikille myöntäjän organisaatioille
+                return organisaatioClient.getOrganisaatioPerustiedotCached(organisaatioOid)
+                        .filter(organisaatioFilter).isPresent();
+            }
+        }
+        return false;
+    }
+
+}
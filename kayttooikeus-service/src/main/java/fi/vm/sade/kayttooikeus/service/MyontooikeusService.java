@@ -12,4 +12,16 @@ public interface MyontooikeusService {
                                              MyontooikeusCriteria myontooikeusCriteria,
                                              OrganisaatioMyontoPredicate organisaatioMyontoPredicate);
 
+    /**
+     * Hakee myöntäjän myöntöoikeudet tarkistuksia varten laajentamatta niitä aliorganisaatioihin.
+     *
+     * @param myontajaOid myöntäjä
+     * @param myontooikeusCriteria myöntäjän käyttöoikeuksien rajaus
+     * @param organisaatioMyontoPredicate aliorganisaatioiden rajaus
+     * @return myöntöoikeudet
+     */
+    Myontooikeudet getMyontooikeusMatriisi(String myontajaOid,
+                                           MyontooikeusCriteria myontooikeusCriteria,
+                                           OrganisaatioMyontoPredicate organisaatioMyontoPredicate);
+
 }
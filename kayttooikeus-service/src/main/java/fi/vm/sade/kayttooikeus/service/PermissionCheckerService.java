@@ -11,6 +11,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiPredicate;
 
 public interface PermissionCheckerService {
 
@@ -20,6 +21,12 @@ public interface PermissionCheckerService {
 
     boolean isAllowedToAccessPerson(PermissionCheckDto permissionCheckDto);
 
+    /**
+     * @param permissionCheckDtos tarkistettavat käyttöoikeudet
+     * @return tarkistusten tulokset samassa järjestyksessä kuin pyynnöt
+     */
+    List<Boolean> isAllowedToAccessPersons(List<PermissionCheckDto> permissionCheckDtos);
+
     boolean checkRoleForOrganisation(List<String> orgOidList, Map<String, List<String>> allowedRoles);
 
     boolean hasRoleForOrganisations(List<Object> organisaatioHenkiloDtoList, Map<String, List<String>> allowedRoles);
@@ -73,6 +80,15 @@ public interface PermissionCheckerService {
 
     boolean kayttooikeusMyontoviiteLimitationCheck(String kayttajaOid, String organisaatioOid, Long kayttooikeusryhmaId, MyontooikeusCriteria criteria);
 
+    /**
+     * Muodostaa käyttäjän myöntöoikeudet kerran useampaa (organisaatio, käyttöoikeusryhmä) -tarkistusta varten.
+     *
+     * @param kayttajaOid myöntäjä
+     * @param criteria myöntäjän käyttöoikeuksien rajaus
+     * @return tarkistus, jolle annetaan organisaatio ja käyttöoikeusryhmä
+     */
+    BiPredicate<String, Long> getKayttooikeusMyontoviiteLimitationCheck(String kayttajaOid, MyontooikeusCriteria criteria);
+
     boolean organisaatioLimitationCheck(String organisaatioOid, Set<OrganisaatioViite> viiteSet);
 
     boolean organisaatioLimitationCheck(String organisaatioOid, List<OrganisaatioPerustieto> organisaatiot, Set<String> organisaatiorajoitteet);
@@ -7,6 +7,7 @@ import fi.vm.sade.oppijanumerorekisteri.dto.*;
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -26,6 +27,12 @@ public interface OppijanumerorekisteriClient {
 
     Set<String> getAllOidsForSamePerson(String personOid);
 
+    /**
+     * @param personOids henkilöiden oidit
+     * @return jokaiselle henkilölle saman henkilön kaikki oidit (henkilö itse mukaan lukien)
+     */
+    Map<String, Set<String>> getAllOidsForSamePersons(Collection<String> personOids);
+
     String getOidByHetu(String hetu);
 
     List<HenkiloHakuPerustietoDto> getAllByOids(long page, long count, List<String> oidHenkiloList);
@@ -21,10 +21,36 @@ public interface OrganisaatioClient {
     List<OrganisaatioPerustieto> listWithParentsAndChildren(String organisaatioOid,
                                                             Predicate<OrganisaatioPerustieto> filter);
 
+    /**
+     * Hakee koko organisaatiohierarkian uudelleen ja julkaisee uuden välimuistin. Samanaikaiset päivitykset
+     * yhdistetään yhdeksi hauksi.
+     *
+     * @return välimuistin organisaatioiden määrä
+     */
     long refreshCache();
 
+    /**
+     * Päivittää välimuistiin organisaatiopalvelussa edellisen päivityksen jälkeen muuttuneet organisaatiot. Koko
+     * hierarkia haetaan uudelleen määrävälein sekä silloin, kun muutoksia ei voida liittää hierarkiaan.
+     *
+     * @return välimuistin organisaatioiden määrä
+     */
+    long updateCache();
+
+    /**
+     * Lataa välimuistin kantaan tallennetusta organisaatiohierarkiasta, jos välimuistia ei ole vielä ladattu.
+     *
+     * @return ladattiinko välimuisti
+     */
+    boolean loadSnapshot();
+
     Long getCacheOrganisationCount();
 
+    /**
+     * @return Käytössä olevan välimuistin sukupolvi, kasvaa jokaisella päivityksellä
+     */
+    long getCacheGeneration();
+
     Optional<OrganisaatioPerustieto> getOrganisaatioPerustiedotCached(String organisaatioOid);
 
     /**
@@ -46,6 +72,13 @@ public interface OrganisaatioClient {
      */
     Set<String> listWithChildOids(String organisaatioOid, Predicate<OrganisaatioPerustieto> filter);
 
+    /**
+     * @param parentOid Yläorganisaatio
+     * @param organisaatioOid Tarkistettava organisaatio
+     * @return Onko organisaatio sama kuin yläorganisaatio tai sen aliorganisaatio
+     */
+    boolean isInHierarchy(String parentOid, String organisaatioOid);
+
     /**
      * @return kaikkien passiviisten organisaatioiden oidit
      */
@@ -46,13 +46,26 @@ public class OrganisaatioPerustieto {
     private OrganisaatioPerustieto parent;
     private OrganisaatioStatus status;
 
-    private List<String> resolveOrganisaatiotyypit() {
+    /**
+     * @return organisaatiotyypit organisaatiopalvelun palauttamassa muodossa (esim. "organisaatiotyyppi_01")
+     */
+    public List<String> resolveOrganisaatiotyypit() {
         if (this.organisaatiotyypit != null && !this.organisaatiotyypit.isEmpty()) {
             return this.organisaatiotyypit;
         }
         return this.tyypit;
     }
 
+    /**
+     * @return oppilaitostyypin koodiarvo (esim. "11" arvosta "oppilaitostyyppi_11#1") tai null
+     */
+    public String resolveOppilaitostyyppiKoodi() {
+        if (this.oppilaitostyyppi == null || this.oppilaitostyyppi.length() < 19) {
+            return null;
+        }
+        return this.oppilaitostyyppi.substring(17, 19);
+    }
+
     /**
      * Palauttaa organisaatiotyypit organisaatiopalvelun v2-muodossa.
      * @return organisaatiotyypit v2-muodossa
@@ -0,0 +1,123 @@
+package fi.vm.sade.kayttooikeus.service.external.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Kerää samanaikaiset yksittäiset haut lyhyen ikkunan ajan ja hakee ne yhdellä kutsulla. Ensimmäinen haku
+ * ajastaa lähetyksen, ja täyteen kasvanut erä lähetetään heti. Erät kootaan yhdessä säikeessä, mutta itse
+ * kutsut tehdään rajatussa työpoolissa, joten hidas kutsu ei pysäytä seuraavien erien keräämistä. Erä epäonnistuu,
+ * jos se ei valmistu aikarajassa tai työpoolin jono on täynnä.
+ *
+ * @param <K> haettava avain
+ * @param <V> avaimen arvo
+ */
+class BatchingLoader<K, V> {
+
+    private static final int MAX_QUEUED_BATCHES = 100;
+
+    private final Function<Set<K>, Map<K, V>> batchLoader;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final long timeoutMillis;
+    private final ScheduledExecutorService executor;
+    private final ThreadPoolExecutor workers;
+    private Map<K, CompletableFuture<V>> pending = new HashMap<>();
+
+    /**
+     * @param name säikeen nimi
+     * @param batchLoader hakee arvot avaimille, puuttuvat avaimet saavat arvon null
+     * @param windowMillis kuinka kauan hakuja kerätään ennen lähetystä
+     * @param maxBatchSize erän enimmäiskoko
+     * @param threads samanaikaisten kutsujen enimmäismäärä
+     * @param timeoutMillis kuinka kauan erää odotetaan lähetyksestä
+     */
+    BatchingLoader(String name, Function<Set<K>, Map<K, V>> batchLoader, long windowMillis, int maxBatchSize,
+                   int threads, long timeoutMillis) {
+        this.batchLoader = batchLoader;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES),
+                new ThreadFactoryBuilder().setNameFormat(name + "-worker-%d").setDaemon(true).build());
+    }
+
+    CompletableFuture<V> load(K key) {
+        synchronized (this) {
+            CompletableFuture<V> future = pending.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(key, future);
+            if (pending.size() == 1) {
+                executor.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            } else if (pending.size() >= maxBatchSize) {
+                executor.execute(this::flush);
+            }
+            return future;
+        }
+    }
+
+    private void flush() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new HashMap<>();
+        }
+        Future<?> task;
+        try {
+            task = workers.submit(() -> complete(batch));
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+            return;
+        }
+        // haut epäonnistuvat ennen keskeytystä, jotta keskeytetyn kutsun myöhäinen tulos ei enää valmista niitä
+        executor.schedule(() -> {
+            if (!task.isDone()) {
+                fail(batch, new TimeoutException("Batch of " + batch.size() + " keys did not complete in "
+                        + timeoutMillis + " ms"));
+                task.cancel(true);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void complete(Map<K, CompletableFuture<V>> batch) {
+        try {
+            Map<K, V> values = batchLoader.apply(new LinkedHashSet<>(batch.keySet()));
+            batch.forEach((key, future) -> future.complete(values.get(key)));
+        } catch (RuntimeException e) {
+            fail(batch, e);
+        }
+    }
+
+    private void fail(Map<K, CompletableFuture<V>> batch, Throwable e) {
+        batch.values().forEach(future -> future.completeExceptionally(e));
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+        workers.shutdownNow();
+    }
+
+}
@@ -1,19 +1,39 @@
 package fi.vm.sade.kayttooikeus.service.external.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import fi.vm.sade.javautils.httpclient.OphHttpClient;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.ExternalPermissionService;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.PermissionCheckRequestDto;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.PermissionCheckResponseDto;
 import fi.vm.sade.kayttooikeus.service.external.ExternalPermissionClient;
 import fi.vm.sade.properties.OphProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static fi.vm.sade.javautils.httpclient.OphHttpClient.JSON;
 import static fi.vm.sade.javautils.httpclient.OphHttpClient.UTF8;
+import static java.util.Collections.emptySet;
 import static java.util.Objects.requireNonNull;
 
 @Component
@@ -22,8 +42,13 @@ public class ExternalPermissionClientImpl implements ExternalPermissionClient {
     private final OphHttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final Map<ExternalPermissionService, String> SERVICE_URIS = new HashMap<>();
+    // samanaikaiset samanlaiset kyselyt odottavat yhtä latausta (Cache.get), kielteiset vastaukset vanhenevat
+    // välimuistista lyhyemmässä ajassa kuin myönteiset
+    private final Cache<PermissionCheckKey, CachedPermission> cache;
+    private final long deniedTtlMillis;
 
-    public ExternalPermissionClientImpl(OphHttpClient httpClient, OphProperties properties, ObjectMapper objectMapper) {
+    public ExternalPermissionClientImpl(OphHttpClient httpClient, OphProperties properties, ObjectMapper objectMapper,
+                                        KayttooikeusProperties kayttooikeusProperties, MeterRegistry meterRegistry) {
         this.httpClient = httpClient;
         this.objectMapper = objectMapper;
 
@@ -33,14 +58,73 @@ public class ExternalPermissionClientImpl implements ExternalPermissionClient {
         SERVICE_URIS.put(ExternalPermissionService.KOSKI, properties.url("koski.external-permission-check"));
         SERVICE_URIS.put(ExternalPermissionService.VARDA, properties.url("varda.external-permission-check"));
         SERVICE_URIS.put(ExternalPermissionService.YKI, properties.url("yki.external-permission-check"));
+
+        KayttooikeusProperties.ExternalPermissionCache cacheProperties = kayttooikeusProperties.getExternalPermissionCache();
+        this.deniedTtlMillis = cacheProperties.getDeniedTtl();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(cacheProperties.getMaximumSize())
+                .expireAfterWrite(Math.max(cacheProperties.getAllowedTtl(), cacheProperties.getDeniedTtl()), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, this.cache, "externalPermissionCache");
     }
 
     @Override
     public PermissionCheckResponseDto getPermission(ExternalPermissionService service, PermissionCheckRequestDto requestDto) {
+        PermissionCheckKey key = PermissionCheckKey.of(service, requestDto);
+        // pyyntö on vain latauksen käytössä, välimuistiin jää avain tiivisteineen
+        Callable<CachedPermission> loader = () -> new CachedPermission(this.fetchPermission(service, requestDto),
+                System.currentTimeMillis());
+        try {
+            CachedPermission cached = this.cache.get(key, loader);
+            if (!cached.getResponse().isAccessAllowed() && cached.getLoaded() + this.deniedTtlMillis <= System.currentTimeMillis()) {
+                this.cache.asMap().remove(key, cached);
+                cached = this.cache.get(key, loader);
+            }
+            return cached.getResponse();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private PermissionCheckResponseDto fetchPermission(ExternalPermissionService service, PermissionCheckRequestDto requestDto) {
         String url = requireNonNull(SERVICE_URIS.get(service), "service uri puuttuu: " + service);
         return httpClient.post(url)
                 .dataWriter(JSON, UTF8, out -> out.write(objectMapper.writeValueAsString(requestDto)))
                 .execute(response -> objectMapper.readValue(response.asInputStream(), PermissionCheckResponseDto.class));
     }
 
+    /**
+     * Roolit ja organisaatiot ovat avaimessa SHA-256-tiivisteinä, koska juuriorganisaation käyttäjällä niitä voi olla
+     * kymmeniätuhansia ja välimuisti on rajattu vain avainten määrällä.
+     */
+    @Value
+    private static class PermissionCheckKey {
+        ExternalPermissionService service;
+        String loggedInUserOid;
+        Set<String> personOidsForSamePerson;
+        HashCode loggedInUserRoles;
+        HashCode organisationOids;
+
+        static PermissionCheckKey of(ExternalPermissionService service, PermissionCheckRequestDto requestDto) {
+            return new PermissionCheckKey(service, requestDto.getLoggedInUserOid(),
+                    Optional.ofNullable(requestDto.getPersonOidsForSamePerson()).<Set<String>>map(HashSet::new).orElse(emptySet()),
+                    digest(requestDto.getLoggedInUserRoles()), digest(requestDto.getOrganisationOids()));
+        }
+
+        private static HashCode digest(Collection<String> values) {
+            Hasher hasher = Hashing.sha256().newHasher();
+            Optional.ofNullable(values).orElse(emptySet()).stream().distinct().sorted()
+                    .forEach(value -> hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0));
+            return hasher.hash();
+        }
+    }
+
+    @Value
+    private static class CachedPermission {
+        PermissionCheckResponseDto response;
+        long loaded;
+    }
+
 }
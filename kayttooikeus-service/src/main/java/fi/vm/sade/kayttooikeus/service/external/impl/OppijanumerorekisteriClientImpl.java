@@ -2,9 +2,15 @@ package fi.vm.sade.kayttooikeus.service.external.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import fi.vm.sade.javautils.http.OphHttpClient;
 import fi.vm.sade.javautils.http.OphHttpEntity;
 import fi.vm.sade.javautils.http.OphHttpRequest;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.service.dto.HenkiloVahvaTunnistusDto;
 import fi.vm.sade.kayttooikeus.service.dto.HenkiloYhteystiedotDto;
 import fi.vm.sade.kayttooikeus.service.exception.NotFoundException;
@@ -14,6 +20,8 @@ import fi.vm.sade.kayttooikeus.service.impl.KayttoOikeusServiceImpl;
 import fi.vm.sade.kayttooikeus.util.UserDetailsUtil;
 import fi.vm.sade.oppijanumerorekisteri.dto.*;
 import fi.vm.sade.properties.OphProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -22,8 +30,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -32,9 +44,10 @@ import static fi.vm.sade.kayttooikeus.service.external.ExternalServiceException.
 import static fi.vm.sade.kayttooikeus.service.external.impl.HttpClientUtil.noContentOrNotFoundException;
 import static fi.vm.sade.kayttooikeus.util.FunctionalUtils.io;
 import static fi.vm.sade.kayttooikeus.util.FunctionalUtils.retrying;
-import static java.util.Collections.singletonList;
+import static java.util.Collections.emptySet;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 
 @Slf4j
@@ -44,14 +57,42 @@ public class OppijanumerorekisteriClientImpl implements OppijanumerorekisteriCli
     private final ObjectMapper objectMapper;
     private final OphHttpClient httpClient;
     private final OphProperties urlProperties;
+    // yksittäiset haut kerätään erissä samaan kutsuun, ja välimuisti odottaa saman henkilön latausta vain kerran
+    private final BatchingLoader<String, Set<String>> samePersonLoader;
+    private final LoadingCache<String, Set<String>> samePersonCache;
 
     @Autowired
     public OppijanumerorekisteriClientImpl(ObjectMapper objectMapper,
                                            @Qualifier(HTTP_CLIENT_OPPIJANUMEROREKISTERI) OphHttpClient httpClient,
-                                           OphProperties urlProperties) {
+                                           OphProperties urlProperties,
+                                           KayttooikeusProperties kayttooikeusProperties,
+                                           MeterRegistry meterRegistry) {
         this.objectMapper = objectMapper;
         this.httpClient = httpClient;
         this.urlProperties = urlProperties;
+
+        KayttooikeusProperties.SamePersonCache cacheProperties = kayttooikeusProperties.getSamePersonCache();
+        this.samePersonLoader = new BatchingLoader<>("same-person-loader", this::fetchAllOidsForSamePersons,
+                cacheProperties.getBatchWindow(), cacheProperties.getMaxBatchSize(),
+                cacheProperties.getBatchThreads(), cacheProperties.getBatchTimeout());
+        this.samePersonCache = CacheBuilder.newBuilder()
+                .maximumSize(cacheProperties.getMaximumSize())
+                .expireAfterWrite(cacheProperties.getTtl(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build(new CacheLoader<String, Set<String>>() {
+                    @Override
+                    public Set<String> load(String personOid) {
+                        return loadAllOidsForSamePerson(personOid);
+                    }
+
+                    @Override
+                    public Map<String, Set<String>> loadAll(Iterable<? extends String> personOids) {
+                        Set<String> oids = new LinkedHashSet<>();
+                        personOids.forEach(oids::add);
+                        return fetchAllOidsForSamePersons(oids);
+                    }
+                });
+        GuavaCacheMetrics.monitor(meterRegistry, this.samePersonCache, "samePersonCache");
     }
 
     @Override
@@ -77,9 +118,37 @@ public class OppijanumerorekisteriClientImpl implements OppijanumerorekisteriCli
 
     @Override
     public Set<String> getAllOidsForSamePerson(String personOid) {
+        try {
+            return this.samePersonCache.getUnchecked(personOid);
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> getAllOidsForSamePersons(Collection<String> personOids) {
+        try {
+            return this.samePersonCache.getAll(personOids);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new UncheckedExecutionException(e.getCause());
+        }
+    }
+
+    private Set<String> loadAllOidsForSamePerson(String personOid) {
+        try {
+            return this.samePersonLoader.load(personOid).join();
+        } catch (CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    private Map<String, Set<String>> fetchAllOidsForSamePersons(Set<String> personOids) {
         String url = urlProperties.url("oppijanumerorekisteri-service.s2s.duplicateHenkilos");
         Map<String,Object> criteria = new HashMap<>();
-        criteria.put("henkiloOids", singletonList(personOid));
+        criteria.put("henkiloOids", new ArrayList<>(personOids));
         OphHttpRequest request = OphHttpRequest.Builder
                 .post(url)
                 .setEntity(new OphHttpEntity.Builder()
@@ -92,8 +161,26 @@ public class OppijanumerorekisteriClientImpl implements OppijanumerorekisteriCli
                 .mapWith(json -> io(() -> objectMapper.readValue(json, HenkiloViiteDto[].class)).get())
                 .map(array -> Arrays.stream(array).collect(toList()))
                 .orElseThrow(() -> noContentOrNotFoundException(url));
-        return Stream.concat(Stream.of(personOid), retrying(action, 2).get().orFail(mapper(url))
-                .stream().flatMap(viite -> Stream.of(viite.getHenkiloOid(), viite.getMasterOid()))).collect(toSet());
+        List<HenkiloViiteDto> viitteet = retrying(action, 2).get().orFail(mapper(url));
+
+        // viitteet ryhmitellään masterin mukaan, jotta usean henkilön vastauksesta saadaan kunkin henkilön oidit
+        Map<String, String> masterOidByOid = new HashMap<>();
+        Map<String, Set<String>> oidsByMasterOid = new HashMap<>();
+        viitteet.forEach(viite -> {
+            masterOidByOid.put(viite.getHenkiloOid(), viite.getMasterOid());
+            masterOidByOid.put(viite.getMasterOid(), viite.getMasterOid());
+            Set<String> oids = oidsByMasterOid.computeIfAbsent(viite.getMasterOid(), masterOid -> new HashSet<>());
+            oids.add(viite.getHenkiloOid());
+            oids.add(viite.getMasterOid());
+        });
+        return personOids.stream().collect(toMap(identity(), personOid -> Stream.concat(Stream.of(personOid),
+                Optional.ofNullable(masterOidByOid.get(personOid)).map(oidsByMasterOid::get).orElse(emptySet()).stream())
+                .collect(toSet())));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.samePersonLoader.shutdown();
     }
 
     @Override
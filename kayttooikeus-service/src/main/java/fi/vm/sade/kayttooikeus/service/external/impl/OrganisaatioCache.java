@@ -3,58 +3,260 @@ package fi.vm.sade.kayttooikeus.service.external.impl;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
 
 import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
-import static java.util.Optional.ofNullable;
-import static java.util.function.Function.identity;
-import static java.util.stream.Collectors.toMap;
-
+/**
+ * Organisaatiohierarkia indeksoituna. Organisaatiot numeroidaan esijärjestyksessä (pre-order), jolloin
+ * organisaation alipuu on yhtenäinen väli [id, subtreeEnd[id]) ja esivanhemmuuden tarkistus on kaksi vertailua.
+ * Instanssia ei muuteta rakentamisen jälkeen, joten sen voi julkaista lukijoille sellaisenaan.
+ */
 public class OrganisaatioCache {
+    private static final int NONE = -1;
+
+    private final long generation;
     private final OrganisaatioPerustieto root;
-    private final Map<String,OrganisaatioPerustieto> byOid;
+    private final Map<String, Integer> idByOid;
+    private final OrganisaatioPerustieto[] organisaatiot;
+    private final int[] subtreeEnd;
+    // organisaation id:n yläorganisaatiot (itse mukaan lukien, juuri viimeisenä):
+    // ancestors[ancestorsStart[id]] ... ancestors[ancestorsStart[id + 1] - 1]
+    private final int[] ancestorsStart;
+    private final int[] ancestors;
 
     public OrganisaatioCache(OrganisaatioPerustieto root, List<OrganisaatioPerustieto> rootChildren) {
+        this(root, rootChildren, 0L);
+    }
+
+    /**
+     * @param root juuriorganisaatio
+     * @param rootChildren juuren lapset, linkitetään toisiinsa (parent/children) rakentamisen aikana
+     * @param generation välimuistin sukupolvi, kasvaa jokaisella päivityksellä
+     */
+    public OrganisaatioCache(OrganisaatioPerustieto root, List<OrganisaatioPerustieto> rootChildren, long generation) {
+        this.generation = generation;
         this.root = root;
-        this.byOid = new HashMap<>();
         root.setChildren(rootChildren);
         this.setParents(root, rootChildren);
-        this.byOid.put(root.getOid(), root);
-        this.byOid.putAll(rootChildren.stream().flatMap(OrganisaatioPerustieto::andChildren)
-            .collect(toMap(OrganisaatioPerustieto::getOid, identity())));
+
+        List<OrganisaatioPerustieto> preOrder = new ArrayList<>();
+        List<Integer> parentIds = new ArrayList<>();
+        Deque<OrganisaatioPerustieto> stack = new ArrayDeque<>();
+        Deque<Integer> parentStack = new ArrayDeque<>();
+        stack.push(root);
+        parentStack.push(NONE);
+        while (!stack.isEmpty()) {
+            OrganisaatioPerustieto organisaatio = stack.pop();
+            int id = preOrder.size();
+            preOrder.add(organisaatio);
+            parentIds.add(parentStack.pop());
+            List<OrganisaatioPerustieto> children = organisaatio.getChildren();
+            if (children != null) {
+                for (ListIterator<OrganisaatioPerustieto> it = children.listIterator(children.size()); it.hasPrevious(); ) {
+                    stack.push(it.previous());
+                    parentStack.push(id);
+                }
+            }
+        }
+
+        int size = preOrder.size();
+        this.organisaatiot = preOrder.toArray(new OrganisaatioPerustieto[0]);
+        this.idByOid = new HashMap<>(size * 4 / 3 + 1);
+        int[] parent = new int[size];
+        int[] depth = new int[size];
+        for (int id = 0; id < size; id++) {
+            String oid = this.organisaatiot[id].getOid();
+            if (this.idByOid.put(oid, id) != null) {
+                throw new IllegalStateException(String.format("Duplicate key %s", oid));
+            }
+            parent[id] = parentIds.get(id);
+            depth[id] = parent[id] == NONE ? 0 : depth[parent[id]] + 1;
+        }
+
+        // lapsilla on aina suurempi id kuin vanhemmalla, joten alipuiden koot voi laskea käänteisessä järjestyksessä
+        int[] subtreeSize = new int[size];
+        for (int id = size - 1; id >= 0; id--) {
+            subtreeSize[id] += 1;
+            if (parent[id] != NONE) {
+                subtreeSize[parent[id]] += subtreeSize[id];
+            }
+        }
+        this.subtreeEnd = new int[size];
+        for (int id = 0; id < size; id++) {
+            this.subtreeEnd[id] = id + subtreeSize[id];
+        }
+
+        this.ancestorsStart = new int[size + 1];
+        for (int id = 0; id < size; id++) {
+            this.ancestorsStart[id + 1] = this.ancestorsStart[id] + depth[id] + 1;
+        }
+        this.ancestors = new int[this.ancestorsStart[size]];
+        for (int id = 0; id < size; id++) {
+            int position = this.ancestorsStart[id];
+            for (int ancestor = id; ancestor != NONE; ancestor = parent[ancestor]) {
+                this.ancestors[position++] = ancestor;
+            }
+        }
+    }
+
+    /**
+     * Muodostaa uuden välimuistin, jossa muuttuneet organisaatiot on korvattu tai lisätty. Nykyistä välimuistia
+     * ei muuteta, vaan muuttumattomista organisaatioista tehdään kopiot uutta puuta varten.
+     *
+     * @param muuttuneet muuttuneet organisaatiot (ilman lapsia), joilla parentOidPath muodossa oid/parent/.../root
+     * @param generation uuden välimuistin sukupolvi
+     * @return uusi välimuisti
+     * @throws IllegalStateException jos muutoksia ei voi liittää hierarkiaan
+     */
+    public OrganisaatioCache withChanges(Collection<OrganisaatioPerustieto> muuttuneet, long generation) {
+        Map<String, OrganisaatioPerustieto> muuttuneetByOid = new LinkedHashMap<>();
+        muuttuneet.forEach(organisaatio -> muuttuneetByOid.put(organisaatio.getOid(), organisaatio));
+
+        Map<String, OrganisaatioPerustieto> copies = new HashMap<>(this.idByOid.size() * 4 / 3 + muuttuneetByOid.size() + 1);
+        Map<String, String> parentOids = new LinkedHashMap<>(copies.size());
+        // esijärjestys takaa, että vanhempi on käsitelty ennen lapsiaan ja lasten järjestys säilyy
+        for (OrganisaatioPerustieto organisaatio : this.organisaatiot) {
+            OrganisaatioPerustieto muuttunut = muuttuneetByOid.remove(organisaatio.getOid());
+            OrganisaatioPerustieto source = muuttunut != null ? muuttunut : organisaatio;
+            copies.put(source.getOid(), source.toBuilder().parent(null).children(new ArrayList<>()).build());
+            if (organisaatio != this.root) {
+                parentOids.put(source.getOid(), muuttunut != null ? parentOidOf(muuttunut) : organisaatio.getParent().getOid());
+            }
+        }
+        muuttuneetByOid.values().forEach(uusi -> {
+            copies.put(uusi.getOid(), uusi.toBuilder().parent(null).children(new ArrayList<>()).build());
+            parentOids.put(uusi.getOid(), parentOidOf(uusi));
+        });
+
+        parentOids.forEach((oid, parentOid) -> {
+            OrganisaatioPerustieto parent = parentOid != null ? copies.get(parentOid) : null;
+            if (parent == null) {
+                throw new IllegalStateException(String.format("Unknown parent %s for %s", parentOid, oid));
+            }
+            parent.getChildren().add(copies.get(oid));
+        });
+        OrganisaatioPerustieto rootCopy = copies.get(this.root.getOid());
+        OrganisaatioCache organisaatioCache = new OrganisaatioCache(rootCopy, rootCopy.getChildren(), generation);
+        if (organisaatioCache.organisaatiot.length != copies.size()) {
+            // jokin organisaatio on siirtynyt oman aliorganisaationsa alle
+            throw new IllegalStateException("Organisation hierarchy contains a cycle");
+        }
+        return organisaatioCache;
     }
-    
+
+    private static String parentOidOf(OrganisaatioPerustieto organisaatio) {
+        String[] path = Optional.ofNullable(organisaatio.getParentOidPath()).orElse("").split("/");
+        return path.length > 1 && path[0].equals(organisaatio.getOid()) ? path[1] : null;
+    }
+
     private void setParents(OrganisaatioPerustieto root, Collection<OrganisaatioPerustieto> children) {
         children.forEach(c -> {
             c.setParent(root);
             this.setParents(c, c.getChildren());
         });
     }
-    
+
+    private int idOf(String oid) {
+        Integer id = oid != null ? idByOid.get(oid) : null;
+        return id != null ? id : NONE;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
     public OrganisaatioPerustieto getRoot() {
         return root;
     }
-    
+
     public Optional<OrganisaatioPerustieto> getByOid(String oid) {
-        return ofNullable(byOid.get(oid));
+        int id = idOf(oid);
+        return id != NONE ? Optional.of(organisaatiot[id]) : Optional.empty();
+    }
+
+    /**
+     * @param parentOid yläorganisaatio
+     * @param oid tarkistettava organisaatio
+     * @return onko organisaatio sama kuin yläorganisaatio tai sen aliorganisaatio
+     */
+    public boolean isInHierarchy(String parentOid, String oid) {
+        int parentId = idOf(parentOid);
+        int id = idOf(oid);
+        return parentId != NONE && id != NONE && parentId <= id && id < subtreeEnd[parentId];
     }
-    
-    public Stream<OrganisaatioPerustieto> flatWithChildrenByOid(String oid) {
-        return getByOid(oid).map(OrganisaatioPerustieto::andChildren).orElse(Stream.empty());
+
+    /**
+     * Kerää organisaation ja sen yläorganisaatioiden oidit järjestyksessä organisaatiosta juureen.
+     */
+    public <C extends Collection<String>> C collectWithParents(String oid, Predicate<OrganisaatioPerustieto> filter,
+                                                              IntFunction<C> collectionFactory) {
+        int id = idOf(oid);
+        if (id == NONE) {
+            return collectionFactory.apply(0);
+        }
+        int start = ancestorsStart[id];
+        int end = ancestorsStart[id + 1];
+        C oids = collectionFactory.apply(end - start);
+        for (int i = start; i < end; i++) {
+            OrganisaatioPerustieto organisaatio = organisaatiot[ancestors[i]];
+            if (filter.test(organisaatio)) {
+                oids.add(organisaatio.getOid());
+            }
+        }
+        return oids;
+    }
+
+    /**
+     * Kerää organisaation ja sen kaikkien aliorganisaatioiden oidit esijärjestyksessä.
+     */
+    public <C extends Collection<String>> C collectWithChildren(String oid, Predicate<OrganisaatioPerustieto> filter,
+                                                               IntFunction<C> collectionFactory) {
+        int id = idOf(oid);
+        if (id == NONE) {
+            return collectionFactory.apply(0);
+        }
+        int end = subtreeEnd[id];
+        C oids = collectionFactory.apply(end - id);
+        for (int i = id; i < end; i++) {
+            if (filter.test(organisaatiot[i])) {
+                oids.add(organisaatiot[i].getOid());
+            }
+        }
+        return oids;
     }
 
-    public Stream<OrganisaatioPerustieto> flatWithParentsByOid(String oid) {
-        return getByOid(oid).map(OrganisaatioPerustieto::andParents).orElse(Stream.empty());
+    /**
+     * Palauttaa organisaation yläorganisaatiot (alkaen lähimmästä) sekä organisaation ja sen aliorganisaatiot.
+     */
+    public List<OrganisaatioPerustieto> listWithParentsAndChildren(String oid, Predicate<OrganisaatioPerustieto> filter) {
+        int id = idOf(oid);
+        if (id == NONE) {
+            return new ArrayList<>();
+        }
+        int end = subtreeEnd[id];
+        List<OrganisaatioPerustieto> organisaatioList = new ArrayList<>(ancestorsStart[id + 1] - ancestorsStart[id] - 1 + end - id);
+        for (int i = ancestorsStart[id] + 1; i < ancestorsStart[id + 1]; i++) {
+            addIf(organisaatioList, organisaatiot[ancestors[i]], filter);
+        }
+        for (int i = id; i < end; i++) {
+            addIf(organisaatioList, organisaatiot[i], filter);
+        }
+        return organisaatioList;
     }
 
-    public Stream<OrganisaatioPerustieto> flatWithParentsAndChildren(String oid) {
-        return getByOid(oid).map(org -> Stream.concat(org.parents(), org.andChildren())).orElse(Stream.empty());
+    private static void addIf(List<OrganisaatioPerustieto> organisaatioList, OrganisaatioPerustieto organisaatio,
+                              Predicate<OrganisaatioPerustieto> filter) {
+        if (filter.test(organisaatio)) {
+            organisaatioList.add(organisaatio);
+        }
     }
 
     public Stream<OrganisaatioPerustieto> getAllOrganisaatios() {
-        return this.byOid.values().stream();
+        return Arrays.stream(this.organisaatiot);
     }
 
     public Long getCacheCount() {
-        return (long) this.byOid.size();
+        return (long) this.organisaatiot.length;
     }
 }
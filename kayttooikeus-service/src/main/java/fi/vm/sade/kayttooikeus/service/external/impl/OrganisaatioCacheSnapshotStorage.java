@@ -0,0 +1,81 @@
+package fi.vm.sade.kayttooikeus.service.external.impl;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.vm.sade.kayttooikeus.model.OrganisaatioCacheSnapshot;
+import fi.vm.sade.kayttooikeus.repositories.OrganisaatioCacheSnapshotRepository;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static fi.vm.sade.kayttooikeus.model.OrganisaatioCacheSnapshot.SNAPSHOT_ID;
+import static fi.vm.sade.kayttooikeus.util.FunctionalUtils.io;
+
+/**
+ * Tallentaa organisaatiohierarkian kantaan, josta se voidaan ladata käynnistyksessä ennen kuin
+ * organisaatiopalvelusta on saatu vastaus.
+ */
+@Component
+@RequiredArgsConstructor
+public class OrganisaatioCacheSnapshotStorage {
+
+    // kenttien kautta, koska getterit palauttavat organisaatiotyypit muunnettuina
+    private static final ObjectMapper SNAPSHOT_MAPPER = new ObjectMapper()
+            .setVisibility(PropertyAccessor.ALL, Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, Visibility.ANY)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final OrganisaatioCacheSnapshotRepository organisaatioCacheSnapshotRepository;
+
+    /**
+     * @param root juuriorganisaatio, jonka lapset tallennetaan mukana
+     * @param organisaatioCount organisaatioiden määrä
+     */
+    @Transactional
+    public void save(OrganisaatioPerustieto root, long organisaatioCount) {
+        byte[] data = io(() -> serialize(root)).get();
+        OrganisaatioCacheSnapshot snapshot = this.organisaatioCacheSnapshotRepository.findById(SNAPSHOT_ID)
+                .orElseGet(() -> OrganisaatioCacheSnapshot.builder().id(SNAPSHOT_ID).build());
+        snapshot.setCreated(LocalDateTime.now());
+        snapshot.setOrganisaatioCount(organisaatioCount);
+        snapshot.setData(data);
+        this.organisaatioCacheSnapshotRepository.save(snapshot);
+    }
+
+    /**
+     * @return tallennettu juuriorganisaatio lapsineen
+     */
+    @Transactional(readOnly = true)
+    public Optional<OrganisaatioPerustieto> load() {
+        return this.organisaatioCacheSnapshotRepository.findById(SNAPSHOT_ID)
+                .map(snapshot -> io(() -> deserialize(snapshot.getData())).get());
+    }
+
+    private static byte[] serialize(OrganisaatioPerustieto root) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            SNAPSHOT_MAPPER.writeValue(out, root);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static OrganisaatioPerustieto deserialize(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return SNAPSHOT_MAPPER.readValue(in, OrganisaatioPerustieto.class);
+        }
+    }
+
+}
@@ -5,6 +5,7 @@ import fi.vm.sade.javautils.http.OphHttpClient;
 import fi.vm.sade.javautils.http.OphHttpRequest;
 import fi.vm.sade.kayttooikeus.config.OrikaBeanMapper;
 import fi.vm.sade.kayttooikeus.config.properties.CommonProperties;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.config.properties.UrlConfiguration;
 import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
 import fi.vm.sade.kayttooikeus.service.external.ExternalServiceException;
@@ -16,48 +17,195 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.carrotsearch.sizeof.RamUsageEstimator.humanReadableUnits;
-import static com.carrotsearch.sizeof.RamUsageEstimator.sizeOf;
 import static fi.vm.sade.kayttooikeus.config.HttpClientConfiguration.HTTP_CLIENT_ORGANISAATIO;
 import static fi.vm.sade.kayttooikeus.service.external.ExternalServiceException.mapper;
 import static fi.vm.sade.kayttooikeus.service.external.impl.HttpClientUtil.noContentOrNotFoundException;
 import static fi.vm.sade.kayttooikeus.util.FunctionalUtils.io;
 import static fi.vm.sade.kayttooikeus.util.FunctionalUtils.retrying;
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
 
 @Slf4j
 @Component
 public class OrganisaatioClientImpl implements OrganisaatioClient {
+    private static final DateTimeFormatter LAST_MODIFIED_SINCE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    // muutoshaun alkuhetkeä siirretään taaksepäin, ettei minuuttitarkkuudella tai kellojen erolla pudoteta muutoksia
+    private static final Duration CHANGES_OVERLAP = Duration.ofMinutes(2);
+    // tätä suuremmat muutokset on nopeampi hakea kokonaan uudelleen
+    private static final int MAX_CHANGES = 1000;
 
     private final OphHttpClient httpClient;
     private final UrlConfiguration urlConfiguration;
     private final String rootOrganizationOid;
     private final ObjectMapper objectMapper;
     private final OrikaBeanMapper orikaBeanMapper;
+    private final OrganisaatioCacheSnapshotStorage organisaatioCacheSnapshotStorage;
+    private final OrganisaatioClosureStorage organisaatioClosureStorage;
+    private final Duration fullRefreshInterval;
+
+    // uusi välimuisti rakennetaan kokonaan ennen julkaisua, joten lukijat eivät koskaan näe keskeneräistä puuta
+    private final AtomicReference<OrganisaatioCache> cache = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Long>> refreshInProgress = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    // päivitetään vain refreshInProgress-lukon haltijan toimesta
+    private volatile LocalDateTime lastFullRefresh;
+    private volatile LocalDateTime lastRefresh;
+    // sulkeumataulun tallennus epäonnistui, joten taulu kirjoitetaan seuraavalla päivityksellä kokonaan uudelleen
+    private volatile boolean closureDirty;
 
-    private OrganisaatioCache cache;
-    
-    
     public OrganisaatioClientImpl(@Qualifier(HTTP_CLIENT_ORGANISAATIO) OphHttpClient httpClient,
                                   UrlConfiguration urlConfiguration,
                                   ObjectMapper objectMapper,
                                   CommonProperties commonProperties,
-                                  OrikaBeanMapper orikaBeanMapper) {
+                                  KayttooikeusProperties kayttooikeusProperties,
+                                  OrikaBeanMapper orikaBeanMapper,
+                                  OrganisaatioCacheSnapshotStorage organisaatioCacheSnapshotStorage,
+                                  OrganisaatioClosureStorage organisaatioClosureStorage) {
         this.httpClient = httpClient;
         this.urlConfiguration = urlConfiguration;
         this.objectMapper = objectMapper;
         this.rootOrganizationOid = commonProperties.getRootOrganizationOid();
         this.orikaBeanMapper = orikaBeanMapper;
+        this.organisaatioCacheSnapshotStorage = organisaatioCacheSnapshotStorage;
+        this.organisaatioClosureStorage = organisaatioClosureStorage;
+        this.fullRefreshInterval = Duration.ofMillis(kayttooikeusProperties.getScheduling().getConfiguration()
+                .getOrganisaatiocacheFullRefresh());
     }
 
     @Override
-    public synchronized long refreshCache() {
+    public boolean loadSnapshot() {
+        if (this.cache.get() != null) {
+            return false;
+        }
+        try {
+            return this.organisaatioCacheSnapshotStorage.load().map(root -> {
+                OrganisaatioCache organisaatioCache = new OrganisaatioCache(root, new ArrayList<>(root.getChildren()),
+                        this.generation.incrementAndGet());
+                // ei korvata organisaatiopalvelusta jo ehdittyä hakea välimuistia
+                boolean published = this.cache.compareAndSet(null, organisaatioCache);
+                if (published) {
+                    log.info("Organisation client cache loaded from snapshot. Cache count {}", organisaatioCache.getCacheCount());
+                }
+                return published;
+            }).orElse(false);
+        } catch (RuntimeException e) {
+            log.warn("Organisation client cache snapshot could not be loaded", e);
+            return false;
+        }
+    }
+
+    @Override
+    public long refreshCache() {
+        return this.singleFlight(() -> this.loadCache(LocalDateTime.now()));
+    }
+
+    @Override
+    public long updateCache() {
+        return this.singleFlight(this::loadChangesOrCache);
+    }
+
+    private long singleFlight(Supplier<Long> action) {
+        CompletableFuture<Long> refresh = new CompletableFuture<>();
+        CompletableFuture<Long> inProgress = this.refreshInProgress.compareAndExchange(null, refresh);
+        if (inProgress != null) {
+            log.info("Organisation client cache refresh already in progress, waiting for it to finish");
+            return join(inProgress);
+        }
+        try {
+            long count = action.get();
+            refresh.complete(count);
+            return count;
+        } catch (RuntimeException e) {
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.refreshInProgress.set(null);
+        }
+    }
+
+    private static long join(CompletableFuture<Long> refresh) {
+        try {
+            return refresh.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private long loadChangesOrCache() {
+        OrganisaatioCache current = this.cache.get();
+        LocalDateTime refreshStarted = LocalDateTime.now();
+        if (current == null || this.lastRefresh == null || this.lastFullRefresh == null
+                || refreshStarted.isAfter(this.lastFullRefresh.plus(this.fullRefreshInterval))) {
+            return this.loadCache(refreshStarted);
+        }
+        try {
+            return this.loadChanges(current, refreshStarted);
+        } catch (RuntimeException e) {
+            log.warn("Organisation client cache could not be updated with changes, reloading whole cache", e);
+            return this.loadCache(refreshStarted);
+        }
+    }
+
+    private long loadChanges(OrganisaatioCache current, LocalDateTime refreshStarted) {
+        String lastModifiedSince = this.lastRefresh.minus(CHANGES_OVERLAP).format(LAST_MODIFIED_SINCE_FORMAT);
+        String muutetutUrl = this.urlConfiguration.url("organisaatio-service.organisaatio.muutetut.oid", lastModifiedSince);
+        Set<String> muutetutOids = new LinkedHashSet<>(Arrays.asList(retrying(io(() ->
+                getOptional(muutetutUrl, String[].class).orElseGet(() -> new String[0])), 2)
+                .get().<ExternalServiceException>orFail(mapper(muutetutUrl))));
+        if (muutetutOids.size() > MAX_CHANGES) {
+            log.info("Organisation client cache has {} changed organisations, reloading whole cache", muutetutOids.size());
+            return this.loadCache(refreshStarted);
+        }
+        if (!muutetutOids.isEmpty()) {
+            List<OrganisaatioPerustieto> muuttuneet = muutetutOids.stream()
+                    .map(this::fetchPerustiedot)
+                    .map(organisaatio -> {
+                        organisaatio.setParentOidPath(toParentOidPath(organisaatio.getOid(), organisaatio.getParentOidPath()));
+                        return organisaatio;
+                    })
+                    .collect(Collectors.toList());
+            OrganisaatioCache organisaatioCache = current.withChanges(muuttuneet, this.generation.incrementAndGet());
+            this.cache.set(organisaatioCache);
+            log.info("Organisation client cache updated with {} changed organisations (generation {}). Cache count {}",
+                    muuttuneet.size(), organisaatioCache.getGeneration(), organisaatioCache.getCacheCount());
+        }
+        OrganisaatioCache organisaatioCache = this.cache.get();
+        if (this.closureDirty) {
+            this.saveClosure(() -> this.organisaatioClosureStorage.replace(organisaatioCache));
+        } else if (!muutetutOids.isEmpty()) {
+            this.saveClosure(() -> this.organisaatioClosureStorage.update(organisaatioCache, muutetutOids));
+        }
+        this.lastRefresh = refreshStarted;
+        return this.cache.get().getCacheCount();
+    }
+
+    /**
+     * Muuntaa organisaatiopalvelun |root|...|parent| -muotoisen polun välimuistin käyttämään oid/parent/.../root -muotoon.
+     */
+    private static String toParentOidPath(String oid, String parentOidPath) {
+        if (parentOidPath == null || !parentOidPath.startsWith("|")) {
+            return parentOidPath;
+        }
+        List<String> parentOids = new ArrayList<>(Arrays.asList(parentOidPath.replaceAll("^\\||\\|$", "").split("\\|")));
+        Collections.reverse(parentOids);
+        return oid + "/" + String.join("/", parentOids);
+    }
+
+    private long loadCache(LocalDateTime refreshStarted) {
         String haeHierarchyUrl = this.urlConfiguration.url(
                 "organisaatio-service.organisaatio.v4.jalkelaiset", rootOrganizationOid);
         // Add organisations to cache (active, incoming and passive)
@@ -75,13 +223,38 @@ public class OrganisaatioClientImpl implements OrganisaatioClient {
                 .get().<ExternalServiceException>orFail(mapper(haeRyhmasUrl)))
                 // Make ryhma parentoidpath format same as on normal organisations.
                 .map(ryhma -> {
-                    ryhma.setParentOidPath(ryhma.getOid() + "/"
-                            + ryhma.getParentOidPath().replaceAll("^\\||\\|$", "").replace("|", "/"));
+                    ryhma.setParentOidPath(toParentOidPath(ryhma.getOid(), ryhma.getParentOidPath()));
                     return ryhma;
                 }).collect(Collectors.toSet()));
-        this.cache = new OrganisaatioCache(this.fetchPerustiedot(this.rootOrganizationOid), organisaatiosWithoutRootOrg);
-        log.info("Organisation client cache refreshed. Cache size " + humanReadableUnits(sizeOf(this.cache)));
-        return cache.getCacheCount();
+        OrganisaatioCache organisaatioCache = new OrganisaatioCache(this.fetchPerustiedot(this.rootOrganizationOid),
+                organisaatiosWithoutRootOrg, this.generation.incrementAndGet());
+        this.cache.set(organisaatioCache);
+        this.lastFullRefresh = refreshStarted;
+        this.lastRefresh = refreshStarted;
+        log.info("Organisation client cache refreshed (generation {}). Cache count {}",
+                organisaatioCache.getGeneration(), organisaatioCache.getCacheCount());
+        this.saveSnapshot(organisaatioCache);
+        this.saveClosure(() -> this.organisaatioClosureStorage.replace(organisaatioCache));
+        return organisaatioCache.getCacheCount();
+    }
+
+    private void saveSnapshot(OrganisaatioCache organisaatioCache) {
+        try {
+            this.organisaatioCacheSnapshotStorage.save(organisaatioCache.getRoot(), organisaatioCache.getCacheCount());
+        } catch (RuntimeException e) {
+            log.warn("Organisation client cache snapshot could not be saved", e);
+        }
+    }
+
+    private void saveClosure(Runnable save) {
+        try {
+            save.run();
+            this.closureDirty = false;
+        } catch (RuntimeException e) {
+            // osittaista muutosta ei voi toistaa myöhemmin, joten seuraava päivitys kirjoittaa koko taulun
+            log.warn("Organisation closure table could not be saved, rewriting it on next refresh", e);
+            this.closureDirty = true;
+        }
     }
 
     private OrganisaatioPerustieto fetchPerustiedot(String oid) {
@@ -91,71 +264,85 @@ public class OrganisaatioClientImpl implements OrganisaatioClient {
     }
 
     private <T> T get(String url, Class<T> type) {
+        return getOptional(url, type).orElseThrow(() -> noContentOrNotFoundException(url));
+    }
+
+    private <T> Optional<T> getOptional(String url, Class<T> type) {
         return httpClient.<T>execute(OphHttpRequest.Builder.get(url).build())
                 .expectedStatus(200)
-                .mapWith(json -> io(() -> objectMapper.readValue(json, type)).get())
-                .orElseThrow(() -> noContentOrNotFoundException(url));
+                .mapWith(json -> io(() -> objectMapper.readValue(json, type)).get());
+    }
+
+    private OrganisaatioCache cache() {
+        OrganisaatioCache organisaatioCache = this.cache.get();
+        if (organisaatioCache == null) {
+            throw new IllegalStateException("Organisation client cache has not been loaded yet");
+        }
+        return organisaatioCache;
     }
 
     @Override
     public Long getCacheOrganisationCount() {
-        return this.cache.getCacheCount();
+        return this.cache().getCacheCount();
+    }
+
+    @Override
+    public long getCacheGeneration() {
+        OrganisaatioCache organisaatioCache = this.cache.get();
+        return organisaatioCache != null ? organisaatioCache.getGeneration() : 0L;
     }
     @Override
     public Optional<OrganisaatioPerustieto> getOrganisaatioPerustiedotCached(String oid) {
-        return this.cache.getByOid(oid);
+        return this.cache().getByOid(oid);
     }
 
     @Override
     public OrganisaatioPerustieto getRoot() {
-        return this.cache.getRoot();
+        return this.cache().getRoot();
     }
 
     @Override
     public Stream<OrganisaatioPerustieto> stream() {
-        return this.cache.getAllOrganisaatios();
+        return this.cache().getAllOrganisaatios();
     }
 
     @Override
     public List<OrganisaatioPerustieto> listWithParentsAndChildren(String organisaatioOid, Predicate<OrganisaatioPerustieto> filter) {
-        return this.cache.flatWithParentsAndChildren(organisaatioOid)
-                // the resource never returns the root
-                .filter(org -> !rootOrganizationOid.equals(org.getOid()))
-                .filter(filter)
-                .collect(toList());
+        // the resource never returns the root
+        return this.cache().listWithParentsAndChildren(organisaatioOid,
+                org -> !rootOrganizationOid.equals(org.getOid()) && filter.test(org));
     }
 
     @Override
     public List<String> getParentOids(String organisaatioOid) {
-        return this.cache.flatWithParentsByOid(organisaatioOid).map(OrganisaatioPerustieto::getOid).collect(toList());
+        return this.cache().collectWithParents(organisaatioOid, org -> true, ArrayList::new);
     }
 
     @Override
     public List<String> getActiveParentOids(String organisaatioOid) {
-        return this.cache.flatWithParentsByOid(organisaatioOid)
-                .filter(organisaatioPerustieto -> OrganisaatioStatus.AKTIIVINEN.equals(organisaatioPerustieto.getStatus()))
-                .map(OrganisaatioPerustieto::getOid)
-                .collect(toList());
+        return this.cache().collectWithParents(organisaatioOid,
+                organisaatioPerustieto -> OrganisaatioStatus.AKTIIVINEN.equals(organisaatioPerustieto.getStatus()),
+                ArrayList::new);
     }
 
     @Override
     public List<String> getChildOids(String organisaatioOid) {
-        return this.cache.flatWithChildrenByOid(organisaatioOid)
-                        .map(OrganisaatioPerustieto::getOid)
-                        .collect(toList());
+        return this.cache().collectWithChildren(organisaatioOid, org -> true, ArrayList::new);
     }
 
     @Override
     public Set<String> listWithChildOids(String organisaatioOid, Predicate<OrganisaatioPerustieto> filter) {
-        return this.cache.flatWithChildrenByOid(organisaatioOid)
-                .filter(filter)
-                .map(OrganisaatioPerustieto::getOid)
-                .collect(toSet());
+        return this.cache().collectWithChildren(organisaatioOid, filter, size -> new HashSet<>(size * 4 / 3 + 1));
+    }
+
+    @Override
+    public boolean isInHierarchy(String parentOid, String organisaatioOid) {
+        return this.cache().isInHierarchy(parentOid, organisaatioOid);
     }
 
     @Override
     public Set<String> getLakkautetutOids() {
-        return this.cache.getAllOrganisaatios()
+        return this.cache().getAllOrganisaatios()
                 .filter(organisaatioPerustieto -> OrganisaatioStatus.PASSIIVINEN.equals(organisaatioPerustieto.getStatus()))
                 .map(OrganisaatioPerustieto::getOid)
                 .distinct()
@@ -0,0 +1,132 @@
+package fi.vm.sade.kayttooikeus.service.external.impl;
+
+import com.google.common.collect.Lists;
+import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
+import fi.vm.sade.kayttooikeus.model.OrganisaatioClosure;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Kirjoittaa organisaatiovälimuistin hierarkian organisaatio_closure-tauluun. Taulu on solmujen yhteinen, joten
+ * kirjoitukset sarjallistetaan transaktion ajaksi otettavalla advisory-lukolla ja taulusta muutetaan vain
+ * välimuistista poikkeavat rivit.
+ *
+ * @see fi.vm.sade.kayttooikeus.model.OrganisaatioClosure
+ */
+@Component
+@RequiredArgsConstructor
+public class OrganisaatioClosureStorage {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final long LOCK_KEY = "organisaatio_closure".hashCode();
+    private static final String LOCK_SQL = "SELECT pg_advisory_xact_lock(?)";
+    private static final String SELECT_SQL = "SELECT ancestor_oid, descendant_oid, depth, status FROM organisaatio_closure";
+    private static final String INSERT_SQL = "INSERT INTO organisaatio_closure (ancestor_oid, descendant_oid, depth, status) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_SQL = "UPDATE organisaatio_closure SET depth = ?, status = ? WHERE ancestor_oid = ? AND descendant_oid = ?";
+    private static final String DELETE_SQL = "DELETE FROM organisaatio_closure WHERE ancestor_oid = ? AND descendant_oid = ?";
+    private static final RowMapper<OrganisaatioClosure> ROW_MAPPER = (rs, rowNum) -> OrganisaatioClosure.builder()
+            .ancestorOid(rs.getString("ancestor_oid"))
+            .descendantOid(rs.getString("descendant_oid"))
+            .depth(rs.getInt("depth"))
+            .status(Optional.ofNullable(rs.getString("status")).map(OrganisaatioStatus::valueOf).orElse(null))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Muuttaa taulun sisällön koko välimuistin hierarkiaksi.
+     *
+     * @param organisaatioCache välimuisti
+     */
+    @Transactional
+    public void replace(OrganisaatioCache organisaatioCache) {
+        this.lock();
+        Map<OrganisaatioClosure.OrganisaatioClosureId, OrganisaatioClosure> closure = this.closure(organisaatioCache,
+                organisaatioCache.getAllOrganisaatios().map(OrganisaatioPerustieto::getOid).collect(Collectors.toList()));
+        this.rewrite(closure, this.jdbcTemplate.query(SELECT_SQL, ROW_MAPPER));
+    }
+
+    /**
+     * Päivittää muuttuneiden organisaatioiden ja niiden aliorganisaatioiden yläorganisaatiot, koska siirretyn
+     * organisaation koko alipuun yläorganisaatiot muuttuvat.
+     *
+     * @param organisaatioCache muutokset sisältävä välimuisti
+     * @param muuttuneetOids muuttuneet organisaatiot
+     */
+    @Transactional
+    public void update(OrganisaatioCache organisaatioCache, Collection<String> muuttuneetOids) {
+        Set<String> oids = new LinkedHashSet<>();
+        muuttuneetOids.forEach(oid -> oids.addAll(organisaatioCache.collectWithChildren(oid, organisaatio -> true, ArrayList::new)));
+        this.lock();
+        List<OrganisaatioClosure> current = new ArrayList<>();
+        for (List<String> batch : Lists.partition(new ArrayList<>(oids), BATCH_SIZE)) {
+            current.addAll(this.jdbcTemplate.query(SELECT_SQL + " WHERE descendant_oid IN ("
+                    + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")", ROW_MAPPER, batch.toArray()));
+        }
+        this.rewrite(this.closure(organisaatioCache, oids), current);
+    }
+
+    // lukko vapautuu transaktion päättyessä, jolloin seuraava kirjoittaja näkee tämän kirjoituksen tuloksen
+    private void lock() {
+        this.jdbcTemplate.query(LOCK_SQL, (ResultSetExtractor<Void>) rs -> null, LOCK_KEY);
+    }
+
+    private Map<OrganisaatioClosure.OrganisaatioClosureId, OrganisaatioClosure> closure(OrganisaatioCache organisaatioCache,
+                                                                                        Collection<String> oids) {
+        Map<OrganisaatioClosure.OrganisaatioClosureId, OrganisaatioClosure> closure = new LinkedHashMap<>();
+        for (String oid : oids) {
+            OrganisaatioStatus status = organisaatioCache.getByOid(oid)
+                    .map(OrganisaatioPerustieto::getStatus)
+                    .orElse(null);
+            // organisaatio itse ensin, juuri viimeisenä
+            List<String> ancestorOids = organisaatioCache.collectWithParents(oid, organisaatio -> true, ArrayList::new);
+            for (int depth = 0; depth < ancestorOids.size(); depth++) {
+                OrganisaatioClosure row = new OrganisaatioClosure(ancestorOids.get(depth), oid, depth, status);
+                closure.put(id(row), row);
+            }
+        }
+        return closure;
+    }
+
+    // kirjoitetaan vain erot nykyiseen sisältöön: poistuneet rivit poistetaan, muuttuneet päivitetään ja uudet lisätään
+    private void rewrite(Map<OrganisaatioClosure.OrganisaatioClosureId, OrganisaatioClosure> closure,
+                         List<OrganisaatioClosure> current) {
+        Map<OrganisaatioClosure.OrganisaatioClosureId, OrganisaatioClosure> inserts = new LinkedHashMap<>(closure);
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (OrganisaatioClosure row : current) {
+            OrganisaatioClosure target = inserts.remove(id(row));
+            if (target == null) {
+                deletes.add(new Object[]{row.getAncestorOid(), row.getDescendantOid()});
+            } else if (target.getDepth() != row.getDepth() || target.getStatus() != row.getStatus()) {
+                updates.add(new Object[]{target.getDepth(), name(target.getStatus()), target.getAncestorOid(), target.getDescendantOid()});
+            }
+        }
+        this.batchUpdate(DELETE_SQL, deletes);
+        this.batchUpdate(UPDATE_SQL, updates);
+        this.batchUpdate(INSERT_SQL, inserts.values().stream()
+                .map(row -> new Object[]{row.getAncestorOid(), row.getDescendantOid(), row.getDepth(), name(row.getStatus())})
+                .collect(Collectors.toList()));
+    }
+
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        Lists.partition(rows, BATCH_SIZE).forEach(batch -> this.jdbcTemplate.batchUpdate(sql, batch));
+    }
+
+    private static OrganisaatioClosure.OrganisaatioClosureId id(OrganisaatioClosure row) {
+        return new OrganisaatioClosure.OrganisaatioClosureId(row.getAncestorOid(), row.getDescendantOid());
+    }
+
+    private static String name(OrganisaatioStatus status) {
+        return status != null ? status.name() : null;
+    }
+
+}
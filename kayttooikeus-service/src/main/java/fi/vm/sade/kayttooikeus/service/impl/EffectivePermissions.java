@@ -0,0 +1,103 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import java.util.*;
+
+import static fi.vm.sade.kayttooikeus.service.impl.PermissionCheckerServiceImpl.ROLE_PREFIX;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Käyttäjän roolit jäsennettynä kerran hakuja varten. Organisaatioon sidotut roolit ovat muotoa
+ * ROLE_APP_&lt;palvelu&gt;_&lt;rooli&gt;_&lt;organisaatio&gt;, ja ne indeksoidaan avaimella &lt;palvelu&gt;_&lt;rooli&gt;.
+ * Koska organisaation oid ei sisällä alaviivaa, roolin jakaminen viimeisen alaviivan kohdalta vastaa
+ * täsmälleen roolin olemassaolon tarkistusta.
+ */
+public final class EffectivePermissions {
+
+    private final Set<String> roles;
+    private final Map<String, Set<String>> organisaatiotByPalveluRooli;
+    private final String rootOrganizationOid;
+    private final boolean miniAdmin;
+
+    private EffectivePermissions(Set<String> roles, Map<String, Set<String>> organisaatiotByPalveluRooli,
+                                 String rootOrganizationOid, boolean miniAdmin) {
+        this.roles = roles;
+        this.organisaatiotByPalveluRooli = organisaatiotByPalveluRooli;
+        this.rootOrganizationOid = rootOrganizationOid;
+        this.miniAdmin = miniAdmin;
+    }
+
+    /**
+     * @param roles käyttäjän roolit
+     * @param rootOrganizationOid juuriorganisaation oid
+     * @return jäsennetyt roolit
+     */
+    public static EffectivePermissions of(Collection<String> roles, String rootOrganizationOid) {
+        Map<String, Set<String>> organisaatiotByPalveluRooli = new HashMap<>();
+        boolean miniAdmin = false;
+        for (String role : roles) {
+            miniAdmin |= role.contains(rootOrganizationOid);
+            int separator = role.lastIndexOf('_');
+            if (role.startsWith(ROLE_PREFIX) && separator > ROLE_PREFIX.length()) {
+                organisaatiotByPalveluRooli
+                        .computeIfAbsent(role.substring(ROLE_PREFIX.length(), separator), palveluRooli -> new HashSet<>())
+                        .add(role.substring(separator + 1));
+            }
+        }
+        organisaatiotByPalveluRooli.replaceAll((palveluRooli, organisaatiot) -> unmodifiableSet(organisaatiot));
+        return new EffectivePermissions(unmodifiableSet(new HashSet<>(roles)), organisaatiotByPalveluRooli,
+                rootOrganizationOid, miniAdmin);
+    }
+
+    /**
+     * @param palveluRoolit roolit palveluittain
+     * @return roolit muodossa &lt;palvelu&gt;_&lt;rooli&gt;
+     */
+    public static Set<String> toPalveluRoolit(Map<String, List<String>> palveluRoolit) {
+        Set<String> keys = new HashSet<>();
+        palveluRoolit.forEach((palvelu, roolit) -> roolit.forEach(rooli -> keys.add(palvelu + "_" + rooli)));
+        return keys;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @param palveluRooli rooli muodossa &lt;palvelu&gt;_&lt;rooli&gt;
+     * @return organisaatiot, joihin käyttäjällä on rooli
+     */
+    public Set<String> getOrganisaatiot(String palveluRooli) {
+        return organisaatiotByPalveluRooli.getOrDefault(palveluRooli, emptySet());
+    }
+
+    /**
+     * @param palveluRoolit sallitut roolit muodossa &lt;palvelu&gt;_&lt;rooli&gt;
+     * @param organisaatioOids organisaatiot, joista johonkin roolin tulee olla
+     * @return onko käyttäjällä jokin sallituista rooleista johonkin annetuista organisaatioista
+     */
+    public boolean hasRoleForAnyOrganisation(Collection<String> palveluRoolit, Collection<String> organisaatioOids) {
+        for (String palveluRooli : palveluRoolit) {
+            Set<String> organisaatiot = getOrganisaatiot(palveluRooli);
+            if (!organisaatiot.isEmpty() && organisaatioOids.stream().anyMatch(organisaatiot::contains)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return onko käyttäjällä jokin rooli juuriorganisaatioon (OPH virkailija)
+     */
+    public boolean isMiniAdmin() {
+        return miniAdmin;
+    }
+
+    /**
+     * @return onko käyttäjällä jokin palvelun rooleista juuriorganisaatioon
+     */
+    public boolean isMiniAdmin(String palvelu, Collection<String> roolit) {
+        return roolit.stream().anyMatch(rooli -> getOrganisaatiot(palvelu + "_" + rooli).contains(rootOrganizationOid));
+    }
+
+}
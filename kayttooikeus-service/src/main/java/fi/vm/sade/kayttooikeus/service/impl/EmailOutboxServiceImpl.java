@@ -0,0 +1,216 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import fi.vm.sade.kayttooikeus.config.ExecutorConfiguration;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
+import fi.vm.sade.kayttooikeus.model.EmailOutbox;
+import fi.vm.sade.kayttooikeus.model.EmailOutboxStatus;
+import fi.vm.sade.kayttooikeus.repositories.EmailOutboxRepository;
+import fi.vm.sade.kayttooikeus.service.EmailOutboxService;
+import fi.vm.sade.kayttooikeus.service.external.RyhmasahkopostiClient;
+import fi.vm.sade.ryhmasahkoposti.api.dto.EmailData;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static fi.vm.sade.kayttooikeus.util.FunctionalUtils.io;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Lähetys on vähintään kerran -periaatteella: jos solmu kaatuu lähetyksen ja tilan tallennuksen välissä, viestit
+ * lähetetään seuraavalla ajolla uudelleen.
+ */
+@Slf4j
+@Service
+public class EmailOutboxServiceImpl implements EmailOutboxService {
+
+    private static final int ERROR_MAX_LENGTH = 255;
+    private static final String SENT = "sent";
+    private static final String RETRY = "retry";
+    private static final String FAILED = "failed";
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final RyhmasahkopostiClient ryhmasahkopostiClient;
+    private final ObjectMapper objectMapper;
+    private final KayttooikeusProperties kayttooikeusProperties;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService emailOutboxExecutor;
+
+    public EmailOutboxServiceImpl(EmailOutboxRepository emailOutboxRepository,
+                                  RyhmasahkopostiClient ryhmasahkopostiClient,
+                                  ObjectMapper objectMapper,
+                                  KayttooikeusProperties kayttooikeusProperties,
+                                  MeterRegistry meterRegistry,
+                                  @Qualifier(ExecutorConfiguration.EMAIL_OUTBOX_EXECUTOR) ExecutorService emailOutboxExecutor) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.ryhmasahkopostiClient = ryhmasahkopostiClient;
+        this.objectMapper = objectMapper;
+        this.kayttooikeusProperties = kayttooikeusProperties;
+        this.meterRegistry = meterRegistry;
+        this.emailOutboxExecutor = emailOutboxExecutor;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(EmailData emailData) {
+        LocalDateTime now = LocalDateTime.now();
+        emailOutboxRepository.save(EmailOutbox.builder()
+                .templateName(emailData.getEmail().getTemplateName())
+                .languageCode(emailData.getEmail().getLanguageCode())
+                .payload(io(() -> objectMapper.writeValueAsString(emailData)).get())
+                .status(EmailOutboxStatus.PENDING)
+                .created(now)
+                .nextAttempt(now)
+                .build());
+    }
+
+    @Override
+    public int dispatch() {
+        KayttooikeusProperties.EmailOutbox properties = kayttooikeusProperties.getEmailOutbox();
+        List<EmailOutbox> pending = emailOutboxRepository.findByStatusAndNextAttemptLessThanEqualOrderById(
+                EmailOutboxStatus.PENDING, LocalDateTime.now(), PageRequest.of(0, properties.getPageSize()));
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        Map<EmailOutbox, EmailData> emailDataByRow = new LinkedHashMap<>();
+        for (EmailOutbox row : pending) {
+            try {
+                emailDataByRow.put(row, objectMapper.readValue(row.getPayload(), EmailData.class));
+            } catch (IOException e) {
+                // virheellistä viestiä ei kannata yrittää uudelleen
+                log.error("Invalid email outbox payload id={}", row.getId(), e);
+                failed(row, e.getMessage());
+            }
+        }
+        List<List<EmailOutbox>> batches = emailDataByRow.keySet().stream()
+                .collect(groupingBy(row -> batchKey(row, emailDataByRow.get(row)), LinkedHashMap::new, toList()))
+                .values().stream()
+                .flatMap(rows -> Lists.partition(rows, properties.getBatchSize()).stream())
+                .collect(toList());
+
+        if (batches.isEmpty()) {
+            // sivun kaikki viestit olivat virheellisiä
+            emailOutboxRepository.saveAll(pending);
+            return pending.size();
+        }
+
+        List<Future<String>> futures = batches.stream()
+                .map(rows -> emailOutboxExecutor.submit(() -> ryhmasahkopostiClient.sendRyhmasahkoposti(merge(rows, emailDataByRow))))
+                .collect(toList());
+        int handled = 0;
+        try {
+            for (; handled < batches.size(); handled++) {
+                await(futures.get(handled));
+                complete(batches.get(handled), futures.get(handled));
+            }
+        } catch (InterruptedException e) {
+            // valmiit lähetykset tallennetaan, keskeneräiset perutaan ja jäävät odottamaan seuraavaa ajoa
+            Thread.currentThread().interrupt();
+            for (int i = handled; i < batches.size(); i++) {
+                if (!futures.get(i).cancel(true)) {
+                    complete(batches.get(i), futures.get(i));
+                }
+            }
+        } finally {
+            emailOutboxRepository.saveAll(pending);
+        }
+        return pending.size();
+    }
+
+    @Override
+    public int deleteSent() {
+        LocalDateTime before = LocalDateTime.now()
+                .minus(Duration.ofMillis(kayttooikeusProperties.getEmailOutbox().getRetention()));
+        return emailOutboxRepository.deleteByStatusAndSentBefore(EmailOutboxStatus.SENT, before);
+    }
+
+    private static void await(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            // epäonnistuminen käsitellään complete-metodissa
+        }
+    }
+
+    private void complete(List<EmailOutbox> rows, Future<String> future) {
+        try {
+            String response = Futures.getDone(future);
+            rows.forEach(row -> sent(row, response));
+        } catch (ExecutionException e) {
+            log.warn("Failed to send {} outbox emails with template {}", rows.size(), rows.get(0).getTemplateName(), e.getCause());
+            rows.forEach(row -> retry(row, String.valueOf(e.getCause().getMessage())));
+        }
+    }
+
+    private static List<Object> batchKey(EmailOutbox row, EmailData emailData) {
+        // yhteiset korvaukset koskevat koko viestiä, joten sellaiset viestit lähetetään erikseen
+        boolean yhteisetKorvaukset = emailData.getReplacements() != null && !emailData.getReplacements().isEmpty();
+        return Arrays.asList(row.getTemplateName(), row.getLanguageCode(), yhteisetKorvaukset ? row.getId() : null);
+    }
+
+    private static EmailData merge(List<EmailOutbox> rows, Map<EmailOutbox, EmailData> emailDataByRow) {
+        if (rows.size() == 1) {
+            return emailDataByRow.get(rows.get(0));
+        }
+        return new EmailData(rows.stream()
+                .flatMap(row -> emailDataByRow.get(row).getRecipient().stream())
+                .collect(toList()), emailDataByRow.get(rows.get(0)).getEmail());
+    }
+
+    private void sent(EmailOutbox row, String response) {
+        row.setAttempts(row.getAttempts() + 1);
+        row.setStatus(EmailOutboxStatus.SENT);
+        row.setSent(LocalDateTime.now());
+        row.setResponse(truncate(response));
+        row.setError(null);
+        count(SENT);
+    }
+
+    private void retry(EmailOutbox row, String error) {
+        KayttooikeusProperties.EmailOutbox properties = kayttooikeusProperties.getEmailOutbox();
+        int attempts = row.getAttempts() + 1;
+        if (attempts >= properties.getMaxAttempts()) {
+            log.error("Giving up email outbox id={} after {} attempts: {}", row.getId(), attempts, error);
+            failed(row, error);
+            return;
+        }
+        // eksponentiaalinen odotus: initialBackoff, 2 * initialBackoff, 4 * initialBackoff, ... maxBackoff
+        long backoff = Math.min(properties.getInitialBackoff() << Math.min(attempts - 1, 30), properties.getMaxBackoff());
+        row.setAttempts(attempts);
+        row.setNextAttempt(LocalDateTime.now().plus(Duration.ofMillis(backoff)));
+        row.setError(truncate(error));
+        count(RETRY);
+    }
+
+    private void failed(EmailOutbox row, String error) {
+        row.setAttempts(row.getAttempts() + 1);
+        row.setStatus(EmailOutboxStatus.FAILED);
+        row.setError(truncate(error));
+        count(FAILED);
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("kayttooikeus.email.outbox", "result", result).increment();
+    }
+
+    private static String truncate(String value) {
+        return value != null && value.length() > ERROR_MAX_LENGTH ? value.substring(0, ERROR_MAX_LENGTH) : value;
+    }
+
+}
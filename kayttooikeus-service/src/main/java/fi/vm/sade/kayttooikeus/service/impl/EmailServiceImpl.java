@@ -1,5 +1,6 @@
 package fi.vm.sade.kayttooikeus.service.impl;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import fi.vm.sade.kayttooikeus.config.OrikaBeanMapper;
 import fi.vm.sade.kayttooikeus.dto.*;
@@ -9,8 +10,10 @@ import fi.vm.sade.kayttooikeus.model.KayttoOikeusRyhma;
 import fi.vm.sade.kayttooikeus.model.Kutsu;
 import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRyhmaRepository;
 import fi.vm.sade.kayttooikeus.repositories.dto.ExpiringKayttoOikeusDto;
+import fi.vm.sade.kayttooikeus.service.EmailOutboxService;
 import fi.vm.sade.kayttooikeus.service.EmailService;
 import fi.vm.sade.kayttooikeus.service.exception.NotFoundException;
+import fi.vm.sade.kayttooikeus.service.dto.HenkiloYhteystiedotDto;
 import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import fi.vm.sade.kayttooikeus.service.external.RyhmasahkopostiClient;
@@ -19,7 +22,7 @@ import fi.vm.sade.kayttooikeus.util.LocalisationUtils;
 import fi.vm.sade.kayttooikeus.util.UserDetailsUtil;
 import fi.vm.sade.kayttooikeus.util.YhteystietoUtil;
 import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloDto;
-import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloPerustietoDto;
+import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloHakuCriteria;
 import fi.vm.sade.properties.OphProperties;
 import fi.vm.sade.ryhmasahkoposti.api.dto.EmailData;
 import fi.vm.sade.ryhmasahkoposti.api.dto.EmailMessage;
@@ -33,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Date;
@@ -40,7 +44,7 @@ import java.text.DateFormat;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.function.Function;
+import java.util.function.BiFunction;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
@@ -64,11 +68,14 @@ public class EmailServiceImpl implements EmailService {
     private static final String ANOMUS_KASITELTY_EMAIL_REPLACEMENT_LINKKI = "linkki";
     private static final String KAYTTOOIKEUSANOMUSILMOITUS_EMAIL_REPLACEMENT_LINKKI = "linkki";
     private static final String CALLING_PROCESS = "kayttooikeus";
+    // oppijanumerorekisteristä kerralla haettavien ja yhteen ryhmäsähköpostiin koottavien henkilöiden enimmäismäärä
+    private static final int HENKILO_BATCH_SIZE = 500;
 
     private final String expirationReminderPersonUrl;
 
     private final OppijanumerorekisteriClient oppijanumerorekisteriClient;
     private final RyhmasahkopostiClient ryhmasahkopostiClient;
+    private final EmailOutboxService emailOutboxService;
     private final OrganisaatioClient organisaatioClient;
 
     private final KayttoOikeusRyhmaRepository kayttoOikeusRyhmaRepository;
@@ -83,7 +90,8 @@ public class EmailServiceImpl implements EmailService {
                             KayttoOikeusRyhmaRepository kayttoOikeusRyhmaRepository,
                             OrikaBeanMapper mapper,
                             OphProperties urlProperties,
-                            OrganisaatioClient organisaatioClient) {
+                            OrganisaatioClient organisaatioClient,
+                            EmailOutboxService emailOutboxService) {
         this.oppijanumerorekisteriClient = oppijanumerorekisteriClient;
         this.ryhmasahkopostiClient = ryhmasahkopostiClient;
         this.expirationReminderPersonUrl = ophProperties.url("henkilo-ui.omattiedot");
@@ -91,6 +99,7 @@ public class EmailServiceImpl implements EmailService {
         this.mapper = mapper;
         this.urlProperties = urlProperties;
         this.organisaatioClient = organisaatioClient;
+        this.emailOutboxService = emailOutboxService;
     }
 
     @Override
@@ -147,40 +156,21 @@ public class EmailServiceImpl implements EmailService {
     }
 
     @Override
-    @Transactional
-    public void sendExpirationReminder(String henkiloOid, List<ExpiringKayttoOikeusDto> tapahtumas) {
-        // Not grouped by language code since might change to one TX / receiver in the future.
-
-        HenkiloPerustietoDto henkilonPerustiedot = oppijanumerorekisteriClient.getHenkilonPerustiedot(henkiloOid)
-                .orElseThrow(() -> new NotFoundException("Henkilö not found by henkiloOid=" + henkiloOid));
-        String languageCode = UserDetailsUtil.getLanguageCode(henkilonPerustiedot, "fi", "sv");
-
-        EmailData email = new EmailData();
-        email.setEmail(this.generateEmailMessage(KAYTTOOIKEUSMUISTUTUS_EMAIL_TEMPLATE_NAME, languageCode));
-
-        getEmailRecipient(henkiloOid, emailAddress -> henkilo -> getEmailRecipient(henkiloOid, languageCode, tapahtumas, emailAddress, henkilo)).ifPresent(recipient -> {
-            email.setRecipient(singletonList(recipient));
-            ryhmasahkopostiClient.sendRyhmasahkoposti(email);
-        });
-    }
-
-    private Optional<EmailRecipient> getEmailRecipient(String henkiloOid, Function<String, Function<HenkiloDto, EmailRecipient>> emailAddressMapper) {
-        HenkiloDto henkilo = oppijanumerorekisteriClient.getHenkiloByOid(henkiloOid);
-        Optional<String> emailAddress = YhteystietoUtil.getWorkEmail(henkilo.getYhteystiedotRyhma());
-        return emailAddress
-                .map(emailAddressMapper)
-                .map(recipientMapper -> recipientMapper.apply(henkilo));
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Set<String> sendExpirationReminders(Map<String, List<ExpiringKayttoOikeusDto>> tapahtumasByHenkilo) {
+        return sendToWorkEmails(KAYTTOOIKEUSMUISTUTUS_EMAIL_TEMPLATE_NAME, tapahtumasByHenkilo.keySet(), (henkilo, email) ->
+                createExpirationReminderRecipient(henkilo, email, tapahtumasByHenkilo.get(henkilo.getOidHenkilo())));
     }
 
-
-    private EmailRecipient getEmailRecipient(String henkiloOid, String langugeCode, List<ExpiringKayttoOikeusDto> kayttoOikeudet, String email, HenkiloDto henkilo) {
+    private EmailRecipient createExpirationReminderRecipient(HenkiloYhteystiedotDto henkilo, String email, List<ExpiringKayttoOikeusDto> kayttoOikeudet) {
+        String languageCode = UserDetailsUtil.getLanguageCode(henkilo, "fi", "sv");
         List<ReportedRecipientReplacementDTO> replacements = new ArrayList<>();
         replacements.add(new ReportedRecipientReplacementDTO("vastaanottaja", mapper.map(henkilo, SahkopostiHenkiloDto.class)));
-        replacements.add(new ReportedRecipientReplacementDTO("kayttooikeusryhmat", getExpirationsText(kayttoOikeudet, langugeCode)));
+        replacements.add(new ReportedRecipientReplacementDTO("kayttooikeusryhmat", getExpirationsText(kayttoOikeudet, languageCode)));
         replacements.add(new ReportedRecipientReplacementDTO("linkki", expirationReminderPersonUrl));
 
-        EmailRecipient recipient = new EmailRecipient(henkiloOid, email);
-        recipient.setLanguageCode(langugeCode);
+        EmailRecipient recipient = new EmailRecipient(henkilo.getOidHenkilo(), email);
+        recipient.setLanguageCode(languageCode);
         recipient.setRecipientReplacements(replacements);
 
         return recipient;
@@ -197,17 +187,12 @@ public class EmailServiceImpl implements EmailService {
     }
 
     @Override
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void sendNewRequisitionNotificationEmails(Set<String> henkiloOids) {
-        henkiloOids.stream()
-                .map(oid -> getEmailRecipient(oid, emailAddress -> henkilo -> createRecipient(henkilo, emailAddress)))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(groupingBy(EmailRecipient::getLanguageCode))
-                .forEach(this::sendNewRequisitionNotificationEmail);
+        sendToWorkEmails(KAYTTOOIKEUSANOMUSILMOITUS_EMAIL_TEMPLATE_NAME, henkiloOids, this::createRecipient);
     }
 
-    private EmailRecipient createRecipient(HenkiloDto henkilo, String sahkoposti) {
+    private EmailRecipient createRecipient(HenkiloYhteystiedotDto henkilo, String sahkoposti) {
         String kieliKoodi = UserDetailsUtil.getLanguageCode(henkilo, "fi", "sv");
         EmailRecipient recipient = new EmailRecipient(henkilo.getOidHenkilo(), sahkoposti);
         recipient.setLanguageCode(kieliKoodi);
@@ -219,11 +204,49 @@ public class EmailServiceImpl implements EmailService {
         return recipient;
     }
 
-    private void sendNewRequisitionNotificationEmail(String kieliKoodi, List<EmailRecipient> recipients) {
-        EmailData data = new EmailData();
-        data.setEmail(generateEmailMessage(KAYTTOOIKEUSANOMUSILMOITUS_EMAIL_TEMPLATE_NAME, kieliKoodi));
-        data.setRecipient(recipients);
-        ryhmasahkopostiClient.sendRyhmasahkoposti(data);
+    /**
+     * Lähettää viestin henkilöiden työsähköpostiosoitteisiin. Yhteystiedot haetaan oppijanumerorekisteristä
+     * {@link #HENKILO_BATCH_SIZE} henkilön erissä ja kunkin erän vastaanottajat lähetetään kielittäin yhtenä
+     * ryhmäsähköpostina. Epäonnistunut erä kirjataan lokiin ja seuraavia jatketaan.
+     *
+     * @param templateName viestipohja
+     * @param henkiloOids vastaanottajat
+     * @param recipientMapper vastaanottajan muodostus henkilön yhteystiedoista ja työsähköpostiosoitteesta
+     * @return henkilöt, joille viesti lähetettiin
+     */
+    private Set<String> sendToWorkEmails(String templateName, Collection<String> henkiloOids,
+                                         BiFunction<HenkiloYhteystiedotDto, String, EmailRecipient> recipientMapper) {
+        Set<String> lahetetyt = new LinkedHashSet<>();
+        for (List<String> chunk : Iterables.partition(henkiloOids, HENKILO_BATCH_SIZE)) {
+            Set<String> oids = new LinkedHashSet<>(chunk);
+            Map<String, List<EmailRecipient>> recipientsByLanguage;
+            try {
+                recipientsByLanguage = listYhteystiedot(oids).stream()
+                        .filter(henkilo -> oids.contains(henkilo.getOidHenkilo()))
+                        .flatMap(henkilo -> YhteystietoUtil.getWorkEmail(henkilo.getYhteystiedotRyhma())
+                                .map(email -> recipientMapper.apply(henkilo, email)).stream())
+                        .collect(groupingBy(EmailRecipient::getLanguageCode));
+            } catch (Exception e) {
+                logger.error("Failed to resolve contact information for {} recipients of {}", oids.size(), templateName, e);
+                continue;
+            }
+            recipientsByLanguage.forEach((languageCode, recipients) -> {
+                try {
+                    ryhmasahkopostiClient.sendRyhmasahkoposti(new EmailData(recipients, generateEmailMessage(templateName, languageCode)));
+                    recipients.forEach(recipient -> lahetetyt.add(recipient.getOid()));
+                } catch (Exception e) {
+                    logger.error("Failed to send {} to henkiloOids={}", templateName,
+                            recipients.stream().map(EmailRecipient::getOid).collect(joining(", ")), e);
+                }
+            });
+        }
+        return lahetetyt;
+    }
+
+    private Collection<HenkiloYhteystiedotDto> listYhteystiedot(Set<String> henkiloOids) {
+        HenkiloHakuCriteria criteria = new HenkiloHakuCriteria();
+        criteria.setHenkiloOids(henkiloOids);
+        return oppijanumerorekisteriClient.listYhteystiedot(criteria);
     }
 
     public void sendInvitationEmail(Kutsu kutsu) {
@@ -273,9 +296,8 @@ public class EmailServiceImpl implements EmailService {
         ));
         emailData.setRecipient(singletonList(recipient));
 
-        logger.info("Sending invitation email to {}", kutsu.getSahkoposti());
-        String response = this.ryhmasahkopostiClient.sendRyhmasahkoposti(emailData);
-        logger.info("Sent invitation email to {}, ryhmasahkoposti-result: {}", kutsu.getSahkoposti(), response);
+        this.emailOutboxService.enqueue(emailData);
+        logger.info("Queued invitation email to {}", kutsu.getSahkoposti());
     }
 
     private String resolveInviterName(Kutsu kutsu) {
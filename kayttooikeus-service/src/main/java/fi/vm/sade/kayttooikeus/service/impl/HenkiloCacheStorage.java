@@ -0,0 +1,64 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloHakuPerustietoDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static fi.vm.sade.kayttooikeus.service.impl.HenkiloCacheServiceImpl.trim;
+
+/**
+ * Kirjoittaa oppijanumerorekisterin henkilötiedot henkilo-taulun välimuistisarakkeisiin eräajona ohi
+ * JPA:n persistenssikontekstin, jotta päivitettäviä henkilöitä ei ladata entiteeteiksi.
+ */
+@Component
+@RequiredArgsConstructor
+public class HenkiloCacheStorage {
+
+    // henkilöä ei välttämättä vielä ole, koska käyttöoikeuspalvelulla on oma kanta. Puuttuvat lisätään vasta
+    // päivityksen jälkeen, jotta sekvenssistä kuluu arvo vain lisättäville riveille.
+    private static final String UPDATE_SQL = "UPDATE henkilo SET etunimet_cached = ?, sukunimi_cached = ?, "
+            + "kutsumanimi_cached = ?, duplicate_cached = ?, passivoitu_cached = ?, hetu_cached = ? WHERE oidhenkilo = ?";
+    private static final String INSERT_SQL = "INSERT INTO henkilo (id, oidhenkilo, etunimet_cached, sukunimi_cached, "
+            + "kutsumanimi_cached, duplicate_cached, passivoitu_cached, hetu_cached) "
+            + "VALUES (nextval('hibernate_sequence'), ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Päivittää olemassa olevat henkilöt yhdellä eräajolla ja lisää puuttuvat toisella.
+     *
+     * @param henkilot henkilöt, oidit yksilöllisiä
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void upsert(Collection<HenkiloHakuPerustietoDto> henkilot) {
+        List<Object[]> rows = new ArrayList<>(henkilot.size());
+        henkilot.forEach(henkilo -> rows.add(new Object[]{
+                henkilo.getOidHenkilo(),
+                trim(henkilo.getEtunimet()),
+                trim(henkilo.getSukunimi()),
+                trim(henkilo.getKutsumanimi()),
+                henkilo.getDuplicate(),
+                henkilo.getPassivoitu(),
+                trim(henkilo.getHetu())}));
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        rows.forEach(row -> updates.add(new Object[]{row[1], row[2], row[3], row[4], row[5], row[6], row[0]}));
+        int[] updated = this.jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                inserts.add(rows.get(i));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            this.jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+        }
+    }
+
+}
@@ -13,6 +13,7 @@ import fi.vm.sade.kayttooikeus.model.*;
 import fi.vm.sade.kayttooikeus.repositories.*;
 import fi.vm.sade.kayttooikeus.repositories.criteria.KayttooikeusCriteria;
 import fi.vm.sade.kayttooikeus.repositories.criteria.OrganisaatioHenkiloCriteria;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuPageDto;
 import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuResultDto;
 import fi.vm.sade.kayttooikeus.service.HenkiloService;
 import fi.vm.sade.kayttooikeus.service.KayttoOikeusService;
@@ -127,7 +128,7 @@ public class HenkiloServiceImpl implements HenkiloService {
                                                         Long offset,
                                                         OrderByHenkilohaku orderBy) {
         return new HenkilohakuBuilder(this.henkiloHibernateRepository, this.mapper, this.permissionCheckerService,
-                this.henkiloDataRepository, this.organisaatioClient, this.organisaatioHenkiloRepository, this.commonProperties)
+                this.organisaatioClient, this.organisaatioHenkiloRepository, this.commonProperties)
                 .builder(henkilohakuCriteriaDto)
                 .exclusion()
                 .search(offset, orderBy)
@@ -137,12 +138,26 @@ public class HenkiloServiceImpl implements HenkiloService {
 
     @Override
     @Transactional(readOnly = true)
-    public Long henkilohakuCount(HenkilohakuCriteriaDto henkiloHakuCriteriaDto) {
+    public HenkilohakuPageDto henkilohakuPage(HenkilohakuCriteriaDto henkilohakuCriteriaDto,
+                                              String cursor,
+                                              OrderByHenkilohaku orderBy) {
         return new HenkilohakuBuilder(this.henkiloHibernateRepository, this.mapper, this.permissionCheckerService,
-                this.henkiloDataRepository, this.organisaatioClient, this.organisaatioHenkiloRepository, this.commonProperties)
+                this.organisaatioClient, this.organisaatioHenkiloRepository, this.commonProperties)
+                .builder(henkilohakuCriteriaDto)
+                .exclusion()
+                .searchPage(cursor, orderBy)
+                .enrichment()
+                .buildPage();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Long henkilohakuCount(HenkilohakuCriteriaDto henkiloHakuCriteriaDto, Long max) {
+        return new HenkilohakuBuilder(this.henkiloHibernateRepository, this.mapper, this.permissionCheckerService,
+                this.organisaatioClient, this.organisaatioHenkiloRepository, this.commonProperties)
                 .builder(henkiloHakuCriteriaDto)
                 .exclusion()
-                .searchCount()
+                .searchCount(max)
                 .buildHakuResultCount();
     }
 
@@ -0,0 +1,131 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import fi.vm.sade.kayttooikeus.config.properties.CommonProperties;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
+import fi.vm.sade.kayttooikeus.dto.KayttoOikeusRyhmaDto;
+import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRyhmaRepository;
+import fi.vm.sade.kayttooikeus.repositories.OrganisaatioViiteRepository;
+import fi.vm.sade.kayttooikeus.service.KayttoOikeusRyhmaCatalogue;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import fi.vm.sade.kayttooikeus.util.OrganisaatioViiteUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toSet;
+
+@Component
+public class KayttoOikeusRyhmaCatalogueImpl implements KayttoOikeusRyhmaCatalogue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KayttoOikeusRyhmaCatalogueImpl.class);
+
+    private final KayttoOikeusRyhmaRepository kayttoOikeusRyhmaRepository;
+    private final OrganisaatioViiteRepository organisaatioViiteRepository;
+    private final CommonProperties commonProperties;
+
+    // avaimena versio, jota kasvatetaan tyhjennettäessä, jotta ennen tyhjennystä aloitettu lataus ei jää käyttöön
+    private final Cache<Long, Catalogue> cache;
+    private final AtomicLong version = new AtomicLong();
+
+    public KayttoOikeusRyhmaCatalogueImpl(KayttoOikeusRyhmaRepository kayttoOikeusRyhmaRepository,
+                                          OrganisaatioViiteRepository organisaatioViiteRepository,
+                                          CommonProperties commonProperties,
+                                          KayttooikeusProperties kayttooikeusProperties,
+                                          MeterRegistry meterRegistry) {
+        this.kayttoOikeusRyhmaRepository = kayttoOikeusRyhmaRepository;
+        this.organisaatioViiteRepository = organisaatioViiteRepository;
+        this.commonProperties = commonProperties;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(kayttooikeusProperties.getKayttoOikeusRyhmaCatalogue().getTtl(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, this.cache, "kayttoOikeusRyhmaCatalogue");
+    }
+
+    @Override
+    public Set<Long> getMyonnettavat(String organisaatioOid, List<OrganisaatioPerustieto> organisaatiot) {
+        Catalogue catalogue = getCatalogue();
+        if (organisaatioOid.equals(commonProperties.getRootOrganizationOid())) {
+            return catalogue.ids;
+        }
+        Set<Long> myonnettavat = new HashSet<>();
+        if (organisaatioOid.startsWith(commonProperties.getGroupOrganizationId())) {
+            myonnettavat.addAll(catalogue.ryhmaRestrictionIds);
+        }
+        OrganisaatioViiteUtil.getOrganisaatioViitteet(organisaatioOid, organisaatiot, commonProperties.getOrganisaatioRyhmaPrefix())
+                .forEach(viite -> myonnettavat.addAll(catalogue.idsByViite.getOrDefault(viite, Collections.emptySet())));
+        return myonnettavat;
+    }
+
+    private Catalogue getCatalogue() {
+        try {
+            return cache.get(version.get(), this::load);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load kayttooikeusryhma catalogue", e.getCause());
+        }
+    }
+
+    private Catalogue load() {
+        List<KayttoOikeusRyhmaDto> ryhmat = kayttoOikeusRyhmaRepository.listAll(false);
+        Set<Long> ids = ryhmat.stream().map(KayttoOikeusRyhmaDto::getId).collect(toSet());
+        Set<Long> ryhmaRestrictionIds = ryhmat.stream()
+                .filter(KayttoOikeusRyhmaDto::isRyhmaRestriction)
+                .map(KayttoOikeusRyhmaDto::getId)
+                .collect(toSet());
+        Map<String, Set<Long>> idsByViite = new HashMap<>();
+        if (!ids.isEmpty()) {
+            organisaatioViiteRepository.findByKayttoOikeusRyhmaIds(ids).forEach(viite -> idsByViite
+                    .computeIfAbsent(viite.getOrganisaatioTyyppi(), key -> new HashSet<>())
+                    .add(viite.getKayttoOikeusRyhmaId()));
+        }
+        LOGGER.info("Loaded kayttooikeusryhma catalogue: {} groups, {} distinct organisation limitations", ids.size(), idsByViite.size());
+        return new Catalogue(ids, ryhmaRestrictionIds, idsByViite);
+    }
+
+    @Override
+    public void invalidate() {
+        version.incrementAndGet();
+        cache.invalidateAll();
+        // transaktion aikana ladattu luettelo voi sisältää vielä vanhat tiedot
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                    cache.invalidateAll();
+                }
+            });
+        }
+    }
+
+    private static final class Catalogue {
+        private final Set<Long> ids;
+        private final Set<Long> ryhmaRestrictionIds;
+        // organisaatioviite -> käyttöoikeusryhmät, joilla on kyseinen viite
+        private final Map<String, Set<Long>> idsByViite;
+
+        private Catalogue(Set<Long> ids, Set<Long> ryhmaRestrictionIds, Map<String, Set<Long>> idsByViite) {
+            this.ids = Collections.unmodifiableSet(ids);
+            this.ryhmaRestrictionIds = ryhmaRestrictionIds;
+            this.idsByViite = idsByViite;
+        }
+    }
+
+}
@@ -33,7 +33,6 @@ import java.util.stream.Collectors;
 
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
 @Service
@@ -61,6 +60,8 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
     private final MyontooikeusService myontooikeusService;
     private final TimeService timeService;
     private final MyonnettyKayttoOikeusService myonnettyKayttoOikeusService;
+    private final KayttajarooliProvider kayttajarooliProvider;
+    private final KayttoOikeusRyhmaCatalogue kayttoOikeusRyhmaCatalogue;
 
     @Override
     public KayttoOikeusDto findKayttoOikeusById(long kayttoOikeusId) {
@@ -124,8 +125,8 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
     @Override
     @Transactional(readOnly = true)
     public List<KayttoOikeusRyhmaDto> listPossibleRyhmasByOrganization(String organisaatioOid) {
-        return localizationService.localize(getRyhmasWithoutOrganizationLimitations(
-                organisaatioOid, findAllKayttoOikeusRyhmasAsDtos(false)));
+        return localizationService.localize(addOrganisaatioViitteesToRyhmas(
+                kayttoOikeusRyhmaRepository.findByIdList(getMyonnettavatRyhmaIds(organisaatioOid))));
     }
 
     @Override
@@ -258,6 +259,8 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
         kayttoOikeusRyhma.setMuokkaaja(UserDetailsUtil.getCurrentUserOid());
 
         kayttoOikeusRyhma = kayttoOikeusRyhmaRepository.save(kayttoOikeusRyhma);
+        localizationService.invalidateTexts();
+        kayttoOikeusRyhmaCatalogue.invalidate();
 
         // Organization limitation must be set only if the Organizatio OIDs are defined
         if (!isEmpty(uusiRyhma.getOrganisaatioTyypit())) {
@@ -318,6 +321,9 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
 
         kayttoOikeusRyhma.setMuokattu(timeService.getOffsetDateTimeNow());
         kayttoOikeusRyhma.setMuokkaaja(UserDetailsUtil.getCurrentUserOid());
+        kayttajarooliProvider.invalidateAll();
+        localizationService.invalidateTexts();
+        kayttoOikeusRyhmaCatalogue.invalidate();
     }
 
     @Override
@@ -330,6 +336,7 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
         Henkilo kasittelija = henkiloDataRepository.findByOidHenkilo(currentUser)
                 .orElseThrow(() -> new DataInconsistencyException("Henkilöä ei löydy käyttäjän OID:lla " + currentUser));
         kayttoOikeusRyhma.setPassivoitu(true);
+        kayttoOikeusRyhmaCatalogue.invalidate();
         List<MyonnettyKayttoOikeusRyhmaTapahtuma> kayttooikeudet = myonnettyKayttoOikeusRyhmaTapahtumaRepository.findByKayttoOikeusRyhmaId(id);
 
         MyonnettyKayttoOikeusService.DeleteDetails deleteDetails = new MyonnettyKayttoOikeusService.DeleteDetails(
@@ -356,6 +363,7 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
         KayttoOikeusRyhma kayttoOikeusRyhma = kayttoOikeusRyhmaRepository.findById(id).orElseThrow(()
                 -> new NotFoundException("kayttooikeusryhma not found"));
         kayttoOikeusRyhma.setPassivoitu(false);
+        kayttoOikeusRyhmaCatalogue.invalidate();
     }
 
     private void setKayttoOikeusRyhmas(KayttoOikeusRyhmaModifyDto ryhmaData, KayttoOikeusRyhma kayttoOikeusRyhma) {
@@ -419,6 +427,9 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
     }
 
     private List<KayttoOikeusRyhmaDto> addOrganisaatioViitteesToRyhmas(List<KayttoOikeusRyhmaDto> ryhmas){
+        if (ryhmas.isEmpty()) {
+            return ryhmas;
+        }
         Map<Long, KayttoOikeusRyhmaDto> byIds = ryhmas.stream()
                 .collect(Collectors.toMap(KayttoOikeusRyhmaDto::getId, Function.identity()));
 
@@ -434,20 +445,19 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
     }
 
     private List<KayttoOikeusRyhmaDto> getGrantableRyhmasWithoutOrgLimitations(String organisaatioOid, String myontajaOid) {
-        List<KayttoOikeusRyhmaDto> allRyhmas = this.permissionCheckerService.isCurrentUserAdmin()
-                ? kayttoOikeusRyhmaRepository.listAll(false) : getKayttooikeusryhmaByMyoontoikeus(organisaatioOid, myontajaOid);
-        return getRyhmasWithoutOrganizationLimitations(organisaatioOid,
-                addOrganisaatioViitteesToRyhmas(allRyhmas));
+        Set<Long> myonnettavat = getMyonnettavatRyhmaIds(organisaatioOid);
+        if (!this.permissionCheckerService.isCurrentUserAdmin()) {
+            myonnettavat = getKayttooikeusryhmaIdsByMyoontoikeus(organisaatioOid, myontajaOid, myonnettavat);
+        }
+        return addOrganisaatioViitteesToRyhmas(kayttoOikeusRyhmaRepository.findByIdList(myonnettavat));
     }
 
-    private List<KayttoOikeusRyhmaDto> getKayttooikeusryhmaByMyoontoikeus(String organisaatioOid, String myontajaOid) {
+    private Set<Long> getKayttooikeusryhmaIdsByMyoontoikeus(String organisaatioOid, String myontajaOid, Set<Long> myonnettavat) {
         Map<String, Set<Long>> myontooikeudet = myontooikeusService.getMyontooikeudet(myontajaOid,
                 MyontooikeusCriteria.oletus(), new OrganisaatioMyontoPredicate(false));
-        Set<Long> slaveIds = myontooikeudet.getOrDefault(organisaatioOid, Collections.emptySet());
-        if (slaveIds.isEmpty()) {
-            return Collections.emptyList();
-        }
-        return kayttoOikeusRyhmaRepository.findByIdList(slaveIds);
+        Set<Long> slaveIds = new HashSet<>(myontooikeudet.getOrDefault(organisaatioOid, Collections.emptySet()));
+        slaveIds.retainAll(myonnettavat);
+        return slaveIds;
     }
 
     private void checkAndInsertSlaveGroups(KayttoOikeusRyhmaModifyDto ryhmaData, KayttoOikeusRyhma koRyhma) {
@@ -483,30 +493,13 @@ public class KayttoOikeusServiceImpl implements KayttoOikeusService {
         return tg;
     }
 
-    private List<KayttoOikeusRyhmaDto> getRyhmasWithoutOrganizationLimitations(String organisaatioOid, List<KayttoOikeusRyhmaDto> allRyhmas) {
-        boolean isOphOrganisation = organisaatioOid.equals(commonProperties.getRootOrganizationOid());
-        List<OrganisaatioPerustieto> hakuTulos = organisaatioClient.listWithParentsAndChildren(organisaatioOid,
-                new OrganisaatioMyontoPredicate(permissionCheckerService.isCurrentUserAdmin()));
-        return allRyhmas.stream()
-                .filter(kayttoOikeusRyhma -> {
-
-                    if (organisaatioOid.startsWith(this.commonProperties.getGroupOrganizationId()) && kayttoOikeusRyhma.isRyhmaRestriction())  {
-                        return true;
-                    }
-
-                    if (isEmpty(kayttoOikeusRyhma.getOrganisaatioViite()) && !isOphOrganisation) {
-                        return false;
-                    }
-
-                    boolean noOrgLimits = !isEmpty(kayttoOikeusRyhma.getOrganisaatioViite())
-                            && !isOphOrganisation && !checkOrganizationLimitations(organisaatioOid, hakuTulos, kayttoOikeusRyhma);
-                    return !noOrgLimits;
-                }).collect(toList());
-    }
-
-    private boolean checkOrganizationLimitations(String organisaatioOid, List<OrganisaatioPerustieto> hakuTulos, KayttoOikeusRyhmaDto kayttoOikeusRyhma) {
-        Set<String> tyyppis = kayttoOikeusRyhma.getOrganisaatioViite().stream().map(OrganisaatioViiteDto::getOrganisaatioTyyppi).collect(toSet());
-        return permissionCheckerService.organisaatioLimitationCheck(organisaatioOid, hakuTulos, tyyppis);
+    // käyttöoikeusryhmät, joiden organisaatiorajoitteet sallivat myöntämisen organisaatioon
+    private Set<Long> getMyonnettavatRyhmaIds(String organisaatioOid) {
+        List<OrganisaatioPerustieto> organisaatiot = organisaatioOid.equals(commonProperties.getRootOrganizationOid())
+                ? Collections.emptyList()
+                : organisaatioClient.listWithParentsAndChildren(organisaatioOid,
+                        new OrganisaatioMyontoPredicate(permissionCheckerService.isCurrentUserAdmin()));
+        return kayttoOikeusRyhmaCatalogue.getMyonnettavat(organisaatioOid, organisaatiot);
     }
 
 }
@@ -62,6 +62,7 @@ public class KayttooikeusAnomusServiceImpl implements KayttooikeusAnomusService
     private final EmailService emailService;
     private final MyontooikeusService myontooikeusService;
     private final MyonnettyKayttoOikeusService myonnettyKayttoOikeusService;
+    private final KayttajarooliProvider kayttajarooliProvider;
 
     private final HaettuKayttooikeusryhmaValidator haettuKayttooikeusryhmaValidator;
     private final PermissionCheckerService permissionCheckerService;
@@ -126,9 +127,11 @@ public class KayttooikeusAnomusServiceImpl implements KayttooikeusAnomusService
     }
 
     private List<HaettuKayttooikeusryhmaDto> localizeKayttooikeusryhma(List<HaettuKayttooikeusryhmaDto> unlocalizedDtos) {
-        unlocalizedDtos
-                .forEach(haettuKayttooikeusryhmaDto -> haettuKayttooikeusryhmaDto
-                        .setKayttoOikeusRyhma(localizationService.localize(haettuKayttooikeusryhmaDto.getKayttoOikeusRyhma())));
+        // kaikki ryhmät kerralla, ei erikseen jokaiselle anomukselle
+        localizationService.localize(unlocalizedDtos.stream()
+                .map(HaettuKayttooikeusryhmaDto::getKayttoOikeusRyhma)
+                .filter(Objects::nonNull)
+                .collect(toList()));
         return unlocalizedDtos;
     }
 
@@ -320,7 +323,7 @@ public class KayttooikeusAnomusServiceImpl implements KayttooikeusAnomusService
                 .anottuLoppu(loppuPvm)
                 .anomuksenTilat(EnumSet.of(AnomuksenTila.ANOTTU))
                 .build();
-        List<Anomus> anomukset = anomusRepository.findBy(criteria.createEmailSendCondition(this.organisaatioClient));
+        List<Anomus> anomukset = anomusRepository.findBy(criteria.createEmailSendCondition());
         Collection<Henkilo> adminHyvaksyjat = this.henkiloDataRepository.findByAnomusilmoitusIsNotNull().collect(toSet());
         Set<String> hyvaksyjat = anomukset.stream()
                 .map(anomus -> this.getAnomuksenHyvaksyjat(anomus, adminHyvaksyjat))
@@ -419,6 +422,7 @@ public class KayttooikeusAnomusServiceImpl implements KayttooikeusAnomusService
                 myonnettyKayttoOikeusRyhmaTapahtuma.getId() == null
                         ? "Oikeuksien lisäys"
                         : "Oikeuksien päivitys");
+        this.kayttajarooliProvider.invalidateByKayttajaOid(anojaOid);
 
         return myonnettyKayttoOikeusRyhmaTapahtuma;
     }
@@ -16,7 +16,6 @@ import fi.vm.sade.kayttooikeus.service.exception.ForbiddenException;
 import fi.vm.sade.kayttooikeus.service.exception.NotFoundException;
 import fi.vm.sade.kayttooikeus.service.exception.ValidationException;
 import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
-import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import fi.vm.sade.kayttooikeus.service.validators.KutsujaValidator;
 import fi.vm.sade.kayttooikeus.util.KutsuHakuBuilder;
 import fi.vm.sade.kayttooikeus.util.YhteystietoUtil;
@@ -33,6 +32,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Period;
 import java.util.*;
+import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 
 import static fi.vm.sade.kayttooikeus.dto.KutsunTila.AVOIN;
@@ -58,7 +58,6 @@ public class KutsuServiceImpl implements KutsuService {
     private final PermissionCheckerService permissionCheckerService;
 
     private final OppijanumerorekisteriClient oppijanumerorekisteriClient;
-    private final OrganisaatioClient organisaatioClient;
 
     private final OrganisaatioHenkiloRepository organisaatioHenkiloRepository;
     private final MyonnettyKayttoOikeusRyhmaTapahtumaRepository myonnettyKayttoOikeusRyhmaTapahtumaRepository;
@@ -82,7 +81,6 @@ public class KutsuServiceImpl implements KutsuService {
                 this.kutsuRepository,
                 this.organisaatioHenkiloRepository,
                 this.mapper,
-                this.organisaatioClient,
                 kutsuCriteria)
                 .prepareByAuthority()
                 .doSearch(sortBy, direction, offset, amount)
@@ -195,11 +193,12 @@ public class KutsuServiceImpl implements KutsuService {
     private void kayttooikeusryhmaLimitationsAreValid(String kayttajaOid, Collection<KutsuCreateDto.KutsuOrganisaatioCreateDto> kutsuOrganisaatioDtos) {
         // The granting person's limitations must be checked always since there there shouldn't be a situation where the
         // the granting person doesn't have access rights limitations (except admin users who have full access)
+        BiPredicate<String, Long> myontoviiteLimitationCheck = this.permissionCheckerService
+                .getKayttooikeusMyontoviiteLimitationCheck(kayttajaOid, MyontooikeusCriteria.kutsu());
         kutsuOrganisaatioDtos.forEach(kutsuOrganisaatioDto -> kutsuOrganisaatioDto.getKayttoOikeusRyhmat()
                 .forEach(kayttoOikeusRyhmaDto -> {
-                    if (!this.permissionCheckerService.kayttooikeusMyontoviiteLimitationCheck(kayttajaOid,
-                            kutsuOrganisaatioDto.getOrganisaatioOid(), kayttoOikeusRyhmaDto.getId(),
-                            MyontooikeusCriteria.kutsu())) {
+                    if (!myontoviiteLimitationCheck.test(kutsuOrganisaatioDto.getOrganisaatioOid(),
+                            kayttoOikeusRyhmaDto.getId())) {
                         throw new ForbiddenException("User doesn't have access rights to grant this group for group "
                                 + kayttoOikeusRyhmaDto.getId());
                     }
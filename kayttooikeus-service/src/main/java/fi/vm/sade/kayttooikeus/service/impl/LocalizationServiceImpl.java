@@ -1,5 +1,8 @@
 package fi.vm.sade.kayttooikeus.service.impl;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.dto.LocalizableOrganisaatio;
 import fi.vm.sade.kayttooikeus.dto.TextGroupMapDto;
 import fi.vm.sade.kayttooikeus.repositories.TextGroupRepository;
@@ -8,13 +11,23 @@ import fi.vm.sade.kayttooikeus.dto.Localizable;
 import fi.vm.sade.kayttooikeus.dto.LocalizableDto;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import fi.vm.sade.kayttooikeus.util.UserDetailsUtil;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.groupingBy;
@@ -22,7 +35,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Service
-@RequiredArgsConstructor
 public class LocalizationServiceImpl implements LocalizationService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalizationServiceImpl.class);
@@ -30,6 +42,27 @@ public class LocalizationServiceImpl implements LocalizationService {
     private final TextGroupRepository textGroupRepository;
 
     private final OrganisaatioClient organisaatioClient;
+
+    // tekstiryhmän id -> kieli -> teksti, muuttumattomat arvot jaetaan kaikkien lokalisoitavien kesken
+    private final Cache<Long, Map<String, String>> textCache;
+
+    // kasvatetaan tyhjennettäessä, jotta ennen tyhjennystä aloitettu haku ei tallenna vanhoja tekstejä
+    private final AtomicLong textCacheVersion = new AtomicLong();
+
+    public LocalizationServiceImpl(TextGroupRepository textGroupRepository,
+                                   OrganisaatioClient organisaatioClient,
+                                   KayttooikeusProperties kayttooikeusProperties,
+                                   MeterRegistry meterRegistry) {
+        this.textGroupRepository = textGroupRepository;
+        this.organisaatioClient = organisaatioClient;
+        KayttooikeusProperties.TextGroupCache cacheProperties = kayttooikeusProperties.getTextGroupCache();
+        this.textCache = CacheBuilder.newBuilder()
+                .maximumSize(cacheProperties.getMaximumSize())
+                .expireAfterWrite(cacheProperties.getTtl(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, this.textCache, "textGroupCache");
+    }
     
     @Override
     @Transactional(readOnly = true)
@@ -42,10 +75,35 @@ public class LocalizationServiceImpl implements LocalizationService {
         Map<Long,List<Localizable>> byId = localizable
                 .filter(v -> v != null && v.getId() != null).collect(groupingBy(Localizable::getId));
         if (!byId.isEmpty()) {
-            textGroupRepository.findTexts(byId.keySet())
-                .forEach(fetched -> byId.get(fetched.getTextGroupId())
-                    .forEach(text -> text.put(fetched.getLang(), fetched.getText())));
+            Map<Long, Map<String, String>> texts = getTexts(byId.keySet());
+            byId.forEach((id, localizables) -> texts.getOrDefault(id, Collections.emptyMap())
+                    .forEach((lang, text) -> localizables.forEach(target -> target.put(lang, text))));
+        }
+    }
+
+    private Map<Long, Map<String, String>> getTexts(Set<Long> ids) {
+        Map<Long, Map<String, String>> texts = new HashMap<>(textCache.getAllPresent(ids));
+        if (texts.size() < ids.size()) {
+            Set<Long> missing = new HashSet<>(ids);
+            missing.removeAll(texts.keySet());
+            long version = textCacheVersion.get();
+            Map<Long, Map<String, String>> fetched = fetchTexts(missing);
+            if (version == textCacheVersion.get()) {
+                textCache.putAll(fetched);
+            }
+            texts.putAll(fetched);
         }
+        return texts;
+    }
+
+    private Map<Long, Map<String, String>> fetchTexts(Set<Long> ids) {
+        Map<Long, Map<String, String>> fetched = new HashMap<>();
+        // myös tekstittömät ryhmät, jotta niitä ei haeta joka kerta uudelleen
+        ids.forEach(id -> fetched.put(id, new LinkedHashMap<>()));
+        textGroupRepository.findTexts(ids)
+                .forEach(text -> fetched.get(text.getTextGroupId()).put(text.getLang(), text.getText()));
+        fetched.replaceAll((id, texts) -> Collections.unmodifiableMap(texts));
+        return fetched;
     }
     
     @Override
@@ -70,4 +128,20 @@ public class LocalizationServiceImpl implements LocalizationService {
                         .getNimi())));
         return list;
     }
+
+    @Override
+    public void invalidateTexts() {
+        textCacheVersion.incrementAndGet();
+        textCache.invalidateAll();
+        // transaktion aikana ladattu välimuisti voi sisältää vielä vanhat tekstit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    textCacheVersion.incrementAndGet();
+                    textCache.invalidateAll();
+                }
+            });
+        }
+    }
 }
@@ -3,18 +3,19 @@ package fi.vm.sade.kayttooikeus.service.impl;
 import fi.vm.sade.kayttooikeus.model.*;
 import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRyhmaTapahtumaHistoriaDataRepository;
 import fi.vm.sade.kayttooikeus.repositories.MyonnettyKayttoOikeusRyhmaTapahtumaRepository;
+import fi.vm.sade.kayttooikeus.service.KayttajarooliProvider;
 import fi.vm.sade.kayttooikeus.service.MyonnettyKayttoOikeusService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
 
 @Service
 @Transactional
@@ -22,46 +23,26 @@ import java.util.Optional;
 public class MyonnettyKayttoOikeusServiceImpl implements MyonnettyKayttoOikeusService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MyonnettyKayttoOikeusServiceImpl.class);
+    private static final int BATCH_SIZE = 1000;
 
     private final MyonnettyKayttoOikeusRyhmaTapahtumaRepository myonnettyKayttoOikeusRyhmaTapahtumaRepository;
     private final KayttoOikeusRyhmaTapahtumaHistoriaDataRepository kayttoOikeusRyhmaTapahtumaHistoriaDataRepository;
+    private final KayttajarooliProvider kayttajarooliProvider;
+    private final MyonnettyKayttoOikeusStorage myonnettyKayttoOikeusStorage;
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void poistaVanhentuneet(DeleteDetails details) {
         LOGGER.info("Vanhentuneiden käyttöoikeuksien poisto aloitetaan");
-        List<MyonnettyKayttoOikeusRyhmaTapahtuma> kayttoOikeudet = myonnettyKayttoOikeusRyhmaTapahtumaRepository
-                .findByVoimassaLoppuPvmBefore(LocalDate.now());
-
-        for (MyonnettyKayttoOikeusRyhmaTapahtuma kayttoOikeus : kayttoOikeudet) {;
-            OrganisaatioHenkilo organisaatioHenkilo = kayttoOikeus.getOrganisaatioHenkilo();
-            Henkilo henkilo = organisaatioHenkilo.getHenkilo();
-            henkilo.getHenkiloVarmennettavas().stream()
-                    .filter(HenkiloVarmentaja::isTila)
-                    .forEach(henkiloVarmentajaSuhde -> {
-                        henkiloVarmentajaSuhde.setTila(false);
-                        this.getFirstStillActiveKayttooikeusForSameOrganisation(kayttoOikeus, kayttoOikeudet)
-                                .ifPresent(myonnettyKayttooikeus -> henkiloVarmentajaSuhde.setTila(true));
-                    });
-
-            poista(kayttoOikeus, details);
+        LocalDate paiva = LocalDate.now();
+        int poistettu = 0;
+        List<String> henkiloOids;
+        // jokainen erä committoidaan erikseen, jotta pitkä ajo ei pidä lukkoja eikä keskeytys peru jo tehtyä
+        while (!(henkiloOids = myonnettyKayttoOikeusStorage.poistaVanhentuneet(paiva, details, BATCH_SIZE)).isEmpty()) {
+            poistettu += henkiloOids.size();
+            henkiloOids.stream().distinct().forEach(kayttajarooliProvider::invalidateByKayttajaOid);
         }
-        LOGGER.info("Vanhentuneiden käyttöoikeuksien poisto päättyy: poistettiin {} käyttöoikeutta", kayttoOikeudet.size());
-    }
-
-    // Tutkii löytyykö varmentavan henkilön käyttöoikeuksista yhä oikeuksia poistuvan oikeuden organisaatioon
-    private Optional<MyonnettyKayttoOikeusRyhmaTapahtuma> getFirstStillActiveKayttooikeusForSameOrganisation(
-            MyonnettyKayttoOikeusRyhmaTapahtuma poistuvaKayttooikeus,
-            List<MyonnettyKayttoOikeusRyhmaTapahtuma> poistuvatKayttoOikeudet) {
-        String varmentavaHenkiloOid = poistuvaKayttooikeus.getOrganisaatioHenkilo().getHenkilo().getOidHenkilo();
-        String poistettavaKayttooikeusOrganisaatioOid = poistuvaKayttooikeus.getOrganisaatioHenkilo().getOrganisaatioOid();
-        return this.myonnettyKayttoOikeusRyhmaTapahtumaRepository
-                .findByOrganisaatioHenkiloHenkiloOidHenkilo(varmentavaHenkiloOid).stream()
-                .filter(myonnettyKayttooikeus -> myonnettyKayttooikeus.getOrganisaatioHenkilo().isAktiivinen())
-                .filter(myonnettyKayttooikeus -> poistettavaKayttooikeusOrganisaatioOid
-                        .equals(myonnettyKayttooikeus.getOrganisaatioHenkilo().getOrganisaatioOid()))
-                .filter(myonnettyKayttooikeus -> poistuvatKayttoOikeudet.stream()
-                        .noneMatch(kayttoOikeus -> kayttoOikeus.getId().equals(myonnettyKayttooikeus.getId())))
-                .findFirst();
+        LOGGER.info("Vanhentuneiden käyttöoikeuksien poisto päättyy: poistettiin {} käyttöoikeutta", poistettu);
     }
 
     @Override
@@ -86,6 +67,7 @@ public class MyonnettyKayttoOikeusServiceImpl implements MyonnettyKayttoOikeusSe
 
     private KayttoOikeusRyhmaTapahtumaHistoria poistaInternal(MyonnettyKayttoOikeusRyhmaTapahtuma myonnettyKayttoOikeusRyhmaTapahtuma, DeleteDetails details) {
         myonnettyKayttoOikeusRyhmaTapahtumaRepository.delete(myonnettyKayttoOikeusRyhmaTapahtuma);
+        kayttajarooliProvider.invalidateByKayttajaOid(myonnettyKayttoOikeusRyhmaTapahtuma.getOrganisaatioHenkilo().getHenkilo().getOidHenkilo());
         return kayttoOikeusRyhmaTapahtumaHistoriaDataRepository.save(myonnettyKayttoOikeusRyhmaTapahtuma.toHistoria(
                 details.getKasittelija(), details.getTila(), LocalDateTime.now(), details.getSyy()));
     }
@@ -0,0 +1,83 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import fi.vm.sade.kayttooikeus.service.MyonnettyKayttoOikeusService.DeleteDetails;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Poistaa vanhentuneet myönnetyt käyttöoikeudet erissä joukko-operaatioina ohi JPA:n persistenssikontekstin, jotta
+ * poistettavia käyttöoikeuksia henkilöineen ei ladata entiteeteiksi.
+ *
+ * @see MyonnettyKayttoOikeusServiceImpl#poistaVanhentuneet(DeleteDetails)
+ */
+@Component
+@RequiredArgsConstructor
+public class MyonnettyKayttoOikeusStorage {
+
+    // erä on id-järjestyksessä ensimmäiset vanhentuneet: voimassaloppupvm < ? AND id <= erän suurin id
+    private static final String ERA = "mkt.voimassaloppupvm < ? AND mkt.id <= ?";
+    private static final String ERAN_VIIMEINEN_SQL = "SELECT MAX(id) FROM (SELECT id FROM myonnetty_kayttooikeusryhma_tapahtuma "
+            + "WHERE voimassaloppupvm < ? ORDER BY id LIMIT ?) era";
+    private static final String HENKILOT_SQL = "SELECT h.oidhenkilo FROM myonnetty_kayttooikeusryhma_tapahtuma mkt "
+            + "JOIN organisaatiohenkilo oh ON oh.id = mkt.organisaatiohenkilo_id "
+            + "JOIN henkilo h ON h.id = oh.henkilo_id WHERE " + ERA;
+    // varmentajasuhde suljetaan, jos varmentajalle ei jää voimassa olevia käyttöoikeuksia johonkin organisaatioon,
+    // josta sen käyttöoikeus vanheni
+    private static final String VARMENTAJAT_SQL = "UPDATE henkilo_varmentaja_suhde SET tila = false, version = version + 1 "
+            + "WHERE tila = true AND varmentava_henkilo_id IN (SELECT oh.henkilo_id "
+            + "FROM myonnetty_kayttooikeusryhma_tapahtuma mkt "
+            + "JOIN organisaatiohenkilo oh ON oh.id = mkt.organisaatiohenkilo_id "
+            + "WHERE " + ERA + " AND (oh.passivoitu = true OR NOT EXISTS (SELECT 1 "
+            + "FROM myonnetty_kayttooikeusryhma_tapahtuma voimassa WHERE voimassa.organisaatiohenkilo_id = oh.id "
+            + "AND (voimassa.voimassaloppupvm IS NULL OR voimassa.voimassaloppupvm >= ?))))";
+    private static final String HISTORIA_SQL = "INSERT INTO kayttooikeusryhma_tapahtuma_historia (id, version, aikaleima, "
+            + "tila, syy, kayttooikeusryhma_id, organisaatiohenkilo_id, kasittelija_henkilo_id) "
+            + "SELECT nextval('hibernate_sequence'), 0, ?, ?, ?, mkt.kayttooikeusryhma_id, mkt.organisaatiohenkilo_id, ? "
+            + "FROM myonnetty_kayttooikeusryhma_tapahtuma mkt WHERE " + ERA;
+    // passivoidaan organisaatiohenkilöt, joille ei jää käyttöoikeuksia erän poiston jälkeen
+    private static final String PASSIVOINTI_SQL = "UPDATE organisaatiohenkilo SET passivoitu = true, version = version + 1 "
+            + "WHERE passivoitu = false AND id IN (SELECT mkt.organisaatiohenkilo_id "
+            + "FROM myonnetty_kayttooikeusryhma_tapahtuma mkt WHERE " + ERA + ") "
+            + "AND NOT EXISTS (SELECT 1 FROM myonnetty_kayttooikeusryhma_tapahtuma jaljelle "
+            + "WHERE jaljelle.organisaatiohenkilo_id = organisaatiohenkilo.id AND (jaljelle.voimassaloppupvm IS NULL "
+            + "OR jaljelle.voimassaloppupvm >= ? OR jaljelle.id > ?))";
+    private static final String POISTO_SQL = "DELETE FROM myonnetty_kayttooikeusryhma_tapahtuma mkt WHERE " + ERA;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Poistaa yhden erän ennen annettua päivää vanhentuneita käyttöoikeuksia omassa transaktiossaan: kirjaa
+     * poistetut historiaan, sulkee varmentajasuhteet ja passivoi organisaatiohenkilöt, joille ei jää käyttöoikeuksia.
+     *
+     * @param paiva päivä, jota ennen päättyneet käyttöoikeudet ovat vanhentuneet
+     * @param details toiminnon lisätiedot
+     * @param eranKoko poistettavien käyttöoikeuksien enimmäismäärä
+     * @return poistettujen käyttöoikeuksien henkilöiden oidit (käyttöoikeutta kohden), tyhjä kun vanhentuneita ei ole
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<String> poistaVanhentuneet(LocalDate paiva, DeleteDetails details, int eranKoko) {
+        Date loppupvm = Date.valueOf(paiva);
+        Long viimeinen = jdbcTemplate.queryForObject(ERAN_VIIMEINEN_SQL, Long.class, loppupvm, eranKoko);
+        if (viimeinen == null) {
+            return Collections.emptyList();
+        }
+        List<String> henkiloOids = jdbcTemplate.queryForList(HENKILOT_SQL, String.class, loppupvm, viimeinen);
+        jdbcTemplate.update(VARMENTAJAT_SQL, loppupvm, viimeinen, loppupvm);
+        jdbcTemplate.update(HISTORIA_SQL, Timestamp.valueOf(LocalDateTime.now()), details.getTila().name(),
+                details.getSyy(), details.getKasittelija().getId(), loppupvm, viimeinen);
+        jdbcTemplate.update(PASSIVOINTI_SQL, loppupvm, viimeinen, loppupvm, viimeinen);
+        jdbcTemplate.update(POISTO_SQL, loppupvm, viimeinen);
+        return henkiloOids;
+    }
+
+}
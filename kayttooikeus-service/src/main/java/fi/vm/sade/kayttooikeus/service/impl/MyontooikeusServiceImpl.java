@@ -3,6 +3,7 @@ package fi.vm.sade.kayttooikeus.service.impl;
 import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRyhmaMyontoViiteRepository;
 import fi.vm.sade.kayttooikeus.repositories.criteria.MyontooikeusCriteria;
 import fi.vm.sade.kayttooikeus.service.MyontooikeusService;
+import fi.vm.sade.kayttooikeus.service.Myontooikeudet;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import fi.vm.sade.kayttooikeus.util.OrganisaatioMyontoPredicate;
 import lombok.RequiredArgsConstructor;
@@ -40,4 +41,13 @@ public class MyontooikeusServiceImpl implements MyontooikeusService {
                 .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, appending(), HashMap::new));
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Myontooikeudet getMyontooikeusMatriisi(String myontajaOid,
+                                                  MyontooikeusCriteria myontooikeusCriteria,
+                                                  OrganisaatioMyontoPredicate organisaatioMyontoPredicate) {
+        return Myontooikeudet.of(kayttoOikeusRyhmaMyontoViiteRepository.getSlaveIdsByMasterHenkiloOid(myontajaOid,
+                myontooikeusCriteria), organisaatioClient, organisaatioMyontoPredicate);
+    }
+
 }
@@ -68,7 +68,7 @@ public class OrganisaatioServiceImpl implements OrganisaatioService {
     @Override
     public void updateOrganisaatioCache() {
         LOGGER.info("Organisaatiocachen päivitys aloitetaan");
-        long maara = organisaatioClient.refreshCache();
+        long maara = organisaatioClient.updateCache();
         LOGGER.info("Organisaatiocachen päivitys päättyy: tallennettiin {} organisaatiota", maara);
     }
 
@@ -1,7 +1,11 @@
 package fi.vm.sade.kayttooikeus.service.impl;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import fi.vm.sade.kayttooikeus.config.properties.CommonProperties;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.dto.*;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.ExternalPermissionService;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.PermissionCheckDto;
@@ -18,28 +22,46 @@ import fi.vm.sade.kayttooikeus.service.KayttajarooliProvider;
 import fi.vm.sade.kayttooikeus.service.MyontooikeusService;
 import fi.vm.sade.kayttooikeus.service.PermissionCheckerService;
 import fi.vm.sade.kayttooikeus.service.external.ExternalPermissionClient;
+import fi.vm.sade.kayttooikeus.service.external.ExternalServiceException;
 import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
 import fi.vm.sade.kayttooikeus.util.OrganisaatioMyontoPredicate;
+import fi.vm.sade.kayttooikeus.util.OrganisaatioViiteUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static fi.vm.sade.kayttooikeus.util.FunctionalUtils.not;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
 
 @Service
 @RequiredArgsConstructor
@@ -65,6 +87,18 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
     private final KayttajarooliProvider kayttajarooliProvider;
 
     private final CommonProperties commonProperties;
+    private final KayttooikeusProperties kayttooikeusProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final ExecutorService permissionCheckExecutor = new ThreadPoolExecutor(0, 32, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), new ThreadFactoryBuilder().setNameFormat("permission-check-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    // jäsennetyt roolit autentikaatiota kohden, avaimet identiteetin mukaan heikkoina viittauksina
+    private final ConcurrentMap<Authentication, EffectivePermissions> permissionsByAuthentication = CacheBuilder.newBuilder()
+            .weakKeys()
+            .<Authentication, EffectivePermissions>build()
+            .asMap();
 
     @Override
     @Transactional(readOnly = true)
@@ -91,6 +125,82 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
         );
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<Boolean> isAllowedToAccessPersons(List<PermissionCheckDto> permissionCheckDtos) {
+        List<String> henkiloOids = permissionCheckDtos.stream()
+                .flatMap(dto -> Stream.of(dto.getCallingUserOid(), dto.getUserOid()))
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, Henkilo> henkilot = henkiloOids.isEmpty() ? emptyMap() : this.henkiloDataRepository
+                .readByOidHenkiloIn(henkiloOids).stream()
+                .collect(Collectors.toMap(Henkilo::getOidHenkilo, Function.identity(), (henkilo1, henkilo2) -> henkilo1));
+
+        Boolean[] results = new Boolean[permissionCheckDtos.size()];
+        Map<PermissionCheckGroup, List<Integer>> indexesByGroup = new LinkedHashMap<>();
+        for (int i = 0; i < permissionCheckDtos.size(); i++) {
+            PermissionCheckDto dto = permissionCheckDtos.get(i);
+            indexesByGroup.computeIfAbsent(new PermissionCheckGroup(dto.getCallingUserOid(), dto.getAllowedPalveluRooli(),
+                    dto.getExternalPermissionService(), dto.getCallingUserRoles()), group -> new ArrayList<>()).add(i);
+        }
+        indexesByGroup.forEach((group, indexes) -> {
+            Map<String, Boolean> resultByPersonOid = this.isAllowedToAccessPersons(group, henkilot, indexes.stream()
+                    .map(index -> permissionCheckDtos.get(index).getUserOid())
+                    .collect(Collectors.toCollection(LinkedHashSet::new)));
+            indexes.forEach(index -> results[index] = resultByPersonOid.get(permissionCheckDtos.get(index).getUserOid()));
+        });
+        return Arrays.asList(results);
+    }
+
+    /*
+     * Saman kutsujan tarkistukset: organisaatiot ja saman henkilön oidit haetaan kerran koko joukolle ja ulkoiselta
+     * palvelulta kysytään kerran jokaista eri henkilöä kohden. Koko joukon kattava kysely ei kertoisi, kenelle pääsy
+     * sallitaan, joten se vain lisäisi kutsuja.
+     */
+    private Map<String, Boolean> isAllowedToAccessPersons(PermissionCheckGroup group, Map<String, Henkilo> henkilot,
+                                                          Set<String> personOidsToAccess) {
+        Map<String, Boolean> results = new HashMap<>();
+        EffectivePermissions permissions = EffectivePermissions.of(group.getCallingUserRoles(), this.commonProperties.getRootOrganizationOid());
+        List<String> externalPersonOids = new ArrayList<>();
+        for (String personOidToAccess : personOidsToAccess) {
+            if (this.hasInternalAccess(Optional.ofNullable(personOidToAccess).map(henkilot::get),
+                    group.getAllowedPalveluRooli(), group.getCallingUserRoles(), permissions)) {
+                results.put(personOidToAccess, true);
+            } else if (!this.isExternalAccessCheckable(group.getCallingUserOid(), personOidToAccess, group.getExternalPermissionService())) {
+                results.put(personOidToAccess, false);
+            } else {
+                externalPersonOids.add(personOidToAccess);
+            }
+        }
+        if (externalPersonOids.isEmpty()) {
+            return results;
+        }
+
+        Set<String> flattedOrgs = this.getFlattedOrgs(Optional.ofNullable(henkilot.get(group.getCallingUserOid())),
+                group.getAllowedPalveluRooli(), group.getExternalPermissionService(), group.getCallingUserRoles());
+        if (flattedOrgs.isEmpty()) {
+            LOG.error("No organisations found for logged in user with oid: " + group.getCallingUserOid());
+            externalPersonOids.forEach(personOid -> results.put(personOid, false));
+            return results;
+        }
+
+        Map<String, Set<String>> personOidsForSamePerson = this.oppijanumerorekisteriClient
+                .getAllOidsForSamePersons(externalPersonOids);
+        externalPersonOids.forEach(personOid -> results.put(personOid, this.hasExternalAccess(group.getCallingUserOid(),
+                personOid, personOidsForSamePerson.get(personOid), flattedOrgs, group.getAllowedPalveluRooli(),
+                group.getExternalPermissionService(), group.getCallingUserRoles())));
+        return results;
+    }
+
+    @Value
+    private static class PermissionCheckGroup {
+        String callingUserOid;
+        Map<String, List<String>> allowedPalveluRooli;
+        ExternalPermissionService externalPermissionService;
+        Set<String> callingUserRoles;
+    }
+
     /*
      * Check internally and externally whether currentuser has any of the palvelu/rooli pair combination given in allowedPalveluRooli
      * that grants access to the given user (personOidToAccess)
@@ -104,6 +214,56 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
             return true;
         }
 
+        if (!this.isExternalAccessCheckable(callingUserOid, personOidToAccess, permissionCheckService)) {
+            return false;
+        }
+
+        // saman henkilön oidit haetaan rinnakkain organisaatioiden kanssa, jotta hidas oppijanumerorekisteri
+        // ei kasva kannan hakujen päälle
+        CompletableFuture<Set<String>> personOidsForSamePersonFuture = CompletableFuture.supplyAsync(() ->
+                this.timer("same_person").record(() -> oppijanumerorekisteriClient.getAllOidsForSamePerson(personOidToAccess)),
+                this.permissionCheckExecutor);
+        Set<String> flattedOrgs = this.timer("organisations").record(() ->
+                this.getFlattedOrgs(this.henkiloDataRepository.findByOidHenkilo(callingUserOid),
+                        allowedPalveluRooli, permissionCheckService, callingUserRoles));
+        if (flattedOrgs.isEmpty()) {
+            personOidsForSamePersonFuture.cancel(true);
+            LOG.error("No organisations found for logged in user with oid: " + callingUserOid);
+            return false;
+        }
+
+        Set<String> personOidsForSamePerson = this.join(personOidsForSamePersonFuture,
+                this.kayttooikeusProperties.getPermissionCheck().getSamePersonTimeout(), "oppijanumerorekisteri");
+        return this.timer("external").record(() -> this.hasExternalAccess(callingUserOid, personOidToAccess,
+                personOidsForSamePerson, flattedOrgs, allowedPalveluRooli, permissionCheckService, callingUserRoles));
+    }
+
+    private Timer timer(String stage) {
+        return this.meterRegistry.timer("kayttooikeus.permission.check", "stage", stage);
+    }
+
+    private <T> T join(CompletableFuture<T> future, long timeoutMillis, String resource) {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ExternalServiceException(resource, "Timeout after " + timeoutMillis + " ms", e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new ExternalServiceException(resource, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExternalServiceException(resource, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.permissionCheckExecutor.shutdownNow();
+    }
+
+    private boolean isExternalAccessCheckable(String callingUserOid, String personOidToAccess,
+                                              ExternalPermissionService permissionCheckService) {
         if (StringUtils.isBlank(personOidToAccess) || permissionCheckService == null) {
             LOG.error("isAllowedToAccess() called with empty personOid or permissionCheckService");
             return false;
@@ -114,11 +274,17 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
             LOG.error("isAllowedToAccess(): no logged in user found -> return no permission");
             return false;
         }
+        return true;
+    }
 
+    private Set<String> getFlattedOrgs(Optional<Henkilo> callingUser,
+                                       Map<String, List<String>> allowedPalveluRooli,
+                                       ExternalPermissionService permissionCheckService,
+                                       Set<String> callingUserRoles) {
         OrganisaatioMyontoPredicate organisaatioMyontoPredicate = new OrganisaatioMyontoPredicate(
                 // myönnetään vain koski-palvelulle käyttöoikeudet passiivisiin organisaatioihin
                 ExternalPermissionService.KOSKI.equals(permissionCheckService));
-        Set<String> flattedOrgs = this.henkiloDataRepository.findByOidHenkilo(callingUserOid).map(henkilo ->
+        return callingUser.map(henkilo ->
                 henkilo.getOrganisaatioHenkilos().stream()
                         .filter(OrganisaatioHenkilo::isAktiivinen)
                         .map(OrganisaatioHenkilo::getOrganisaatioOid)
@@ -127,20 +293,31 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
                                 .listWithChildOids(organisaatioOid, organisaatioMyontoPredicate).stream())
                         .collect(Collectors.toSet()))
                 .orElse(emptySet());
-        if (flattedOrgs.isEmpty()) {
-            LOG.error("No organisations found for logged in user with oid: " + callingUserOid);
-            return false;
-        }
-
-        Set<String> personOidsForSamePerson = oppijanumerorekisteriClient.getAllOidsForSamePerson(personOidToAccess);
+    }
 
+    private PermissionCheckResponseDto getExternalPermission(String callingUserOid,
+                                                             Set<String> personOidsForSamePerson,
+                                                             Set<String> flattedOrgs,
+                                                             ExternalPermissionService permissionCheckService,
+                                                             Set<String> callingUserRoles) {
         PermissionCheckRequestDto permissionCheckRequestDto = new PermissionCheckRequestDto();
         permissionCheckRequestDto.setPersonOidsForSamePerson(Lists.newArrayList(personOidsForSamePerson));
         permissionCheckRequestDto.setOrganisationOids(Lists.newArrayList(flattedOrgs));
         permissionCheckRequestDto.setLoggedInUserRoles(callingUserRoles);
         permissionCheckRequestDto.setLoggedInUserOid(callingUserOid);
 
-        PermissionCheckResponseDto response = externalPermissionClient.getPermission(permissionCheckService,  permissionCheckRequestDto);
+        return externalPermissionClient.getPermission(permissionCheckService,  permissionCheckRequestDto);
+    }
+
+    private boolean hasExternalAccess(String callingUserOid,
+                                      String personOidToAccess,
+                                      Set<String> personOidsForSamePerson,
+                                      Set<String> flattedOrgs,
+                                      Map<String, List<String>> allowedPalveluRooli,
+                                      ExternalPermissionService permissionCheckService,
+                                      Set<String> callingUserRoles) {
+        PermissionCheckResponseDto response = this.getExternalPermission(callingUserOid, personOidsForSamePerson,
+                flattedOrgs, permissionCheckService, callingUserRoles);
 
         if (!response.isAccessAllowed()) {
             LOG.error("Insufficient roles. permission check done from external service: {} " +
@@ -169,13 +346,22 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
      * privileges and organisation hierarchy
      */
     private boolean hasInternalAccess(String personOid, Map<String, List<String>> allowedPalveluRooli, Set<String> callingUserRoles) {
-        if (this.isUserAdmin(callingUserRoles)) {
+        EffectivePermissions permissions = this.getPermissions(callingUserRoles);
+        if (this.isUserAdmin(permissions)) {
+            return true;
+        }
+        return this.hasInternalAccess(henkiloDataRepository.findByOidHenkilo(personOid), allowedPalveluRooli,
+                callingUserRoles, permissions);
+    }
+
+    private boolean hasInternalAccess(Optional<Henkilo> henkilo, Map<String, List<String>> allowedPalveluRooli,
+                                      Set<String> callingUserRoles, EffectivePermissions permissions) {
+        if (this.isUserAdmin(permissions)) {
             return true;
         }
 
         Set<String> allowedRoles = getPrefixedRolesByPalveluRooli(allowedPalveluRooli);
 
-        Optional<Henkilo> henkilo = henkiloDataRepository.findByOidHenkilo(personOid);
         if (!henkilo.isPresent()) {
             return false;
         }
@@ -198,15 +384,12 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
             }
         }
 
-        Set<String> candidateRoles = new HashSet<>();
-        henkilo.get().getOrganisaatioHenkilos().stream().filter(OrganisaatioHenkilo::isAktiivinen).forEach(orgHenkilo -> {
-            List<String> orgWithParents = this.organisaatioClient.getActiveParentOids(orgHenkilo.getOrganisaatioOid());
-            for (String allowedRole : allowedRoles) {
-                candidateRoles.addAll(getPrefixedRoles(allowedRole + "_", Lists.newArrayList(orgWithParents)));
-            }
-        });
-
-        return CollectionUtils.containsAny(callingUserRoles, candidateRoles);
+        Set<String> allowedPalveluRoolit = allowedRoles.stream()
+                .map(allowedRole -> allowedRole.substring(ROLE_PREFIX.length()))
+                .collect(Collectors.toSet());
+        return henkilo.get().getOrganisaatioHenkilos().stream().filter(OrganisaatioHenkilo::isAktiivinen)
+                .anyMatch(orgHenkilo -> permissions.hasRoleForAnyOrganisation(allowedPalveluRoolit,
+                        this.organisaatioClient.getActiveParentOids(orgHenkilo.getOrganisaatioOid())));
     }
 
     public static Set<String> getPrefixedRolesByPalveluRooli(Map<String, List<String>> palveluRoolit) {
@@ -256,42 +439,27 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
         return true;
     }
 
-    private static Set<String> getPrefixedRoles(final String prefix, final List<String> rolesWithoutPrefix) {
-        return rolesWithoutPrefix.stream().map(prefix::concat).collect(Collectors.toSet());
-    }
-
     private boolean hasRoleForOrganisation(String orgOid, Map<String, List<String>> allowedRolesAsMap, Set<String> userRoles) {
         if (this.isCurrentUserAdmin()) {
             return true;
         }
 
-        final Set<String> allowedRoles = getPrefixedRolesByPalveluRooli(allowedRolesAsMap);
-
         List<String> orgAndParentOids = this.organisaatioClient.getActiveParentOids(orgOid);
         if (orgAndParentOids.isEmpty()) {
             LOG.warn("Organization " + orgOid + " not found!");
             return false;
         }
 
-        Set<String> flattenedCandidateRolesByOrg = orgAndParentOids.stream()
-                .flatMap(orgOrParentOid -> allowedRoles.stream()
-                        .map(role -> role.concat("_" + orgOrParentOid)))
-                .collect(Collectors.toCollection(HashSet::new));
-
-        return CollectionUtils.containsAny(flattenedCandidateRolesByOrg, userRoles);
+        return this.getPermissions(userRoles)
+                .hasRoleForAnyOrganisation(EffectivePermissions.toPalveluRoolit(allowedRolesAsMap), orgAndParentOids);
     }
 
     @Override
     public Set<String> getCurrentUserOrgnisationsWithPalveluRole(Map<String, List<String>> palveluRoolit) {
-        return this.getCasRoles().stream()
-                .filter(casRole -> palveluRoolit.entrySet().stream().anyMatch(entry -> entry.getValue().stream().anyMatch(role -> casRole.contains(entry.getKey() + "_" + role))))
-                .flatMap(casRole -> {
-                    int index = casRole.indexOf(this.commonProperties.getOrganisaatioPrefix());
-                    if (index != -1) {
-                        return Stream.of(casRole.substring(index));
-                    }
-                    return Stream.empty();
-                })
+        EffectivePermissions permissions = this.getCurrentUserPermissions();
+        return EffectivePermissions.toPalveluRoolit(palveluRoolit).stream()
+                .flatMap(palveluRooli -> permissions.getOrganisaatiot(palveluRooli).stream())
+                .filter(organisaatioOid -> organisaatioOid.startsWith(this.commonProperties.getOrganisaatioPrefix()))
                 .collect(Collectors.toSet());
     }
 
@@ -312,9 +480,26 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
 
     @Override
     public Set<String> getCasRoles(){
-        return SecurityContextHolder.getContext().getAuthentication().getAuthorities().stream()
-                .map(GrantedAuthority::getAuthority)
-                .collect(Collectors.toSet());
+        return this.getCurrentUserPermissions().getRoles();
+    }
+
+    private EffectivePermissions getCurrentUserPermissions() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return this.permissionsByAuthentication.computeIfAbsent(authentication, auth -> EffectivePermissions.of(
+                auth.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet()),
+                this.commonProperties.getRootOrganizationOid()));
+    }
+
+    private EffectivePermissions getPermissions(Set<String> userRoles) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null) {
+            EffectivePermissions current = this.permissionsByAuthentication.get(authentication);
+            // getCasRoles palauttaa saman joukon, joten nykyisen käyttäjän rooleja ei jäsennetä uudelleen
+            if (current != null && current.getRoles() == userRoles) {
+                return current;
+            }
+        }
+        return EffectivePermissions.of(userRoles, this.commonProperties.getRootOrganizationOid());
     }
 
     private boolean isRekisterinpitaja(String kayttajaOid) {
@@ -327,7 +512,11 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
     // Rekisterinpitäjä
     @Override
     public boolean isCurrentUserAdmin() {
-        return this.isUserAdmin(this.getCasRoles());
+        return this.isUserAdmin(this.getCurrentUserPermissions());
+    }
+
+    private boolean isUserAdmin(EffectivePermissions permissions) {
+        return permissions.isMiniAdmin(PALVELU_KAYTTOOIKEUS, singletonList(ROLE_REKISTERINPITAJA));
     }
 
     // Rekisterinpitäjä
@@ -339,36 +528,34 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
     // OPH virkailija
     @Override
     public boolean isCurrentUserMiniAdmin() {
-        return this.isUserMiniAdmin(this.getCasRoles());
+        return this.getCurrentUserPermissions().isMiniAdmin();
     }
 
     // OPH virkailija
     @Override
     public boolean isUserMiniAdmin(Set<String> userRoles) {
-        return userRoles.stream().anyMatch(role -> role.contains(this.commonProperties.getRootOrganizationOid()));
+        return this.getPermissions(userRoles).isMiniAdmin();
     }
 
     // OPH virkailija
     @Override
     public boolean isCurrentUserMiniAdmin(String palvelu, String rooli, String... muutRoolit) {
-        return this.isUserMiniAdmin(this.getCasRoles(), palvelu, rooli, muutRoolit);
+        return this.getCurrentUserPermissions().isMiniAdmin(palvelu, Lists.asList(rooli, muutRoolit));
     }
 
     // OPH virkailija
     @Override
     public boolean isUserMiniAdmin(Set<String> userRoles, String palvelu, String rooli, String... muutRoolit) {
-        List<String> kaikkiRoolit = Stream.concat(Stream.of(rooli), Arrays.stream(muutRoolit)).collect(Collectors.toList());
-        return userRoles.stream().anyMatch(role -> kaikkiRoolit.stream().anyMatch(haluttuRooli -> role.contains(palvelu + "_" + haluttuRooli + "_" + this.commonProperties.getOrganisaatioPrefix()))
-                && role.contains(this.commonProperties.getRootOrganizationOid()));
+        return this.getPermissions(userRoles).isMiniAdmin(palvelu, Lists.asList(rooli, muutRoolit));
     }
 
     @Override
     public Set<String> hasOrganisaatioInHierarchy(Collection<String> requiredOrganiaatioOids, Map<String, List<String>> palveluRoolit) {
-        Set<String> casRoles = this.getCasRoles();
-        return requiredOrganiaatioOids.stream().filter(requiredOrganiaatioOid -> casRoles.stream()
-                .anyMatch(casRole -> palveluRoolit.entrySet().stream().anyMatch(entry -> entry.getValue().stream().anyMatch(rooli -> casRole.contains(entry.getKey() + "_" + rooli)))
-                        && this.organisaatioClient.getActiveParentOids(requiredOrganiaatioOid).stream()
-                        .anyMatch(casRole::contains)))
+        EffectivePermissions permissions = this.getCurrentUserPermissions();
+        Set<String> sallitutRoolit = EffectivePermissions.toPalveluRoolit(palveluRoolit);
+        return requiredOrganiaatioOids.stream()
+                .filter(requiredOrganiaatioOid -> permissions.hasRoleForAnyOrganisation(sallitutRoolit,
+                        this.organisaatioClient.getActiveParentOids(requiredOrganiaatioOid)))
                 .collect(Collectors.toSet());
     }
 
@@ -393,13 +580,16 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
 
     @Override
     public boolean kayttooikeusMyontoviiteLimitationCheck(String kayttajaOid, String organisaatioOid, Long kayttooikeusryhmaId, MyontooikeusCriteria criteria) {
+        return getKayttooikeusMyontoviiteLimitationCheck(kayttajaOid, criteria).test(organisaatioOid, kayttooikeusryhmaId);
+    }
+
+    @Override
+    public BiPredicate<String, Long> getKayttooikeusMyontoviiteLimitationCheck(String kayttajaOid, MyontooikeusCriteria criteria) {
         boolean rekisterinpitaja = isRekisterinpitaja(kayttajaOid);
         if (rekisterinpitaja) {
-            return true;
+            return (organisaatioOid, kayttooikeusryhmaId) -> true;
         }
-        Map<String, Set<Long>> myontooikeudet = myontooikeusService.getMyontooikeudet(kayttajaOid,
-                criteria, new OrganisaatioMyontoPredicate(false));
-        return myontooikeudet.getOrDefault(organisaatioOid, emptySet()).contains(kayttooikeusryhmaId);
+        return myontooikeusService.getMyontooikeusMatriisi(kayttajaOid, criteria, new OrganisaatioMyontoPredicate(false))::contains;
     }
 
     // Check that wanted KOR can be added to the wanted organisation
@@ -412,21 +602,7 @@ public class PermissionCheckerServiceImpl implements PermissionCheckerService {
 
     @Override
     public boolean organisaatioLimitationCheck(String organisaatioOid, List<OrganisaatioPerustieto> organisaatiot, Set<String> viiteSet) {
-        // Group organizations have to match only as a general set since they're not separated by type or by individual groups
-        if (organisaatioOid.startsWith(this.commonProperties.getOrganisaatioRyhmaPrefix())) {
-            return viiteSet.contains(this.commonProperties.getOrganisaatioRyhmaPrefix());
-        }
-        return viiteSet.stream().anyMatch(organisaatioOid::equals)
-                || organisaatiot.stream().anyMatch(organisaatio -> organisaatioLimitationCheck(organisaatioOid, viiteSet, organisaatio));
-    }
-
-    private static boolean organisaatioLimitationCheck(String organisaatioOid, Set<String> viiteSet, OrganisaatioPerustieto childOrganisation) {
-        return viiteSet.stream().anyMatch(organisaatioViite ->
-                                    organisaatioViite
-                                            .equals(!org.springframework.util.StringUtils.isEmpty(childOrganisation.getOppilaitostyyppi())
-                                                    // Format: getOppilaitostyyppi() = "oppilaitostyyppi_11#1"
-                                                    ? childOrganisation.getOppilaitostyyppi().substring(17, 19)
-                                                    : null)
-                                            || organisaatioOid.equals(childOrganisation.getOid()) && childOrganisation.hasAnyOrganisaatiotyyppi(organisaatioViite));
+        return !Collections.disjoint(viiteSet, OrganisaatioViiteUtil.getOrganisaatioViitteet(organisaatioOid, organisaatiot,
+                this.commonProperties.getOrganisaatioRyhmaPrefix()));
     }
 }
@@ -35,22 +35,14 @@ public class TaskExecutorServiceImpl implements TaskExecutorService {
     // non transactional for possible future feature of sending each message in a separate transaction
     // and marking that up in the db (allowing search by range rather than simple date and retries)
     public int sendExpirationReminders(Period... expireThresholds) {
-        int remindersSent = 0;
-        for (Map.Entry<String, List<ExpiringKayttoOikeusDto>> tapahtumasByHenkilo : kayttoOikeusService
+        Map<String, List<ExpiringKayttoOikeusDto>> tapahtumasByHenkilo = kayttoOikeusService
                 .findToBeExpiringMyonnettyKayttoOikeus(LocalDate.now(), expireThresholds)
-                .stream().collect(groupingBy(ExpiringKayttoOikeusDto::getHenkiloOid, toList()))
-                .entrySet()) {
-            try {
-                emailService.sendExpirationReminder(tapahtumasByHenkilo.getKey(), tapahtumasByHenkilo.getValue());
-                ++remindersSent;
-            } catch (Exception e) {
-                logger.error("Failed to send expiration reminder for "
-                        + "henkiloOid=" + tapahtumasByHenkilo.getKey()
-                        + " tapahtumas=[" + tapahtumasByHenkilo.getValue().stream()
-                        .map(ExpiringKayttoOikeusDto::toString).collect(joining(", ")) + "]"
-                        + ": reason: " + e.getMessage(), e);
-            }
+                .stream().collect(groupingBy(ExpiringKayttoOikeusDto::getHenkiloOid, toList()));
+        if (tapahtumasByHenkilo.isEmpty()) {
+            return 0;
         }
+        int remindersSent = emailService.sendExpirationReminders(tapahtumasByHenkilo).size();
+        logger.info("Sent {} of {} expiration reminders", remindersSent, tapahtumasByHenkilo.size());
         return remindersSent;
     }
 }
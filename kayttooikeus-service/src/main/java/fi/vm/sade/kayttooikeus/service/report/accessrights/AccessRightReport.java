@@ -2,9 +2,41 @@ package fi.vm.sade.kayttooikeus.service.report.accessrights;
 
 import fi.vm.sade.kayttooikeus.report.AccessRightReportRow;
 
+import java.sql.Connection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface AccessRightReport {
 
     List<AccessRightReportRow> getForOrganisation(String oid);
+
+    /**
+     * Käy raportin rivit läpi kannasta luettaessa, jolloin koko raporttia ei pidetä muistissa. Rivit luetaan
+     * raporttipoolin yhteydellä, joten hidas käsittely ei varaa sovelluksen yhteyspoolin yhteyttä.
+     *
+     * @param oid organisaatio, jonka ja jonka aliorganisaatioiden käyttöoikeudet raportoidaan
+     * @param action rivikohtainen käsittely, kutsutaan lukutransaktion sisällä
+     */
+    void forEachForOrganisation(String oid, Consumer<AccessRightReportRow> action);
+
+    /**
+     * Kuten {@link #forEachForOrganisation(String, Consumer)}, mutta raportin kieli annetaan eikä sitä päätellä
+     * kirjautuneesta käyttäjästä. Taustalla suoritettaville raporteille.
+     *
+     * @param oid organisaatio, jonka ja jonka aliorganisaatioiden käyttöoikeudet raportoidaan
+     * @param lang raportin kieli
+     * @param action rivikohtainen käsittely, kutsutaan lukutransaktion sisällä
+     */
+    void forEachForOrganisation(String oid, String lang, Consumer<AccessRightReportRow> action);
+
+    /**
+     * Kuten {@link #forEachForOrganisation(String, String, Consumer)}, mutta rivit luetaan annetulla yhteydellä
+     * eikä sovelluksen yhteyspoolista. Kutsuja vastaa yhteyden transaktiosta.
+     *
+     * @param connection yhteys, jolla rivit luetaan
+     * @param oid organisaatio, jonka ja jonka aliorganisaatioiden käyttöoikeudet raportoidaan
+     * @param lang raportin kieli
+     * @param action rivikohtainen käsittely
+     */
+    void forEachForOrganisation(Connection connection, String oid, String lang, Consumer<AccessRightReportRow> action);
 }
@@ -1,20 +1,27 @@
 package fi.vm.sade.kayttooikeus.service.report.accessrights;
 
-import fi.vm.sade.kayttooikeus.dto.OrganisaatioWithChildrenDto;
+import fi.vm.sade.kayttooikeus.config.db.ReportConnectionPool;
 import fi.vm.sade.kayttooikeus.report.AccessRightReportRow;
-import fi.vm.sade.kayttooikeus.service.OrganisaatioService;
+import fi.vm.sade.kayttooikeus.service.exception.NotFoundException;
 import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
-import java.util.Collection;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 @Repository
@@ -22,47 +29,85 @@ import java.util.stream.Stream;
 @RequiredArgsConstructor
 public class AccessRightReportImpl implements AccessRightReport {
 
+    // rivit luetaan kursorilla näin monen erissä, jotta suuri raportti ei lataudu kerralla muistiin
+    private static final int FETCH_SIZE = 1000;
+
     private final EntityManager em;
 
-    private final OrganisaatioService organisaatioService;
+    private final OrganisaatioClient organisaatioClient;
 
     private final OppijanumerorekisteriClient onrClient;
 
+    private final ReportConnectionPool reportConnectionPool;
+
     @Override
     public List<AccessRightReportRow> getForOrganisation(final String oid) {
+        final List<AccessRightReportRow> result = new ArrayList<>();
+        forEachForOrganisation(oid, onrClient.resolveLanguageCodeForCurrentUser(), result::add);
+        return result;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void forEachForOrganisation(final String oid, final Consumer<AccessRightReportRow> action) {
         final String lang = onrClient.resolveLanguageCodeForCurrentUser();
-        final Map<String, OrganisaatioWithChildrenDto> orgs = resolveHierarchy(oid);
-        @SuppressWarnings("unchecked") final List<AccessRightReportRow> result = em
-                .createNamedQuery("AccessRightReport")
-                .setParameter("oids", orgs.keySet())
-                .setParameter("lang", lang)
-                .getResultList();
-        return enrich(result, orgs, lang);
+        try (Connection connection = reportConnectionPool.getDataSource().getConnection()) {
+            // kursori toimii vain transaktiossa; mitään ei kirjoiteta, joten transaktio perutaan lopuksi
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try {
+                forEachForOrganisation(connection, oid, lang, action);
+            } finally {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not read access right report for " + oid, e);
+        }
     }
 
-    protected Map<String, OrganisaatioWithChildrenDto> resolveHierarchy(final String oid) {
-        return flatten(organisaatioService.getByOid(oid)).stream()
-                .collect(toMap(OrganisaatioWithChildrenDto::getOid, Function.identity()));
+    @Override
+    public void forEachForOrganisation(final String oid, final String lang, final Consumer<AccessRightReportRow> action) {
+        forEachForOrganisation(em, oid, lang, action);
     }
 
-    private List<OrganisaatioWithChildrenDto> flatten(final OrganisaatioWithChildrenDto node) {
-        return Stream.concat(
-                Stream.of(node),
-                node.getChildren().stream().map(this::flatten).flatMap(Collection::stream)
-        ).collect(toList());
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void forEachForOrganisation(final Connection connection, final String oid, final String lang,
+                                       final Consumer<AccessRightReportRow> action) {
+        // oma istunto annetulla yhteydellä, jolloin sovelluksen yhteyspoolista ei varata yhteyttä
+        try (Session session = em.getEntityManagerFactory().unwrap(SessionFactory.class)
+                .withOptions().connection(connection).openSession()) {
+            forEachForOrganisation(session, oid, lang, action);
+        }
     }
 
-    private List<AccessRightReportRow> enrich(final List<AccessRightReportRow> result,
-                                              final Map<String, OrganisaatioWithChildrenDto> orgs,
-                                              final String lang) {
-        return result.stream()
-                .map(resultRow -> resultRow.withOrganisation(resolveOrgName(resultRow.getOrganisationOid(), orgs, lang)))
-                        .collect(toList());
+    private void forEachForOrganisation(final EntityManager entityManager, final String oid, final String lang,
+                                        final Consumer<AccessRightReportRow> action) {
+        if (organisaatioClient.getOrganisaatioPerustiedotCached(oid).isEmpty()) {
+            throw new NotFoundException(oid);
+        }
+        // aliorganisaatiot rajataan kannassa organisaatio_closure-taululla, nimet haetaan vain raportin organisaatioille
+        final Map<String, String> orgNames = new HashMap<>();
+        try (Stream<AccessRightReportRow> rows = stream(entityManager, oid, lang)) {
+            rows.map(row -> row.withOrganisation(orgNames.computeIfAbsent(row.getOrganisationOid(),
+                            organisationOid -> resolveOrgName(organisationOid, lang))))
+                    .forEach(action);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Stream<AccessRightReportRow> stream(final EntityManager entityManager, final String oid, final String lang) {
+        return entityManager.createNamedQuery("AccessRightReport")
+                .setParameter("oid", oid)
+                .setParameter("lang", lang)
+                .setHint(QueryHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream();
     }
 
-    private String resolveOrgName(final String organisationOid,
-                                  final Map<String, OrganisaatioWithChildrenDto> orgs,
-                                  final String lang) {
-        return orgs.get(organisationOid).getNimi().get(lang);
+    private String resolveOrgName(final String organisationOid, final String lang) {
+        return organisaatioClient.getOrganisaatioPerustiedotCached(organisationOid)
+                .map(organisaatio -> organisaatio.getNimi().get(lang.toLowerCase()))
+                .orElse(null);
     }
 }
@@ -0,0 +1,47 @@
+package fi.vm.sade.kayttooikeus.service.report.accessrights;
+
+import fi.vm.sade.kayttooikeus.dto.ReportJobDto;
+
+import java.io.InputStream;
+
+/**
+ * Käyttöoikeusraportin suoritus taustalla. Pyyntö palauttaa ajon tunnisteen heti, raportti suoritetaan
+ * db-schedulerin ajona ja valmis tulos säilytetään pakattuna kannassa vanhenemisaikaan asti.
+ */
+public interface AccessRightReportJobService {
+
+    /**
+     * Lisää raportin jonoon kirjautuneen käyttäjän kielellä. Jos samalle organisaatiolle ja kielelle on jo jonossa
+     * tai suorituksessa oleva ajo, palautetaan se.
+     *
+     * @param oid organisaatio
+     * @return ajo
+     */
+    ReportJobDto submit(String oid);
+
+    /**
+     * @param oid organisaatio, jolle ajo on tehty
+     * @param id ajon tunniste
+     * @return ajon tila
+     */
+    ReportJobDto get(String oid, long id);
+
+    /**
+     * @param oid organisaatio, jolle ajo on tehty
+     * @param id ajon tunniste
+     * @return valmiin raportin rivit gzip-pakattuna NDJSON-muodossa, kutsujan suljettava
+     */
+    InputStream getResult(String oid, long id);
+
+    /**
+     * Suorittaa ajon. Kutsutaan ajastuksesta.
+     *
+     * @param id ajon tunniste
+     */
+    void execute(long id);
+
+    /**
+     * @return poistettujen vanhentuneiden ajojen määrä
+     */
+    int deleteExpired();
+}
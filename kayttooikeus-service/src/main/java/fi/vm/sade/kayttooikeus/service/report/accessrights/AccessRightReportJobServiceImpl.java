@@ -0,0 +1,224 @@
+package fi.vm.sade.kayttooikeus.service.report.accessrights;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kagkarlsson.scheduler.SchedulerClient;
+import com.google.common.io.CountingOutputStream;
+import fi.vm.sade.kayttooikeus.config.OrikaBeanMapper;
+import fi.vm.sade.kayttooikeus.config.db.ReportConnectionPool;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
+import fi.vm.sade.kayttooikeus.config.scheduling.AccessRightReportTask;
+import fi.vm.sade.kayttooikeus.config.scheduling.SchedulingClusterConfiguration;
+import fi.vm.sade.kayttooikeus.dto.ReportJobDto;
+import fi.vm.sade.kayttooikeus.dto.ReportJobStatus;
+import fi.vm.sade.kayttooikeus.model.ReportJob;
+import fi.vm.sade.kayttooikeus.repositories.ReportJobRepository;
+import fi.vm.sade.kayttooikeus.repositories.ReportJobResultRepository;
+import fi.vm.sade.kayttooikeus.service.exception.NotFoundException;
+import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
+import fi.vm.sade.kayttooikeus.util.UserDetailsUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+@Slf4j
+@Service
+public class AccessRightReportJobServiceImpl implements AccessRightReportJobService {
+
+    private static final int ERROR_MAX_LENGTH = 255;
+
+    private final ReportJobRepository reportJobRepository;
+    private final ReportJobResultRepository reportJobResultRepository;
+    private final ReportJobResultStorage reportJobResultStorage;
+    private final ReportConnectionPool reportConnectionPool;
+    private final AccessRightReport accessRightReport;
+    private final OppijanumerorekisteriClient onrClient;
+    private final ObjectMapper objectMapper;
+    private final OrikaBeanMapper mapper;
+    private final KayttooikeusProperties kayttooikeusProperties;
+    // ajastus on käytössä vain, jos kayttooikeus.scheduling.enabled, ja ajastustehtävä riippuu tästä palvelusta
+    private final ObjectProvider<SchedulerClient> schedulerClient;
+    private final ObjectProvider<AccessRightReportTask> accessRightReportTask;
+
+    public AccessRightReportJobServiceImpl(ReportJobRepository reportJobRepository,
+                                           ReportJobResultRepository reportJobResultRepository,
+                                           ReportJobResultStorage reportJobResultStorage,
+                                           ReportConnectionPool reportConnectionPool,
+                                           AccessRightReport accessRightReport,
+                                           OppijanumerorekisteriClient onrClient,
+                                           ObjectMapper objectMapper,
+                                           OrikaBeanMapper mapper,
+                                           KayttooikeusProperties kayttooikeusProperties,
+                                           @Qualifier(SchedulingClusterConfiguration.REPORT_SCHEDULER) ObjectProvider<SchedulerClient> schedulerClient,
+                                           ObjectProvider<AccessRightReportTask> accessRightReportTask) {
+        this.reportJobRepository = reportJobRepository;
+        this.reportJobResultRepository = reportJobResultRepository;
+        this.reportJobResultStorage = reportJobResultStorage;
+        this.reportConnectionPool = reportConnectionPool;
+        this.accessRightReport = accessRightReport;
+        this.onrClient = onrClient;
+        this.objectMapper = objectMapper;
+        this.mapper = mapper;
+        this.kayttooikeusProperties = kayttooikeusProperties;
+        this.schedulerClient = schedulerClient;
+        this.accessRightReportTask = accessRightReportTask;
+    }
+
+    @Override
+    public ReportJobDto submit(String oid) {
+        SchedulerClient scheduler = schedulerClient.getIfAvailable();
+        if (scheduler == null) {
+            throw new IllegalStateException("Scheduling is disabled, report jobs cannot be run");
+        }
+        String lang = onrClient.resolveLanguageCodeForCurrentUser();
+        Optional<ReportJob> active = findActive(oid, lang);
+        if (active.isPresent()) {
+            return map(active.get());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        ReportJob job = ReportJob.builder()
+                .organisaatioOid(oid)
+                .lang(lang)
+                .status(ReportJobStatus.QUEUED)
+                .requestedBy(UserDetailsUtil.getCurrentUserOid())
+                .created(now)
+                .expires(now.plus(Duration.ofMillis(kayttooikeusProperties.getReportJob().getTtl())))
+                .build();
+        try {
+            job = reportJobRepository.save(job);
+        } catch (DataIntegrityViolationException e) {
+            // toinen pyyntö ehti lisätä saman ajon (report_job_active_uidx)
+            return findActive(oid, lang).map(this::map).orElseThrow(() -> e);
+        }
+
+        try {
+            scheduler.schedule(accessRightReportTask.getObject().instance(String.valueOf(job.getId())), Instant.now());
+        } catch (RuntimeException e) {
+            // muuten ajo jäisi jonoon ja estäisi uudet pyynnöt vanhenemiseen asti
+            fail(job, e);
+            throw e;
+        }
+        return map(job);
+    }
+
+    @Override
+    public ReportJobDto get(String oid, long id) {
+        return map(getJob(oid, id));
+    }
+
+    @Override
+    public InputStream getResult(String oid, long id) {
+        ReportJob job = getJob(oid, id);
+        if (job.getStatus() != ReportJobStatus.DONE) {
+            throw new NotFoundException("Report job " + id + " has no result, status is " + job.getStatus());
+        }
+        return reportJobResultStorage.open(id)
+                .orElseThrow(() -> new NotFoundException("Report job " + id + " result not found"));
+    }
+
+    @Override
+    public void execute(long id) {
+        ReportJob job = reportJobRepository.findById(id).orElse(null);
+        if (job == null) {
+            log.warn("Report job {} not found, it has expired", id);
+            return;
+        }
+        if (!job.getStatus().isActive()) {
+            // keskeytyneen suorituksen uusinta valmistuneelle ajolle
+            return;
+        }
+        job.setStatus(ReportJobStatus.RUNNING);
+        job.setStarted(LocalDateTime.now());
+        job = reportJobRepository.save(job);
+        log.info("Running access right report job {} for organisation {}", id, job.getOrganisaatioOid());
+
+        try {
+            AtomicLong rows = new AtomicLong();
+            long bytes = writeResult(job, rows);
+            job.setStatus(ReportJobStatus.DONE);
+            job.setRowCount(rows.get());
+            job.setFinished(LocalDateTime.now());
+            reportJobRepository.save(job);
+            log.info("Access right report job {} finished with {} rows ({} bytes)", id, rows.get(), bytes);
+        } catch (IOException | SQLException | RuntimeException e) {
+            log.error("Access right report job {} failed", id, e);
+            fail(job, e);
+        }
+    }
+
+    // raportti luetaan ja tulos kirjoitetaan raporttipoolin yhteydellä samassa transaktiossa, jotta ajo ei varaa
+    // pyyntöjen yhteyksiä eikä keskeytynyt ajo jätä osittaista tulosta
+    private long writeResult(ReportJob job, AtomicLong rows) throws IOException, SQLException {
+        try (Connection connection = reportConnectionPool.getDataSource().getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                CountingOutputStream bytes = new CountingOutputStream(reportJobResultStorage.create(connection,
+                        job.getId(), AccessRightReportWriter.NDJSON_CONTENT_TYPE));
+                try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), UTF_8)) {
+                    AccessRightReportWriter reportWriter = AccessRightReportWriter.ndjson(writer, objectMapper);
+                    accessRightReport.forEachForOrganisation(connection, job.getOrganisaatioOid(), job.getLang(), row -> {
+                        reportWriter.accept(row);
+                        rows.incrementAndGet();
+                    });
+                    reportWriter.finish();
+                }
+                connection.commit();
+                return bytes.getCount();
+            } catch (IOException | SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    @Transactional
+    public int deleteExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        reportJobResultRepository.deleteExpiredChunks(now);
+        reportJobResultRepository.deleteExpired(now);
+        return reportJobRepository.deleteExpired(now);
+    }
+
+    private Optional<ReportJob> findActive(String oid, String lang) {
+        return reportJobRepository.findFirstByOrganisaatioOidAndLangAndStatusIn(oid, lang,
+                EnumSet.of(ReportJobStatus.QUEUED, ReportJobStatus.RUNNING));
+    }
+
+    private ReportJob getJob(String oid, long id) {
+        return reportJobRepository.findById(id)
+                .filter(job -> job.getOrganisaatioOid().equals(oid))
+                .orElseThrow(() -> new NotFoundException("Report job " + id + " not found"));
+    }
+
+    private void fail(ReportJob job, Exception e) {
+        String error = String.valueOf(e.getMessage());
+        job.setStatus(ReportJobStatus.FAILED);
+        job.setError(error.length() > ERROR_MAX_LENGTH ? error.substring(0, ERROR_MAX_LENGTH) : error);
+        job.setFinished(LocalDateTime.now());
+        reportJobRepository.save(job);
+    }
+
+    private ReportJobDto map(ReportJob job) {
+        return mapper.map(job, ReportJobDto.class);
+    }
+}
@@ -0,0 +1,164 @@
+package fi.vm.sade.kayttooikeus.service.report.accessrights;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import fi.vm.sade.kayttooikeus.report.AccessRightReportRow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.function.Consumer;
+
+/**
+ * Kirjoittaa käyttöoikeusraportin rivi kerrallaan, jotta raportti voidaan välittää kutsujalle sitä mukaa kuin
+ * se luetaan kannasta.
+ *
+ * @see AccessRightReport#forEachForOrganisation(String, Consumer)
+ */
+public abstract class AccessRightReportWriter implements Consumer<AccessRightReportRow> {
+
+    public static final String CSV_CONTENT_TYPE = "text/csv;charset=UTF-8";
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson;charset=UTF-8";
+
+    // puskuri tyhjennetään näin monen rivin välein, jotta vastaus alkaa virrata heti
+    private static final int FLUSH_INTERVAL = 500;
+
+    protected final Writer writer;
+    private int rows;
+
+    protected AccessRightReportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * @param writer kohde
+     * @return CSV-muotoinen (RFC 4180) kirjoittaja, joka kirjoittaa otsikkorivin ensimmäisen rivin yhteydessä
+     */
+    public static AccessRightReportWriter csv(Writer writer) {
+        return new Csv(writer);
+    }
+
+    /**
+     * @param writer kohde
+     * @param objectMapper rivien serialisointi, samat muotoilut kuin JSON-rajapinnassa
+     * @return NDJSON-muotoinen kirjoittaja, yksi JSON-objekti riviä kohden
+     */
+    public static AccessRightReportWriter ndjson(Writer writer, ObjectMapper objectMapper) {
+        return new Ndjson(writer, objectMapper);
+    }
+
+    @Override
+    public void accept(AccessRightReportRow row) {
+        try {
+            write(row);
+            if (++rows % FLUSH_INTERVAL == 0) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Kirjoittaa puskuroidut rivit. Kutsutaan viimeisen rivin jälkeen.
+     *
+     * @throws IOException kirjoitus epäonnistui
+     */
+    public void finish() throws IOException {
+        writer.flush();
+    }
+
+    protected abstract void write(AccessRightReportRow row) throws IOException;
+
+    private static final class Csv extends AccessRightReportWriter {
+
+        private static final String[] HEADER = {"id", "personName", "personOid", "organisationName",
+                "organisationOid", "accessRightName", "accessRightId", "startDate", "endDate", "modified", "modifiedBy"};
+        private static final DateTimeFormatter DATE = DateTimeFormatter.ISO_LOCAL_DATE;
+        private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        private boolean headerWritten;
+
+        private Csv(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writeHeader();
+            super.finish();
+        }
+
+        @Override
+        protected void write(AccessRightReportRow row) throws IOException {
+            writeHeader();
+            writeLine(
+                    String.valueOf(row.getId()),
+                    row.getPersonName(),
+                    row.getPersonOid(),
+                    row.getOrganisationName(),
+                    row.getOrganisationOid(),
+                    row.getAccessRightName(),
+                    String.valueOf(row.getAccessRightId()),
+                    format(row.getStartDate(), DATE),
+                    format(row.getEndDate(), DATE),
+                    format(row.getModified(), DATE_TIME),
+                    row.getModifiedBy());
+        }
+
+        private void writeHeader() throws IOException {
+            if (!headerWritten) {
+                headerWritten = true;
+                writeLine(HEADER);
+            }
+        }
+
+        private void writeLine(String... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeValue(values[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeValue(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        private static String format(Date date, DateTimeFormatter formatter) {
+            // kannasta tulee java.sql.Date/Timestamp, joiden toInstant ei ole käytettävissä
+            return date != null ? formatter.format(new Timestamp(date.getTime()).toLocalDateTime()) : null;
+        }
+    }
+
+    private static final class Ndjson extends AccessRightReportWriter {
+
+        private final ObjectWriter objectWriter;
+
+        private Ndjson(Writer writer, ObjectMapper objectMapper) {
+            super(writer);
+            this.objectWriter = objectMapper.writerFor(AccessRightReportRow.class);
+        }
+
+        @Override
+        protected void write(AccessRightReportRow row) throws IOException {
+            writer.write(objectWriter.writeValueAsString(row));
+            writer.write('\n');
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package fi.vm.sade.kayttooikeus.service.report.accessrights;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Kirjoittaa ja lukee raporttiajon pakatun tuloksen report_job_result_chunk-tauluun paloina ohi JPA:n, jotta
+ * tulosta ei pidetä kokonaan muistissa.
+ *
+ * @see fi.vm.sade.kayttooikeus.model.ReportJobResultChunk
+ */
+@Component
+@RequiredArgsConstructor
+public class ReportJobResultStorage {
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+    private static final String INSERT_RESULT_SQL = "INSERT INTO report_job_result (report_job_id, content_type) VALUES (?, ?)";
+    private static final String INSERT_CHUNK_SQL = "INSERT INTO report_job_result_chunk (report_job_id, seq, data) VALUES (?, ?, ?)";
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM report_job_result WHERE report_job_id = ?";
+    private static final String CHUNK_SQL = "SELECT data FROM report_job_result_chunk WHERE report_job_id = ? AND seq = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Lisää ajolle tuloksen, jonka sisältö kirjoitetaan palautettuun virtaan. Palat kirjoitetaan annetulla
+     * yhteydellä sitä mukaa kuin ne täyttyvät ja viimeinen suljettaessa; kutsuja vastaa yhteyden transaktiosta.
+     *
+     * @param connection yhteys, jolla tulos kirjoitetaan
+     * @param reportJobId ajon tunniste
+     * @param contentType sisällön tyyppi
+     * @return virta tuloksen pakatulle sisällölle
+     */
+    public OutputStream create(Connection connection, long reportJobId, String contentType) {
+        JdbcOperations jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+        jdbc.update(INSERT_RESULT_SQL, reportJobId, contentType);
+        return new ChunkOutputStream(jdbc, reportJobId);
+    }
+
+    /**
+     * Avaa ajon tuloksen luettavaksi. Palat haetaan yksi kerrallaan lyhyinä kyselyinä, joten virta ei varaa
+     * tietokantayhteyttä lukujen välillä.
+     *
+     * @param reportJobId ajon tunniste
+     * @return tuloksen pakattu sisältö tai tyhjä, jos tulosta ei ole
+     */
+    public Optional<InputStream> open(long reportJobId) {
+        Integer count = jdbcTemplate.queryForObject(EXISTS_SQL, Integer.class, reportJobId);
+        if (count == null || count == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new ChunkInputStream(jdbcTemplate, reportJobId));
+    }
+
+    private static class ChunkOutputStream extends OutputStream {
+
+        private final JdbcOperations jdbc;
+        private final long reportJobId;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private int seq;
+        private boolean closed;
+
+        ChunkOutputStream(JdbcOperations jdbc, long reportJobId) {
+            this.jdbc = jdbc;
+            this.reportJobId = reportJobId;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (count > 0) {
+                    writeChunk();
+                }
+            }
+        }
+
+        private void writeChunk() {
+            jdbc.update(INSERT_CHUNK_SQL, reportJobId, seq++, Arrays.copyOf(buffer, count));
+            count = 0;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Report job " + reportJobId + " result is already closed");
+            }
+        }
+    }
+
+    private static class ChunkInputStream extends InputStream {
+
+        private final JdbcOperations jdbc;
+        private final long reportJobId;
+        private byte[] chunk = new byte[0];
+        private int pos;
+        private int seq;
+        private boolean eof;
+
+        ChunkInputStream(JdbcOperations jdbc, long reportJobId) {
+            this.jdbc = jdbc;
+            this.reportJobId = reportJobId;
+        }
+
+        @Override
+        public int read() {
+            return nextChunk() ? chunk[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        // edellinen pala vapautetaan ennen seuraavan hakua, joten muistissa on kerrallaan yksi pala
+        private boolean nextChunk() {
+            while (!eof && pos == chunk.length) {
+                chunk = new byte[0];
+                pos = 0;
+                List<byte[]> rows = jdbc.query(CHUNK_SQL, (rs, rowNum) -> rs.getBytes(1), reportJobId, seq++);
+                if (rows.isEmpty()) {
+                    eof = true;
+                } else {
+                    chunk = rows.get(0);
+                }
+            }
+            return !eof;
+        }
+    }
+}
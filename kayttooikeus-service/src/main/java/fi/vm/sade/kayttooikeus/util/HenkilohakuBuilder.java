@@ -6,12 +6,11 @@ import fi.vm.sade.kayttooikeus.dto.HenkilohakuCriteriaDto;
 import fi.vm.sade.kayttooikeus.dto.OrganisaatioMinimalDto;
 import fi.vm.sade.kayttooikeus.dto.PalveluRooliGroup;
 import fi.vm.sade.kayttooikeus.enumeration.OrderByHenkilohaku;
-import fi.vm.sade.kayttooikeus.model.Henkilo;
-import fi.vm.sade.kayttooikeus.model.OrganisaatioHenkilo;
-import fi.vm.sade.kayttooikeus.repositories.HenkiloDataRepository;
 import fi.vm.sade.kayttooikeus.repositories.HenkiloHibernateRepository;
 import fi.vm.sade.kayttooikeus.repositories.OrganisaatioHenkiloRepository;
 import fi.vm.sade.kayttooikeus.repositories.criteria.HenkiloCriteria;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuCursor;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuPageDto;
 import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuResultDto;
 import fi.vm.sade.kayttooikeus.service.PermissionCheckerService;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
@@ -19,19 +18,19 @@ import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toSet;
+import static java.util.Collections.emptyList;
 
 @RequiredArgsConstructor
 public class HenkilohakuBuilder {
@@ -42,11 +41,14 @@ public class HenkilohakuBuilder {
     private HenkilohakuCriteriaDto henkilohakuCriteriaDto;
     private LinkedHashSet<HenkilohakuResultDto> henkilohakuResultDtoList = new LinkedHashSet<>();
     private Long henkilohakuResultCount;
+    private String nextCursor;
+    // aliorganisaatiot rajataan kannassa organisaatio_closure-taulua vasten
+    private Set<String> ylaorganisaatioOids;
+    private Set<String> kayttajaOrganisaatioOids;
 
     private final HenkiloHibernateRepository henkiloHibernateRepository;
     private final OrikaBeanMapper mapper;
     private final PermissionCheckerService permissionCheckerService;
-    private final HenkiloDataRepository henkiloDataRepository;
     private final OrganisaatioClient organisaatioClient;
     private final OrganisaatioHenkiloRepository organisaatioHenkiloRepository;
     private final CommonProperties commonProperties;
@@ -54,6 +56,9 @@ public class HenkilohakuBuilder {
     public HenkilohakuBuilder builder(HenkilohakuCriteriaDto henkilohakuCriteriaDto) {
         this.henkilohakuCriteriaDto = henkilohakuCriteriaDto;
         this.henkilohakuResultDtoList = new LinkedHashSet<>();
+        this.ylaorganisaatioOids = null;
+        this.kayttajaOrganisaatioOids = null;
+        this.nextCursor = null;
         return this;
     }
 
@@ -61,6 +66,9 @@ public class HenkilohakuBuilder {
         return this.henkilohakuResultDtoList;
     }
     public Long buildHakuResultCount() { return this.henkilohakuResultCount; }
+    public HenkilohakuPageDto buildPage() {
+        return new HenkilohakuPageDto(this.henkilohakuResultDtoList, this.nextCursor);
+    }
 
     // Find nimi, kayttajatunnus and oidHenkilo
     public HenkilohakuBuilder search(Long offset, OrderByHenkilohaku orderBy) {
@@ -86,32 +94,72 @@ public class HenkilohakuBuilder {
         return this;
     }
 
+    // Find nimi, kayttajatunnus and oidHenkilo after the given cursor
+    public HenkilohakuBuilder searchPage(String cursor, OrderByHenkilohaku orderBy) {
+        HenkilohakuCursor kohta = cursor != null ? HenkilohakuCursor.decode(cursor) : HenkilohakuCursor.first(orderBy);
+
+        // käyttäjätunnuksella ja nimellä löytyvät samalla kyselyllä, jotta kohta rajaa ja järjestää molemmat
+        HenkiloCriteria kayttajatunnusCriteria = this.usernameCriteria();
+        List<HenkilohakuResultDto> sivu = findByName(criteria -> this.henkiloHibernateRepository.findPageByCriteria(criteria,
+                StringUtils.hasLength(kayttajatunnusCriteria.getKayttajatunnus()) ? kayttajatunnusCriteria : null,
+                kohta, DEFAULT_LIMIT));
+        this.henkilohakuResultDtoList = new LinkedHashSet<>(sivu);
+        this.nextCursor = sivu.size() < DEFAULT_LIMIT ? null : kohta.next(sivu.get(sivu.size() - 1)).encode();
+
+        return this;
+    }
+
     // Find count of result with criteria
     public HenkilohakuBuilder searchCount() {
+        return searchCount(null);
+    }
+
+    // Find count of result with criteria, counting at most max henkilos when max is given
+    public HenkilohakuBuilder searchCount(Long max) {
         // 1) käyttäjätunnuksella haku
         List<HenkilohakuResultDto> henkiloCountByUsername = findByUsername(0L);
 
         // 2) nimellä haku
         List<String> henkiloOids = henkiloCountByUsername.stream().map( h -> h.getOidHenkilo()).collect(Collectors.toList());
-        Long henkiloCountByCriteria = findByName(criteria -> this.henkiloHibernateRepository
-                .findByCriteriaCount(criteria, henkiloOids));
+        Long henkiloCountByCriteria = findByName(criteria -> max != null
+                ? this.henkiloHibernateRepository.findByCriteriaCount(criteria, henkiloOids, max)
+                : this.henkiloHibernateRepository.findByCriteriaCount(criteria, henkiloOids));
 
         this.henkilohakuResultCount = henkiloCountByCriteria + henkiloCountByUsername.size();
+        if (max != null) {
+            this.henkilohakuResultCount = Math.min(this.henkilohakuResultCount, max);
+        }
         return this;
     }
 
-    private List<HenkilohakuResultDto> findByUsername(Long offset) {
+    private HenkiloCriteria toCriteria() {
         HenkiloCriteria criteria = this.mapper.map(this.henkilohakuCriteriaDto, HenkiloCriteria.class);
+        if (this.ylaorganisaatioOids != null) {
+            criteria.setOrganisaatioOids(null);
+            criteria.setYlaorganisaatioOids(new HashSet<>(this.ylaorganisaatioOids));
+        }
+        if (this.kayttajaOrganisaatioOids != null) {
+            criteria.setKayttajaOrganisaatioOids(new HashSet<>(this.kayttajaOrganisaatioOids));
+        }
+        return criteria;
+    }
+
+    private List<HenkilohakuResultDto> findByUsername(Long offset) {
+        return henkiloHibernateRepository.findByUsername(this.usernameCriteria(), offset);
+    }
+
+    private HenkiloCriteria usernameCriteria() {
+        HenkiloCriteria criteria = this.toCriteria();
         if (criteria.getKayttajatunnus() == null) {
             criteria.setKayttajatunnus(criteria.getNameQuery());
         }
         criteria.setSukunimi(null);
         criteria.setNameQuery(null);
-        return henkiloHibernateRepository.findByUsername(criteria, offset);
+        return criteria;
     }
 
     private <T> T findByName(Function<HenkiloCriteria, T> findByFunction) {
-        HenkiloCriteria criteria = this.mapper.map(this.henkilohakuCriteriaDto, HenkiloCriteria.class);
+        HenkiloCriteria criteria = this.toCriteria();
         criteria.setKayttajatunnus(null);
         return findByFunction.apply(criteria);
     }
@@ -133,21 +181,15 @@ public class HenkilohakuBuilder {
                 : new HashSet<>(currentUserOrganisaatioOids);
         boolean juuriorganisaatioHaku = criteriaOrganisaatioOids.contains(commonProperties.getRootOrganizationOid());
 
-        if (Boolean.TRUE.equals(henkilohakuCriteriaDto.getSubOrganisation()) && !juuriorganisaatioHaku) {
+        if (Boolean.TRUE.equals(henkilohakuCriteriaDto.getSubOrganisation()) && !juuriorganisaatioHaku
+                && !criteriaOrganisaatioOids.isEmpty()) {
             // haetaan myös aliorganisaatioista
-            criteriaOrganisaatioOids = criteriaOrganisaatioOids.stream()
-                    .flatMap(organisaatioOid -> Stream.concat(Stream.of(organisaatioOid),
-                            organisaatioClient.getChildOids(organisaatioOid).stream()))
-                    .collect(toSet());
+            this.ylaorganisaatioOids = criteriaOrganisaatioOids;
         }
         if (!this.permissionCheckerService.isCurrentUserMiniAdmin()) {
             if (henkilohakuCriteriaDto.getOrganisaatioOids() != null) {
-                // suodatetaan käyttäjän organisaatioilla
-                Set<String> kayttajaOrganisaatioOids = currentUserOrganisaatioOids.stream()
-                        .flatMap(organisaatioOid -> Stream.concat(Stream.of(organisaatioOid),
-                                organisaatioClient.getChildOids(organisaatioOid).stream()))
-                        .collect(toSet());
-                criteriaOrganisaatioOids.retainAll(kayttajaOrganisaatioOids);
+                // suodatetaan käyttäjän organisaatioilla ja niiden aliorganisaatioilla
+                this.kayttajaOrganisaatioOids = new HashSet<>(currentUserOrganisaatioOids);
             }
         } else {
             if (Boolean.TRUE.equals(henkilohakuCriteriaDto.getSubOrganisation()) && juuriorganisaatioHaku) {
@@ -162,24 +204,21 @@ public class HenkilohakuBuilder {
     // Find organisaatioNimiList
     public HenkilohakuBuilder enrichment() {
         List<String> oidList = this.henkilohakuResultDtoList.stream().map(HenkilohakuResultDto::getOidHenkilo).collect(Collectors.toList());
-        List<Henkilo> henkiloList = this.henkiloDataRepository.readByOidHenkiloIn(oidList);
-        this.henkilohakuResultDtoList = this.henkilohakuResultDtoList.stream().map(henkilohakuResultDto -> {
-            Henkilo henkilo = henkiloList.stream().filter(henkilo1 -> Objects.equals(henkilo1.getOidHenkilo(), henkilohakuResultDto.getOidHenkilo()))
-                    .findFirst()
-                    .orElseThrow(IllegalStateException::new);
-            henkilohakuResultDto.setOrganisaatioNimiList(henkilo.getOrganisaatioHenkilos().stream()
-                    .filter(((Predicate<OrganisaatioHenkilo>) OrganisaatioHenkilo::isPassivoitu).negate())
-                    .map(OrganisaatioHenkilo::getOrganisaatioOid)
-                    .map(organisaatioOid -> {
-                        OrganisaatioPerustieto organisaatio = this.organisaatioClient.getOrganisaatioPerustiedotCached(organisaatioOid)
-                                .orElseGet(() -> UserDetailsUtil.createUnknownOrganisation(organisaatioOid));
-                        return new OrganisaatioMinimalDto(organisaatioOid, organisaatio.getTyypit(), organisaatio.getNimi());
-                    })
-                    .collect(Collectors.toList()));
-            return henkilohakuResultDto;
-        }).collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, List<String>> organisaatioOidsByHenkiloOid = this.organisaatioHenkiloRepository.findOrganisaatioOidsByHenkiloOids(oidList);
+        // sivun henkilöillä on usein samoja organisaatioita, joten organisaatioiden dto:t jaetaan riveille
+        Map<String, OrganisaatioMinimalDto> organisaatiot = new HashMap<>();
+        this.henkilohakuResultDtoList.forEach(henkilohakuResultDto -> henkilohakuResultDto.setOrganisaatioNimiList(
+                organisaatioOidsByHenkiloOid.getOrDefault(henkilohakuResultDto.getOidHenkilo(), emptyList()).stream()
+                        .map(organisaatioOid -> organisaatiot.computeIfAbsent(organisaatioOid, this::getOrganisaatio))
+                        .collect(Collectors.toList())));
 
         return this;
     }
 
+    private OrganisaatioMinimalDto getOrganisaatio(String organisaatioOid) {
+        OrganisaatioPerustieto organisaatio = this.organisaatioClient.getOrganisaatioPerustiedotCached(organisaatioOid)
+                .orElseGet(() -> UserDetailsUtil.createUnknownOrganisation(organisaatioOid));
+        return new OrganisaatioMinimalDto(organisaatioOid, organisaatio.getTyypit(), organisaatio.getNimi());
+    }
+
 }
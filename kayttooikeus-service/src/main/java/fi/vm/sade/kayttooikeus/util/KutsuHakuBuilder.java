@@ -13,7 +13,6 @@ import fi.vm.sade.kayttooikeus.repositories.OrganisaatioHenkiloRepository;
 import fi.vm.sade.kayttooikeus.repositories.criteria.KutsuCriteria;
 import fi.vm.sade.kayttooikeus.service.LocalizationService;
 import fi.vm.sade.kayttooikeus.service.PermissionCheckerService;
-import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang.BooleanUtils;
 import org.springframework.data.domain.Sort;
@@ -41,8 +40,6 @@ public class KutsuHakuBuilder {
 
     private final OrikaBeanMapper mapper;
 
-    private final OrganisaatioClient organisaatioClient;
-
     private final KutsuCriteria kutsuCriteria;
 
     private List<KutsuReadDto> result;
@@ -86,12 +83,14 @@ public class KutsuHakuBuilder {
             organisaatioOidLimit = this.permissionCheckerService.getCurrentUserOrgnisationsWithPalveluRole(palveluRoolit);
         }
         if (BooleanUtils.isTrue(this.kutsuCriteria.getSubOrganisations())) {
-            organisaatioOidLimit = organisaatioOidLimit.stream()
-                    .flatMap(organisaatioOid -> this.organisaatioClient.listWithChildOids(organisaatioOid,
-                            new OrganisaatioMyontoPredicate(false)).stream())
-                    .collect(Collectors.toSet());
+            // aliorganisaatiot rajataan kannassa organisaatiohierarkiaa vasten
+            this.kutsuCriteria.setOrganisaatioOids(null);
+            this.kutsuCriteria.setYlaorganisaatioOids(organisaatioOidLimit);
+        }
+        else {
+            this.kutsuCriteria.setOrganisaatioOids(organisaatioOidLimit);
+            this.kutsuCriteria.setYlaorganisaatioOids(null);
         }
-        this.kutsuCriteria.setOrganisaatioOids(organisaatioOidLimit);
 
         return this;
     }
@@ -0,0 +1,57 @@
+package fi.vm.sade.kayttooikeus.util;
+
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Käyttöoikeusryhmän organisaatiorajoitteiden (organisaatioviitteiden) tulkinta.
+ */
+public final class OrganisaatioViiteUtil {
+
+    private OrganisaatioViiteUtil() {
+    }
+
+    /**
+     * Palauttaa organisaatioviitteet, joiden perusteella organisaatioon voi myöntää käyttöoikeusryhmän. Ryhmän voi
+     * myöntää, jos sillä on yksikin näistä viitteistä:
+     * <ul>
+     *     <li>organisaatioryhmille ryhmien yhteinen oid-etuliite</li>
+     *     <li>organisaation oid</li>
+     *     <li>organisaation organisaatiotyypit</li>
+     *     <li>organisaation, sen ylä- tai aliorganisaatioiden oppilaitostyypit</li>
+     * </ul>
+     *
+     * @param organisaatioOid organisaatio, johon ryhmää myönnetään
+     * @param organisaatiot organisaatio ylä- ja aliorganisaatioineen
+     * @param organisaatioRyhmaPrefix organisaatioryhmien oid-etuliite
+     * @return organisaatioon osuvat viitteet
+     */
+    public static Set<String> getOrganisaatioViitteet(String organisaatioOid, Collection<OrganisaatioPerustieto> organisaatiot,
+                                                      String organisaatioRyhmaPrefix) {
+        // Group organizations have to match only as a general set since they're not separated by type or by individual groups
+        if (organisaatioOid.startsWith(organisaatioRyhmaPrefix)) {
+            return Collections.singleton(organisaatioRyhmaPrefix);
+        }
+        Set<String> viitteet = new HashSet<>();
+        viitteet.add(organisaatioOid);
+        for (OrganisaatioPerustieto organisaatio : organisaatiot) {
+            String oppilaitostyyppi = organisaatio.resolveOppilaitostyyppiKoodi();
+            if (oppilaitostyyppi != null) {
+                viitteet.add(oppilaitostyyppi);
+            }
+            if (organisaatioOid.equals(organisaatio.getOid())) {
+                List<String> organisaatiotyypit = organisaatio.resolveOrganisaatiotyypit();
+                if (organisaatiotyypit != null) {
+                    viitteet.addAll(organisaatiotyypit);
+                }
+            }
+        }
+        return viitteet;
+    }
+
+}
@@ -1,9 +1,11 @@
 package fi.vm.sade.kayttooikeus.util;
 
 import com.google.common.collect.Lists;
+import fi.vm.sade.kayttooikeus.service.dto.HenkiloYhteystiedotDto;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
 import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloDto;
 import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloPerustietoDto;
+import fi.vm.sade.oppijanumerorekisteri.dto.KielisyysDto;
 import fi.vm.sade.oppijanumerorekisteri.dto.YhteystietoDto;
 import fi.vm.sade.oppijanumerorekisteri.dto.YhteystietoTyyppi;
 import org.apache.commons.lang.StringUtils;
@@ -47,11 +49,7 @@ public class UserDetailsUtil {
      * @return kielikoodi
      */
     public static String getLanguageCode(HenkiloDto henkilo, String... kielikoodit) {
-        List<String> kielikoodilista = Arrays.asList(kielikoodit);
-        return ofNullable(henkilo.getAsiointiKieli())
-                .flatMap(kielisyys -> ofNullable(kielisyys.getKieliKoodi()))
-                .filter(kielikoodi -> kielikoodilista.isEmpty() || kielikoodilista.contains(kielikoodi))
-                .orElse(DEFAULT_LANGUAGE_CODE);
+        return getLanguageCode(ofNullable(henkilo.getAsiointiKieli()).map(KielisyysDto::getKieliKoodi), kielikoodit);
     }
 
     /**
@@ -63,9 +61,24 @@ public class UserDetailsUtil {
      * @return kielikoodi
      */
     public static String getLanguageCode(HenkiloPerustietoDto henkilo, String... kielikoodit) {
+        return getLanguageCode(ofNullable(henkilo.getAsiointiKieli()).map(KielisyysDto::getKieliKoodi), kielikoodit);
+    }
+
+    /**
+     * Palauttaa {@link HenkiloYhteystiedotDto henkilön} asiointikielen (jos ei
+     * löydy niin palautetaan {@link #DEFAULT_LANGUAGE_CODE}).
+     *
+     * @param henkilo henkilö
+     * @param kielikoodit sallitut kielikoodit (tyhjä hyväksyy kaikki)
+     * @return kielikoodi
+     */
+    public static String getLanguageCode(HenkiloYhteystiedotDto henkilo, String... kielikoodit) {
+        return getLanguageCode(ofNullable(henkilo.getAsiointikieli()), kielikoodit);
+    }
+
+    private static String getLanguageCode(Optional<String> asiointikieli, String... kielikoodit) {
         List<String> kielikoodilista = Arrays.asList(kielikoodit);
-        return ofNullable(henkilo.getAsiointiKieli())
-                .flatMap(kielisyys -> ofNullable(kielisyys.getKieliKoodi()))
+        return asiointikieli
                 .filter(kielikoodi -> kielikoodilista.isEmpty() || kielikoodilista.contains(kielikoodi))
                 .orElse(DEFAULT_LANGUAGE_CODE);
     }
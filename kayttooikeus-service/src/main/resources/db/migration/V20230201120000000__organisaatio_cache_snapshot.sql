@@ -0,0 +1,11 @@
+--
+-- Last successfully fetched organisation hierarchy (gzipped JSON). Loaded on
+-- startup so that the service can answer permission checks before the first
+-- refresh from organisaatio-service has completed.
+--
+CREATE TABLE public.organisaatio_cache_snapshot (
+    id bigint PRIMARY KEY,
+    created timestamp without time zone NOT NULL,
+    organisaatio_count bigint NOT NULL,
+    data bytea NOT NULL
+);
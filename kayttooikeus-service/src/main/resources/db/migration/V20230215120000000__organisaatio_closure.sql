@@ -0,0 +1,15 @@
+--
+-- Organisation hierarchy closure: one row per (ancestor, descendant) pair,
+-- including the organisation itself with depth 0. Rewritten from the
+-- in-memory organisation cache on refresh so that searches can restrict to a
+-- subtree with a join instead of huge IN lists of child oids.
+--
+CREATE TABLE public.organisaatio_closure (
+    ancestor_oid character varying(255) NOT NULL,
+    descendant_oid character varying(255) NOT NULL,
+    depth integer NOT NULL,
+    status character varying(255),
+    PRIMARY KEY (ancestor_oid, descendant_oid)
+);
+
+CREATE INDEX organisaatio_closure_descendant_oid_idx ON public.organisaatio_closure (descendant_oid);
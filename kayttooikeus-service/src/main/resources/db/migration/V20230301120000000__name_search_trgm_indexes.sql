@@ -0,0 +1,12 @@
+--
+-- Trigram indexes for substring name searches. AnomusCriteria, KutsuCriteria
+-- and HenkiloCriteria (username) match with lower(x) LIKE '%q%', which the
+-- existing btree text_pattern_ops indexes cannot serve. pg_trgm is installed
+-- in the init migration. Indexes are built concurrently so that henkilo and
+-- kayttajatiedot stay writable during the migration.
+--
+CREATE INDEX CONCURRENTLY IF NOT EXISTS henkilo_etunimet_cached_trgm_idx ON public.henkilo USING gin (lower(etunimet_cached) gin_trgm_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS henkilo_sukunimi_cached_trgm_idx ON public.henkilo USING gin (lower(sukunimi_cached) gin_trgm_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS kayttajatiedot_username_trgm_idx ON public.kayttajatiedot USING gin (lower(username) gin_trgm_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS kutsu_etunimi_trgm_idx ON public.kutsu USING gin (lower(etunimi) gin_trgm_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS kutsu_sukunimi_trgm_idx ON public.kutsu USING gin (lower(sukunimi) gin_trgm_ops);
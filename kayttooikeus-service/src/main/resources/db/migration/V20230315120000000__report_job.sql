@@ -0,0 +1,29 @@
+--
+-- Background report jobs. A report request is queued here and executed by a
+-- db-scheduler one-time task; the gzipped result is kept in report_job_result
+-- until the job expires. At most one queued or running job per organisation
+-- and language, so identical concurrent requests share a job.
+--
+CREATE TABLE public.report_job (
+    id bigint PRIMARY KEY,
+    organisaatio_oid character varying(255) NOT NULL,
+    lang character varying(255) NOT NULL,
+    status character varying(255) NOT NULL,
+    requested_by character varying(255),
+    created timestamp without time zone NOT NULL,
+    started timestamp without time zone,
+    finished timestamp without time zone,
+    expires timestamp without time zone NOT NULL,
+    row_count bigint,
+    error character varying(255)
+);
+
+CREATE UNIQUE INDEX report_job_active_uidx ON public.report_job (organisaatio_oid, lang)
+    WHERE status IN ('QUEUED', 'RUNNING');
+CREATE INDEX report_job_expires_idx ON public.report_job (expires);
+
+CREATE TABLE public.report_job_result (
+    report_job_id bigint PRIMARY KEY REFERENCES public.report_job (id) ON DELETE CASCADE,
+    content_type character varying(255) NOT NULL,
+    data bytea NOT NULL
+);
@@ -0,0 +1,11 @@
+--
+-- Indexes for the access rights report, which now starts from the
+-- organisation's subtree in organisaatio_closure instead of binding every
+-- subtree oid into an IN list. The closure lookup by ancestor uses its primary
+-- key; organisaatiohenkilo is then reached by organisation with the id and
+-- henkilo_id needed for the following joins in the index, and
+-- myonnetty_kayttooikeusryhma_tapahtuma by organisaatiohenkilo_id with its
+-- existing index. Built concurrently to keep the tables writable.
+--
+CREATE INDEX CONCURRENTLY IF NOT EXISTS organisaatiohenkilo_organisaatio_oid_id_henkilo_id_idx
+    ON public.organisaatiohenkilo (organisaatio_oid, id, henkilo_id);
@@ -0,0 +1,8 @@
+--
+-- Checkpoint of a paged full load, e.g. the offset of the next henkilö page
+-- to fetch from oppijanumerorekisteri when the henkilö name cache is being
+-- populated. Null when no load is in progress. Written in the same
+-- transaction as each page so that an interrupted load resumes from the next
+-- unsaved page.
+--
+ALTER TABLE public.schedule_timestamps ADD COLUMN checkpoint bigint;
@@ -0,0 +1,23 @@
+--
+-- Transactional outbox for outgoing emails. Messages are inserted in the same
+-- transaction as the change that triggers them and sent to ryhmasahkoposti by
+-- a db-scheduler task, so request transactions do not hold a connection while
+-- the email service is called. Failed sends are retried with backoff until
+-- next_attempt; sent messages are removed after a retention period.
+--
+CREATE TABLE public.email_outbox (
+    id bigint PRIMARY KEY,
+    template_name character varying(255) NOT NULL,
+    language_code character varying(255) NOT NULL,
+    payload text NOT NULL,
+    status character varying(255) NOT NULL,
+    attempts integer NOT NULL,
+    created timestamp without time zone NOT NULL,
+    next_attempt timestamp without time zone NOT NULL,
+    sent timestamp without time zone,
+    response character varying(255),
+    error character varying(255)
+);
+
+CREATE INDEX email_outbox_pending_idx ON public.email_outbox (next_attempt, id) WHERE status = 'PENDING';
+CREATE INDEX email_outbox_sent_idx ON public.email_outbox (sent) WHERE status = 'SENT';
@@ -0,0 +1,16 @@
+--
+-- Report job results are stored as ordered chunks of the gzipped content, so
+-- that a report is written while it is generated and downloaded chunk by chunk
+-- instead of being held in memory as a whole.
+--
+CREATE TABLE public.report_job_result_chunk (
+    report_job_id bigint NOT NULL REFERENCES public.report_job_result (report_job_id) ON DELETE CASCADE,
+    seq integer NOT NULL,
+    data bytea NOT NULL,
+    PRIMARY KEY (report_job_id, seq)
+);
+
+INSERT INTO public.report_job_result_chunk (report_job_id, seq, data)
+SELECT report_job_id, 0, data FROM public.report_job_result;
+
+ALTER TABLE public.report_job_result DROP COLUMN data;
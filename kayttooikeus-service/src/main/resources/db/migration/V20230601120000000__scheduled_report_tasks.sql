@@ -0,0 +1,23 @@
+--
+-- Report jobs have their own db-scheduler instance. It gets its own table so
+-- that the two schedulers do not read each other's due executions on every
+-- poll. Queued report executions are moved over from scheduled_tasks.
+--
+CREATE TABLE public.scheduled_report_tasks (
+    task_name text NOT NULL,
+    task_instance text NOT NULL,
+    task_data bytea,
+    execution_time timestamp with time zone NOT NULL,
+    picked boolean NOT NULL,
+    picked_by text,
+    last_success timestamp with time zone,
+    last_failure timestamp with time zone,
+    last_heartbeat timestamp with time zone,
+    version bigint NOT NULL,
+    PRIMARY KEY (task_name, task_instance)
+);
+
+INSERT INTO public.scheduled_report_tasks
+SELECT * FROM public.scheduled_tasks WHERE task_name = 'access right report task';
+
+DELETE FROM public.scheduled_tasks WHERE task_name = 'access right report task';
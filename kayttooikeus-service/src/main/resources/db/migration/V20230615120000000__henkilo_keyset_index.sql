@@ -0,0 +1,10 @@
+--
+-- Index for the cursor-paginated henkilöhaku, which orders by
+-- (sukunimi_cached, etunimet_cached, oidhenkilo) and seeks past the last row
+-- of the previous page. Ascending order is NULLS LAST, and descending order
+-- (NULLS FIRST) scans the same index backwards, so the page is read from the
+-- index in order without sorting the matching rows. Built concurrently so
+-- that henkilo stays writable during the migration.
+--
+CREATE INDEX CONCURRENTLY IF NOT EXISTS henkilo_nimi_oid_keyset_idx
+    ON public.henkilo (sukunimi_cached, etunimet_cached, oidhenkilo);
@@ -0,0 +1,77 @@
+package fi.vm.sade.kayttooikeus.config.scheduling;
+
+import com.github.kagkarlsson.scheduler.Scheduler;
+import com.github.kagkarlsson.scheduler.task.ExecutionContext;
+import com.github.kagkarlsson.scheduler.task.OneTimeTask;
+import com.github.kagkarlsson.scheduler.task.TaskInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SchedulingClusterConfigurationTest {
+
+    private EmbeddedDatabase dataSource;
+
+    @Before
+    public void setup() {
+        dataSource = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        new JdbcTemplate(dataSource).execute("CREATE TABLE scheduled_report_tasks (task_name varchar(255) NOT NULL, "
+                + "task_instance varchar(255) NOT NULL, task_data blob, execution_time timestamp with time zone NOT NULL, "
+                + "picked boolean NOT NULL, picked_by varchar(255), last_success timestamp with time zone, "
+                + "last_failure timestamp with time zone, last_heartbeat timestamp with time zone, "
+                + "version bigint NOT NULL, PRIMARY KEY (task_name, task_instance))");
+    }
+
+    @After
+    public void cleanup() {
+        dataSource.shutdown();
+    }
+
+    // scheduled_tasks-taulua ei ole, joten ajot onnistuvat vain raporttiajastimen omassa taulussa
+    @Test
+    public void reportSchedulerRunsOneReportAtATime() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(3);
+        OneTimeTask<Void> reportTask = new OneTimeTask<>("access right report task") {
+            @Override
+            public void execute(TaskInstance<Void> taskInstance, ExecutionContext executionContext) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            }
+        };
+        Scheduler scheduler = SchedulingClusterConfiguration.reportScheduler(dataSource, reportTask)
+                .pollingInterval(Duration.ofMillis(50))
+                .build();
+        scheduler.start();
+        try {
+            for (int i = 1; i <= 3; i++) {
+                scheduler.schedule(reportTask.instance(String.valueOf(i)), Instant.now());
+            }
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(maxRunning.get()).isEqualTo(SchedulingClusterConfiguration.REPORT_THREADS);
+        } finally {
+            scheduler.stop();
+        }
+    }
+}
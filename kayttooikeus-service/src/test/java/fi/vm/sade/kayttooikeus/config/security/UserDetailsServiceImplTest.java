@@ -4,6 +4,7 @@ package fi.vm.sade.kayttooikeus.config.security;
 import fi.vm.sade.kayttooikeus.dto.KayttajatiedotCreateDto;
 import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRepository;
 import fi.vm.sade.kayttooikeus.repositories.PalveluRepository;
+import fi.vm.sade.kayttooikeus.service.KayttajarooliProvider;
 import fi.vm.sade.kayttooikeus.service.KayttajatiedotService;
 import fi.vm.sade.kayttooikeus.service.it.AbstractServiceIntegrationTest;
 import org.junit.Test;
@@ -14,6 +15,13 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Set;
+
+import static fi.vm.sade.kayttooikeus.repositories.populate.HenkiloPopulator.henkilo;
+import static fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusPopulator.oikeus;
+import static fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusRyhmaPopulator.kayttoOikeusRyhma;
+import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioHenkiloKayttoOikeusPopulator.myonnettyKayttoOikeus;
+import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioHenkiloPopulator.organisaatioHenkilo;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 
@@ -23,6 +31,8 @@ public class UserDetailsServiceImplTest extends AbstractServiceIntegrationTest {
     @Autowired
     private UserDetailsService userDetailsService;
     @Autowired
+    private KayttajarooliProvider kayttajarooliProvider;
+    @Autowired
     private KayttajatiedotService kayttajatiedotService;
     @Autowired
     private PalveluRepository palveluRepository;
@@ -42,4 +52,20 @@ public class UserDetailsServiceImplTest extends AbstractServiceIntegrationTest {
         assertThat(userDetails.getAuthorities()).isEmpty();
     }
 
+    @Test
+    public void getByKayttajaOidIsCachedUntilInvalidated() {
+        populate(myonnettyKayttoOikeus(organisaatioHenkilo(henkilo("oid456").withUsername("kayttaja456"), "1.2.246.562.10.1"),
+                kayttoOikeusRyhma("RYHMA1").withOikeus(oikeus("HENKILOHALLINTA", "CRUD"))));
+        Set<String> roolit = kayttajarooliProvider.getByKayttajaOid("oid456");
+        assertThat(roolit).contains("ROLE_APP_HENKILOHALLINTA_CRUD_1.2.246.562.10.1");
+
+        populate(myonnettyKayttoOikeus(organisaatioHenkilo(henkilo("oid456"), "1.2.246.562.10.2"),
+                kayttoOikeusRyhma("RYHMA2").withOikeus(oikeus("KOODISTO", "READ"))));
+        assertThat(kayttajarooliProvider.getByKayttajaOid("oid456")).isSameAs(roolit);
+
+        kayttajarooliProvider.invalidateByKayttajaOid("oid456");
+        assertThat(kayttajarooliProvider.getByKayttajaOid("oid456"))
+                .contains("ROLE_APP_HENKILOHALLINTA_CRUD_1.2.246.562.10.1", "ROLE_APP_KOODISTO_READ_1.2.246.562.10.2");
+    }
+
 }
@@ -1,19 +1,40 @@
 package fi.vm.sade.kayttooikeus.controller;
 
+import fi.vm.sade.kayttooikeus.dto.ReportJobDto;
+import fi.vm.sade.kayttooikeus.dto.ReportJobStatus;
+import fi.vm.sade.kayttooikeus.report.AccessRightReportRow;
 import fi.vm.sade.kayttooikeus.service.PermissionCheckerService;
 import fi.vm.sade.kayttooikeus.service.report.accessrights.AccessRightReport;
+import fi.vm.sade.kayttooikeus.service.report.accessrights.AccessRightReportJobService;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -25,6 +46,9 @@ public class ReportControllerTest extends AbstractControllerTest {
     @MockBean
     AccessRightReport accessRightReport;
 
+    @MockBean
+    AccessRightReportJobService accessRightReportJobService;
+
     @MockBean
     PermissionCheckerService permissionCheckerService;
 
@@ -57,4 +81,112 @@ public class ReportControllerTest extends AbstractControllerTest {
 
         verify(accessRightReport, times(1)).getForOrganisation(TEST_OID);
     }
+
+    @Test
+    @WithMockUser
+    public void getAccessRightsReportCsv() throws Exception {
+        given(permissionCheckerService.checkRoleForOrganisation(eq(List.of(TEST_OID)), any(Map.class))).willReturn(true);
+        givenReportRows(row("Meikäläinen, Matti"));
+
+        this.mvc.perform(get(accessRightsReportUrl + "/csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string(startsWith("id,personName,personOid,")))
+                .andExpect(content().string(containsString("1,\"Meikäläinen, Matti\",1.2.3,Organisaatio,")));
+    }
+
+    @Test
+    @WithMockUser
+    public void getAccessRightsReportCsvAccessDenied() throws Exception {
+        given(permissionCheckerService.checkRoleForOrganisation(eq(List.of(TEST_OID)), any(Map.class))).willReturn(false);
+
+        this.mvc.perform(get(accessRightsReportUrl + "/csv"))
+                .andExpect(status().is4xxClientError());
+
+        verifyNoInteractions(accessRightReport);
+    }
+
+    @Test
+    @WithMockUser
+    public void getAccessRightsReportNdjson() throws Exception {
+        given(permissionCheckerService.checkRoleForOrganisation(eq(List.of(TEST_OID)), any(Map.class))).willReturn(true);
+        givenReportRows(row("Matti"), row("Maija"));
+
+        this.mvc.perform(get(accessRightsReportUrl + "/ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andExpect(content().string(matchesPattern("(?s)\\{[^\n]*\"personName\":\"Matti\"[^\n]*}\n\\{[^\n]*\"personName\":\"Maija\"[^\n]*}\n")));
+    }
+
+    @Test
+    @WithMockUser
+    public void submitAccessRightsReportJob() throws Exception {
+        given(permissionCheckerService.checkRoleForOrganisation(eq(List.of(TEST_OID)), any(Map.class))).willReturn(true);
+        given(accessRightReportJobService.submit(TEST_OID)).willReturn(ReportJobDto.builder()
+                .id(1L).status(ReportJobStatus.QUEUED).organisaatioOid(TEST_OID).build());
+
+        this.mvc.perform(post(accessRightsReportUrl + "/jobs"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1))
+                .andExpect(jsonPath("$.status").value("QUEUED"));
+    }
+
+    @Test
+    @WithMockUser
+    public void submitAccessRightsReportJobAccessDenied() throws Exception {
+        given(permissionCheckerService.checkRoleForOrganisation(eq(List.of(TEST_OID)), any(Map.class))).willReturn(false);
+
+        this.mvc.perform(post(accessRightsReportUrl + "/jobs"))
+                .andExpect(status().is4xxClientError());
+
+        verifyNoInteractions(accessRightReportJobService);
+    }
+
+    @Test
+    @WithMockUser
+    public void getAccessRightsReportJobResult() throws Exception {
+        given(permissionCheckerService.checkRoleForOrganisation(eq(List.of(TEST_OID)), any(Map.class))).willReturn(true);
+        given(accessRightReportJobService.getResult(TEST_OID, 1L)).willReturn(new ByteArrayInputStream(gzip("{\"id\":1}\n")));
+
+        this.mvc.perform(get(accessRightsReportUrl + "/jobs/1/result"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string("{\"id\":1}\n"));
+    }
+
+    @Test
+    @WithMockUser
+    public void getAccessRightsReportJobResultGzip() throws Exception {
+        given(permissionCheckerService.checkRoleForOrganisation(eq(List.of(TEST_OID)), any(Map.class))).willReturn(true);
+        byte[] result = gzip("{\"id\":1}\n");
+        given(accessRightReportJobService.getResult(TEST_OID, 1L)).willReturn(new ByteArrayInputStream(result));
+
+        this.mvc.perform(get(accessRightsReportUrl + "/jobs/1/result").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(content().bytes(result));
+    }
+
+    private static byte[] gzip(String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenReportRows(AccessRightReportRow... rows) {
+        doAnswer(invocation -> {
+            Consumer<AccessRightReportRow> action = invocation.getArgument(1);
+            Stream.of(rows).forEach(action);
+            return null;
+        }).when(accessRightReport).forEachForOrganisation(eq(TEST_OID), any(Consumer.class));
+    }
+
+    private static AccessRightReportRow row(String personName) {
+        return new AccessRightReportRow(BigInteger.ONE, personName, "1.2.3", "Organisaatio", TEST_OID,
+                "Ryhmä", BigInteger.TEN, new Date(), null, new Date(), "1.2.4");
+    }
 }
@@ -11,13 +11,18 @@ import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -50,4 +55,30 @@ public class ServiceToServiceControllerTest extends AbstractControllerTest {
         assertThat(dto.getExternalPermissionService()).isEqualByComparingTo(ExternalPermissionService.HAKU_APP);
         assertThat(dto.getCallingUserRoles()).containsExactly("ROLE_APP_OPPIJANUMEROREKISTERI_REKISTERINPITAJA");
     }
+
+    @Test
+    @WithMockUser(username = "1.2.3.4.5", authorities = "ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA")
+    public void checkUserPermissionToUsers() throws Exception {
+        String postContent = "[{\"callingUserOid\": \"1.2.3.4.5\", \"userOid\": \"1.2.3.1.1\"," +
+                "\"externalPermissionService\": \"HAKU_APP\"}," +
+                "{\"callingUserOid\": \"1.2.3.4.5\", \"userOid\": \"1.2.3.1.2\"," +
+                "\"externalPermissionService\": \"HAKU_APP\"}]";
+        given(this.permissionCheckerService.isAllowedToAccessPersons(any())).willReturn(Arrays.asList(true, false));
+        this.mvc.perform(post("/s2s/canUserAccessUsers").content(postContent).contentType(MediaType.APPLICATION_JSON_UTF8).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk()).andExpect(content().json("[true, false]"));
+        ArgumentCaptor<List<PermissionCheckDto>> captor = ArgumentCaptor.forClass(List.class);
+        verify(permissionCheckerService).isAllowedToAccessPersons(captor.capture());
+        assertThat(captor.getValue()).extracting(PermissionCheckDto::getUserOid).containsExactly("1.2.3.1.1", "1.2.3.1.2");
+    }
+
+    @Test
+    @WithMockUser(username = "1.2.3.4.5", authorities = "ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA")
+    public void checkUserPermissionToUsersRejectsTooManyChecks() throws Exception {
+        String postContent = IntStream.rangeClosed(0, ServiceToServiceController.MAX_PERMISSION_CHECKS)
+                .mapToObj(i -> "{\"callingUserOid\": \"1.2.3.4.5\", \"userOid\": \"1.2.3.1." + i + "\"}")
+                .collect(Collectors.joining(",", "[", "]"));
+        this.mvc.perform(post("/s2s/canUserAccessUsers").content(postContent).contentType(MediaType.APPLICATION_JSON_UTF8).accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(permissionCheckerService);
+    }
 }
@@ -5,6 +5,7 @@ import fi.vm.sade.kayttooikeus.model.KayttoOikeusRyhma;
 import fi.vm.sade.kayttooikeus.model.OrganisaatioHenkilo;
 import fi.vm.sade.kayttooikeus.repositories.criteria.HenkiloCriteria;
 import fi.vm.sade.kayttooikeus.repositories.criteria.OrganisaatioHenkiloCriteria;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuCursor;
 import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuResultDto;
 import fi.vm.sade.kayttooikeus.repositories.populate.HenkiloPopulator;
 import fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusPopulator;
@@ -17,9 +18,12 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @RunWith(SpringRunner.class)
@@ -54,6 +58,47 @@ public class HenkiloRepositoryTest extends AbstractRepositoryTest {
                 .containsExactly(null, "arpa3", "arpa2", "arpa1");
     }
 
+    @Test
+    public void findPageByCriteria() {
+        populate(HenkiloPopulator.henkilo("1.2.5.0.1").withNimet("etunimi", "keyset"));
+        populate(HenkiloPopulator.henkilo("1.2.5.0.2").withNimet("etunimi", "keyset"));
+        populate(HenkiloPopulator.henkilo("1.2.5.0.3").withNimet(null, "keyset"));
+        populate(HenkiloPopulator.henkilo("1.2.5.0.4").withNimet("aapo", "keyset"));
+        populate(HenkiloPopulator.henkilo("1.2.5.0.5").withNimet("bertta", "keysetb"));
+        HenkiloCriteria criteria = HenkiloCriteria.builder().nameQuery("keyset").noOrganisation(true).build();
+
+        assertThat(findAllByCursor(criteria, HenkilohakuCursor.first(OrderByHenkilohaku.HENKILO_NIMI_ASC)))
+                .containsExactly("1.2.5.0.4", "1.2.5.0.1", "1.2.5.0.2", "1.2.5.0.3", "1.2.5.0.5");
+        assertThat(findAllByCursor(criteria, HenkilohakuCursor.first(OrderByHenkilohaku.HENKILO_NIMI_DESC)))
+                .containsExactly("1.2.5.0.5", "1.2.5.0.3", "1.2.5.0.2", "1.2.5.0.1", "1.2.5.0.4");
+    }
+
+    private List<String> findAllByCursor(HenkiloCriteria criteria, HenkilohakuCursor cursor) {
+        List<String> oids = new ArrayList<>();
+        List<HenkilohakuResultDto> sivu;
+        do {
+            sivu = this.henkiloHibernateRepository.findPageByCriteria(criteria, null, cursor, 2L);
+            sivu.forEach(henkilo -> oids.add(henkilo.getOidHenkilo()));
+            if (!sivu.isEmpty()) {
+                // kohta kulkee käyttöliittymän kautta merkkijonona
+                cursor = HenkilohakuCursor.decode(cursor.next(sivu.get(sivu.size() - 1)).encode());
+            }
+        } while (sivu.size() == 2);
+        return oids;
+    }
+
+    @Test
+    public void findByCriteriaCountMax() {
+        populate(HenkiloPopulator.henkilo("1.2.5.1.1").withNimet("etunimi", "laskettava"));
+        populate(HenkiloPopulator.henkilo("1.2.5.1.2").withNimet("etunimi", "laskettava"));
+        populate(HenkiloPopulator.henkilo("1.2.5.1.3").withNimet("etunimi", "laskettava"));
+        HenkiloCriteria criteria = HenkiloCriteria.builder().nameQuery("laskettava").noOrganisation(true).build();
+
+        assertThat(this.henkiloHibernateRepository.findByCriteriaCount(criteria, emptyList(), 2L)).isEqualTo(2L);
+        assertThat(this.henkiloHibernateRepository.findByCriteriaCount(criteria, emptyList(), 10L)).isEqualTo(3L);
+        assertThat(this.henkiloHibernateRepository.findByCriteriaCount(criteria, singletonList("1.2.5.1.1"), 10L)).isEqualTo(2L);
+    }
+
     private void populateFindOidsStuff() {
         KayttoOikeusRyhmaPopulator kor1Populator = KayttoOikeusRyhmaPopulator.kayttoOikeusRyhma("kor1Populator");
         kor1Populator.withOikeus(KayttoOikeusPopulator.oikeus("KAYTTOOIKEUS", "READ"));
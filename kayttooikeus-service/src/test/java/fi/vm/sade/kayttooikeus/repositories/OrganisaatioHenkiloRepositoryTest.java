@@ -18,6 +18,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -28,6 +29,7 @@ import static fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusRyhmaPop
 import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioHenkiloKayttoOikeusPopulator.myonnettyKayttoOikeus;
 import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioHenkiloPopulator.organisaatioHenkilo;
 import static fi.vm.sade.kayttooikeus.service.impl.PermissionCheckerServiceImpl.*;
+import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @RunWith(SpringRunner.class)
@@ -49,6 +51,23 @@ public class OrganisaatioHenkiloRepositoryTest extends AbstractRepositoryTest {
         assertThat(results).containsExactly("3.4.5.6.7");
     }
 
+    @Test
+    public void findOrganisaatioOidsByHenkiloOidsTest() {
+        populate(organisaatioHenkilo(henkilo("1.2.3.4.5"), "3.4.5.6.7"));
+        populate(organisaatioHenkilo(henkilo("1.2.3.4.5"), "3.4.5.6.8"));
+        populate(organisaatioHenkilo(henkilo("1.2.3.4.5"), "3.4.5.6.9").passivoitu());
+        populate(organisaatioHenkilo(henkilo("1.2.3.4.6"), "3.4.5.6.7"));
+        populate(organisaatioHenkilo(henkilo("1.2.3.4.7"), "3.4.5.6.7"));
+
+        Map<String, List<String>> results = organisaatioHenkiloRepository
+                .findOrganisaatioOidsByHenkiloOids(Arrays.asList("1.2.3.4.5", "1.2.3.4.6", "1.2.3.4.8"));
+
+        assertThat(results).containsOnlyKeys("1.2.3.4.5", "1.2.3.4.6");
+        assertThat(results.get("1.2.3.4.5")).containsExactly("3.4.5.6.7", "3.4.5.6.8");
+        assertThat(results.get("1.2.3.4.6")).containsExactly("3.4.5.6.7");
+        assertThat(organisaatioHenkiloRepository.findOrganisaatioOidsByHenkiloOids(emptyList())).isEmpty();
+    }
+
     @Test
     public void findOrganisaatioHenkiloListDtosTest() {
         OrganisaatioHenkilo oh1 = populate(organisaatioHenkilo(henkilo("1.2.3.4.5"), "3.4.5.6.7"));
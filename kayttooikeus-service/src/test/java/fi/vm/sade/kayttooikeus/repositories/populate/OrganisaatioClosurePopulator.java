@@ -0,0 +1,39 @@
+package fi.vm.sade.kayttooikeus.repositories.populate;
+
+import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
+import fi.vm.sade.kayttooikeus.model.OrganisaatioClosure;
+
+import javax.persistence.EntityManager;
+
+public class OrganisaatioClosurePopulator implements Populator<OrganisaatioClosure> {
+    private final String ancestorOid;
+    private final String descendantOid;
+    private final int depth;
+    private OrganisaatioStatus status = OrganisaatioStatus.AKTIIVINEN;
+
+    public OrganisaatioClosurePopulator(String ancestorOid, String descendantOid, int depth) {
+        this.ancestorOid = ancestorOid;
+        this.descendantOid = descendantOid;
+        this.depth = depth;
+    }
+
+    public static OrganisaatioClosurePopulator organisaatioClosure(String oid) {
+        return new OrganisaatioClosurePopulator(oid, oid, 0);
+    }
+
+    public static OrganisaatioClosurePopulator organisaatioClosure(String ancestorOid, String descendantOid, int depth) {
+        return new OrganisaatioClosurePopulator(ancestorOid, descendantOid, depth);
+    }
+
+    public OrganisaatioClosurePopulator status(OrganisaatioStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    @Override
+    public OrganisaatioClosure apply(EntityManager entityManager) {
+        OrganisaatioClosure organisaatioClosure = new OrganisaatioClosure(ancestorOid, descendantOid, depth, status);
+        entityManager.persist(organisaatioClosure);
+        return organisaatioClosure;
+    }
+}
@@ -7,6 +7,7 @@ import fi.vm.sade.kayttooikeus.dto.UpdateHaettuKayttooikeusryhmaDto;
 import fi.vm.sade.kayttooikeus.model.*;
 import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRyhmaRepository;
 import fi.vm.sade.kayttooikeus.repositories.dto.ExpiringKayttoOikeusDto;
+import fi.vm.sade.kayttooikeus.service.dto.HenkiloYhteystiedotDto;
 import fi.vm.sade.kayttooikeus.service.external.*;
 import fi.vm.sade.kayttooikeus.service.impl.EmailServiceImpl;
 import fi.vm.sade.kayttooikeus.service.impl.email.SahkopostiHenkiloDto;
@@ -28,14 +29,15 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Stream;
 
-import static java.util.Collections.singleton;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.Optional.of;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
@@ -65,18 +67,20 @@ public class EmailServiceTest extends AbstractServiceTest {
     @MockBean
     private OrganisaatioClient organisaatioClient;
 
+    @MockBean
+    private EmailOutboxService emailOutboxService;
+
     @Autowired
     private EmailService emailService;
 
     @Test
     @WithMockUser(username = "user1")
     public void sendExpirationReminderTest() {
-        given(oppijanumerorekisteriClient.getHenkilonPerustiedot(HENKILO_OID)).willReturn(of(getPerustiedot()));
-        given(oppijanumerorekisteriClient.getHenkiloByOid(HENKILO_OID)).willReturn(getHenkilo());
+        given(oppijanumerorekisteriClient.listYhteystiedot(any())).willReturn(singletonList(getYhteystiedot(HENKILO_OID, "FI", WORK_EMAIL)));
         given(ryhmasahkopostiClient.sendRyhmasahkoposti(any(EmailData.class)))
                 .willReturn("");
 
-        emailService.sendExpirationReminder(HENKILO_OID, Collections.singletonList(
+        Set<String> lahetetyt = emailService.sendExpirationReminders(singletonMap(HENKILO_OID, singletonList(
                 ExpiringKayttoOikeusDto.builder()
                         .henkiloOid(HENKILO_OID)
                         .myonnettyTapahtumaId(1L)
@@ -84,9 +88,11 @@ public class EmailServiceTest extends AbstractServiceTest {
                         .ryhmaDescription(new TextGroupDto(2L).put("FI", "Kuvaus")
                                 .put("EN", "Desc"))
                         .voimassaLoppuPvm(LocalDate.of(2021, 10, 8))
-                        .build())
+                        .build()))
         );
 
+        assertThat(lahetetyt).containsExactly(HENKILO_OID);
+        verify(oppijanumerorekisteriClient, never()).getHenkiloByOid(any());
         verify(ryhmasahkopostiClient, times(1)).sendRyhmasahkoposti(
                 argThat(new TypeSafeMatcher<EmailData>() {
                     @Override
@@ -107,42 +113,69 @@ public class EmailServiceTest extends AbstractServiceTest {
         );
     }
 
-    private HenkiloPerustietoDto getPerustiedot() {
-        HenkiloPerustietoDto perustiedot = new HenkiloPerustietoDto();
-        KielisyysDto kielisyys = new KielisyysDto();
-        kielisyys.setKieliKoodi("FI");
-        perustiedot.setAsiointiKieli(kielisyys);
-        return perustiedot;
-    }
-
-    private HenkiloDto getHenkilo() {
-        HenkiloDto henkiloDto = new HenkiloDto();
-        henkiloDto.setYhteystiedotRyhma(singleton(YhteystiedotRyhmaDto
-                .builder()
-                .ryhmaKuvaus(YhteystietoUtil.TYOOSOITE)
-                .yhteystieto(YhteystietoDto.builder()
-                        .yhteystietoTyyppi(YhteystietoTyyppi.YHTEYSTIETO_SAHKOPOSTI)
-                        .yhteystietoArvo(WORK_EMAIL)
-                        .build())
-                .build()));
-        return henkiloDto;
+    private HenkiloYhteystiedotDto getYhteystiedot(String oid, String asiointikieli, String workEmail) {
+        HenkiloYhteystiedotDto henkilo = new HenkiloYhteystiedotDto();
+        henkilo.setOidHenkilo(oid);
+        henkilo.setAsiointikieli(asiointikieli);
+        henkilo.setKutsumanimi("arpa");
+        henkilo.setSukunimi("kuutio");
+        if (workEmail != null) {
+            henkilo.setYhteystiedotRyhma(singletonList(YhteystiedotRyhmaDto
+                    .builder()
+                    .ryhmaKuvaus(YhteystietoUtil.TYOOSOITE)
+                    .yhteystieto(YhteystietoDto.builder()
+                            .yhteystietoTyyppi(YhteystietoTyyppi.YHTEYSTIETO_SAHKOPOSTI)
+                            .yhteystietoArvo(workEmail)
+                            .build())
+                    .build()));
+        }
+        return henkilo;
     }
 
     @Test
     @WithMockUser(username = "user1")
     public void sendExpirationReminderNoWorkEmailTest() {
-        given(oppijanumerorekisteriClient.getHenkilonPerustiedot(HENKILO_OID)).willReturn(of(getPerustiedot()));
-        given(oppijanumerorekisteriClient.getHenkiloByOid(HENKILO_OID)).willReturn(new HenkiloDto());
+        given(oppijanumerorekisteriClient.listYhteystiedot(any())).willReturn(singletonList(getYhteystiedot(HENKILO_OID, "fi", null)));
 
-        emailService.sendExpirationReminder(HENKILO_OID, Collections.EMPTY_LIST);
+        Set<String> lahetetyt = emailService.sendExpirationReminders(singletonMap(HENKILO_OID, Collections.emptyList()));
 
+        assertThat(lahetetyt).isEmpty();
         verify(ryhmasahkopostiClient, never()).sendRyhmasahkoposti(any());
     }
 
+    @Test
+    @WithMockUser(username = "user1")
+    public void sendExpirationRemindersGroupsRecipientsByLanguage() {
+        given(oppijanumerorekisteriClient.listYhteystiedot(any())).willReturn(asList(
+                getYhteystiedot("1.2.3.4.1", "fi", "fi1@example.com"),
+                getYhteystiedot("1.2.3.4.2", "sv", "sv@example.com"),
+                getYhteystiedot("1.2.3.4.3", "fi", "fi2@example.com"),
+                getYhteystiedot("1.2.3.4.4", "fi", null)));
+        ExpiringKayttoOikeusDto tapahtuma = ExpiringKayttoOikeusDto.builder()
+                .ryhmaName("RYHMA")
+                .voimassaLoppuPvm(LocalDate.of(2021, 10, 8))
+                .build();
+        Map<String, List<ExpiringKayttoOikeusDto>> tapahtumasByHenkilo = new LinkedHashMap<>();
+        Stream.of("1.2.3.4.1", "1.2.3.4.2", "1.2.3.4.3", "1.2.3.4.4")
+                .forEach(oid -> tapahtumasByHenkilo.put(oid, singletonList(tapahtuma)));
+
+        Set<String> lahetetyt = emailService.sendExpirationReminders(tapahtumasByHenkilo);
+
+        assertThat(lahetetyt).containsExactlyInAnyOrder("1.2.3.4.1", "1.2.3.4.2", "1.2.3.4.3");
+        ArgumentCaptor<HenkiloHakuCriteria> criteriaCaptor = ArgumentCaptor.forClass(HenkiloHakuCriteria.class);
+        verify(oppijanumerorekisteriClient).listYhteystiedot(criteriaCaptor.capture());
+        assertThat(criteriaCaptor.getValue().getHenkiloOids()).containsExactlyInAnyOrderElementsOf(tapahtumasByHenkilo.keySet());
+        ArgumentCaptor<EmailData> emailDataCaptor = ArgumentCaptor.forClass(EmailData.class);
+        verify(ryhmasahkopostiClient, times(2)).sendRyhmasahkoposti(emailDataCaptor.capture());
+        assertThat(emailDataCaptor.getAllValues())
+                .extracting(emailData -> emailData.getEmail().getLanguageCode(), emailData -> emailData.getRecipient().size())
+                .containsExactlyInAnyOrder(tuple("fi", 2), tuple("sv", 1));
+    }
+
     @Test
     @WithMockUser(username = "user1")
     public void NewRequisitionNotificationTest() {
-        given(oppijanumerorekisteriClient.getHenkiloByOid(HENKILO_OID)).willReturn(getHenkilo());
+        given(oppijanumerorekisteriClient.listYhteystiedot(any())).willReturn(singletonList(getYhteystiedot(HENKILO_OID, "fi", WORK_EMAIL)));
 
         emailService.sendNewRequisitionNotificationEmails(Collections.singleton(HENKILO_OID));
 
@@ -166,7 +199,7 @@ public class EmailServiceTest extends AbstractServiceTest {
     @Test
     @WithMockUser(username = "user1")
     public void NewRequisitionNotificationNoWorkEmailTest() {
-        given(oppijanumerorekisteriClient.getHenkiloByOid(HENKILO_OID)).willReturn(new HenkiloDto());
+        given(oppijanumerorekisteriClient.listYhteystiedot(any())).willReturn(singletonList(getYhteystiedot(HENKILO_OID, "fi", null)));
 
         emailService.sendNewRequisitionNotificationEmails(Collections.singleton(HENKILO_OID));
 
@@ -261,7 +294,8 @@ public class EmailServiceTest extends AbstractServiceTest {
 
         this.emailService.sendInvitationEmail(kutsu);
         ArgumentCaptor<EmailData> emailDataArgumentCaptor = ArgumentCaptor.forClass(EmailData.class);
-        verify(this.ryhmasahkopostiClient).sendRyhmasahkoposti(emailDataArgumentCaptor.capture());
+        verify(this.emailOutboxService).enqueue(emailDataArgumentCaptor.capture());
+        verifyNoInteractions(this.ryhmasahkopostiClient);
         EmailData emailData = emailDataArgumentCaptor.getValue();
         assertThat(emailData.getRecipient()).hasSize(1);
         assertThat(emailData.getRecipient().get(0).getRecipientReplacements())
@@ -309,7 +343,8 @@ public class EmailServiceTest extends AbstractServiceTest {
 
         this.emailService.sendInvitationEmail(kutsu, Optional.of(expectedKutsuja));
         ArgumentCaptor<EmailData> emailDataArgumentCaptor = ArgumentCaptor.forClass(EmailData.class);
-        verify(this.ryhmasahkopostiClient).sendRyhmasahkoposti(emailDataArgumentCaptor.capture());
+        verify(this.emailOutboxService).enqueue(emailDataArgumentCaptor.capture());
+        verifyNoInteractions(this.ryhmasahkopostiClient);
         EmailData emailData = emailDataArgumentCaptor.getValue();
         assertThat(emailData.getRecipient()).hasSize(1);
         assertThat(emailData.getRecipient().get(0).getRecipientReplacements())
@@ -3,27 +3,43 @@ package fi.vm.sade.kayttooikeus.service;
 import com.google.common.collect.Lists;
 import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.config.scheduling.UpdateHenkiloNimiCacheTask;
-import fi.vm.sade.kayttooikeus.model.Henkilo;
 import fi.vm.sade.kayttooikeus.model.ScheduleTimestamps;
 import fi.vm.sade.kayttooikeus.repositories.HenkiloDataRepository;
 import fi.vm.sade.kayttooikeus.repositories.ScheduleTimestampsDataRepository;
 import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
+import fi.vm.sade.kayttooikeus.service.impl.HenkiloCacheStorage;
 import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloHakuPerustietoDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @RunWith(SpringRunner.class)
 //@TestPropertySource(properties = {"kayttooikeus.scheduling.enabled=TRUE"})
@@ -38,27 +54,37 @@ public class HenkiloCacheServiceTest extends AbstractServiceTest {
     @MockBean
     private ScheduleTimestampsDataRepository scheduleTimestampsDataRepository;
 
+    @MockBean
+    private HenkiloCacheStorage henkiloCacheStorage;
+
     @Autowired
     private HenkiloCacheService henkiloCacheService;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+
     private UpdateHenkiloNimiCacheTask scheduledTasks;
 
     @Before
     public void setup() {
+        this.meterRegistry = new SimpleMeterRegistry();
         this.scheduledTasks = new UpdateHenkiloNimiCacheTask(
                 new KayttooikeusProperties(),
                 this.henkiloDataRepository,
                 this.henkiloCacheService,
                 this.scheduleTimestampsDataRepository,
-                this.oppijanumerorekisteriClient);
+                this.oppijanumerorekisteriClient,
+                this.transactionTemplate,
+                this.meterRegistry);
     }
 
     @Test
     @WithMockUser(username = "1.2.3.4.5", authorities = {"ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA", "ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA_1.2.246.562.10.00000000001"})
     public void updateHenkiloCache() throws Exception {
-        Henkilo henkilo = Henkilo.builder().oidHenkilo("1.2.3.4.5").build();
         LocalDateTime timestamp = LocalDateTime.now().minusDays(1);
-        Optional<ScheduleTimestamps> henkiloCacheModified = Optional.of(new ScheduleTimestamps(timestamp, "henkilocache"));
+        Optional<ScheduleTimestamps> henkiloCacheModified = Optional.of(new ScheduleTimestamps(timestamp, "henkilocache", null));
         given(this.scheduleTimestampsDataRepository.findFirstByIdentifier("henkilocache"))
                 .willReturn(henkiloCacheModified);
         given(this.oppijanumerorekisteriClient.getModifiedSince(timestamp, 0L, 2000L))
@@ -66,18 +92,67 @@ public class HenkiloCacheServiceTest extends AbstractServiceTest {
         given(this.oppijanumerorekisteriClient.getAllByOids(eq(0L), eq(2000L), anyList()))
                 .willReturn(Lists.newArrayList(new HenkiloHakuPerustietoDto("1.2.3.4.5", "fakehetu",
                         "arpa arpa2", "arpa", "kuutio", true, false, false, false)));
-        given(this.henkiloDataRepository.findByOidHenkiloIn(anyList()))
-                .willReturn(Lists.newArrayList(henkilo));
         given(this.henkiloDataRepository.countByEtunimetCachedNotNull()).willReturn(1L);
 
         this.scheduledTasks.execute(null, null);
 
-        assertThat(henkilo.getEtunimetCached()).isEqualTo("arpa arpa2");
-        assertThat(henkilo.getSukunimiCached()).isEqualTo("kuutio");
-        assertThat(henkilo.getPassivoituCached()).isFalse();
-        assertThat(henkilo.getDuplicateCached()).isFalse();
-
+        ArgumentCaptor<Collection<HenkiloHakuPerustietoDto>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(this.henkiloCacheStorage).upsert(captor.capture());
+        assertThat(captor.getValue()).extracting(HenkiloHakuPerustietoDto::getOidHenkilo, HenkiloHakuPerustietoDto::getEtunimet,
+                        HenkiloHakuPerustietoDto::getSukunimi)
+                .containsExactly(tuple("1.2.3.4.5", "arpa arpa2", "kuutio"));
         assertThat(henkiloCacheModified.get().getModified()).isNotEqualByComparingTo(timestamp);
+        assertThat(this.meterRegistry.counter("kayttooikeus.henkilo.cache.saved", "stage", "update").count()).isEqualTo(1.0);
+        assertThat(this.meterRegistry.get("kayttooikeus.henkilo.cache.lag").gauge().value()).isLessThan(60.0);
+    }
+
+    @Test
+    public void populateHenkiloCache() {
+        ScheduleTimestamps scheduleTimestamps = new ScheduleTimestamps(LocalDateTime.now().minusDays(1), "henkilocache", null);
+        given(this.scheduleTimestampsDataRepository.findFirstByIdentifier("henkilocache"))
+                .willReturn(Optional.of(scheduleTimestamps));
+        given(this.henkiloDataRepository.countByEtunimetCachedNotNull()).willReturn(0L);
+        given(this.oppijanumerorekisteriClient.getAllByOids(anyLong(), eq(2000L), isNull()))
+                .willAnswer(invocation -> henkilot(invocation.getArgument(0), 4500L));
+        List<Long> checkpoints = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        doAnswer(invocation -> {
+            pageSizes.add(invocation.<Collection<?>>getArgument(0).size());
+            checkpoints.add(scheduleTimestamps.getCheckpoint());
+            return null;
+        }).when(this.henkiloCacheStorage).upsert(anyCollection());
+
+        this.scheduledTasks.execute(null, null);
+
+        // sivun tallennushetkellä tarkistuspiste osoittaa vielä sivun alkuun
+        assertThat(pageSizes).containsExactly(2000, 2000, 500);
+        assertThat(checkpoints).containsExactly(0L, 2000L, 4000L);
+        assertThat(scheduleTimestamps.getCheckpoint()).isNull();
+        assertThat(this.meterRegistry.counter("kayttooikeus.henkilo.cache.saved", "stage", "populate").count()).isEqualTo(4500.0);
+    }
+
+    @Test
+    public void populateHenkiloCacheResumesFromCheckpoint() {
+        ScheduleTimestamps scheduleTimestamps = new ScheduleTimestamps(LocalDateTime.now().minusDays(1), "henkilocache", 4000L);
+        given(this.scheduleTimestampsDataRepository.findFirstByIdentifier("henkilocache"))
+                .willReturn(Optional.of(scheduleTimestamps));
+        given(this.henkiloDataRepository.countByEtunimetCachedNotNull()).willReturn(4000L);
+        given(this.oppijanumerorekisteriClient.getAllByOids(anyLong(), eq(2000L), isNull()))
+                .willAnswer(invocation -> henkilot(invocation.getArgument(0), 4500L));
+
+        this.scheduledTasks.execute(null, null);
+
+        verify(this.oppijanumerorekisteriClient, never()).getAllByOids(eq(0L), anyLong(), any());
+        verify(this.oppijanumerorekisteriClient, never()).getModifiedSince(any(), anyLong(), anyLong());
+        verify(this.henkiloCacheStorage).upsert(anyCollection());
+        assertThat(scheduleTimestamps.getCheckpoint()).isNull();
+    }
+
+    private static List<HenkiloHakuPerustietoDto> henkilot(long offset, long total) {
+        return LongStream.range(offset, Math.min(offset + 2000L, total))
+                .mapToObj(i -> new HenkiloHakuPerustietoDto("1.2.246.562.24." + i, null,
+                        "etunimi", "kutsumanimi", "sukunimi", false, false, false, false))
+                .collect(Collectors.toList());
     }
 
-}
\ No newline at end of file
+}
@@ -17,6 +17,7 @@ import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
 import fi.vm.sade.kayttooikeus.service.impl.KayttooikeusAnomusServiceImpl;
 import fi.vm.sade.kayttooikeus.service.impl.MyonnettyKayttoOikeusServiceImpl;
+import fi.vm.sade.kayttooikeus.service.impl.MyonnettyKayttoOikeusStorage;
 import fi.vm.sade.kayttooikeus.service.impl.MyontooikeusServiceImpl;
 import fi.vm.sade.kayttooikeus.service.validators.HaettuKayttooikeusryhmaValidator;
 import org.junit.Before;
@@ -94,6 +95,10 @@ public class KayttooikeusAnomusServiceTest {
     private OrganisaatioHenkiloRepository organisaatioHenkiloRepository;
     @MockBean
     private OrganisaatioService organisaatioService;
+    @MockBean
+    private KayttajarooliProvider kayttajarooliProvider;
+    @MockBean
+    private MyonnettyKayttoOikeusStorage myonnettyKayttoOikeusStorage;
     @Captor
     private ArgumentCaptor<Set<String>> henkiloOidsCaptor;
     @SpyBean
@@ -105,6 +110,7 @@ public class KayttooikeusAnomusServiceTest {
     @Before
     public void setup() {
         doAnswer(returnsFirstArg()).when(this.localizationService).localize(any(LocalizableDto.class));
+        doAnswer(returnsFirstArg()).when(this.localizationService).localize(anyList());
         this.commonProperties.setRootOrganizationOid("rootOid");
         doAnswer(returnsFirstArg()).when(this.organisaatioHenkiloRepository).save(any(OrganisaatioHenkilo.class));
         doAnswer(returnsFirstArg()).when(this.myonnettyKayttoOikeusRyhmaTapahtumaRepository).save(any(MyonnettyKayttoOikeusRyhmaTapahtuma.class));
@@ -131,7 +137,7 @@ public class KayttooikeusAnomusServiceTest {
         assertThat(haettuKayttooikeusryhmaDtoList.get(0).getAnomus().getAnomusTyyppi()).isEqualByComparingTo(AnomusTyyppi.UUSI);
 
         verify(this.haettuKayttooikeusRyhmaRepository).findBy(any(), eq(null), eq(null), eq(null));
-        verify(this.localizationService, atLeastOnce()).localize(any(LocalizableDto.class));
+        verify(this.localizationService, times(1)).localize(anyList());
     }
 
     @Test
@@ -869,11 +875,14 @@ public class KayttooikeusAnomusServiceTest {
         // Actual mocks
         given(this.henkiloDataRepository.findByOidHenkilo("1.2.3.4.1")).willReturn(Optional.of(new Henkilo()));
 
+        MyonnettyKayttoOikeusRyhmaTapahtuma myonnettyKayttoOikeusRyhmaTapahtuma = createMyonnettyKayttoOikeusRyhmaTapahtuma(3001L, 2001L);
+        myonnettyKayttoOikeusRyhmaTapahtuma.getOrganisaatioHenkilo().setHenkilo(Henkilo.builder().oidHenkilo("1.2.3.4.5").build());
         given(this.myonnettyKayttoOikeusRyhmaTapahtumaRepository.findMyonnettyTapahtuma(2001L,
                 "1.2.0.0.1", "1.2.3.4.5"))
-                .willReturn(Optional.of(createMyonnettyKayttoOikeusRyhmaTapahtuma(3001L, 2001L)));
+                .willReturn(Optional.of(myonnettyKayttoOikeusRyhmaTapahtuma));
         // Service call
         this.kayttooikeusAnomusService.removePrivilege("1.2.3.4.5", 2001L, "1.2.0.0.1");
+        verify(this.kayttajarooliProvider).invalidateByKayttajaOid("1.2.3.4.5");
         // Capture
         ArgumentCaptor<KayttoOikeusRyhmaTapahtumaHistoria> myonnettyKayttoOikeusRyhmaTapahtumaArgumentCaptor =
                 ArgumentCaptor.forClass(KayttoOikeusRyhmaTapahtumaHistoria.class);
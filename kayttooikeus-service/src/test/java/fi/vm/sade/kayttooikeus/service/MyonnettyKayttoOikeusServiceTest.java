@@ -3,10 +3,12 @@ package fi.vm.sade.kayttooikeus.service;
 import fi.vm.sade.kayttooikeus.DatabaseService;
 import fi.vm.sade.kayttooikeus.dto.KayttoOikeudenTila;
 import fi.vm.sade.kayttooikeus.model.Henkilo;
+import fi.vm.sade.kayttooikeus.model.HenkiloVarmentaja;
 import fi.vm.sade.kayttooikeus.model.KayttoOikeusRyhmaTapahtumaHistoria;
 import fi.vm.sade.kayttooikeus.model.OrganisaatioHenkilo;
 import fi.vm.sade.kayttooikeus.repositories.HenkiloDataRepository;
 import fi.vm.sade.kayttooikeus.repositories.OrganisaatioHenkiloRepository;
+import fi.vm.sade.kayttooikeus.service.impl.MyonnettyKayttoOikeusStorage;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,7 +16,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.persistence.EntityManager;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 import static fi.vm.sade.kayttooikeus.repositories.populate.HenkiloPopulator.henkilo;
 import static fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusRyhmaPopulator.kayttoOikeusRyhma;
@@ -36,6 +40,12 @@ public class MyonnettyKayttoOikeusServiceTest {
     @Autowired
     private OrganisaatioHenkiloRepository organisaatioHenkiloRepository;
 
+    @Autowired
+    private MyonnettyKayttoOikeusStorage myonnettyKayttoOikeusStorage;
+
+    @Autowired
+    private EntityManager entityManager;
+
     @Autowired
     private DatabaseService databaseService;
 
@@ -88,6 +98,61 @@ public class MyonnettyKayttoOikeusServiceTest {
         });
     }
 
+    @Test
+    public void poistaVanhentuneetErissa() {
+        databaseService.populate(henkilo("kayttaja"));
+        databaseService.populate(myonnettyKayttoOikeus(organisaatioHenkilo("henkilo1", "organisaatio1"),
+                kayttoOikeusRyhma("ryhmä1")).voimassaPaattyen(LocalDate.now().minusDays(1)));
+        databaseService.populate(myonnettyKayttoOikeus(organisaatioHenkilo("henkilo2", "organisaatio1"),
+                kayttoOikeusRyhma("ryhmä1")).voimassaPaattyen(LocalDate.now().minusDays(1)));
+        MyonnettyKayttoOikeusService.DeleteDetails details = new MyonnettyKayttoOikeusService.DeleteDetails(
+                henkiloDataRepository.findByOidHenkilo("kayttaja").get(), KayttoOikeudenTila.VANHENTUNUT, "vanhentunut");
+
+        assertThat(myonnettyKayttoOikeusStorage.poistaVanhentuneet(LocalDate.now(), details, 1)).containsExactly("henkilo1");
+        databaseService.runInTransaction(() -> {
+            assertThat(organisaatioHenkiloRepository.findByHenkiloOidHenkiloAndOrganisaatioOid("henkilo1", "organisaatio1")
+                    .get().isPassivoitu()).isTrue();
+            assertThat(organisaatioHenkiloRepository.findByHenkiloOidHenkiloAndOrganisaatioOid("henkilo2", "organisaatio1")
+                    .get().isPassivoitu()).isFalse();
+        });
+        assertThat(myonnettyKayttoOikeusStorage.poistaVanhentuneet(LocalDate.now(), details, 1)).containsExactly("henkilo2");
+        assertThat(myonnettyKayttoOikeusStorage.poistaVanhentuneet(LocalDate.now(), details, 1)).isEmpty();
+    }
+
+    @Test
+    public void varmentajallaOnYhaOikeuksiaSamaanOrganisaatioon() {
+        databaseService.populate(henkilo("kayttaja"));
+        databaseService.populate(myonnettyKayttoOikeus(organisaatioHenkilo("varmentaja", "organisaatio1"),
+                kayttoOikeusRyhma("ryhmä1")).voimassaPaattyen(LocalDate.now().minusDays(1)));
+        databaseService.populate(myonnettyKayttoOikeus(organisaatioHenkilo("varmentaja", "organisaatio1"),
+                kayttoOikeusRyhma("ryhmä2")));
+        databaseService.populate(henkilo("varmennettava"));
+        long varmentajaSuhdeId = varmentajaSuhde("varmentaja", "varmennettava");
+
+        Henkilo kayttaja = henkiloDataRepository.findByOidHenkilo("kayttaja").get();
+        myonnettyKayttoOikeusService.poistaVanhentuneet(new MyonnettyKayttoOikeusService.DeleteDetails(
+                kayttaja, KayttoOikeudenTila.VANHENTUNUT, "Oikeus vanhentunut"));
+
+        assertThat(isVoimassa(varmentajaSuhdeId)).isTrue();
+    }
+
+    @Test
+    public void varmentajallaEiOleEnaaOikeuksiaSamaanOrganisaatioon() {
+        databaseService.populate(henkilo("kayttaja"));
+        databaseService.populate(myonnettyKayttoOikeus(organisaatioHenkilo("varmentaja", "organisaatio1"),
+                kayttoOikeusRyhma("ryhmä1")).voimassaPaattyen(LocalDate.now().minusDays(1)));
+        databaseService.populate(myonnettyKayttoOikeus(organisaatioHenkilo("varmentaja", "organisaatio2"),
+                kayttoOikeusRyhma("ryhmä1")));
+        databaseService.populate(henkilo("varmennettava"));
+        long varmentajaSuhdeId = varmentajaSuhde("varmentaja", "varmennettava");
+
+        Henkilo kayttaja = henkiloDataRepository.findByOidHenkilo("kayttaja").get();
+        myonnettyKayttoOikeusService.poistaVanhentuneet(new MyonnettyKayttoOikeusService.DeleteDetails(
+                kayttaja, KayttoOikeudenTila.VANHENTUNUT, "Oikeus vanhentunut"));
+
+        assertThat(isVoimassa(varmentajaSuhdeId)).isFalse();
+    }
+
     @Test
     public void passivoi() {
         databaseService.populate(henkilo("kayttaja"));
@@ -136,4 +201,20 @@ public class MyonnettyKayttoOikeusServiceTest {
         });
     }
 
+    private long varmentajaSuhde(String varmentajaOid, String varmennettavaOid) {
+        return databaseService.runInTransaction(() -> {
+            HenkiloVarmentaja henkiloVarmentaja = new HenkiloVarmentaja();
+            henkiloVarmentaja.setVarmentavaHenkilo(henkiloDataRepository.findByOidHenkilo(varmentajaOid).get());
+            henkiloVarmentaja.setVarmennettavaHenkilo(henkiloDataRepository.findByOidHenkilo(varmennettavaOid).get());
+            henkiloVarmentaja.setTila(true);
+            henkiloVarmentaja.setAikaleima(LocalDateTime.now());
+            entityManager.persist(henkiloVarmentaja);
+            return henkiloVarmentaja.getId();
+        });
+    }
+
+    private boolean isVoimassa(long varmentajaSuhdeId) {
+        return databaseService.runInTransaction(() -> entityManager.find(HenkiloVarmentaja.class, varmentajaSuhdeId).isTila());
+    }
+
 }
@@ -4,8 +4,10 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import fi.vm.sade.kayttooikeus.config.properties.CommonProperties;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
 import fi.vm.sade.kayttooikeus.dto.KayttajaTyyppi;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.ExternalPermissionService;
+import fi.vm.sade.kayttooikeus.dto.permissioncheck.PermissionCheckDto;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.PermissionCheckRequestDto;
 import fi.vm.sade.kayttooikeus.dto.permissioncheck.PermissionCheckResponseDto;
 import fi.vm.sade.kayttooikeus.model.Henkilo;
@@ -15,6 +17,7 @@ import fi.vm.sade.kayttooikeus.repositories.HenkiloDataRepository;
 import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRyhmaMyontoViiteRepository;
 import fi.vm.sade.kayttooikeus.repositories.KayttooikeusryhmaDataRepository;
 import fi.vm.sade.kayttooikeus.service.external.ExternalPermissionClient;
+import fi.vm.sade.kayttooikeus.service.external.ExternalServiceException;
 import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
@@ -23,6 +26,7 @@ import fi.vm.sade.kayttooikeus.service.impl.PermissionCheckerServiceImpl;
 import fi.vm.sade.kayttooikeus.util.CreateUtil;
 import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloDto;
 import fi.vm.sade.properties.OphProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -42,6 +46,7 @@ import static fi.vm.sade.kayttooikeus.service.impl.PermissionCheckerServiceImpl.
 import static java.util.Arrays.asList;
 import static java.util.Collections.*;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 
@@ -68,6 +73,9 @@ public class PermissionCheckerTest {
     @Mock
     private KayttajarooliProvider kayttajarooliProvider;
 
+    private final KayttooikeusProperties kayttooikeusProperties = new KayttooikeusProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private static final String ORG1 = "org1";
     private static final String ORG2 = "org2";
     private static final String ROOT_ORG = "1.2.246.562.10.00000000001";
@@ -91,7 +99,9 @@ public class PermissionCheckerTest {
                 this.henkiloDataRepositoryMock, this.kayttooikeusryhmaDataRepository,
                 externalPermissionClient, this.oppijanumerorekisteriClient, organisaatioClient,
                 kayttajarooliProvider,
-                commonProperties));
+                commonProperties,
+                this.kayttooikeusProperties,
+                this.meterRegistry));
         when(this.oppijanumerorekisteriClient.getAllOidsForSamePerson(anyString())).thenReturn(
                 Sets.newHashSet("masterOid", "slaveOid1", "slaveOid2")
         );
@@ -357,6 +367,102 @@ public class PermissionCheckerTest {
                 .containsExactlyInAnyOrder(ORG1, ORG2, ORG2 + ".child1", ORG2 + ".child2", ORG2 + ".child1.child1");
     }
 
+    @Test
+    @WithMockUser(value = "callingPerson", authorities = {"ROLE_APP_KAYTTOOIKEUS_CRUD", "ROLE_APP_KAYTTOOIKEUS_CRUD_" + ORG1})
+    public void isAllowedToAccessPersonShouldRecordStageTimings() {
+        Henkilo henkilo = new Henkilo();
+        henkilo.setOrganisaatioHenkilos(singleton(OrganisaatioHenkilo.builder().organisaatioOid(ORG1).build()));
+        when(henkiloDataRepositoryMock.findByOidHenkilo(eq("callingPerson"))).thenReturn(Optional.of(henkilo));
+        doReturn(singleton(ORG1)).when(this.organisaatioClient).listWithChildOids(any(), any());
+        doReturn(singletonList(ORG1)).when(this.organisaatioClient).getActiveParentOids(eq(ORG1));
+        when(this.henkiloDataRepositoryMock.findByOidHenkilo(eq("testPerson"))).thenReturn(Optional.empty());
+        when(externalPermissionClient.getPermission(any(), any())).thenReturn(PermissionCheckResponseDto.allowed());
+
+        assertThat(this.permissionChecker.isAllowedToAccessPerson("testPerson",
+                singletonMap(PALVELU_KAYTTOOIKEUS, singletonList("CRUD")), ExternalPermissionService.HAKU_APP)).isTrue();
+
+        Stream.of("organisations", "same_person", "external").forEach(stage ->
+                assertThat(meterRegistry.get("kayttooikeus.permission.check").tag("stage", stage).timer().count()).isEqualTo(1L));
+    }
+
+    @Test
+    @WithMockUser(value = "callingPerson", authorities = {"ROLE_APP_KAYTTOOIKEUS_CRUD", "ROLE_APP_KAYTTOOIKEUS_CRUD_" + ORG1})
+    public void isAllowedToAccessPersonShouldFailWhenSamePersonLookupTimesOut() {
+        kayttooikeusProperties.getPermissionCheck().setSamePersonTimeout(50L);
+        Henkilo henkilo = new Henkilo();
+        henkilo.setOrganisaatioHenkilos(singleton(OrganisaatioHenkilo.builder().organisaatioOid(ORG1).build()));
+        when(henkiloDataRepositoryMock.findByOidHenkilo(eq("callingPerson"))).thenReturn(Optional.of(henkilo));
+        doReturn(singleton(ORG1)).when(this.organisaatioClient).listWithChildOids(any(), any());
+        doReturn(singletonList(ORG1)).when(this.organisaatioClient).getActiveParentOids(eq(ORG1));
+        when(this.henkiloDataRepositoryMock.findByOidHenkilo(eq("testPerson"))).thenReturn(Optional.empty());
+        when(this.oppijanumerorekisteriClient.getAllOidsForSamePerson(anyString())).thenAnswer(invocation -> {
+            Thread.sleep(5000L);
+            return singleton("testPerson");
+        });
+
+        Throwable throwable = catchThrowable(() -> this.permissionChecker.isAllowedToAccessPerson("testPerson",
+                singletonMap(PALVELU_KAYTTOOIKEUS, singletonList("CRUD")), ExternalPermissionService.HAKU_APP));
+
+        assertThat(throwable).isInstanceOf(ExternalServiceException.class);
+        verifyNoInteractions(externalPermissionClient);
+    }
+
+    @Test
+    public void isAllowedToAccessPersonsShouldDenyEachPersonWhenExternalServiceDeniesAccess() {
+        mockHenkilotForBatch();
+        when(externalPermissionClient.getPermission(any(), any())).thenReturn(PermissionCheckResponseDto.denied());
+
+        List<Boolean> results = this.permissionChecker.isAllowedToAccessPersons(asList(
+                batchPermissionCheck("person1"), batchPermissionCheck("internalPerson"), batchPermissionCheck("person2")));
+
+        assertThat(results).containsExactly(false, true, false);
+        verify(externalPermissionClient, times(2)).getPermission(any(), any());
+        verify(henkiloDataRepositoryMock, never()).findByOidHenkilo(any());
+    }
+
+    @Test
+    public void isAllowedToAccessPersonsShouldCheckEachPersonOnce() {
+        mockHenkilotForBatch();
+        when(externalPermissionClient.getPermission(any(), any())).thenReturn(
+                PermissionCheckResponseDto.allowed(), PermissionCheckResponseDto.denied());
+
+        List<Boolean> results = this.permissionChecker.isAllowedToAccessPersons(asList(
+                batchPermissionCheck("person1"), batchPermissionCheck("person2"), batchPermissionCheck("person1")));
+
+        assertThat(results).containsExactly(true, false, true);
+        ArgumentCaptor<PermissionCheckRequestDto> captor = ArgumentCaptor.forClass(PermissionCheckRequestDto.class);
+        verify(externalPermissionClient, times(2)).getPermission(eq(ExternalPermissionService.HAKU_APP), captor.capture());
+        assertThat(captor.getAllValues()).extracting(PermissionCheckRequestDto::getPersonOidsForSamePerson)
+                .containsExactly(singletonList("person1"), singletonList("person2"));
+        assertThat(captor.getAllValues()).allSatisfy(request -> {
+            assertThat(request.getLoggedInUserOid()).isEqualTo("callingPerson");
+            assertThat(request.getOrganisationOids()).containsExactly(ORG1);
+        });
+        verify(oppijanumerorekisteriClient).getAllOidsForSamePersons(eq(asList("person1", "person2")));
+    }
+
+    private void mockHenkilotForBatch() {
+        Henkilo callingPerson = Henkilo.builder().oidHenkilo("callingPerson")
+                .organisaatioHenkilos(singleton(OrganisaatioHenkilo.builder().organisaatioOid(ORG1).build())).build();
+        Henkilo internalPerson = Henkilo.builder().oidHenkilo("internalPerson")
+                .organisaatioHenkilos(singleton(OrganisaatioHenkilo.builder().organisaatioOid(ORG1).build())).build();
+        when(henkiloDataRepositoryMock.readByOidHenkiloIn(any())).thenReturn(asList(callingPerson, internalPerson));
+        when(oppijanumerorekisteriClient.getAllOidsForSamePersons(any())).thenAnswer(invocation -> invocation
+                .<Collection<String>>getArgument(0).stream().collect(Collectors.toMap(oid -> oid, Collections::singleton)));
+        doReturn(singleton(ORG1)).when(this.organisaatioClient).listWithChildOids(eq(ORG1), any());
+        doReturn(singletonList(ORG1)).when(this.organisaatioClient).getActiveParentOids(eq(ORG1));
+    }
+
+    private static PermissionCheckDto batchPermissionCheck(String userOid) {
+        PermissionCheckDto permissionCheckDto = new PermissionCheckDto();
+        permissionCheckDto.setCallingUserOid("callingPerson");
+        permissionCheckDto.setUserOid(userOid);
+        permissionCheckDto.setAllowedPalveluRooli(singletonMap(PALVELU_KAYTTOOIKEUS, singletonList("CRUD")));
+        permissionCheckDto.setExternalPermissionService(ExternalPermissionService.HAKU_APP);
+        permissionCheckDto.setCallingUserRoles(Sets.newHashSet("ROLE_APP_KAYTTOOIKEUS_CRUD", "ROLE_APP_KAYTTOOIKEUS_CRUD_" + ORG1));
+        return permissionCheckDto;
+    }
+
     @Test
     @WithMockUser(value = "user", authorities = {
             "ROLE_APP_KAYTTOOIKEUS_READ",
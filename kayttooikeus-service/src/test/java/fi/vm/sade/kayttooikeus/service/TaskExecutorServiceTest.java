@@ -6,6 +6,7 @@ import fi.vm.sade.kayttooikeus.model.Kutsu;
 import fi.vm.sade.kayttooikeus.repositories.dto.ExpiringKayttoOikeusDto;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -15,8 +16,11 @@ import java.time.LocalDate;
 import java.time.Period;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
@@ -53,8 +57,14 @@ public class TaskExecutorServiceTest extends AbstractServiceTest {
                         .ryhmaName("RYHMA2")
                         .build()
         ));
+        given(emailService.sendExpirationReminders(any())).willReturn(singleton("1.2.3.4.5"));
 
         int numberSent = taskExecutorService.sendExpirationReminders(Period.ofWeeks(3), Period.ofWeeks(2));
         assertEquals(1, numberSent);
+        ArgumentCaptor<Map<String, List<ExpiringKayttoOikeusDto>>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(emailService).sendExpirationReminders(captor.capture());
+        assertThat(captor.getValue()).containsOnlyKeys("1.2.3.4.5");
+        assertThat(captor.getValue().get("1.2.3.4.5")).extracting(ExpiringKayttoOikeusDto::getRyhmaName)
+                .containsExactly("RYHMA", "RYHMA2");
     }
 }
@@ -9,9 +9,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
+import static java.util.Collections.singletonList;
 import static net.jadler.Jadler.onRequest;
+import static net.jadler.Jadler.verifyThatRequest;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
 
@@ -31,6 +34,49 @@ public class ExternalPermissionClientTest extends AbstractClientTest {
         Arrays.stream(ExternalPermissionService.values()).forEach(this::getPermission);
     }
 
+    @Test
+    public void getPermissionIsCached() {
+        onRequest().havingMethod(is("POST")).havingBodyEqualTo("{\"personOidsForSamePerson\":[\"1.2.3.1\"],\"organisationOids\":[],\"loggedInUserRoles\":null,\"loggedInUserOid\":\"1.2.2.3\"}")
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON.getType()).withBody("{\"accessAllowed\":true,\"errorMessage\":null}");
+        PermissionCheckRequestDto dto = new PermissionCheckRequestDto();
+        dto.setLoggedInUserOid("1.2.2.3");
+        dto.setPersonOidsForSamePerson(new ArrayList<>(singletonList("1.2.3.1")));
+
+        assertThat(client.getPermission(ExternalPermissionService.KOSKI, dto)).returns(true, PermissionCheckResponseDto::isAccessAllowed);
+        assertThat(client.getPermission(ExternalPermissionService.KOSKI, dto)).returns(true, PermissionCheckResponseDto::isAccessAllowed);
+
+        verifyThatRequest().havingBodyEqualTo("{\"personOidsForSamePerson\":[\"1.2.3.1\"],\"organisationOids\":[],\"loggedInUserRoles\":null,\"loggedInUserOid\":\"1.2.2.3\"}")
+                .receivedOnce();
+    }
+
+    @Test
+    public void getPermissionIsCachedByOrganisationSet() {
+        onRequest().havingMethod(is("POST")).havingBodyEqualTo("{\"personOidsForSamePerson\":[\"1.2.3.2\"],\"organisationOids\":[\"1.2.246.1\",\"1.2.246.2\"],\"loggedInUserRoles\":null,\"loggedInUserOid\":\"1.2.2.4\"}")
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON.getType()).withBody("{\"accessAllowed\":true,\"errorMessage\":null}");
+        onRequest().havingMethod(is("POST")).havingBodyEqualTo("{\"personOidsForSamePerson\":[\"1.2.3.2\"],\"organisationOids\":[\"1.2.246.1\"],\"loggedInUserRoles\":null,\"loggedInUserOid\":\"1.2.2.4\"}")
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON.getType()).withBody("{\"accessAllowed\":true,\"errorMessage\":null}");
+
+        assertThat(client.getPermission(ExternalPermissionService.KOSKI, request("1.2.2.4", "1.2.3.2", "1.2.246.1", "1.2.246.2")))
+                .returns(true, PermissionCheckResponseDto::isAccessAllowed);
+        assertThat(client.getPermission(ExternalPermissionService.KOSKI, request("1.2.2.4", "1.2.3.2", "1.2.246.2", "1.2.246.1")))
+                .returns(true, PermissionCheckResponseDto::isAccessAllowed);
+        assertThat(client.getPermission(ExternalPermissionService.KOSKI, request("1.2.2.4", "1.2.3.2", "1.2.246.1")))
+                .returns(true, PermissionCheckResponseDto::isAccessAllowed);
+
+        verifyThatRequest().havingBodyEqualTo("{\"personOidsForSamePerson\":[\"1.2.3.2\"],\"organisationOids\":[\"1.2.246.1\",\"1.2.246.2\"],\"loggedInUserRoles\":null,\"loggedInUserOid\":\"1.2.2.4\"}")
+                .receivedOnce();
+        verifyThatRequest().havingBodyEqualTo("{\"personOidsForSamePerson\":[\"1.2.3.2\"],\"organisationOids\":[\"1.2.246.1\"],\"loggedInUserRoles\":null,\"loggedInUserOid\":\"1.2.2.4\"}")
+                .receivedOnce();
+    }
+
+    private static PermissionCheckRequestDto request(String loggedInUserOid, String personOid, String... organisationOids) {
+        PermissionCheckRequestDto dto = new PermissionCheckRequestDto();
+        dto.setLoggedInUserOid(loggedInUserOid);
+        dto.setPersonOidsForSamePerson(singletonList(personOid));
+        dto.setOrganisationOids(Arrays.asList(organisationOids));
+        return dto;
+    }
+
     private void getPermission(ExternalPermissionService service) {
         PermissionCheckRequestDto dto = new PermissionCheckRequestDto();
         if (service == ExternalPermissionService.HAKU_APP) {
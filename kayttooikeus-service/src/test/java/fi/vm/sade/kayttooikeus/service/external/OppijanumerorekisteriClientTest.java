@@ -2,6 +2,7 @@ package fi.vm.sade.kayttooikeus.service.external;
 
 
 
+import com.google.common.collect.Sets;
 import fi.vm.sade.javautils.http.exceptions.UnhandledHttpStatusCodeException;
 import fi.vm.sade.kayttooikeus.service.impl.KayttoOikeusServiceImpl;
 import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloDto;
@@ -15,13 +16,16 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import static fi.vm.sade.oppijanumerorekisteri.dto.YhteystietoTyyppi.YHTEYSTIETO_SAHKOPOSTI;
 import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static net.jadler.Jadler.onRequest;
+import static net.jadler.Jadler.verifyThatRequest;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.hamcrest.Matchers.equalToIgnoringWhiteSpace;
@@ -79,12 +83,30 @@ public class OppijanumerorekisteriClientTest extends AbstractClientTest {
         casAuthenticated("test");
         onRequest().havingMethod(is("POST"))
                 .havingPath(is("/oppijanumerorekisteri-service/s2s/duplicateHenkilos"))
-                .havingBody(equalToIgnoringWhiteSpace("{\"henkiloOids\":[\"1.2.3\"]}"))
+                .havingBody(equalToIgnoringWhiteSpace("{\"henkiloOids\":[\"1.2.4\"]}"))
                 .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
                 .withBody("[]");
-        Set<String> allOids = this.client.getAllOidsForSamePerson("1.2.3");
+        Set<String> allOids = this.client.getAllOidsForSamePerson("1.2.4");
         assertEquals(1, allOids.size());
-        assertTrue(allOids.containsAll(singletonList("1.2.3")));
+        assertTrue(allOids.containsAll(singletonList("1.2.4")));
+    }
+
+    @Test
+    public void getAllOidsForSamePersonsTest() {
+        casAuthenticated("test");
+        onRequest().havingMethod(is("POST"))
+                .havingPath(is("/oppijanumerorekisteri-service/s2s/duplicateHenkilos"))
+                .havingBody(equalToIgnoringWhiteSpace("{\"henkiloOids\":[\"1.2.5\",\"3.4.6\",\"1.2.7\"]}"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody("[{\"masterOid\": \"1.2.5\", \"henkiloOid\": \"2.3.5\"}," +
+                        "{\"masterOid\": \"1.2.6\", \"henkiloOid\": \"3.4.6\"}]");
+        Map<String, Set<String>> allOids = this.client.getAllOidsForSamePersons(asList("1.2.5", "3.4.6", "1.2.7"));
+        assertThat(allOids)
+                .containsEntry("1.2.5", Sets.newHashSet("1.2.5", "2.3.5"))
+                .containsEntry("3.4.6", Sets.newHashSet("1.2.6", "3.4.6"))
+                .containsEntry("1.2.7", singleton("1.2.7"));
+        assertThat(this.client.getAllOidsForSamePerson("3.4.6")).containsExactlyInAnyOrder("1.2.6", "3.4.6");
+        verifyThatRequest().havingPath(is("/oppijanumerorekisteri-service/s2s/duplicateHenkilos")).receivedOnce();
     }
 
     @Test
@@ -1,8 +1,10 @@
 package fi.vm.sade.kayttooikeus.service.external;
 
+import fi.vm.sade.kayttooikeus.service.external.impl.OrganisaatioClosureStorage;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -15,11 +17,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
 
 @RunWith(SpringRunner.class)
 public class OrganisaatioClientTest extends AbstractClientTest {
     @Autowired
     private OrganisaatioClient client;
+    @SpyBean
+    private OrganisaatioClosureStorage organisaatioClosureStorage;
 
     @Test
     public void getLakkautetutOidsTest() {
@@ -98,4 +105,93 @@ public class OrganisaatioClientTest extends AbstractClientTest {
         });
     }
 
+    @Test
+    public void refreshCacheIncrementsGeneration() {
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v4/1.2.246.562.10.00000000001/jalkelaiset"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/organisaatioServiceHaeResponse.json"));
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v4/1.2.246.562.10.00000000001"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/organisaatioServiceRootOrganisation.json"));
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v2/ryhmat"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/ryhmat.json"));
+        client.refreshCache();
+        long generation = client.getCacheGeneration();
+
+        long count = client.refreshCache();
+
+        assertThat(client.getCacheGeneration()).isEqualTo(generation + 1);
+        assertThat(client.getCacheOrganisationCount()).isEqualTo(count);
+    }
+
+    @Test
+    public void updateCacheUpdatesChangedOrganisations() {
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v4/1.2.246.562.10.00000000001/jalkelaiset"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/organisaatioServiceHaeResponse.json"));
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v4/1.2.246.562.10.00000000001"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/organisaatioServiceRootOrganisation.json"));
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v2/ryhmat"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/ryhmat.json"));
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v2/muutetut/oid"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody("[\"1.2.246.562.10.49368088263\"]");
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v4/1.2.246.562.10.49368088263"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody("{\"oid\":\"1.2.246.562.10.49368088263\"," +
+                        "\"parentOidPath\":\"|1.2.246.562.10.00000000001|1.2.246.562.10.14175756379|\"," +
+                        "\"nimi\":{\"fi\":\"Lakkautettu\"},\"tyypit\":[\"organisaatiotyyppi_02\"],\"status\":\"PASSIIVINEN\"}");
+        client.refreshCache();
+        long generation = client.getCacheGeneration();
+        assertThat(client.getLakkautetutOids()).doesNotContain("1.2.246.562.10.49368088263");
+
+        client.updateCache();
+
+        assertThat(client.getCacheGeneration()).isEqualTo(generation + 1);
+        assertThat(client.getLakkautetutOids()).contains("1.2.246.562.10.49368088263");
+        assertThat(client.getOrganisaatioPerustiedotCached("1.2.246.562.10.49368088263"))
+                .hasValueSatisfying(org -> assertThat(org.getNimi()).containsEntry("fi", "Lakkautettu"));
+        assertThat(client.getParentOids("1.2.246.562.10.49368088263"))
+                .containsExactly("1.2.246.562.10.49368088263", "1.2.246.562.10.14175756379", "1.2.246.562.10.00000000001");
+    }
+
+    @Test
+    public void updateCacheRewritesClosureAfterFailedSave() {
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v4/1.2.246.562.10.00000000001/jalkelaiset"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/organisaatioServiceHaeResponse.json"));
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v4/1.2.246.562.10.00000000001"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/organisaatioServiceRootOrganisation.json"));
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v2/ryhmat"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody(jsonResource("classpath:organisaatio/ryhmat.json"));
+        onRequest().havingMethod(is("GET"))
+                .havingPath(is("/organisaatio-service/rest/organisaatio/v2/muutetut/oid"))
+                .respond().withStatus(OK).withContentType(MediaType.APPLICATION_JSON_UTF8.getType())
+                .withBody("[]");
+        doThrow(new IllegalStateException("closure")).doCallRealMethod().when(organisaatioClosureStorage).replace(any());
+        client.refreshCache();
+
+        client.updateCache();
+        client.updateCache();
+
+        verify(organisaatioClosureStorage, times(2)).replace(any());
+        verify(organisaatioClosureStorage, never()).update(any(), anyCollection());
+    }
+
 }
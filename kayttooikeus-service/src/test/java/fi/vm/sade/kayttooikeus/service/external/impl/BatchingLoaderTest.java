@@ -0,0 +1,115 @@
+package fi.vm.sade.kayttooikeus.service.external.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class BatchingLoaderTest {
+
+    private final List<Set<String>> batches = new CopyOnWriteArrayList<>();
+    private BatchingLoader<String, String> loader;
+
+    @After
+    public void shutdown() {
+        loader.shutdown();
+    }
+
+    private Map<String, String> load(Set<String> keys) {
+        batches.add(keys);
+        return keys.stream().collect(Collectors.toMap(key -> key, String::toUpperCase));
+    }
+
+    @Test
+    public void loadCollectsKeysToOneBatch() {
+        loader = new BatchingLoader<>("test-loader", this::load, 50L, 10, 2, 10000L);
+
+        CompletableFuture<String> a = loader.load("a");
+        CompletableFuture<String> b = loader.load("b");
+        CompletableFuture<String> a2 = loader.load("a");
+
+        assertThat(a.join()).isEqualTo("A");
+        assertThat(b.join()).isEqualTo("B");
+        assertThat(a2).isSameAs(a);
+        assertThat(batches).containsExactly(new LinkedHashSet<>(asList("a", "b")));
+    }
+
+    @Test
+    public void loadFlushesFullBatchImmediately() {
+        loader = new BatchingLoader<>("test-loader", this::load, 60000L, 2, 2, 10000L);
+
+        CompletableFuture<String> a = loader.load("a");
+        CompletableFuture<String> b = loader.load("b");
+
+        assertThat(a.join()).isEqualTo("A");
+        assertThat(b.join()).isEqualTo("B");
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    public void loadFailsAllKeysOfFailedBatch() {
+        loader = new BatchingLoader<>("test-loader", keys -> {
+            throw new IllegalStateException("virhe");
+        }, 10L, 10, 2, 10000L);
+
+        CompletableFuture<String> a = loader.load("a");
+        CompletableFuture<String> b = loader.load("b");
+
+        assertThat(catchThrowable(a::join)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(catchThrowable(b::join)).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void loadCollectsNextBatchWhileSlowBatchIsRunning() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        loader = new BatchingLoader<>("test-loader", keys -> {
+            if (keys.contains("hidas")) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return load(keys);
+        }, 10L, 10, 2, 10000L);
+
+        CompletableFuture<String> hidas = loader.load("hidas");
+        Thread.sleep(50L);
+        CompletableFuture<String> a = loader.load("a");
+
+        assertThat(a.join()).isEqualTo("A");
+        assertThat(hidas).isNotDone();
+        release.countDown();
+        assertThat(hidas.join()).isEqualTo("HIDAS");
+    }
+
+    @Test
+    public void loadFailsBatchAfterTimeout() {
+        CountDownLatch never = new CountDownLatch(1);
+        loader = new BatchingLoader<>("test-loader", keys -> {
+            try {
+                never.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return load(keys);
+        }, 10L, 10, 1, 100L);
+
+        CompletableFuture<String> a = loader.load("a");
+
+        assertThat(catchThrowable(a::join)).hasCauseInstanceOf(TimeoutException.class);
+    }
+
+}
@@ -0,0 +1,58 @@
+package fi.vm.sade.kayttooikeus.service.external.impl;
+
+import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
+import fi.vm.sade.kayttooikeus.service.AbstractServiceTest;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Optional;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+public class OrganisaatioCacheSnapshotStorageTest extends AbstractServiceTest {
+
+    @Autowired
+    private OrganisaatioCacheSnapshotStorage storage;
+
+    @Test
+    public void saveAndLoad() {
+        OrganisaatioPerustieto child = OrganisaatioPerustieto.builder()
+                .oid("1.2.246.562.10.1")
+                .parentOidPath("1.2.246.562.10.1/1.2.246.562.10.00000000001")
+                .nimi(singletonMap("fi", "Lapsi"))
+                .organisaatiotyypit(singletonList("organisaatiotyyppi_01"))
+                .tyypit(new ArrayList<>())
+                .children(new ArrayList<>())
+                .status(OrganisaatioStatus.PASSIIVINEN)
+                .build();
+        OrganisaatioPerustieto root = OrganisaatioPerustieto.builder()
+                .oid("1.2.246.562.10.00000000001")
+                .children(new ArrayList<>(asList(child)))
+                .status(OrganisaatioStatus.AKTIIVINEN)
+                .build();
+        new OrganisaatioCache(root, root.getChildren());
+
+        storage.save(root, 2L);
+        storage.save(root, 2L);
+        Optional<OrganisaatioPerustieto> loaded = storage.load();
+
+        assertThat(loaded).hasValueSatisfying(org -> {
+            assertThat(org.getOid()).isEqualTo("1.2.246.562.10.00000000001");
+            assertThat(org.getChildren()).hasSize(1);
+            OrganisaatioPerustieto loadedChild = org.getChildren().get(0);
+            assertThat(loadedChild.getOid()).isEqualTo("1.2.246.562.10.1");
+            assertThat(loadedChild.getNimi()).containsEntry("fi", "Lapsi");
+            assertThat(loadedChild.getStatus()).isEqualTo(OrganisaatioStatus.PASSIIVINEN);
+            assertThat(loadedChild.getTyypit()).containsExactly("KOULUTUSTOIMIJA");
+        });
+    }
+
+}
@@ -0,0 +1,145 @@
+package fi.vm.sade.kayttooikeus.service.external.impl;
+
+import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OrganisaatioCacheTest {
+
+    private OrganisaatioCache cache;
+
+    @Before
+    public void setup() {
+        OrganisaatioPerustieto org111 = organisaatio("org111", OrganisaatioStatus.AKTIIVINEN);
+        OrganisaatioPerustieto org11 = organisaatio("org11", OrganisaatioStatus.PASSIIVINEN, org111);
+        OrganisaatioPerustieto org12 = organisaatio("org12", OrganisaatioStatus.AKTIIVINEN);
+        OrganisaatioPerustieto org1 = organisaatio("org1", OrganisaatioStatus.AKTIIVINEN, org11, org12);
+        OrganisaatioPerustieto org2 = organisaatio("org2", OrganisaatioStatus.AKTIIVINEN);
+        OrganisaatioPerustieto root = organisaatio("root", OrganisaatioStatus.AKTIIVINEN);
+        cache = new OrganisaatioCache(root, new ArrayList<>(asList(org1, org2)));
+    }
+
+    private static OrganisaatioPerustieto organisaatio(String oid, OrganisaatioStatus status,
+                                                       OrganisaatioPerustieto... children) {
+        return OrganisaatioPerustieto.builder()
+                .oid(oid)
+                .status(status)
+                .children(new ArrayList<>(asList(children)))
+                .build();
+    }
+
+    @Test
+    public void collectWithParents() {
+        List<String> kaikki = cache.collectWithParents("org111", org -> true, ArrayList::new);
+        List<String> aktiiviset = cache.collectWithParents("org111",
+                org -> OrganisaatioStatus.AKTIIVINEN.equals(org.getStatus()), ArrayList::new);
+        List<String> tuntematon = cache.collectWithParents("tuntematon", org -> true, ArrayList::new);
+
+        assertThat(kaikki).containsExactly("org111", "org11", "org1", "root");
+        assertThat(aktiiviset).containsExactly("org111", "org1", "root");
+        assertThat(tuntematon).isEmpty();
+    }
+
+    @Test
+    public void collectWithChildren() {
+        List<String> kaikki = cache.collectWithChildren("org1", org -> true, ArrayList::new);
+        Set<String> lehti = cache.collectWithChildren("org2", org -> true, HashSet::new);
+        List<String> passiiviset = cache.collectWithChildren("root",
+                org -> OrganisaatioStatus.PASSIIVINEN.equals(org.getStatus()), ArrayList::new);
+        List<String> tuntematon = cache.collectWithChildren("tuntematon", org -> true, ArrayList::new);
+
+        assertThat(kaikki).containsExactly("org1", "org11", "org111", "org12");
+        assertThat(lehti).containsExactly("org2");
+        assertThat(passiiviset).containsExactly("org11");
+        assertThat(tuntematon).isEmpty();
+    }
+
+    @Test
+    public void listWithParentsAndChildren() {
+        assertThat(cache.listWithParentsAndChildren("org11", org -> true))
+                .extracting(OrganisaatioPerustieto::getOid)
+                .containsExactly("org1", "root", "org11", "org111");
+    }
+
+    @Test
+    public void isInHierarchy() {
+        assertThat(cache.isInHierarchy("org1", "org111")).isTrue();
+        assertThat(cache.isInHierarchy("org1", "org1")).isTrue();
+        assertThat(cache.isInHierarchy("root", "org2")).isTrue();
+        assertThat(cache.isInHierarchy("org11", "org12")).isFalse();
+        assertThat(cache.isInHierarchy("org111", "org1")).isFalse();
+        assertThat(cache.isInHierarchy("org2", "org1")).isFalse();
+        assertThat(cache.isInHierarchy("tuntematon", "org1")).isFalse();
+    }
+
+    @Test
+    public void linksParents() {
+        assertThat(cache.getByOid("org111"))
+                .hasValueSatisfying(org -> assertThat(org.getParent().getOid()).isEqualTo("org11"));
+        assertThat(cache.getCacheCount()).isEqualTo(6L);
+    }
+
+    @Test
+    public void duplicateOid() {
+        List<OrganisaatioPerustieto> children = new ArrayList<>(asList(
+                organisaatio("org1", OrganisaatioStatus.AKTIIVINEN),
+                organisaatio("org2", OrganisaatioStatus.AKTIIVINEN, organisaatio("org1", OrganisaatioStatus.AKTIIVINEN))));
+        assertThatThrownBy(() -> new OrganisaatioCache(organisaatio("root", OrganisaatioStatus.AKTIIVINEN), children))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void withChangesMovesAndAddsOrganisations() {
+        OrganisaatioPerustieto siirretty = muuttunut("org11", "org11/org2/root", OrganisaatioStatus.AKTIIVINEN);
+        OrganisaatioPerustieto uusi = muuttunut("org3", "org3/root", OrganisaatioStatus.AKTIIVINEN);
+
+        OrganisaatioCache updated = cache.withChanges(asList(siirretty, uusi), 2L);
+
+        assertThat(updated.getGeneration()).isEqualTo(2L);
+        assertThat(updated.getCacheCount()).isEqualTo(7L);
+        assertThat(updated.isInHierarchy("org2", "org111")).isTrue();
+        assertThat(updated.isInHierarchy("org1", "org111")).isFalse();
+        assertThat(updated.isInHierarchy("root", "org3")).isTrue();
+        List<String> lakkautetut = updated.collectWithChildren("root",
+                org -> OrganisaatioStatus.PASSIIVINEN.equals(org.getStatus()), ArrayList::new);
+        assertThat(lakkautetut).isEmpty();
+        // vanha välimuisti säilyy ennallaan
+        assertThat(cache.isInHierarchy("org1", "org111")).isTrue();
+        assertThat(cache.getByOid("org11")).hasValueSatisfying(org -> assertThat(org.getParent().getOid()).isEqualTo("org1"));
+        assertThat(cache.getCacheCount()).isEqualTo(6L);
+    }
+
+    @Test
+    public void withChangesUnknownParent() {
+        OrganisaatioPerustieto uusi = muuttunut("org3", "org3/tuntematon/root", OrganisaatioStatus.AKTIIVINEN);
+
+        assertThatThrownBy(() -> cache.withChanges(singletonList(uusi), 2L))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void withChangesCycle() {
+        OrganisaatioPerustieto siirretty = muuttunut("org1", "org1/org111/org11/org1/root", OrganisaatioStatus.AKTIIVINEN);
+
+        assertThatThrownBy(() -> cache.withChanges(singletonList(siirretty), 2L))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static OrganisaatioPerustieto muuttunut(String oid, String parentOidPath, OrganisaatioStatus status) {
+        OrganisaatioPerustieto organisaatio = organisaatio(oid, status);
+        organisaatio.setParentOidPath(parentOidPath);
+        return organisaatio;
+    }
+
+}
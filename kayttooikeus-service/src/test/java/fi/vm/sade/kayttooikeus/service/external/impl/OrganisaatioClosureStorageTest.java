@@ -0,0 +1,113 @@
+package fi.vm.sade.kayttooikeus.service.external.impl;
+
+import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
+import fi.vm.sade.kayttooikeus.service.AbstractServiceTest;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@Transactional
+public class OrganisaatioClosureStorageTest extends AbstractServiceTest {
+
+    @Autowired
+    private OrganisaatioClosureStorage storage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void replace() {
+        storage.replace(cache());
+
+        assertThat(rows()).containsExactlyInAnyOrder(
+                "closure.root>closure.root:0:AKTIIVINEN",
+                "closure.root>closure.1:1:AKTIIVINEN",
+                "closure.1>closure.1:0:AKTIIVINEN",
+                "closure.root>closure.11:2:PASSIIVINEN",
+                "closure.1>closure.11:1:PASSIIVINEN",
+                "closure.11>closure.11:0:PASSIIVINEN",
+                "closure.root>closure.2:1:AKTIIVINEN",
+                "closure.2>closure.2:0:AKTIIVINEN");
+    }
+
+    @Test
+    public void replaceRewritesOnlyDifferences() {
+        jdbcTemplate.update("INSERT INTO organisaatio_closure (ancestor_oid, descendant_oid, depth, status) VALUES (?, ?, ?, ?)",
+                "closure.poistettu", "closure.2", 1, "AKTIIVINEN");
+        jdbcTemplate.update("INSERT INTO organisaatio_closure (ancestor_oid, descendant_oid, depth, status) VALUES (?, ?, ?, ?)",
+                "closure.root", "closure.11", 1, "AKTIIVINEN");
+        jdbcTemplate.update("INSERT INTO organisaatio_closure (ancestor_oid, descendant_oid, depth, status) VALUES (?, ?, ?, ?)",
+                "closure.2", "closure.2", 0, "AKTIIVINEN");
+
+        storage.replace(cache());
+
+        assertThat(rows()).containsExactlyInAnyOrder(
+                "closure.root>closure.root:0:AKTIIVINEN",
+                "closure.root>closure.1:1:AKTIIVINEN",
+                "closure.1>closure.1:0:AKTIIVINEN",
+                "closure.root>closure.11:2:PASSIIVINEN",
+                "closure.1>closure.11:1:PASSIIVINEN",
+                "closure.11>closure.11:0:PASSIIVINEN",
+                "closure.root>closure.2:1:AKTIIVINEN",
+                "closure.2>closure.2:0:AKTIIVINEN");
+    }
+
+    @Test
+    public void updateMovesSubtree() {
+        OrganisaatioCache cache = cache();
+        storage.replace(cache);
+        OrganisaatioPerustieto siirretty = organisaatio("closure.1", OrganisaatioStatus.AKTIIVINEN);
+        siirretty.setParentOidPath("closure.1/closure.2/closure.root");
+
+        storage.update(cache.withChanges(singletonList(siirretty), 2L), singletonList("closure.1"));
+
+        assertThat(rows()).containsExactlyInAnyOrder(
+                "closure.root>closure.root:0:AKTIIVINEN",
+                "closure.root>closure.1:2:AKTIIVINEN",
+                "closure.2>closure.1:1:AKTIIVINEN",
+                "closure.1>closure.1:0:AKTIIVINEN",
+                "closure.root>closure.11:3:PASSIIVINEN",
+                "closure.2>closure.11:2:PASSIIVINEN",
+                "closure.1>closure.11:1:PASSIIVINEN",
+                "closure.11>closure.11:0:PASSIIVINEN",
+                "closure.root>closure.2:1:AKTIIVINEN",
+                "closure.2>closure.2:0:AKTIIVINEN");
+    }
+
+    private List<String> rows() {
+        return jdbcTemplate.query("SELECT ancestor_oid, descendant_oid, depth, status FROM organisaatio_closure",
+                (rs, rowNum) -> String.format("%s>%s:%d:%s", rs.getString("ancestor_oid"),
+                        rs.getString("descendant_oid"), rs.getInt("depth"), rs.getString("status")));
+    }
+
+    private static OrganisaatioCache cache() {
+        OrganisaatioPerustieto org11 = organisaatio("closure.11", OrganisaatioStatus.PASSIIVINEN);
+        OrganisaatioPerustieto org1 = organisaatio("closure.1", OrganisaatioStatus.AKTIIVINEN);
+        org1.getChildren().add(org11);
+        OrganisaatioPerustieto org2 = organisaatio("closure.2", OrganisaatioStatus.AKTIIVINEN);
+        OrganisaatioPerustieto root = organisaatio("closure.root", OrganisaatioStatus.AKTIIVINEN);
+        root.getChildren().addAll(asList(org1, org2));
+        return new OrganisaatioCache(root, root.getChildren());
+    }
+
+    private static OrganisaatioPerustieto organisaatio(String oid, OrganisaatioStatus status) {
+        return OrganisaatioPerustieto.builder()
+                .oid(oid)
+                .children(new ArrayList<>())
+                .status(status)
+                .build();
+    }
+
+}
@@ -0,0 +1,50 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EffectivePermissionsTest {
+
+    private static final String ROOT_ORG = "1.2.246.562.10.00000000001";
+
+    private final EffectivePermissions permissions = EffectivePermissions.of(asList(
+            "ROLE_APP_KAYTTOOIKEUS",
+            "ROLE_APP_KAYTTOOIKEUS_READ_UPDATE",
+            "ROLE_APP_KAYTTOOIKEUS_READ_UPDATE_" + ROOT_ORG,
+            "ROLE_APP_KAYTTOOIKEUS_KUTSU_CRUD_1.2.246.562.10.1",
+            "ROLE_APP_HENKILONHALLINTA_CRUD_1.2.246.562.10.2"), ROOT_ORG);
+
+    @Test
+    public void getOrganisaatiot() {
+        assertThat(permissions.getOrganisaatiot("KAYTTOOIKEUS_READ_UPDATE")).containsExactly(ROOT_ORG);
+        assertThat(permissions.getOrganisaatiot("KAYTTOOIKEUS_KUTSU_CRUD")).containsExactly("1.2.246.562.10.1");
+        assertThat(permissions.getOrganisaatiot("KAYTTOOIKEUS_CRUD")).isEmpty();
+    }
+
+    @Test
+    public void hasRoleForAnyOrganisation() {
+        Map<String, List<String>> palveluRoolit = singletonMap("KAYTTOOIKEUS", asList("CRUD", "KUTSU_CRUD"));
+
+        assertThat(permissions.hasRoleForAnyOrganisation(EffectivePermissions.toPalveluRoolit(palveluRoolit),
+                asList("1.2.246.562.10.1", ROOT_ORG))).isTrue();
+        assertThat(permissions.hasRoleForAnyOrganisation(EffectivePermissions.toPalveluRoolit(palveluRoolit),
+                singletonList("1.2.246.562.10.2"))).isFalse();
+    }
+
+    @Test
+    public void isMiniAdmin() {
+        assertThat(permissions.isMiniAdmin()).isTrue();
+        assertThat(permissions.isMiniAdmin("KAYTTOOIKEUS", singletonList("READ_UPDATE"))).isTrue();
+        assertThat(permissions.isMiniAdmin("KAYTTOOIKEUS", singletonList("READ"))).isFalse();
+        assertThat(EffectivePermissions.of(singletonList("ROLE_APP_KAYTTOOIKEUS_CRUD_1.2.246.562.10.1"), ROOT_ORG)
+                .isMiniAdmin()).isFalse();
+    }
+
+}
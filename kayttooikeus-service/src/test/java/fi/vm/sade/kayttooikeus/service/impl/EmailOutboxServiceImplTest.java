@@ -0,0 +1,245 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Sets;
+import fi.vm.sade.kayttooikeus.model.*;
+import fi.vm.sade.kayttooikeus.repositories.EmailOutboxRepository;
+import fi.vm.sade.kayttooikeus.service.AbstractServiceTest;
+import fi.vm.sade.kayttooikeus.service.EmailOutboxService;
+import fi.vm.sade.kayttooikeus.service.EmailService;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import fi.vm.sade.kayttooikeus.service.external.RyhmasahkopostiClient;
+import fi.vm.sade.ryhmasahkoposti.api.dto.EmailData;
+import fi.vm.sade.ryhmasahkoposti.api.dto.EmailMessage;
+import fi.vm.sade.ryhmasahkoposti.api.dto.EmailRecipient;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(SpringRunner.class)
+@Transactional
+public class EmailOutboxServiceImplTest extends AbstractServiceTest {
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private RyhmasahkopostiClient ryhmasahkopostiClient;
+
+    @MockBean
+    private OrganisaatioClient organisaatioClient;
+
+    @Test
+    public void dispatchBatchesByTemplateAndLanguage() {
+        when(ryhmasahkopostiClient.sendRyhmasahkoposti(any())).thenReturn("123");
+        emailOutboxService.enqueue(emailData("kutsu", "fi", "fi1@example.com"));
+        emailOutboxService.enqueue(emailData("kutsu", "sv", "sv@example.com"));
+        emailOutboxService.enqueue(emailData("kutsu", "fi", "fi2@example.com"));
+        emailOutboxService.enqueue(emailData("muistutus", "fi", "fi3@example.com"));
+
+        assertThat(emailOutboxService.dispatch()).isEqualTo(4);
+
+        ArgumentCaptor<EmailData> captor = ArgumentCaptor.forClass(EmailData.class);
+        verify(ryhmasahkopostiClient, times(3)).sendRyhmasahkoposti(captor.capture());
+        assertThat(captor.getAllValues())
+                .extracting(emailData -> emailData.getEmail().getTemplateName(),
+                        emailData -> emailData.getEmail().getLanguageCode(),
+                        emailData -> emailData.getRecipient().size())
+                .containsExactlyInAnyOrder(tuple("kutsu", "fi", 2), tuple("kutsu", "sv", 1), tuple("muistutus", "fi", 1));
+        assertThat(emailOutboxRepository.findAll())
+                .extracting(EmailOutbox::getStatus, EmailOutbox::getAttempts, EmailOutbox::getResponse)
+                .containsOnly(tuple(EmailOutboxStatus.SENT, 1, "123"));
+        assertThat(emailOutboxService.dispatch()).isZero();
+    }
+
+    @Test
+    public void dispatchRetriesWithBackoffUntilMaxAttempts() {
+        when(ryhmasahkopostiClient.sendRyhmasahkoposti(any())).thenThrow(new RuntimeException("503"));
+        emailOutboxService.enqueue(emailData("kutsu", "fi", "fi@example.com"));
+
+        assertThat(emailOutboxService.dispatch()).isEqualTo(1);
+
+        EmailOutbox row = emailOutboxRepository.findAll().iterator().next();
+        assertThat(row.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(row.getAttempts()).isEqualTo(1);
+        assertThat(row.getNextAttempt()).isAfter(LocalDateTime.now());
+        assertThat(row.getError()).isEqualTo("503");
+        assertThat(emailOutboxService.dispatch()).isZero();
+
+        row.setAttempts(9);
+        row.setNextAttempt(LocalDateTime.now().minusMinutes(1));
+        emailOutboxRepository.save(row);
+
+        assertThat(emailOutboxService.dispatch()).isEqualTo(1);
+
+        row = emailOutboxRepository.findById(row.getId()).orElseThrow();
+        assertThat(row.getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(row.getAttempts()).isEqualTo(10);
+        verify(ryhmasahkopostiClient, times(2)).sendRyhmasahkoposti(any());
+    }
+
+    @Test
+    public void dispatchMarksPageOfInvalidPayloadsFailed() {
+        EmailOutbox row = outbox(EmailOutboxStatus.PENDING, null);
+        row.setPayload("{");
+        row.setAttempts(0);
+        row = emailOutboxRepository.save(row);
+
+        assertThat(emailOutboxService.dispatch()).isEqualTo(1);
+
+        assertThat(emailOutboxRepository.findById(row.getId()).orElseThrow())
+                .extracting(EmailOutbox::getStatus, EmailOutbox::getAttempts)
+                .containsExactly(EmailOutboxStatus.FAILED, 1);
+        assertThat(emailOutboxService.dispatch()).isZero();
+        verifyNoInteractions(ryhmasahkopostiClient);
+    }
+
+    @Test
+    public void dispatchSavesFinishedSendsWhenInterrupted() {
+        Thread dispatcher = Thread.currentThread();
+        CountDownLatch muistutusSent = new CountDownLatch(1);
+        when(ryhmasahkopostiClient.sendRyhmasahkoposti(any())).thenAnswer(invocation -> {
+            EmailData emailData = invocation.getArgument(0);
+            if (emailData.getEmail().getTemplateName().equals("muistutus")) {
+                muistutusSent.countDown();
+                return "123";
+            }
+            // ensimmäinen erä on kesken, kun odottava säie keskeytetään toisen erän valmistuttua
+            muistutusSent.await();
+            Thread.sleep(200);
+            dispatcher.interrupt();
+            Thread.sleep(10000);
+            return "456";
+        });
+        emailOutboxService.enqueue(emailData("kutsu", "fi", "fi1@example.com"));
+        emailOutboxService.enqueue(emailData("muistutus", "fi", "fi2@example.com"));
+
+        try {
+            assertThat(emailOutboxService.dispatch()).isEqualTo(2);
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertThat(emailOutboxRepository.findAll())
+                .extracting(EmailOutbox::getTemplateName, EmailOutbox::getStatus, EmailOutbox::getAttempts)
+                .containsExactlyInAnyOrder(tuple("kutsu", EmailOutboxStatus.PENDING, 0),
+                        tuple("muistutus", EmailOutboxStatus.SENT, 1));
+    }
+
+    @Test
+    public void deleteSentRemovesOnlyExpiredSentEmails() {
+        LocalDateTime now = LocalDateTime.now();
+        EmailOutbox vanha = emailOutboxRepository.save(outbox(EmailOutboxStatus.SENT, now.minusDays(8)));
+        EmailOutbox uusi = emailOutboxRepository.save(outbox(EmailOutboxStatus.SENT, now.minusDays(1)));
+        EmailOutbox epaonnistunut = emailOutboxRepository.save(outbox(EmailOutboxStatus.FAILED, null));
+
+        assertThat(emailOutboxService.deleteSent()).isEqualTo(1);
+
+        assertThat(emailOutboxRepository.findAll()).extracting(EmailOutbox::getId)
+                .containsExactlyInAnyOrder(uusi.getId(), epaonnistunut.getId())
+                .doesNotContain(vanha.getId());
+    }
+
+    @Test
+    public void dispatchSendsInvitationPayloadUnchanged() throws Exception {
+        OrganisaatioPerustieto organisaatio = new OrganisaatioPerustieto();
+        organisaatio.setNimi(Map.of("fi", "Organisaatio"));
+        when(organisaatioClient.getOrganisaatioPerustiedotCached(any())).thenReturn(Optional.of(organisaatio));
+        when(ryhmasahkopostiClient.sendRyhmasahkoposti(any())).thenReturn("123");
+        emailService.sendInvitationEmail(Kutsu.builder()
+                .kieliKoodi("fi")
+                .sahkoposti("arpa@kuutio.fi")
+                .salaisuus("salaisuushash")
+                .etunimi("arpa")
+                .sukunimi("kuutio")
+                .saate("Tervetuloa")
+                .organisaatiot(Sets.newHashSet(KutsuOrganisaatio.builder()
+                        .organisaatioOid("1.2.3.4.1")
+                        .ryhmat(Sets.newHashSet(kayttoOikeusRyhma("Pääkäyttäjä"), kayttoOikeusRyhma("Virkailija")))
+                        .build()))
+                .aikaleima(LocalDateTime.now())
+                .build(), Optional.of("Varda Info"));
+        String payload = emailOutboxRepository.findAll().iterator().next().getPayload();
+
+        assertThat(emailOutboxService.dispatch()).isEqualTo(1);
+
+        ArgumentCaptor<EmailData> captor = ArgumentCaptor.forClass(EmailData.class);
+        verify(ryhmasahkopostiClient).sendRyhmasahkoposti(captor.capture());
+        assertThat(objectMapper.readTree(objectMapper.writeValueAsString(captor.getValue())))
+                .isEqualTo(objectMapper.readTree(payload));
+        assertThat(objectMapper.readTree(payload).at("/recipient/0/recipientReplacements"))
+                .extracting(replacement -> replacement.get("name").asText())
+                .containsExactlyInAnyOrder("linkki", "vastaanottaja", "organisaatiot", "saate", "kutsuja", "voimassa");
+        assertThat(objectMapper.readTree(payload).at("/recipient/0/recipientReplacements").findValue("permissions"))
+                .extracting(permission -> permission.asText())
+                .containsExactly("Pääkäyttäjä", "Virkailija");
+        assertThat(objectMapper.readTree(payload).at("/recipient/0/recipientReplacements").findValue("etunimet").asText())
+                .isEqualTo("arpa");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void enqueueRequiresTransaction() {
+        assertThatThrownBy(() -> emailOutboxService.enqueue(emailData("kutsu", "fi", "fi@example.com")))
+                .isInstanceOf(IllegalTransactionStateException.class);
+    }
+
+    private static EmailData emailData(String templateName, String languageCode, String email) {
+        EmailMessage message = new EmailMessage();
+        message.setTemplateName(templateName);
+        message.setLanguageCode(languageCode);
+        EmailRecipient recipient = new EmailRecipient();
+        recipient.setEmail(email);
+        recipient.setLanguageCode(languageCode);
+        return new EmailData(singletonList(recipient), message);
+    }
+
+    private static KayttoOikeusRyhma kayttoOikeusRyhma(String nimi) {
+        TextGroup textGroup = new TextGroup();
+        textGroup.addText(new Text(textGroup, "fi", nimi));
+        return KayttoOikeusRyhma.builder().nimi(textGroup).build();
+    }
+
+    private static EmailOutbox outbox(EmailOutboxStatus status, LocalDateTime sent) {
+        return EmailOutbox.builder()
+                .templateName("kutsu")
+                .languageCode("fi")
+                .payload("{}")
+                .status(status)
+                .attempts(1)
+                .created(LocalDateTime.now().minusDays(10))
+                .nextAttempt(LocalDateTime.now().minusDays(10))
+                .sent(sent)
+                .build();
+    }
+
+}
@@ -0,0 +1,83 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import fi.vm.sade.kayttooikeus.model.Henkilo;
+import fi.vm.sade.kayttooikeus.repositories.HenkiloDataRepository;
+import fi.vm.sade.kayttooikeus.service.AbstractServiceTest;
+import fi.vm.sade.oppijanumerorekisteri.dto.HenkiloHakuPerustietoDto;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@Transactional
+public class HenkiloCacheStorageTest extends AbstractServiceTest {
+
+    @Autowired
+    private HenkiloCacheStorage storage;
+
+    @Autowired
+    private HenkiloDataRepository henkiloDataRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void upsertUpdatesExistingAndInsertsMissing() {
+        Henkilo olemassa = henkiloDataRepository.save(Henkilo.builder()
+                .oidHenkilo("1.2.246.562.24.00000000001")
+                .etunimetCached("vanha")
+                .vahvastiTunnistettu(true)
+                .build());
+        entityManager.flush();
+        entityManager.clear();
+
+        storage.upsert(asList(
+                new HenkiloHakuPerustietoDto("1.2.246.562.24.00000000001", " 010101-123N ",
+                        " Teppo Taneli ", "Teppo", "Testaaja ", true, false, false, false),
+                new HenkiloHakuPerustietoDto("1.2.246.562.24.00000000002", null,
+                        "Uusi", "Uusi", "Henkilö", false, false, false, false)));
+
+        assertThat(henkiloDataRepository.findById(olemassa.getId())).hasValueSatisfying(henkilo -> assertThat(henkilo)
+                .returns("Teppo Taneli", Henkilo::getEtunimetCached)
+                .returns("Teppo", Henkilo::getKutsumanimiCached)
+                .returns("Testaaja", Henkilo::getSukunimiCached)
+                .returns("010101-123N", Henkilo::getHetuCached)
+                .returns(true, Henkilo::getVahvastiTunnistettu));
+        assertThat(henkiloDataRepository.findByOidHenkilo("1.2.246.562.24.00000000002")).hasValueSatisfying(henkilo -> assertThat(henkilo)
+                .returns("Uusi", Henkilo::getEtunimetCached)
+                .returns("Henkilö", Henkilo::getSukunimiCached)
+                .returns(null, Henkilo::getHetuCached));
+    }
+
+    @Test
+    public void upsertDoesNotUseSequenceForUpdatedRows() {
+        henkiloDataRepository.save(Henkilo.builder()
+                .oidHenkilo("1.2.246.562.24.00000000003")
+                .etunimetCached("vanha")
+                .build());
+        entityManager.flush();
+        long ennen = nextId();
+
+        storage.upsert(singletonList(new HenkiloHakuPerustietoDto("1.2.246.562.24.00000000003", null,
+                "Uusi", "Uusi", "Henkilö", false, false, false, false)));
+
+        assertThat(nextId()).isEqualTo(ennen + 1);
+    }
+
+    private long nextId() {
+        return jdbcTemplate.queryForObject("SELECT nextval('hibernate_sequence')", Long.class);
+    }
+
+}
@@ -26,7 +26,6 @@ import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -102,8 +101,6 @@ public class HenkiloServiceImplTest {
     public void henkilohakuHakeeAliorganisaatioilla() {
         when(organisaatioHenkiloRepositoryMock.findUsersOrganisaatioHenkilosByPalveluRoolis(any(), any())).thenReturn(asList("oid1", "oid2"));
         when(commonPropertiesMock.getRootOrganizationOid()).thenReturn("rootOid");
-        when(organisaatioClientMock.getChildOids(eq("oid1"))).thenReturn(asList("childOid1"));
-        when(organisaatioClientMock.getChildOids(eq("oid2"))).thenReturn(asList("childOid2"));
         HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto();
         henkilohakuCriteriaDto.setOrganisaatioOids(null);
         henkilohakuCriteriaDto.setSubOrganisation(true);
@@ -113,16 +110,15 @@ public class HenkiloServiceImplTest {
         ArgumentCaptor<HenkiloCriteria> henkiloCriteriaCaptor = ArgumentCaptor.forClass(HenkiloCriteria.class);
         verify(henkiloHibernateRepositoryMock).findByCriteria(henkiloCriteriaCaptor.capture(), any(), any(), any());
         HenkiloCriteria henkiloCriteria = henkiloCriteriaCaptor.getValue();
-        assertThat(henkiloCriteria.getOrganisaatioOids()).containsExactlyInAnyOrder("oid1", "oid2", "childOid1", "childOid2");
+        assertThat(henkiloCriteria.getOrganisaatioOids()).isNull();
+        assertThat(henkiloCriteria.getYlaorganisaatioOids()).containsExactlyInAnyOrder("oid1", "oid2");
+        assertThat(henkiloCriteria.getKayttajaOrganisaatioOids()).isNull();
     }
 
     @Test
     public void henkilohakuHakeeAnnetuillaOrganisaatioilla() {
         when(organisaatioHenkiloRepositoryMock.findUsersOrganisaatioHenkilosByPalveluRoolis(any(),any())).thenReturn(asList("oid1", "oid3", "oid5"));
         when(commonPropertiesMock.getRootOrganizationOid()).thenReturn("rootOid");
-        when(organisaatioClientMock.getChildOids(eq("oid1"))).thenReturn(asList("childOid1"));
-        when(organisaatioClientMock.getChildOids(eq("oid3"))).thenReturn(asList("childOid2"));
-        when(organisaatioClientMock.getChildOids(eq("oid5"))).thenReturn(asList("childOid3"));
         HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto();
         henkilohakuCriteriaDto.setOrganisaatioOids(Stream.of("oid1", "oid3", "childOid1").collect(toSet()));
         henkilohakuCriteriaDto.setSubOrganisation(false);
@@ -133,15 +129,14 @@ public class HenkiloServiceImplTest {
         verify(henkiloHibernateRepositoryMock).findByCriteria(henkiloCriteriaCaptor.capture(), any(), any(), any());
         HenkiloCriteria henkiloCriteria = henkiloCriteriaCaptor.getValue();
         assertThat(henkiloCriteria.getOrganisaatioOids()).containsExactlyInAnyOrder("oid1", "oid3", "childOid1");
+        assertThat(henkiloCriteria.getYlaorganisaatioOids()).isNull();
+        assertThat(henkiloCriteria.getKayttajaOrganisaatioOids()).containsExactlyInAnyOrder("oid1", "oid3", "oid5");
     }
 
     @Test
     public void henkilohakuHakeeAnnetuillaOrganisaatioillaAliorganisaatiot() {
         when(organisaatioHenkiloRepositoryMock.findUsersOrganisaatioHenkilosByPalveluRoolis(any(), any())).thenReturn(asList("oid1", "oid3", "oid5"));
         when(commonPropertiesMock.getRootOrganizationOid()).thenReturn("rootOid");
-        when(organisaatioClientMock.getChildOids(eq("oid1"))).thenReturn(asList("childOid1"));
-        when(organisaatioClientMock.getChildOids(eq("oid3"))).thenReturn(asList("childOid2"));
-        when(organisaatioClientMock.getChildOids(eq("oid5"))).thenReturn(asList("childOid3"));
         HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto();
         henkilohakuCriteriaDto.setOrganisaatioOids(Stream.of("oid1", "oid3", "childOid1").collect(toSet()));
         henkilohakuCriteriaDto.setSubOrganisation(true);
@@ -151,7 +146,9 @@ public class HenkiloServiceImplTest {
         ArgumentCaptor<HenkiloCriteria> henkiloCriteriaCaptor = ArgumentCaptor.forClass(HenkiloCriteria.class);
         verify(henkiloHibernateRepositoryMock).findByCriteria(henkiloCriteriaCaptor.capture(), any(), any(), any());
         HenkiloCriteria henkiloCriteria = henkiloCriteriaCaptor.getValue();
-        assertThat(henkiloCriteria.getOrganisaatioOids()).containsExactlyInAnyOrder("oid1", "oid3", "childOid1", "childOid2");
+        assertThat(henkiloCriteria.getOrganisaatioOids()).isNull();
+        assertThat(henkiloCriteria.getYlaorganisaatioOids()).containsExactlyInAnyOrder("oid1", "oid3", "childOid1");
+        assertThat(henkiloCriteria.getKayttajaOrganisaatioOids()).containsExactlyInAnyOrder("oid1", "oid3", "oid5");
     }
 
     @Test
@@ -209,7 +206,6 @@ public class HenkiloServiceImplTest {
         when(organisaatioHenkiloRepositoryMock.findUsersOrganisaatioHenkilosByPalveluRoolis(any(), any())).thenReturn(asList("rootOid"));
         when(this.permissionCheckerServiceMock.isCurrentUserMiniAdmin()).thenReturn(true);
         when(commonPropertiesMock.getRootOrganizationOid()).thenReturn("rootOid");
-        when(organisaatioClientMock.getChildOids(any())).thenReturn(asList("childOid1", "childOid2"));
         HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto();
         henkilohakuCriteriaDto.setOrganisaatioOids(Stream.of("oid1").collect(toSet()));
         henkilohakuCriteriaDto.setSubOrganisation(true);
@@ -219,7 +215,9 @@ public class HenkiloServiceImplTest {
         ArgumentCaptor<HenkiloCriteria> henkiloCriteriaCaptor = ArgumentCaptor.forClass(HenkiloCriteria.class);
         verify(henkiloHibernateRepositoryMock).findByCriteria(henkiloCriteriaCaptor.capture(), any(), any(), any());
         HenkiloCriteria henkiloCriteria = henkiloCriteriaCaptor.getValue();
-        assertThat(henkiloCriteria.getOrganisaatioOids()).containsExactlyInAnyOrder("oid1", "childOid1", "childOid2");
+        assertThat(henkiloCriteria.getOrganisaatioOids()).isNull();
+        assertThat(henkiloCriteria.getYlaorganisaatioOids()).containsExactly("oid1");
+        assertThat(henkiloCriteria.getKayttajaOrganisaatioOids()).isNull();
     }
 
     @Test
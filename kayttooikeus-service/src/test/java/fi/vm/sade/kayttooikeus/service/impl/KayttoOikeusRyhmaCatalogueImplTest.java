@@ -0,0 +1,109 @@
+package fi.vm.sade.kayttooikeus.service.impl;
+
+import fi.vm.sade.kayttooikeus.config.properties.CommonProperties;
+import fi.vm.sade.kayttooikeus.config.properties.KayttooikeusProperties;
+import fi.vm.sade.kayttooikeus.dto.KayttoOikeusRyhmaDto;
+import fi.vm.sade.kayttooikeus.dto.OrganisaatioViiteDto;
+import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRyhmaRepository;
+import fi.vm.sade.kayttooikeus.repositories.OrganisaatioViiteRepository;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KayttoOikeusRyhmaCatalogueImplTest {
+
+    private static final String ROOT_OID = "1.2.246.562.10.00000000001";
+    private static final String ORGANISAATIO_OID = "1.2.246.562.10.12345678910";
+    private static final String OPPILAITOS_OID = "1.2.246.562.10.12345678911";
+    private static final String RYHMA_OID = "1.2.246.562.28.12345678901";
+
+    private KayttoOikeusRyhmaCatalogueImpl catalogue;
+
+    @Mock
+    private KayttoOikeusRyhmaRepository kayttoOikeusRyhmaRepository;
+    @Mock
+    private OrganisaatioViiteRepository organisaatioViiteRepository;
+
+    @Before
+    public void setup() {
+        CommonProperties commonProperties = new CommonProperties();
+        commonProperties.setGroupOrganizationId("1.2.246.562.28");
+        catalogue = new KayttoOikeusRyhmaCatalogueImpl(kayttoOikeusRyhmaRepository, organisaatioViiteRepository,
+                commonProperties, new KayttooikeusProperties(), new SimpleMeterRegistry());
+        when(kayttoOikeusRyhmaRepository.listAll(false)).thenReturn(asList(
+                ryhma(1L, false), ryhma(2L, false), ryhma(3L, false), ryhma(4L, false), ryhma(5L, true)));
+        when(organisaatioViiteRepository.findByKayttoOikeusRyhmaIds(any())).thenReturn(asList(
+                viite(1L, ORGANISAATIO_OID),
+                viite(2L, "11"),
+                viite(2L, "organisaatiotyyppi_02"),
+                viite(3L, "organisaatiotyyppi_01"),
+                viite(4L, "1.2.246.562.28")));
+    }
+
+    private static KayttoOikeusRyhmaDto ryhma(Long id, boolean ryhmaRestriction) {
+        return KayttoOikeusRyhmaDto.builder().id(id).ryhmaRestriction(ryhmaRestriction).build();
+    }
+
+    private static OrganisaatioViiteDto viite(Long ryhmaId, String viite) {
+        return OrganisaatioViiteDto.builder().organisaatioTyyppi(viite).kayttoOikeusRyhmaId(ryhmaId).build();
+    }
+
+    @Test
+    public void getMyonnettavatJuuriorganisaatioon() {
+        assertThat(catalogue.getMyonnettavat(ROOT_OID, emptyList())).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    public void getMyonnettavatOrganisaatioon() {
+        OrganisaatioPerustieto oppilaitos = OrganisaatioPerustieto.builder()
+                .oid(OPPILAITOS_OID)
+                .oppilaitostyyppi("oppilaitostyyppi_11#1")
+                .organisaatiotyypit(singletonList("organisaatiotyyppi_02"))
+                .build();
+        OrganisaatioPerustieto koulutustoimija = OrganisaatioPerustieto.builder()
+                .oid(ORGANISAATIO_OID)
+                .organisaatiotyypit(singletonList("organisaatiotyyppi_01"))
+                .children(singletonList(oppilaitos))
+                .build();
+
+        // oppilaitostyyppi osuu koko hierarkiassa, organisaatiotyyppi vain organisaatioon itseensä
+        assertThat(catalogue.getMyonnettavat(ORGANISAATIO_OID, asList(koulutustoimija, oppilaitos)))
+                .containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(catalogue.getMyonnettavat(OPPILAITOS_OID, asList(koulutustoimija, oppilaitos)))
+                .containsExactlyInAnyOrder(2L);
+        assertThat(catalogue.getMyonnettavat("1.2.246.562.10.99999999999", emptyList())).isEmpty();
+    }
+
+    @Test
+    public void getMyonnettavatOrganisaatioryhmaan() {
+        assertThat(catalogue.getMyonnettavat(RYHMA_OID, emptyList())).containsExactlyInAnyOrder(4L, 5L);
+    }
+
+    @Test
+    public void getMyonnettavatLataaLuettelonUudelleenVainTyhjennettaessa() {
+        catalogue.getMyonnettavat(ROOT_OID, emptyList());
+        catalogue.getMyonnettavat(ORGANISAATIO_OID, emptyList());
+        verify(kayttoOikeusRyhmaRepository, times(1)).listAll(false);
+
+        when(kayttoOikeusRyhmaRepository.listAll(false)).thenReturn(singletonList(ryhma(1L, false)));
+        catalogue.invalidate();
+
+        assertThat(catalogue.getMyonnettavat(ROOT_OID, emptyList())).containsExactly(1L);
+        verify(kayttoOikeusRyhmaRepository, times(2)).listAll(false);
+    }
+
+}
@@ -1,17 +1,22 @@
 package fi.vm.sade.kayttooikeus.service.impl;
 
+import fi.vm.sade.kayttooikeus.dto.enumeration.OrganisaatioStatus;
 import fi.vm.sade.kayttooikeus.repositories.KayttoOikeusRyhmaMyontoViiteRepository;
 import fi.vm.sade.kayttooikeus.repositories.criteria.MyontooikeusCriteria;
+import fi.vm.sade.kayttooikeus.service.Myontooikeudet;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
 import fi.vm.sade.kayttooikeus.util.OrganisaatioMyontoPredicate;
 import org.assertj.core.data.MapEntry;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
 
+import static java.util.Collections.singleton;
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -19,6 +24,8 @@ import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class MyontooikeusServiceImplTest {
@@ -57,4 +64,32 @@ public class MyontooikeusServiceImplTest {
                 entry("org12", org1oikeudet));
     }
 
+    @Test
+    public void getMyontooikeusMatriisi() {
+        when(kayttoOikeusRyhmaMyontoViiteRepositoryMock.getSlaveIdsByMasterHenkiloOid(any(), any()))
+                .thenReturn(Stream.of(entry("org1", Stream.of(1L, 2L).collect(toSet())), entry("org11", singleton(5L)))
+                        .collect(toMap(MapEntry::getKey, MapEntry::getValue)));
+        when(organisaatioClientMock.isInHierarchy(eq("org1"), any()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(1).startsWith("org1"));
+        when(organisaatioClientMock.isInHierarchy(eq("org11"), any()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(1).startsWith("org11"));
+        when(organisaatioClientMock.getOrganisaatioPerustiedotCached(eq("org111")))
+                .thenReturn(Optional.of(OrganisaatioPerustieto.builder().status(OrganisaatioStatus.AKTIIVINEN).build()));
+        when(organisaatioClientMock.getOrganisaatioPerustiedotCached(eq("org12")))
+                .thenReturn(Optional.of(OrganisaatioPerustieto.builder().status(OrganisaatioStatus.PASSIIVINEN).build()));
+
+        Myontooikeudet myontooikeudet = myontooikeusServiceImpl.getMyontooikeusMatriisi("myontaja1",
+                MyontooikeusCriteria.oletus(), new OrganisaatioMyontoPredicate(false));
+
+        assertThat(myontooikeudet.contains("org1", 1L)).isTrue();
+        assertThat(myontooikeudet.contains("org1", 5L)).isFalse();
+        assertThat(myontooikeudet.contains("org11", 5L)).isTrue();
+        assertThat(myontooikeudet.contains("org111", 1L)).isTrue();
+        assertThat(myontooikeudet.contains("org111", 5L)).isTrue();
+        assertThat(myontooikeudet.contains("org111", 3L)).isFalse();
+        assertThat(myontooikeudet.contains("org12", 2L)).isFalse();
+        assertThat(myontooikeudet.contains("org2", 1L)).isFalse();
+        verify(organisaatioClientMock, never()).listWithChildOids(any(), any());
+    }
+
 }
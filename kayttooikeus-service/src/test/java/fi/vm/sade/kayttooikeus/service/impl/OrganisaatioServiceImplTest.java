@@ -50,11 +50,11 @@ public class OrganisaatioServiceImplTest {
 
     @Test
     public void updateOrganisaatioCache() {
-        when(organisaatioClientMock.refreshCache()).thenReturn(3L);
+        when(organisaatioClientMock.updateCache()).thenReturn(3L);
 
         organisaatioServiceImpl.updateOrganisaatioCache();
 
-        verify(organisaatioClientMock).refreshCache();
+        verify(organisaatioClientMock).updateCache();
     }
 
     @Test
@@ -1,6 +1,5 @@
 package fi.vm.sade.kayttooikeus.service.it;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import fi.vm.sade.kayttooikeus.config.properties.CommonProperties;
 import fi.vm.sade.kayttooikeus.dto.*;
@@ -11,6 +10,7 @@ import fi.vm.sade.kayttooikeus.model.OrganisaatioHenkilo;
 import fi.vm.sade.kayttooikeus.repositories.KayttajatiedotRepository;
 import fi.vm.sade.kayttooikeus.repositories.MyonnettyKayttoOikeusRyhmaTapahtumaRepository;
 import fi.vm.sade.kayttooikeus.repositories.OrganisaatioHenkiloRepository;
+import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuPageDto;
 import fi.vm.sade.kayttooikeus.repositories.dto.HenkilohakuResultDto;
 import fi.vm.sade.kayttooikeus.service.HenkiloService;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
@@ -31,6 +31,7 @@ import static fi.vm.sade.kayttooikeus.repositories.populate.HenkiloPopulator.hen
 import static fi.vm.sade.kayttooikeus.repositories.populate.KayttajatiedotPopulator.kayttajatiedot;
 import static fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusPopulator.oikeus;
 import static fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusRyhmaPopulator.kayttoOikeusRyhma;
+import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioClosurePopulator.organisaatioClosure;
 import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioHenkiloKayttoOikeusPopulator.myonnettyKayttoOikeus;
 import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioHenkiloPopulator.organisaatioHenkilo;
 import static fi.vm.sade.kayttooikeus.service.impl.PermissionCheckerServiceImpl.*;
@@ -105,10 +106,48 @@ public class HenkiloServiceTest extends AbstractServiceIntegrationTest {
         populate(henkilo("1.2.3.4.2").withNimet("arpa", "kuutio"));
         populate(henkilo("1.2.3.4.3").withNimet("arpa", "kuutio"));
         HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto(true, true, true, true, null, null, null, "arpa", null, null);
-        Long henkilohakuCount = this.henkiloService.henkilohakuCount(henkilohakuCriteriaDto);
+        Long henkilohakuCount = this.henkiloService.henkilohakuCount(henkilohakuCriteriaDto, null);
         assertThat(henkilohakuCount).isEqualTo(2);
     }
 
+    @Test
+    @WithMockUser(value = "1.2.3.4.5", authorities = {"ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA_1.2.246.562.10.00000000001"})
+    public void henkilohakuCountSearchMax() {
+        populate(henkilo("1.2.3.4.2").withNimet("arpa", "kuutio"));
+        populate(henkilo("1.2.3.4.3").withNimet("arpa", "kuutio"));
+        HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto(true, true, true, true, null, null, null, "arpa", null, null);
+        assertThat(this.henkiloService.henkilohakuCount(henkilohakuCriteriaDto, 1L)).isEqualTo(1);
+    }
+
+    @Test
+    @WithMockUser(value = "1.2.3.4.1", authorities = {"ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA", "ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA_1.2.246.562.10.00000000001"})
+    public void henkilohakuPage() {
+        populate(kayttajatiedot(henkilo("1.2.3.4.2").withNimet("arpa", "kuutio"), "noppa"));
+        populate(henkilo("1.2.3.4.3").withNimet("arpa", "kuutio"));
+        HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto(null, true,
+                null, null, null, null, null, "kuutio", null, null);
+
+        HenkilohakuPageDto page = this.henkiloService.henkilohakuPage(henkilohakuCriteriaDto, null, OrderByHenkilohaku.HENKILO_NIMI_DESC);
+
+        assertThat(page.getResults()).extracting(HenkilohakuResultDto::getOidHenkilo).containsExactly("1.2.3.4.3", "1.2.3.4.2");
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    @WithMockUser(value = "1.2.3.4.1", authorities = {"ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA", "ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA_1.2.246.562.10.00000000001"})
+    public void henkilohakuPageOrdersUsernameMatchesByName() {
+        populate(kayttajatiedot(henkilo("1.2.3.4.2").withNimet("arpa", "noppala"), "noppa"));
+        populate(kayttajatiedot(henkilo("1.2.3.4.3").withNimet("arpa", "aakkonen"), "noppa2"));
+        populate(henkilo("1.2.3.4.4").withNimet("arpa", "nopparinne"));
+        HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto(null, true,
+                null, null, null, null, null, "noppa", null, null);
+
+        HenkilohakuPageDto page = this.henkiloService.henkilohakuPage(henkilohakuCriteriaDto, null, OrderByHenkilohaku.HENKILO_NIMI_ASC);
+
+        assertThat(page.getResults()).extracting(HenkilohakuResultDto::getOidHenkilo)
+                .containsExactly("1.2.3.4.3", "1.2.3.4.2", "1.2.3.4.4");
+    }
+
     @Test
     @WithMockUser(value = "1.2.3.4.1", authorities = {"ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA", "ROLE_APP_KAYTTOOIKEUS_REKISTERINPITAJA_1.2.246.562.10.00000000001"})
     public void henkilohakuCountWithUsername() {
@@ -119,7 +158,7 @@ public class HenkiloServiceTest extends AbstractServiceIntegrationTest {
                 null, null, null, null, null, "noppa", null, null);
         Collection<HenkilohakuResultDto> henkilohakuResultDtoList = this.henkiloService.henkilohaku(henkilohakuCriteriaDto, 0L, OrderByHenkilohaku.HENKILO_NIMI_ASC);
         assertThat(henkilohakuResultDtoList).extracting(HenkilohakuResultDto::getOidHenkilo).containsExactly("1.2.3.4.2");
-        assertThat(henkiloService.henkilohakuCount(henkilohakuCriteriaDto)).isEqualTo(1);
+        assertThat(henkiloService.henkilohakuCount(henkilohakuCriteriaDto, null)).isEqualTo(1);
     }
 
     @Test
@@ -203,8 +242,7 @@ public class HenkiloServiceTest extends AbstractServiceIntegrationTest {
 
         given(this.organisaatioClient.getOrganisaatioPerustiedotCached(eq("3.4.5.6.7")))
                 .willReturn(Optional.of(creaetOrganisaatioPerustietoWithNimi("3.4.5.6.7", "nimiFi")));
-        given(this.organisaatioClient.getChildOids("3.4.5.6.7"))
-                .willReturn(Lists.newArrayList("3.4.5.6.7"));
+        populate(organisaatioClosure("3.4.5.6.7"));
 
         HenkilohakuCriteriaDto henkilohakuCriteriaDto = new HenkilohakuCriteriaDto(true, null,
                 null, null, null, null, null, null, singleton("3.4.5.6.7"), null);
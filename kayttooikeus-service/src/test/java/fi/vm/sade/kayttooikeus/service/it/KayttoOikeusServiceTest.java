@@ -5,11 +5,13 @@ import fi.vm.sade.kayttooikeus.dto.*;
 import fi.vm.sade.kayttooikeus.model.*;
 import fi.vm.sade.kayttooikeus.repositories.dto.ExpiringKayttoOikeusDto;
 import fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusRyhmaPopulator;
+import fi.vm.sade.kayttooikeus.service.KayttoOikeusRyhmaCatalogue;
 import fi.vm.sade.kayttooikeus.service.KayttoOikeusService;
 import fi.vm.sade.kayttooikeus.service.TimeService;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
 import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
 import org.assertj.core.groups.Tuple;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -59,6 +61,15 @@ public class KayttoOikeusServiceTest extends AbstractServiceIntegrationTest {
     @SpyBean
     private CommonProperties commonProperties;
 
+    @Autowired
+    private KayttoOikeusRyhmaCatalogue kayttoOikeusRyhmaCatalogue;
+
+    @Before
+    public void setup() {
+        // testidata lisätään palvelun ohi, joten edellisen testin luetteloa ei tyhjennetä muuten
+        kayttoOikeusRyhmaCatalogue.invalidate();
+    }
+
     @Test
     public void listAllKayttoOikeusRyhmasTest() {
         populate(kayttoOikeusRyhma("RYHMA1").withNimi(text("FI", "Käyttäjähallinta")
@@ -217,6 +228,21 @@ public class KayttoOikeusServiceTest extends AbstractServiceIntegrationTest {
         assertThat(ryhmat).hasSize(kayttoOikeusService.listAllKayttoOikeusRyhmas(false).size());
     }
 
+    @Test
+    @WithMockUser(username = "1.2.3.4.6")
+    public void listPossibleRyhmasByOrganizationAfterAktivointi() {
+        KayttoOikeusRyhma ryhma = populate(kayttoOikeusRyhma("RYHMA-ORGANISAATIOLLE")
+                .withOrganisaatiorajoite("1.2.246.562.10.12345678901")
+                .asPassivoitu());
+        assertThat(kayttoOikeusService.listPossibleRyhmasByOrganization("1.2.246.562.10.12345678901")).isEmpty();
+
+        kayttoOikeusService.aktivoiKayttooikeusryhma(ryhma.getId());
+
+        assertThat(kayttoOikeusService.listPossibleRyhmasByOrganization("1.2.246.562.10.12345678901"))
+                .extracting(KayttoOikeusRyhmaDto::getTunniste)
+                .containsExactly("RYHMA-ORGANISAATIOLLE");
+    }
+
     private static OrganisaatioPerustieto oppilaitos(String oid, String oppilaitostyyppi) {
         OrganisaatioPerustieto organisaatio = new OrganisaatioPerustieto();
         organisaatio.setOid(oid);
@@ -402,6 +402,7 @@ public class KutsuServiceTest extends AbstractServiceIntegrationTest {
         OrganisaatioPerustieto org1 = new OrganisaatioPerustieto();
         org1.setOid("1.2.3.4.1");
         org1.setNimi(new TextGroupMapDto().put("FI", "Kutsuttu organisaatio").asMap());
+        org1.setStatus(OrganisaatioStatus.AKTIIVINEN);
         given(this.organisaatioClient.getOrganisaatioPerustiedotCached(eq("1.2.3.4.1")))
                 .willReturn(Optional.of(org1));
         given(this.organisaatioClient.listWithParentsAndChildren(eq("1.2.3.4.1"), any()))
@@ -426,8 +427,7 @@ public class KutsuServiceTest extends AbstractServiceIntegrationTest {
 
         KutsuCreateDto.KutsuKayttoOikeusRyhmaCreateDto kutsuKayttoOikeusRyhma = new KutsuCreateDto.KutsuKayttoOikeusRyhmaCreateDto();
         kutsuKayttoOikeusRyhma.setId(myonnettava.getId());
-        given(this.organisaatioClient.listWithChildOids(eq("1.2.3.4.5"), any()))
-                .willReturn(Stream.of("1.2.3.4.5", "1.2.3.4.1").collect(toSet()));
+        given(this.organisaatioClient.isInHierarchy(eq("1.2.3.4.5"), eq("1.2.3.4.1"))).willReturn(true);
 
         KutsuCreateDto kutsu = new KutsuCreateDto();
         kutsu.setEtunimi("Etu");
@@ -472,6 +472,7 @@ public class KutsuServiceTest extends AbstractServiceIntegrationTest {
         OrganisaatioPerustieto org1 = new OrganisaatioPerustieto();
         org1.setOid("1.2.3.4.1");
         org1.setNimi(new TextGroupMapDto().put("FI", "Kutsuttu organisaatio").asMap());
+        org1.setStatus(OrganisaatioStatus.AKTIIVINEN);
         given(this.organisaatioClient.getOrganisaatioPerustiedotCached(eq("1.2.3.4.1")))
                 .willReturn(Optional.of(org1));
         given(this.organisaatioClient.listWithParentsAndChildren(eq("1.2.3.4.1"), any()))
@@ -496,8 +497,7 @@ public class KutsuServiceTest extends AbstractServiceIntegrationTest {
 
         KutsuCreateDto.KutsuKayttoOikeusRyhmaCreateDto kutsuKayttoOikeusRyhma = new KutsuCreateDto.KutsuKayttoOikeusRyhmaCreateDto();
         kutsuKayttoOikeusRyhma.setId(myonnettava.getId());
-        given(this.organisaatioClient.listWithChildOids(eq("1.2.3.4.5"), any()))
-                .willReturn(Stream.of("1.2.3.4.5", "1.2.3.4.1").collect(toSet()));
+        given(this.organisaatioClient.isInHierarchy(eq("1.2.3.4.5"), eq("1.2.3.4.1"))).willReturn(true);
 
         KutsuCreateDto kutsu = new KutsuCreateDto();
         kutsu.setEtunimi("Etu");
@@ -545,6 +545,7 @@ public class KutsuServiceTest extends AbstractServiceIntegrationTest {
         OrganisaatioPerustieto org1 = new OrganisaatioPerustieto();
         org1.setOid("1.2.3.4.1");
         org1.setNimi(new TextGroupMapDto().put("FI", "Kutsuttu organisaatio").asMap());
+        org1.setStatus(OrganisaatioStatus.AKTIIVINEN);
         given(this.organisaatioClient.getOrganisaatioPerustiedotCached(eq("1.2.3.4.1")))
                 .willReturn(Optional.of(org1));
         given(this.organisaatioClient.listWithParentsAndChildren(eq("1.2.3.4.1"), any()))
@@ -575,8 +576,7 @@ public class KutsuServiceTest extends AbstractServiceIntegrationTest {
         kutsuKayttoOikeusRyhma.setId(myonnettava.getId());
         given(this.organisaatioClient.getActiveParentOids(eq("1.2.3.4.1")))
                 .willReturn(asList("1.2.3.4.1", "1.2.3.4.5"));
-        given(this.organisaatioClient.listWithChildOids(eq("1.2.3.4.5"), any()))
-                .willReturn(Stream.of("1.2.3.4.5", "1.2.3.4.1").collect(toSet()));
+        given(this.organisaatioClient.isInHierarchy(eq("1.2.3.4.5"), eq("1.2.3.4.1"))).willReturn(true);
 
         KutsuCreateDto kutsu = new KutsuCreateDto();
         kutsu.setKutsujaOid("1.2.4");
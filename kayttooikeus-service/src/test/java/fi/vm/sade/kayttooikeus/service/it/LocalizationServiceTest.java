@@ -52,4 +52,23 @@ public class LocalizationServiceTest extends AbstractServiceIntegrationTest {
         assertEquals("Test", localizable2.get("en"));
     }
 
+    @Test
+    public void localizeUsesCachedTextsUntilInvalidated() {
+        TextGroup g1 = populate(text("FI", "Vanha"));
+        Localizable first = new TextGroupDto(g1.getId());
+        localizationService.localize((LocalizableDto) () -> Stream.of(first));
+        g1.getTexts().forEach(text -> text.setText("Uusi"));
+        em.flush();
+
+        Localizable cached = new TextGroupDto(g1.getId());
+        localizationService.localize((LocalizableDto) () -> Stream.of(cached));
+        localizationService.invalidateTexts();
+        Localizable invalidated = new TextGroupDto(g1.getId());
+        localizationService.localize((LocalizableDto) () -> Stream.of(invalidated));
+
+        assertEquals("Vanha", first.get("fi"));
+        assertEquals("Vanha", cached.get("fi"));
+        assertEquals("Uusi", invalidated.get("fi"));
+    }
+
 }
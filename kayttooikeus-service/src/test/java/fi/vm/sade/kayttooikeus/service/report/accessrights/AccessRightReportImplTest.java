@@ -1,29 +1,37 @@
 package fi.vm.sade.kayttooikeus.service.report.accessrights;
 
-import fi.vm.sade.kayttooikeus.dto.OrganisaatioWithChildrenDto;
+import fi.vm.sade.kayttooikeus.config.db.ReportConnectionPool;
 import fi.vm.sade.kayttooikeus.report.AccessRightReportRow;
 import fi.vm.sade.kayttooikeus.repositories.AbstractRepositoryTest;
-import fi.vm.sade.kayttooikeus.service.OrganisaatioService;
+import fi.vm.sade.kayttooikeus.service.exception.NotFoundException;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioClient;
+import fi.vm.sade.kayttooikeus.service.external.OrganisaatioPerustieto;
+import org.hibernate.Session;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.Answers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.IntStream;
 
 import static fi.vm.sade.kayttooikeus.repositories.populate.HenkiloPopulator.henkilo;
 import static fi.vm.sade.kayttooikeus.repositories.populate.KayttoOikeusRyhmaPopulator.kayttoOikeusRyhma;
 import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioHenkiloKayttoOikeusPopulator.myonnettyKayttoOikeus;
+import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioClosurePopulator.organisaatioClosure;
 import static fi.vm.sade.kayttooikeus.repositories.populate.OrganisaatioHenkiloPopulator.organisaatioHenkilo;
 import static fi.vm.sade.kayttooikeus.repositories.populate.TextGroupPopulator.text;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.mock;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -36,12 +44,15 @@ public class AccessRightReportImplTest extends AbstractRepositoryTest {
     private AccessRightReportImpl accessRightReport;
 
     @MockBean
-    private OrganisaatioService organisaatioService;
+    private OrganisaatioClient organisaatioClient;
+
+    @SpyBean
+    private ReportConnectionPool reportConnectionPool;
 
     @Test
     public void createReport() {
-        OrganisaatioWithChildrenDto root = mockOrg(ORG, List.of());
-        when(organisaatioService.getByOid(ORG)).thenReturn(root);
+        mockOrg(ORG);
+        populate(organisaatioClosure(ORG));
         long id = createRowData("person", ORG);
 
         List<AccessRightReportRow> report = accessRightReport.getForOrganisation(ORG);
@@ -53,8 +64,8 @@ public class AccessRightReportImplTest extends AbstractRepositoryTest {
     @Test
     public void createReportMultipleRows() {
         int rows = 5;
-        OrganisaatioWithChildrenDto root = mockOrg(ORG, List.of());
-        when(organisaatioService.getByOid(ORG)).thenReturn(root);
+        mockOrg(ORG);
+        populate(organisaatioClosure(ORG));
         IntStream.range(0, rows).forEach(i -> createRowData("person" + i, ORG));
 
         List<AccessRightReportRow> report = accessRightReport.getForOrganisation(ORG);
@@ -64,9 +75,11 @@ public class AccessRightReportImplTest extends AbstractRepositoryTest {
 
     @Test
     public void createReportMultipleOrgs() {
-        OrganisaatioWithChildrenDto level1 = mockOrg("level1", List.of());
-        OrganisaatioWithChildrenDto root = mockOrg(ORG, List.of(level1));
-        when(organisaatioService.getByOid(ORG)).thenReturn(root);
+        mockOrg(ORG);
+        mockOrg("level1");
+        populate(organisaatioClosure(ORG));
+        populate(organisaatioClosure("level1"));
+        populate(organisaatioClosure(ORG, "level1", 1));
         createRowData("person0", ORG);
         createRowData("person1", "level1");
 
@@ -76,26 +89,82 @@ public class AccessRightReportImplTest extends AbstractRepositoryTest {
     }
 
     @Test
-    public void resolveOrgs() {
-        OrganisaatioWithChildrenDto level2 = mockOrg("level2", List.of());
-        OrganisaatioWithChildrenDto level1 = mockOrg("level1", List.of(level2));
-        OrganisaatioWithChildrenDto root = mockOrg(ORG, List.of(level1));
-        when(organisaatioService.getByOid(ORG)).thenReturn(root);
-
-        Map<String, OrganisaatioWithChildrenDto> result = accessRightReport.resolveHierarchy(ORG);
-
-        assertThat(result)
-                .hasSize(3)
-                .containsKey(ORG)
-                .containsKey("level1")
-                .containsKey("level2");
+    public void createReportExcludesOtherSubtrees() {
+        mockOrg("level1");
+        populate(organisaatioClosure(ORG));
+        populate(organisaatioClosure("level1"));
+        populate(organisaatioClosure(ORG, "level1", 1));
+        createRowData("person0", ORG);
+        createRowData("person1", "level1");
+
+        List<AccessRightReportRow> report = accessRightReport.getForOrganisation("level1");
+
+        assertThat(report)
+                .extracting(AccessRightReportRow::getPersonOid)
+                .containsExactly("person1");
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void createReportUnknownOrganisation() {
+        accessRightReport.getForOrganisation("unknown");
+    }
+
+    @Test
+    public void forEachForOrganisation() {
+        mockOrg(ORG);
+        mockOrg("level1");
+        populate(organisaatioClosure(ORG));
+        populate(organisaatioClosure("level1"));
+        populate(organisaatioClosure(ORG, "level1", 1));
+        createRowData("person0", ORG);
+        createRowData("person1", "level1");
+        List<AccessRightReportRow> rows = new ArrayList<>();
+
+        accessRightReport.forEachForOrganisation(ORG, "FI", rows::add);
+
+        assertThat(rows)
+                .extracting(AccessRightReportRow::getPersonOid, AccessRightReportRow::getOrganisationName)
+                .containsExactlyInAnyOrder(tuple("person0", ORG + " nimi"), tuple("person1", "level1 nimi"));
+    }
+
+    @Test
+    public void forEachForOrganisationWithConnection() {
+        mockOrg(ORG);
+        populate(organisaatioClosure(ORG));
+        createRowData("person0", ORG);
+        List<AccessRightReportRow> rows = new ArrayList<>();
+
+        em.unwrap(Session.class).doWork(connection -> accessRightReport.forEachForOrganisation(connection, ORG, "FI", rows::add));
+
+        assertThat(rows)
+                .extracting(AccessRightReportRow::getPersonOid, AccessRightReportRow::getOrganisationName)
+                .containsExactly(tuple("person0", ORG + " nimi"));
+    }
+
+    // testin rivit eivät näy testitransaktion ulkopuolelle, joten raporttipooli antaa testin yhteyden
+    @Test
+    public void forEachForOrganisationReadsFromReportPool() {
+        mockOrg(ORG);
+        populate(organisaatioClosure(ORG));
+        createRowData("person0", ORG);
+        em.flush();
+        List<AccessRightReportRow> rows = new ArrayList<>();
+
+        em.unwrap(Session.class).doWork(connection -> {
+            doReturn(new SingleConnectionDataSource(connection, true)).when(reportConnectionPool).getDataSource();
+            accessRightReport.forEachForOrganisation(ORG, rows::add);
+        });
+
+        assertThat(rows)
+                .extracting(AccessRightReportRow::getPersonOid)
+                .containsExactly("person0");
     }
 
-    private OrganisaatioWithChildrenDto mockOrg(String oid, List<OrganisaatioWithChildrenDto> children) {
-        OrganisaatioWithChildrenDto org = mock(OrganisaatioWithChildrenDto.class, Answers.RETURNS_DEEP_STUBS);
-        when(org.getOid()).thenReturn(oid);
-        when(org.getChildren()).thenReturn(children);
-        return org;
+    private void mockOrg(String oid) {
+        OrganisaatioPerustieto organisaatio = new OrganisaatioPerustieto();
+        organisaatio.setOid(oid);
+        organisaatio.setNimi(Map.of("fi", oid + " nimi"));
+        when(organisaatioClient.getOrganisaatioPerustiedotCached(oid)).thenReturn(Optional.of(organisaatio));
     }
 
     private long createRowData(String personOid, String orgOid) {
@@ -0,0 +1,159 @@
+package fi.vm.sade.kayttooikeus.service.report.accessrights;
+
+import com.github.kagkarlsson.scheduler.SchedulerClient;
+import fi.vm.sade.kayttooikeus.config.scheduling.SchedulingClusterConfiguration;
+import fi.vm.sade.kayttooikeus.dto.ReportJobDto;
+import fi.vm.sade.kayttooikeus.dto.ReportJobStatus;
+import fi.vm.sade.kayttooikeus.model.ReportJob;
+import fi.vm.sade.kayttooikeus.report.AccessRightReportRow;
+import fi.vm.sade.kayttooikeus.repositories.ReportJobRepository;
+import fi.vm.sade.kayttooikeus.repositories.ReportJobResultRepository;
+import fi.vm.sade.kayttooikeus.service.AbstractServiceTest;
+import fi.vm.sade.kayttooikeus.service.exception.NotFoundException;
+import fi.vm.sade.kayttooikeus.service.external.OppijanumerorekisteriClient;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(SpringRunner.class)
+public class AccessRightReportJobServiceImplTest extends AbstractServiceTest {
+
+    @Autowired
+    private AccessRightReportJobService accessRightReportJobService;
+
+    @Autowired
+    private ReportJobRepository reportJobRepository;
+
+    @Autowired
+    private ReportJobResultRepository reportJobResultRepository;
+
+    @MockBean(name = SchedulingClusterConfiguration.REPORT_SCHEDULER)
+    private SchedulerClient schedulerClient;
+
+    @MockBean
+    private AccessRightReport accessRightReport;
+
+    @MockBean
+    private OppijanumerorekisteriClient oppijanumerorekisteriClient;
+
+    @Before
+    public void setup() {
+        when(oppijanumerorekisteriClient.resolveLanguageCodeForCurrentUser()).thenReturn("FI");
+    }
+
+    @Test
+    @WithMockUser("1.2.246.562.24.00000000017")
+    public void submitDeduplicatesActiveJob() {
+        ReportJobDto first = accessRightReportJobService.submit("1.2.246.562.10.170");
+        ReportJobDto second = accessRightReportJobService.submit("1.2.246.562.10.170");
+
+        assertThat(first.getStatus()).isEqualTo(ReportJobStatus.QUEUED);
+        assertThat(first.getLang()).isEqualTo("FI");
+        assertThat(second.getId()).isEqualTo(first.getId());
+        verify(schedulerClient, times(1)).schedule(any(), any());
+    }
+
+    @Test
+    @WithMockUser("1.2.246.562.24.00000000017")
+    public void submitAfterFinishedJobCreatesNewJob() {
+        ReportJobDto first = accessRightReportJobService.submit("1.2.246.562.10.171");
+        accessRightReportJobService.execute(first.getId());
+
+        ReportJobDto second = accessRightReportJobService.submit("1.2.246.562.10.171");
+
+        assertThat(second.getId()).isNotEqualTo(first.getId());
+        verify(schedulerClient, times(2)).schedule(any(), any());
+    }
+
+    @Test
+    @WithMockUser("1.2.246.562.24.00000000017")
+    @SuppressWarnings("unchecked")
+    public void executeStoresCompressedResult() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<AccessRightReportRow> action = invocation.getArgument(3);
+            action.accept(row("Matti"));
+            action.accept(row("Maija"));
+            return null;
+        }).when(accessRightReport)
+                .forEachForOrganisation(any(Connection.class), eq("1.2.246.562.10.172"), eq("FI"), any(Consumer.class));
+        ReportJobDto job = accessRightReportJobService.submit("1.2.246.562.10.172");
+
+        accessRightReportJobService.execute(job.getId());
+
+        ReportJobDto done = accessRightReportJobService.get("1.2.246.562.10.172", job.getId());
+        assertThat(done.getStatus()).isEqualTo(ReportJobStatus.DONE);
+        assertThat(done.getRowCount()).isEqualTo(2L);
+        assertThat(done.getFinished()).isNotNull();
+        try (InputStream in = new GZIPInputStream(
+                accessRightReportJobService.getResult("1.2.246.562.10.172", job.getId()))) {
+            assertThat(new String(in.readAllBytes(), UTF_8).split("\n"))
+                    .hasSize(2)
+                    .anyMatch(line -> line.contains("\"personName\":\"Maija\""));
+        }
+    }
+
+    @Test
+    @WithMockUser("1.2.246.562.24.00000000017")
+    @SuppressWarnings("unchecked")
+    public void executeMarksFailedJob() {
+        doThrow(new IllegalStateException("boom"))
+                .when(accessRightReport)
+                .forEachForOrganisation(any(Connection.class), eq("1.2.246.562.10.173"), eq("FI"), any(Consumer.class));
+        ReportJobDto job = accessRightReportJobService.submit("1.2.246.562.10.173");
+
+        accessRightReportJobService.execute(job.getId());
+
+        ReportJobDto failed = accessRightReportJobService.get("1.2.246.562.10.173", job.getId());
+        assertThat(failed.getStatus()).isEqualTo(ReportJobStatus.FAILED);
+        assertThat(failed.getError()).isEqualTo("boom");
+        assertThatThrownBy(() -> accessRightReportJobService.getResult("1.2.246.562.10.173", job.getId()))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    @WithMockUser("1.2.246.562.24.00000000017")
+    public void getFromOtherOrganisationNotFound() {
+        ReportJobDto job = accessRightReportJobService.submit("1.2.246.562.10.174");
+
+        assertThatThrownBy(() -> accessRightReportJobService.get("1.2.246.562.10.175", job.getId()))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    @WithMockUser("1.2.246.562.24.00000000017")
+    public void deleteExpired() {
+        ReportJobDto job = accessRightReportJobService.submit("1.2.246.562.10.176");
+        accessRightReportJobService.execute(job.getId());
+        ReportJob entity = reportJobRepository.findById(job.getId()).orElseThrow();
+        entity.setExpires(LocalDateTime.now().minusMinutes(1));
+        reportJobRepository.save(entity);
+
+        assertThat(accessRightReportJobService.deleteExpired()).isGreaterThanOrEqualTo(1);
+
+        assertThat(reportJobRepository.findById(job.getId())).isEmpty();
+        assertThat(reportJobResultRepository.findById(job.getId())).isEmpty();
+    }
+
+    private static AccessRightReportRow row(String personName) {
+        return new AccessRightReportRow(BigInteger.ONE, personName, "1.2.3", "Organisaatio", "1.2.246.562.10.172",
+                "Ryhmä", BigInteger.TEN, null, null, null, "1.2.4");
+    }
+}
@@ -0,0 +1,58 @@
+package fi.vm.sade.kayttooikeus.service.report.accessrights;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.vm.sade.kayttooikeus.report.AccessRightReportRow;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccessRightReportWriterTest {
+
+    @Test
+    public void csvQuotesValues() throws Exception {
+        StringWriter out = new StringWriter();
+        AccessRightReportWriter writer = AccessRightReportWriter.csv(out);
+
+        writer.accept(row("Meikäläinen, \"Matti\""));
+        writer.finish();
+
+        assertThat(out.toString()).isEqualTo(
+                "id,personName,personOid,organisationName,organisationOid,accessRightName,accessRightId,startDate,endDate,modified,modifiedBy\r\n"
+                        + "1,\"Meikäläinen, \"\"Matti\"\"\",1.2.3,Organisaatio,1.2.246,Ryhmä,10,2023-01-31,,2023-01-30 12:15:00,1.2.4\r\n");
+    }
+
+    @Test
+    public void csvWritesHeaderWithoutRows() throws Exception {
+        StringWriter out = new StringWriter();
+
+        AccessRightReportWriter.csv(out).finish();
+
+        assertThat(out.toString()).startsWith("id,personName,").endsWith("\r\n");
+    }
+
+    @Test
+    public void ndjsonWritesRowPerLine() throws Exception {
+        StringWriter out = new StringWriter();
+        AccessRightReportWriter writer = AccessRightReportWriter.ndjson(out, new ObjectMapper());
+
+        writer.accept(row("Matti"));
+        writer.accept(row("Maija"));
+        writer.finish();
+
+        assertThat(out.toString().split("\n"))
+                .hasSize(2)
+                .allMatch(line -> line.startsWith("{") && line.endsWith("}"));
+        assertThat(out.toString()).endsWith("\n").contains("\"personName\":\"Maija\"");
+    }
+
+    private static AccessRightReportRow row(String personName) {
+        return new AccessRightReportRow(BigInteger.ONE, personName, "1.2.3", "Organisaatio", "1.2.246",
+                "Ryhmä", BigInteger.TEN, Date.valueOf("2023-01-31"), null,
+                Timestamp.valueOf("2023-01-30 12:15:00"), "1.2.4");
+    }
+}
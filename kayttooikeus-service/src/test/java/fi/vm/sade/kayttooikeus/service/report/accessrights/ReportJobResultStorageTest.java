@@ -0,0 +1,55 @@
+package fi.vm.sade.kayttooikeus.service.report.accessrights;
+
+import fi.vm.sade.kayttooikeus.service.AbstractServiceTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+public class ReportJobResultStorageTest extends AbstractServiceTest {
+
+    @Autowired
+    private ReportJobResultStorage reportJobResultStorage;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void writesAndReadsResultInChunks() throws IOException, SQLException {
+        byte[] data = new byte[ReportJobResultStorage.CHUNK_SIZE * 2 + 17];
+        new Random(1).nextBytes(data);
+
+        try (Connection connection = dataSource.getConnection();
+             OutputStream out = reportJobResultStorage.create(connection, 1001L, "application/x-ndjson")) {
+            out.write(data, 0, 10);
+            out.write(data[10]);
+            out.write(data, 11, data.length - 11);
+        }
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM report_job_result_chunk WHERE report_job_id = ?",
+                Integer.class, 1001L)).isEqualTo(3);
+        try (InputStream in = reportJobResultStorage.open(1001L).orElseThrow()) {
+            assertThat(in.readAllBytes()).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void openWithoutResultIsEmpty() {
+        assertThat(reportJobResultStorage.open(1002L)).isEmpty();
+    }
+}
@@ -0,0 +1,15 @@
+package fi.vm.sade.kayttooikeus.util;
+
+/**
+ * H2:sta puuttuvat PostgreSQL-funktiot, jotka rekisteröidään testikantaan schema.sql:ssä.
+ */
+public final class H2Functions {
+
+    private H2Functions() {
+    }
+
+    // testikantaa käyttää yksi solmu, joten lukitusta ei tarvita
+    public static void pgAdvisoryXactLock(long key) {
+    }
+
+}
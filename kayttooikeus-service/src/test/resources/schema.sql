@@ -0,0 +1 @@
+CREATE ALIAS IF NOT EXISTS pg_advisory_xact_lock FOR 'fi.vm.sade.kayttooikeus.util.H2Functions.pgAdvisoryXactLock';